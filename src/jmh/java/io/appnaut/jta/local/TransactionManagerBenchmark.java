@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.local;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.agroal.api.security.NamePrincipal;
+import io.agroal.api.security.SimplePassword;
+import io.appnaut.jta.agroal.NarayanaTransactionIntegration;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The <b>TransactionManagerBenchmark</b> class measures the throughput of short transactions that
+ * execute a single query against one data source for the Narayana and local JTA transaction
+ * managers.
+ * <p/>
+ * Run with: ./gradlew jmh
+ *
+ * @author Marcus Portmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class TransactionManagerBenchmark {
+
+  private static final int POOL_SIZE = 16;
+
+  @Param({"narayana", "local"})
+  private String engine;
+
+  private AgroalDataSource dataSource;
+
+  private TransactionManager transactionManager;
+
+  @Benchmark
+  @Threads(1)
+  public int transaction001Thread() throws Exception {
+    return transaction();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public int transaction016Threads() throws Exception {
+    return transaction();
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    if ("local".equals(engine)) {
+      LocalTransactionManager localTransactionManager =
+          new LocalTransactionManager(Duration.ofSeconds(60));
+
+      transactionManager = localTransactionManager;
+      transactionSynchronizationRegistry =
+          new LocalTransactionSynchronizationRegistry(localTransactionManager);
+    } else {
+      transactionManager = com.arjuna.ats.jta.TransactionManager.transactionManager();
+      transactionSynchronizationRegistry = new com.arjuna.ats.internal.jta.transaction.arjunacore
+          .TransactionSynchronizationRegistryImple();
+    }
+
+    AgroalDataSourceConfigurationSupplier supplier = new AgroalDataSourceConfigurationSupplier();
+
+    supplier.connectionPoolConfiguration()
+        .minSize(POOL_SIZE)
+        .maxSize(POOL_SIZE)
+        .acquisitionTimeout(Duration.ofSeconds(30))
+        .transactionIntegration(new NarayanaTransactionIntegration("benchmark",
+            transactionManager, transactionSynchronizationRegistry))
+        .connectionFactoryConfiguration()
+        .connectionProviderClass(org.h2.jdbcx.JdbcDataSource.class)
+        .jdbcUrl("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1")
+        .principal(new NamePrincipal("sa"))
+        .credential(new SimplePassword(""));
+
+    dataSource = AgroalDataSource.from(supplier);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    dataSource.close();
+  }
+
+  private int transaction() throws Exception {
+    transactionManager.begin();
+
+    int result;
+
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        ResultSet rs = statement.executeQuery()) {
+      rs.next();
+
+      result = rs.getInt(1);
+    } catch (Throwable e) {
+      transactionManager.rollback();
+
+      throw e;
+    }
+
+    transactionManager.commit();
+
+    return result;
+  }
+}
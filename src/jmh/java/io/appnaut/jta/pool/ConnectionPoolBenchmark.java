@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.pool;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.agroal.api.security.NamePrincipal;
+import io.agroal.api.security.SimplePassword;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The <b>ConnectionPoolBenchmark</b> class measures the throughput of acquiring and returning a
+ * connection under contention for the Agroal connection pool and the lock-free Appnaut connection
+ * pool.
+ * <p/>
+ * Run with: ./gradlew jmh
+ *
+ * @author Marcus Portmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class ConnectionPoolBenchmark {
+
+  private static final int POOL_SIZE = 16;
+
+  @Param({"agroal", "appnaut"})
+  private String pool;
+
+  private AgroalDataSource dataSource;
+
+  @Benchmark
+  @Threads(8)
+  public boolean acquireAndReturn008Threads() throws SQLException {
+    return acquireAndReturn();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public boolean acquireAndReturn064Threads() throws SQLException {
+    return acquireAndReturn();
+  }
+
+  @Benchmark
+  @Threads(512)
+  public boolean acquireAndReturn512Threads() throws SQLException {
+    return acquireAndReturn();
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws SQLException {
+    AgroalDataSourceConfigurationSupplier supplier = new AgroalDataSourceConfigurationSupplier();
+
+    supplier.connectionPoolConfiguration()
+        .minSize(POOL_SIZE)
+        .maxSize(POOL_SIZE)
+        .acquisitionTimeout(Duration.ofSeconds(30))
+        .connectionFactoryConfiguration()
+        .connectionProviderClass(org.h2.jdbcx.JdbcDataSource.class)
+        .jdbcUrl("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1")
+        .principal(new NamePrincipal("sa"))
+        .credential(new SimplePassword(""));
+
+    if ("appnaut".equals(pool)) {
+      dataSource = new PooledDataSource("benchmark", supplier.get());
+    } else {
+      dataSource = AgroalDataSource.from(supplier);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    dataSource.close();
+  }
+
+  private boolean acquireAndReturn() throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      return connection.getAutoCommit();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.poc.data;
+
+import io.micronaut.context.ApplicationContext;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The <b>DataInsertBenchmark</b> class measures the rows per second inserted by creating each data
+ * item in its own transaction, which is the existing path, and by creating the data items in a
+ * single transaction using JDBC batching, against H2 and PostgreSQL.
+ * <p/>
+ * The PostgreSQL database is specified using the <b>benchmark.postgresql.url</b>,
+ * <b>benchmark.postgresql.username</b> and <b>benchmark.postgresql.password</b> system
+ * properties, and defaults to the local <b>poc</b> database.
+ * <p/>
+ * Run with: ./gradlew jmh
+ *
+ * @author Marcus Portmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@SuppressWarnings("unused")
+public class DataInsertBenchmark {
+
+  /**
+   * The string value for the data inserted by the benchmark, which is used to remove the data.
+   */
+  private static final String DATA_STRING_VALUE = "Benchmark Data";
+
+  private static final int ROWS = 1000;
+
+  private ApplicationContext applicationContext;
+
+  @Param({"h2", "postgresql"})
+  private String database;
+
+  private IDataService dataService;
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void createDataBatch() {
+    dataService.createData(newData());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void createDataSingle() {
+    for (Data data : newData()) {
+      dataService.createData(data);
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Map<String, Object> properties = new HashMap<>();
+
+    if ("postgresql".equals(database)) {
+      properties.put("datasources.default.url",
+          System.getProperty("benchmark.postgresql.url", "jdbc:postgresql://localhost:5432/poc"));
+      properties.put("datasources.default.username",
+          System.getProperty("benchmark.postgresql.username", "poc"));
+      properties.put("datasources.default.password",
+          System.getProperty("benchmark.postgresql.password", "poc"));
+      properties.put("datasources.default.driver-class-name",
+          "org.postgresql.xa.PGXADataSource");
+    }
+
+    properties.put("jpa.default.properties.hibernate.show_sql", "false");
+
+    applicationContext = ApplicationContext.run(properties);
+
+    dataService = applicationContext.getBean(IDataService.class);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    try (Connection connection = applicationContext.getBean(DataSource.class).getConnection();
+        PreparedStatement statement = connection
+            .prepareStatement("DELETE FROM poc.data WHERE string_value = ?")) {
+      statement.setString(1, DATA_STRING_VALUE);
+      statement.executeUpdate();
+    } finally {
+      applicationContext.close();
+    }
+  }
+
+  private List<Data> newData() {
+    List<Data> data = new ArrayList<>(ROWS);
+
+    LocalDateTime now = LocalDateTime.now();
+
+    for (int i = 0; i < ROWS; i++) {
+      data.add(new Data(i, DATA_STRING_VALUE, now.toLocalDate(), now));
+    }
+
+    return data;
+  }
+}
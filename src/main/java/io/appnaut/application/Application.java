@@ -19,6 +19,10 @@ package io.appnaut.application;
 /**
  * The <b>Application</b> class provides the class that all application-specific application classes
  * should be derived from.
+ * <p/>
+ * During startup, before the application starts accepting requests, the {@link ApplicationWarmUp}
+ * fills the connection pools and executes the {@link WarmUpTask} beans provided by the
+ * application.
  *
  * @author Marcus Portmann
  */
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.application;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.agroal.LazyAgroalDataSource;
+import io.micronaut.context.BeanContext;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.core.order.OrderUtil;
+import io.micronaut.core.order.Ordered;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>ApplicationWarmUp</b> class implements the warm-up phase executed during the startup of
+ * an application.
+ * <p/>
+ * The warm-up phase fills every connection pool to its minimum size, validates the connections,
+ * and then executes each {@link WarmUpTask} a configurable number of times. It runs as the last
+ * startup event listener, so the HTTP server only starts accepting requests, and the application
+ * is only reported as ready by the {@link ApplicationWarmUpHealthIndicator}, once the warm-up
+ * phase has completed. A failed warm-up step is logged and does not prevent the application from
+ * starting.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@SuppressWarnings("unused")
+public class ApplicationWarmUp implements ApplicationEventListener<StartupEvent>, Ordered {
+
+  /**
+   * The timeout in seconds used when validating a connection.
+   */
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final Logger logger = LoggerFactory.getLogger(ApplicationWarmUp.class);
+
+  private final BeanContext beanContext;
+
+  private final WarmUpConfiguration warmUpConfiguration;
+
+  private volatile boolean complete;
+
+  /**
+   * Constructs a new <b>ApplicationWarmUp</b>.
+   *
+   * @param beanContext         the bean context
+   * @param warmUpConfiguration the warm-up configuration
+   */
+  public ApplicationWarmUp(BeanContext beanContext, WarmUpConfiguration warmUpConfiguration) {
+    this.beanContext = beanContext;
+    this.warmUpConfiguration = warmUpConfiguration;
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.LOWEST_PRECEDENCE;
+  }
+
+  /**
+   * Returns whether the warm-up phase has completed.
+   *
+   * @return true if the warm-up phase has completed or false otherwise
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  @Override
+  public void onApplicationEvent(StartupEvent event) {
+    try {
+      if (warmUpConfiguration.isEnabled()) {
+        long start = System.currentTimeMillis();
+
+        if (warmUpConfiguration.isFillPools()) {
+          fillPools();
+        }
+
+        executeWarmUpTasks();
+
+        if (logger.isInfoEnabled()) {
+          logger.info("Completed the warm-up phase in " + (System.currentTimeMillis() - start)
+              + " ms");
+        }
+      }
+    } finally {
+      complete = true;
+    }
+  }
+
+  private void executeWarmUpTasks() {
+    List<WarmUpTask> warmUpTasks = new ArrayList<>(beanContext.getBeansOfType(WarmUpTask.class));
+
+    OrderUtil.sort(warmUpTasks);
+
+    for (WarmUpTask warmUpTask : warmUpTasks) {
+      if ((!warmUpConfiguration.getTasks().isEmpty()) && (!warmUpConfiguration.getTasks()
+          .contains(warmUpTask.getName()))) {
+        continue;
+      }
+
+      long start = System.currentTimeMillis();
+
+      try {
+        for (int i = 0; i < warmUpConfiguration.getIterations(); i++) {
+          warmUpTask.warmUp();
+        }
+
+        if (logger.isDebugEnabled()) {
+          logger.debug("Executed the warm-up task (" + warmUpTask.getName() + ") "
+              + warmUpConfiguration.getIterations() + " times in " + (System.currentTimeMillis()
+              - start) + " ms");
+        }
+      } catch (Throwable e) {
+        if (logger.isWarnEnabled()) {
+          logger.warn("Failed to execute the warm-up task (" + warmUpTask.getName() + ")", e);
+        }
+      }
+    }
+  }
+
+  private void fillPool(AgroalDataSource dataSource) {
+    int minSize = dataSource.getConfiguration().connectionPoolConfiguration().minSize();
+
+    List<Connection> connections = new ArrayList<>(minSize);
+
+    try {
+      // Hold the connections until the minimum size is reached so that each one is distinct
+      for (int i = 0; i < Math.max(1, minSize); i++) {
+        Connection connection = dataSource.getConnection();
+
+        connections.add(connection);
+
+        if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+          if (logger.isWarnEnabled()) {
+            logger.warn("Failed to validate a connection for the data source (" + dataSource
+                + ") during the warm-up phase");
+          }
+        }
+      }
+    } catch (Throwable e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Failed to fill the connection pool for the data source (" + dataSource
+            + ") during the warm-up phase", e);
+      }
+    } finally {
+      for (Connection connection : connections) {
+        try {
+          connection.close();
+        } catch (Throwable ignored) {
+        }
+      }
+    }
+  }
+
+  private void fillPools() {
+    for (AgroalDataSource dataSource : beanContext.getBeansOfType(AgroalDataSource.class)) {
+      // Do not initialize lazy data sources that have not been used
+      if (LazyAgroalDataSource.isNotStarted(dataSource)) {
+        continue;
+      }
+
+      fillPool(dataSource);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.application;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.health.HealthStatus;
+import io.micronaut.management.health.indicator.AbstractHealthIndicator;
+import io.micronaut.management.health.indicator.HealthIndicator;
+import io.micronaut.management.health.indicator.annotation.Readiness;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.inject.Singleton;
+
+/**
+ * The <b>ApplicationWarmUpHealthIndicator</b> class implements the readiness health indicator that
+ * reports the application as not ready until the warm-up phase executed by
+ * {@link ApplicationWarmUp} has completed.
+ * <p/>
+ * The indicator is only included in the readiness checks, i.e. <b>/health/readiness</b>, so a
+ * liveness probe does not restart an application that is still warming up.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@Readiness
+@Requires(classes = HealthIndicator.class)
+@Requires(property = "endpoints.health.warm-up.enabled", notEquals = "false")
+@SuppressWarnings("unused")
+public class ApplicationWarmUpHealthIndicator extends
+    AbstractHealthIndicator<Map<String, Object>> {
+
+  private final ApplicationWarmUp applicationWarmUp;
+
+  private final WarmUpConfiguration warmUpConfiguration;
+
+  /**
+   * Constructs a new <b>ApplicationWarmUpHealthIndicator</b>.
+   *
+   * @param applicationWarmUp   the application warm-up
+   * @param warmUpConfiguration the warm-up configuration
+   */
+  public ApplicationWarmUpHealthIndicator(ApplicationWarmUp applicationWarmUp,
+      WarmUpConfiguration warmUpConfiguration) {
+    this.applicationWarmUp = applicationWarmUp;
+    this.warmUpConfiguration = warmUpConfiguration;
+  }
+
+  @Override
+  protected Map<String, Object> getHealthInformation() {
+    Map<String, Object> details = new LinkedHashMap<>();
+
+    boolean complete = applicationWarmUp.isComplete();
+
+    details.put("enabled", warmUpConfiguration.isEnabled());
+    details.put("complete", complete);
+
+    healthStatus = complete ? HealthStatus.UP : HealthStatus.DOWN;
+
+    return details;
+  }
+
+  @Override
+  protected String getName() {
+    return "warmUp";
+  }
+}
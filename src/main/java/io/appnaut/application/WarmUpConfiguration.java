@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.application;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The <b>WarmUpConfiguration</b> class holds the configuration information for the warm-up phase
+ * executed during the startup of an application.
+ *
+ * @author Marcus Portmann
+ */
+@ConfigurationProperties(WarmUpConfiguration.PREFIX)
+@SuppressWarnings("unused")
+public class WarmUpConfiguration {
+
+  /**
+   * The prefix for the warm-up configuration.
+   */
+  public static final String PREFIX = "appnaut.warm-up";
+
+  private boolean enabled = true;
+
+  private boolean fillPools = true;
+
+  private int iterations = 20;
+
+  private List<String> tasks = new ArrayList<>();
+
+  /**
+   * Returns the number of times each warm-up task is executed.
+   *
+   * @return the number of times each warm-up task is executed
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * Returns the names of the warm-up tasks to execute or an empty list if all the warm-up tasks
+   * should be executed.
+   *
+   * @return the names of the warm-up tasks to execute or an empty list if all the warm-up tasks
+   * should be executed
+   */
+  public List<String> getTasks() {
+    return tasks;
+  }
+
+  /**
+   * Returns whether the warm-up phase is enabled.
+   *
+   * @return true if the warm-up phase is enabled or false otherwise
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns whether the connection pools are filled to their minimum size and the connections
+   * validated during the warm-up phase.
+   *
+   * @return true if the connection pools are filled and validated during the warm-up phase or
+   * false otherwise
+   */
+  public boolean isFillPools() {
+    return fillPools;
+  }
+
+  /**
+   * Set whether the warm-up phase is enabled.
+   *
+   * @param enabled true if the warm-up phase is enabled or false otherwise
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Set whether the connection pools are filled to their minimum size and the connections
+   * validated during the warm-up phase.
+   *
+   * @param fillPools true if the connection pools are filled and validated during the warm-up
+   *                  phase or false otherwise
+   */
+  public void setFillPools(boolean fillPools) {
+    this.fillPools = fillPools;
+  }
+
+  /**
+   * Set the number of times each warm-up task is executed.
+   *
+   * @param iterations the number of times each warm-up task is executed
+   */
+  public void setIterations(int iterations) {
+    this.iterations = iterations;
+  }
+
+  /**
+   * Set the names of the warm-up tasks to execute or an empty list if all the warm-up tasks
+   * should be executed.
+   *
+   * @param tasks the names of the warm-up tasks to execute or an empty list if all the warm-up
+   *              tasks should be executed
+   */
+  public void setTasks(List<String> tasks) {
+    this.tasks = tasks;
+  }
+}
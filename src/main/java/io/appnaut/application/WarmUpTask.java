@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.application;
+
+import io.micronaut.core.order.Ordered;
+
+/**
+ * The <b>WarmUpTask</b> interface defines a representative unit of work that is executed a number
+ * of times during the startup of an application, before it starts accepting requests, to prime
+ * the caches, prepared statements and JIT-compiled code paths it relies on.
+ * <p/>
+ * Warm-up tasks are discovered as beans and executed in order by the {@link ApplicationWarmUp}.
+ *
+ * @author Marcus Portmann
+ */
+public interface WarmUpTask extends Ordered {
+
+  /**
+   * Returns the name of the warm-up task.
+   *
+   * @return the name of the warm-up task
+   */
+  String getName();
+
+  /**
+   * Execute the warm-up task.
+   */
+  void warmUp() throws Exception;
+}
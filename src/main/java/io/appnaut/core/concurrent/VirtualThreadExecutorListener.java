@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.core.concurrent;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.inject.BeanIdentifier;
+import io.micronaut.scheduling.TaskExecutors;
+import java.util.concurrent.ExecutorService;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>VirtualThreadExecutorListener</b> class replaces the Micronaut I/O executor service with
+ * an executor service that runs each task on a new virtual thread, when virtual threads are
+ * enabled and supported by the Java runtime.
+ * <p/>
+ * Blocking controller methods annotated with <b>@ExecuteOn(TaskExecutors.IO)</b>, and all other
+ * work performed by the I/O executor service, then run on virtual threads, which are multiplexed
+ * over a small pool of carrier threads, rather than occupying a platform thread each. The size of
+ * the carrier thread pool is controlled using the <b>jdk.virtualThreadScheduler.parallelism</b>
+ * system property.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@Requires(property = "appnaut.virtual-threads.enabled", value = "true")
+@SuppressWarnings("unused")
+public class VirtualThreadExecutorListener implements BeanCreatedEventListener<ExecutorService> {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+      VirtualThreadExecutorListener.class);
+
+  @Override
+  public ExecutorService onCreated(BeanCreatedEvent<ExecutorService> event) {
+    BeanIdentifier beanIdentifier = event.getBeanIdentifier();
+
+    if ((beanIdentifier == null) || (!TaskExecutors.IO.equals(beanIdentifier.getName()))) {
+      return event.getBean();
+    }
+
+    if (!VirtualThreads.isSupported()) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Virtual threads are enabled but are not supported by the Java runtime ("
+            + Runtime.version() + "), the I/O executor will use platform threads");
+      }
+
+      return event.getBean();
+    }
+
+    // The platform thread pool has not started any threads yet
+    event.getBean().shutdown();
+
+    if (logger.isInfoEnabled()) {
+      logger.info("Using virtual threads for the I/O executor");
+    }
+
+    return VirtualThreads.newVirtualThreadPerTaskExecutor(TaskExecutors.IO + "-virtual-");
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.core.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The <b>VirtualThreads</b> class provides access to the virtual threads introduced in Java 21
+ * while the application is compiled for an earlier version of Java.
+ *
+ * @author Marcus Portmann
+ */
+public final class VirtualThreads {
+
+  /**
+   * The <b>Thread.Builder</b> interface or <b>null</b> if virtual threads are not supported.
+   */
+  private static final Class<?> THREAD_BUILDER_CLASS;
+
+  /**
+   * The <b>Thread.ofVirtual()</b> method or <b>null</b> if virtual threads are not supported.
+   */
+  private static final Method THREAD_OF_VIRTUAL_METHOD;
+
+  /**
+   * The <b>Thread.isVirtual()</b> method or <b>null</b> if virtual threads are not supported.
+   */
+  private static final Method THREAD_IS_VIRTUAL_METHOD;
+
+  static {
+    Class<?> threadBuilderClass = null;
+    Method threadOfVirtualMethod = null;
+    Method threadIsVirtualMethod = null;
+
+    try {
+      threadBuilderClass = Class.forName("java.lang.Thread$Builder");
+      threadOfVirtualMethod = Thread.class.getMethod("ofVirtual");
+      threadIsVirtualMethod = Thread.class.getMethod("isVirtual");
+
+      // Virtual threads are a preview feature in Java 19 and 20
+      threadOfVirtualMethod.invoke(null);
+    } catch (Throwable ignored) {
+      threadBuilderClass = null;
+      threadOfVirtualMethod = null;
+      threadIsVirtualMethod = null;
+    }
+
+    THREAD_BUILDER_CLASS = threadBuilderClass;
+    THREAD_OF_VIRTUAL_METHOD = threadOfVirtualMethod;
+    THREAD_IS_VIRTUAL_METHOD = threadIsVirtualMethod;
+  }
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Returns whether the current thread is a virtual thread.
+   *
+   * @return true if the current thread is a virtual thread or false otherwise
+   */
+  public static boolean isCurrentThreadVirtual() {
+    if (THREAD_IS_VIRTUAL_METHOD == null) {
+      return false;
+    }
+
+    try {
+      return (Boolean) THREAD_IS_VIRTUAL_METHOD.invoke(Thread.currentThread());
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether virtual threads are supported by the Java runtime.
+   *
+   * @return true if virtual threads are supported by the Java runtime or false otherwise
+   */
+  public static boolean isSupported() {
+    return THREAD_OF_VIRTUAL_METHOD != null;
+  }
+
+  /**
+   * Returns a new executor service that runs each task on a new virtual thread.
+   *
+   * @param namePrefix the prefix for the names of the virtual threads
+   *
+   * @return a new executor service that runs each task on a new virtual thread
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException(
+          "Virtual threads are not supported by the Java runtime (" + Runtime.version() + ")");
+    }
+
+    try {
+      Object threadBuilder = THREAD_OF_VIRTUAL_METHOD.invoke(null);
+
+      threadBuilder = THREAD_BUILDER_CLASS.getMethod("name", String.class, long.class)
+          .invoke(threadBuilder, namePrefix, 1L);
+
+      ThreadFactory threadFactory = (ThreadFactory) THREAD_BUILDER_CLASS.getMethod("factory")
+          .invoke(threadBuilder);
+
+      return (ExecutorService) Executors.class
+          .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+    } catch (Throwable e) {
+      throw new IllegalStateException("Failed to create the virtual thread executor", e);
+    }
+  }
+}
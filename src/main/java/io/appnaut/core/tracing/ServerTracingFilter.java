@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.core.tracing;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.order.Ordered;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.HttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import io.reactivex.Flowable;
+import org.reactivestreams.Publisher;
+
+/**
+ * The <b>ServerTracingFilter</b> class implements the HTTP server filter that creates a server
+ * span for each HTTP request, parented to the trace context propagated by the client.
+ * <p/>
+ * The context for the span is stored as an attribute of the request, so that the spans created
+ * while processing the request on another thread can be parented to it.
+ *
+ * @author Marcus Portmann
+ * @see TracingContext
+ */
+@Filter("/**")
+@Requires(beans = OpenTelemetry.class)
+@SuppressWarnings("unused")
+public class ServerTracingFilter implements HttpServerFilter {
+
+  /**
+   * The name of the request attribute used to store the OpenTelemetry context for the request.
+   */
+  public static final String CONTEXT_ATTRIBUTE = ServerTracingFilter.class.getName() + ".context";
+
+  private static final TextMapGetter<HttpRequest<?>> headersGetter = new TextMapGetter<>() {
+    @Override
+    public String get(HttpRequest<?> request, String key) {
+      return (request != null) ? request.getHeaders().get(key) : null;
+    }
+
+    @Override
+    public Iterable<String> keys(HttpRequest<?> request) {
+      return request.getHeaders().names();
+    }
+  };
+
+  private final OpenTelemetry openTelemetry;
+
+  private final Tracer tracer;
+
+  /**
+   * Constructs a new <b>ServerTracingFilter</b>.
+   *
+   * @param openTelemetry the OpenTelemetry instance
+   */
+  public ServerTracingFilter(OpenTelemetry openTelemetry) {
+    this.openTelemetry = openTelemetry;
+    this.tracer = openTelemetry.getTracer("io.appnaut.core");
+  }
+
+  @Override
+  public Publisher<MutableHttpResponse<?>> doFilter(HttpRequest<?> request,
+      ServerFilterChain chain) {
+    Context parentContext = openTelemetry.getPropagators().getTextMapPropagator()
+        .extract(Context.root(), request, headersGetter);
+
+    Span span = tracer.spanBuilder(request.getMethodName() + " " + request.getPath())
+        .setParent(parentContext)
+        .setSpanKind(SpanKind.SERVER)
+        .setAttribute("http.method", request.getMethodName())
+        .setAttribute("http.target", request.getPath())
+        .startSpan();
+
+    Context context = parentContext.with(span);
+
+    request.setAttribute(CONTEXT_ATTRIBUTE, context);
+
+    Publisher<MutableHttpResponse<?>> responsePublisher;
+
+    Scope scope = context.makeCurrent();
+
+    try {
+      responsePublisher = chain.proceed(request);
+    } finally {
+      scope.close();
+    }
+
+    return Flowable.fromPublisher(responsePublisher)
+        .doOnNext(response -> {
+          span.setAttribute("http.status_code", response.getStatus().getCode());
+
+          if (response.getStatus().getCode() >= 500) {
+            span.setStatus(StatusCode.ERROR);
+          }
+        })
+        .doOnError(e -> {
+          span.recordException(e);
+          span.setStatus(StatusCode.ERROR);
+        })
+        .doFinally(span::end);
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.HIGHEST_PRECEDENCE;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.core.tracing;
+
+import io.micronaut.http.context.ServerRequestContext;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+
+/**
+ * The <b>TracingContext</b> class provides a helper class for retrieving the OpenTelemetry context
+ * that new spans should be parented to.
+ *
+ * @author Marcus Portmann
+ */
+public class TracingContext {
+
+  /**
+   * Returns the OpenTelemetry context for the current thread.
+   * <p/>
+   * When there is no span for the current thread, e.g. because the HTTP request is being processed
+   * on a thread other than the one the request was received on, the context for the HTTP request
+   * being processed is returned.
+   *
+   * @return the OpenTelemetry context for the current thread
+   */
+  public static Context current() {
+    Context context = Context.current();
+
+    if (Span.fromContext(context).getSpanContext().isValid()) {
+      return context;
+    }
+
+    return ServerRequestContext.currentRequest()
+        .flatMap(request -> request.getAttribute(ServerTracingFilter.CONTEXT_ATTRIBUTE,
+            Context.class))
+        .orElse(context);
+  }
+}
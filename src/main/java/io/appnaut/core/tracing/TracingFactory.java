@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.core.tracing;
+
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Requires;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import javax.inject.Singleton;
+
+/**
+ * The <b>TracingFactory</b> class produces the OpenTelemetry beans used to trace HTTP requests and
+ * JTA transactions when the <b>appnaut.tracing.enabled</b> configuration property is set.
+ * <p/>
+ * The OpenTelemetry instance is the one registered globally, e.g. by the OpenTelemetry Java agent
+ * or an SDK configured at startup, and can be replaced by an application-specific bean.
+ *
+ * @author Marcus Portmann
+ */
+@Factory
+@Requires(property = TracingFactory.ENABLED_PROPERTY, value = "true")
+@SuppressWarnings("unused")
+public class TracingFactory {
+
+  /**
+   * The configuration property used to enable tracing.
+   */
+  public static final String ENABLED_PROPERTY = "appnaut.tracing.enabled";
+
+  /**
+   * Returns the OpenTelemetry instance.
+   *
+   * @return the OpenTelemetry instance
+   */
+  @Singleton
+  public OpenTelemetry openTelemetry() {
+    return GlobalOpenTelemetry.get();
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.transaction.support.TransactionSynchronization;
+import io.micronaut.transaction.support.TransactionSynchronizationUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>AsyncSynchronizationDispatcher</b> class dispatches the after-commit and after-completion
+ * callbacks for the {@link AsyncTransactionSynchronization} instances registered with a JTA
+ * transaction to a bounded executor, so that the commit latency only covers the database work.
+ * <p/>
+ * The callbacks for all the asynchronous synchronizations registered with a transaction are
+ * executed as a single task in registration order. When the queue for the executor is full the
+ * task is executed on the committing thread, which applies back-pressure rather than dropping the
+ * callbacks.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@Requires(property = AsyncSynchronizationDispatcher.PREFIX + ".enabled", value = "true")
+@SuppressWarnings("unused")
+public class AsyncSynchronizationDispatcher implements AutoCloseable {
+
+  /**
+   * The prefix for the asynchronous synchronization configuration.
+   */
+  public static final String PREFIX = "appnaut.transaction.async-synchronizations";
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(AsyncSynchronizationDispatcher.class);
+
+  /**
+   * The key used to store the asynchronous synchronizations for a transaction with the transaction
+   * synchronization registry.
+   */
+  private final Object batchResourceKey = new Object();
+
+  /**
+   * The number of tasks executed on the committing thread because the queue was full.
+   */
+  private final LongAdder callerRunsCount = new LongAdder();
+
+  private final ThreadPoolExecutor executor;
+
+  private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+  /**
+   * Constructs a new <b>AsyncSynchronizationDispatcher</b>.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param meterRegistry                      the meter registry or <b>null</b> if metrics are not
+   *                                           collected
+   * @param threads                            the number of threads used to invoke the callbacks
+   * @param queueCapacity                      the maximum number of transactions whose callbacks
+   *                                           are waiting to be invoked
+   */
+  public AsyncSynchronizationDispatcher(
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      @Nullable MeterRegistry meterRegistry,
+      @Value("${" + PREFIX + ".threads:2}") int threads,
+      @Value("${" + PREFIX + ".queue-capacity:1000}") int queueCapacity) {
+    this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+
+    AtomicInteger threadNumber = new AtomicInteger();
+
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+      Thread thread = new Thread(runnable,
+          "async-synchronization-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }, (runnable, executor) -> {
+      callerRunsCount.increment();
+
+      if (!executor.isShutdown()) {
+        runnable.run();
+      }
+    });
+
+    if (meterRegistry != null) {
+      meterRegistry.gauge("appnaut.transaction.async-synchronizations.queue", executor.getQueue(),
+          BlockingQueue::size);
+      meterRegistry.gauge("appnaut.transaction.async-synchronizations.active", executor,
+          ThreadPoolExecutor::getActiveCount);
+      meterRegistry.more().counter("appnaut.transaction.async-synchronizations.caller-runs",
+          List.of(), callerRunsCount, LongAdder::doubleValue);
+    }
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    executor.shutdown();
+
+    try {
+      if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+        if (logger.isWarnEnabled()) {
+          logger.warn("Failed to invoke the pending asynchronous transaction synchronizations "
+              + "within 30 seconds of shutdown");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the number of transactions whose callbacks are waiting to be invoked.
+   *
+   * @return the number of transactions whose callbacks are waiting to be invoked
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Register the asynchronous synchronizations with the JTA transaction associated with the
+   * current thread.
+   *
+   * @param synchronizations the asynchronous synchronizations
+   */
+  public void register(List<? extends TransactionSynchronization> synchronizations) {
+    if (synchronizations.isEmpty()) {
+      return;
+    }
+
+    Batch batch = (Batch) transactionSynchronizationRegistry.getResource(batchResourceKey);
+
+    if (batch == null) {
+      batch = new Batch();
+
+      transactionSynchronizationRegistry.putResource(batchResourceKey, batch);
+      transactionSynchronizationRegistry.registerInterposedSynchronization(batch);
+    }
+
+    batch.synchronizations.addAll(synchronizations);
+  }
+
+  /**
+   * The <b>Batch</b> class holds the asynchronous synchronizations registered with a JTA
+   * transaction and dispatches their callbacks when the transaction completes.
+   */
+  private class Batch implements Synchronization {
+
+    private final List<TransactionSynchronization> synchronizations = new ArrayList<>();
+
+    @Override
+    public void afterCompletion(int status) {
+      executor.execute(() -> {
+        try {
+          switch (status) {
+            case Status.STATUS_COMMITTED:
+              try {
+                TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+              } finally {
+                TransactionSynchronizationUtils.invokeAfterCompletion(
+                    synchronizations, TransactionSynchronization.Status.COMMITTED);
+              }
+              break;
+            case Status.STATUS_ROLLEDBACK:
+              TransactionSynchronizationUtils.invokeAfterCompletion(
+                  synchronizations, TransactionSynchronization.Status.ROLLED_BACK);
+              break;
+            default:
+              TransactionSynchronizationUtils.invokeAfterCompletion(
+                  synchronizations, TransactionSynchronization.Status.UNKNOWN);
+          }
+        } catch (Throwable e) {
+          if (logger.isErrorEnabled()) {
+            logger.error("Failed to invoke the asynchronous transaction synchronizations", e);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+  }
+}
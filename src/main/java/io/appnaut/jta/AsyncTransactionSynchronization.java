@@ -0,0 +1,35 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta;
+
+import io.micronaut.transaction.support.TransactionSynchronization;
+
+/**
+ * The <b>AsyncTransactionSynchronization</b> interface marks a transaction synchronization whose
+ * <b>afterCommit</b> and <b>afterCompletion</b> callbacks may be invoked asynchronously, after the
+ * JTA transaction commits, instead of on the committing thread.
+ * <p/>
+ * The <b>beforeCommit</b> and <b>beforeCompletion</b> callbacks are always invoked on the
+ * committing thread. The asynchronous callbacks for a transaction are invoked in the order the
+ * synchronizations were registered. The callbacks are only invoked asynchronously when the
+ * <b>AsyncSynchronizationDispatcher</b> is enabled, otherwise they are invoked on the committing
+ * thread like any other transaction synchronization.
+ *
+ * @author Marcus Portmann
+ */
+public interface AsyncTransactionSynchronization extends TransactionSynchronization {
+
+}
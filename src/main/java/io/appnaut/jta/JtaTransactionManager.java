@@ -16,10 +16,16 @@
 
 package io.appnaut.jta;
 
+import io.appnaut.jta.jfr.TransactionEvent;
+import io.appnaut.jta.statistics.TransactionResourceUsageRecorder;
+import io.appnaut.jta.statistics.TransactionStatisticsCollector;
+import io.appnaut.jta.tracing.TransactionTracer;
 import io.appnaut.jta.util.TransactionUtil;
 import io.micronaut.context.annotation.EachBean;
+import io.micronaut.context.annotation.Parameter;
 import io.micronaut.context.annotation.Replaces;
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.annotation.TypeHint;
 import io.micronaut.transaction.TransactionDefinition;
 import io.micronaut.transaction.TransactionDefinition.Isolation;
@@ -36,10 +42,13 @@ import io.micronaut.transaction.support.AbstractSynchronousTransactionManager;
 import io.micronaut.transaction.support.DefaultTransactionStatus;
 import io.micronaut.transaction.support.SmartTransactionObject;
 import io.micronaut.transaction.support.TransactionSynchronization;
+import io.micronaut.transaction.support.TransactionSynchronizationManager;
 import io.micronaut.transaction.support.TransactionSynchronizationUtils;
 import java.sql.Connection;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import javax.sql.DataSource;
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
@@ -67,24 +76,126 @@ import javax.transaction.UserTransaction;
 public class JtaTransactionManager extends
     AbstractSynchronousTransactionManager<Connection> {
 
+  /**
+   * The dispatcher for the asynchronous transaction synchronizations or <b>null</b> if all
+   * transaction synchronizations are invoked on the committing thread.
+   */
+  private final AsyncSynchronizationDispatcher asyncSynchronizationDispatcher;
+
   private final DataSource dataSource;
 
+  /**
+   * The name of the data source.
+   */
+  private final String dataSourceName;
+
   private final TransactionManager transactionManager;
 
   private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 
+  /**
+   * The transaction statistics collector or <b>null</b> if transaction statistics are not
+   * collected.
+   */
+  private final TransactionStatisticsCollector transactionStatisticsCollector;
+
+  /**
+   * The transaction resource usage recorder or <b>null</b> if the resource usage for transactions
+   * is not recorded.
+   */
+  private final TransactionResourceUsageRecorder transactionResourceUsageRecorder;
+
+  /**
+   * The transaction tracer or <b>null</b> if transactions are not traced.
+   */
+  private final TransactionTracer transactionTracer;
+
   private final UserTransaction userTransaction;
 
   public JtaTransactionManager(TransactionManager transactionManager,
       TransactionSynchronizationRegistry transactionSynchronizationRegistry,
-      UserTransaction userTransaction, DataSource dataSource) {
+      UserTransaction userTransaction, @Parameter String dataSourceName, DataSource dataSource,
+      @Nullable AsyncSynchronizationDispatcher asyncSynchronizationDispatcher,
+      @Nullable TransactionStatisticsCollector transactionStatisticsCollector,
+      @Nullable TransactionTracer transactionTracer,
+      @Nullable TransactionResourceUsageRecorder transactionResourceUsageRecorder) {
     setNestedTransactionAllowed(true);
     setFailEarlyOnGlobalRollbackOnly(true);
 
     this.dataSource = DelegatingDataSource.unwrapDataSource(dataSource);
+    this.dataSourceName = dataSourceName;
     this.transactionManager = transactionManager;
     this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
     this.userTransaction = userTransaction;
+    this.asyncSynchronizationDispatcher = asyncSynchronizationDispatcher;
+    this.transactionStatisticsCollector = transactionStatisticsCollector;
+    this.transactionTracer = transactionTracer;
+    this.transactionResourceUsageRecorder = transactionResourceUsageRecorder;
+  }
+
+  /**
+   * Begin a new JTA transaction that is not associated with the current thread, e.g. for a
+   * reactive pipeline whose work is performed on different threads.
+   * <p/>
+   * The transaction is begun in the same way as a transaction begun using this transaction
+   * manager, so it is included in the transaction statistics, traces and events, and must be
+   * completed using {@link #commitDetachedTransaction(DetachedTransaction)} or
+   * {@link #rollbackDetachedTransaction(DetachedTransaction)}. Any JTA transaction associated with
+   * the current thread is suspended while the new transaction is begun and then resumed.
+   *
+   * @param definition the transaction definition
+   *
+   * @return the new JTA transaction
+   */
+  public DetachedTransaction beginDetachedTransaction(TransactionDefinition definition) {
+    Transaction outerTransaction;
+
+    try {
+      outerTransaction = transactionManager.suspend();
+    } catch (Throwable e) {
+      throw new TransactionSystemException("Failed to suspend the existing JTA transaction", e);
+    }
+
+    try {
+      JtaTransactionObject jtaTransactionObject = new JtaTransactionObject(userTransaction);
+
+      doBegin(jtaTransactionObject, definition);
+
+      // The transaction timeout is associated with the thread so reset it immediately
+      if (jtaTransactionObject.resetTransactionTimeout) {
+        jtaTransactionObject.resetTransactionTimeout = false;
+
+        userTransaction.setTransactionTimeout(0);
+      }
+
+      return new DetachedTransaction(jtaTransactionObject, definition.getName(),
+          transactionManager.suspend());
+    } catch (TransactionException e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new CannotCreateTransactionException("Failed to begin the JTA transaction", e);
+    } finally {
+      if (outerTransaction != null) {
+        try {
+          transactionManager.resume(outerTransaction);
+        } catch (Throwable e) {
+          if (logger.isWarnEnabled()) {
+            logger.warn("Failed to resume the existing JTA transaction", e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Commit a JTA transaction that was begun using
+   * {@link #beginDetachedTransaction(TransactionDefinition)}.
+   *
+   * @param detachedTransaction the JTA transaction
+   */
+  public void commitDetachedTransaction(DetachedTransaction detachedTransaction) {
+    completeDetachedTransaction(detachedTransaction, TransactionEvent.COMMIT,
+        this::commitJtaTransaction);
   }
 
   @Override
@@ -118,14 +229,52 @@ public class JtaTransactionManager extends
     return this.transactionManager;
   }
 
+  /**
+   * Roll back a JTA transaction that was begun using
+   * {@link #beginDetachedTransaction(TransactionDefinition)}.
+   *
+   * @param detachedTransaction the JTA transaction
+   */
+  public void rollbackDetachedTransaction(DetachedTransaction detachedTransaction) {
+    completeDetachedTransaction(detachedTransaction, TransactionEvent.ROLLBACK,
+        this::rollbackJtaTransaction);
+  }
+
   @Override
   protected void doBegin(Object transaction, TransactionDefinition definition)
       throws TransactionException {
-    if (definition.getIsolationLevel() != Isolation.DEFAULT) {
-      throw new CannotCreateTransactionException(
-          "The NarayanaTransactionManager does not support custom isolation levels");
+    if (transactionResourceUsageRecorder != null) {
+      ((JtaTransactionObject) transaction).resourceUsageSample =
+          transactionResourceUsageRecorder.begin(dataSourceName, definition.getName());
+    }
+
+    TransactionEvent event = new TransactionEvent(dataSourceName, TransactionEvent.BEGIN);
+    event.setTransactionName(definition.getName());
+    event.begin();
+
+    try {
+      beginJtaTransaction(transaction, definition);
+    } catch (RuntimeException e) {
+      // The transaction will not be cleaned up after completion, so record the sample here
+      JtaTransactionObject jtaTransactionObject = (JtaTransactionObject) transaction;
+
+      if (jtaTransactionObject.resourceUsageSample != null) {
+        transactionResourceUsageRecorder.complete(jtaTransactionObject.resourceUsageSample);
+        jtaTransactionObject.resourceUsageSample = null;
+      }
+
+      event.complete(e);
+      throw e;
+    }
+
+    if (event.isEnabled()) {
+      event.setTransaction(TransactionUtil.getTransaction(transactionManager));
     }
 
+    event.complete(null);
+  }
+
+  private void beginJtaTransaction(Object transaction, TransactionDefinition definition) {
     JtaTransactionObject jtaTransactionObject = (JtaTransactionObject) transaction;
     try {
       Duration timeout = determineTimeout(definition);
@@ -139,6 +288,20 @@ public class JtaTransactionManager extends
       }
 
       jtaTransactionObject.getUserTransaction().begin();
+
+      // The isolation level is applied to each connection as it is enlisted in the transaction
+      if (definition.getIsolationLevel() != Isolation.DEFAULT) {
+        TransactionUtil.setIsolationLevel(transactionSynchronizationRegistry,
+            definition.getIsolationLevel().getCode());
+      }
+
+      if (transactionStatisticsCollector != null) {
+        transactionStatisticsCollector.begin(definition.getName());
+      }
+
+      if (transactionTracer != null) {
+        transactionTracer.begin(dataSourceName, definition.getName());
+      }
     } catch (NotSupportedException | UnsupportedOperationException e) {
       // TODO: CHECK THIS, JTA DOES SUPPORT NESTED TRANSACTIONS??? -- MARCUS
       throw new NestedTransactionNotSupportedException(
@@ -158,12 +321,49 @@ public class JtaTransactionManager extends
         logger.debug("Failed to reset transaction timeout after completing the JTA transaction", e);
       }
     }
+
+    if (jtaTransactionObject.resourceUsageSample != null) {
+      transactionResourceUsageRecorder.complete(jtaTransactionObject.resourceUsageSample);
+    }
   }
 
   @Override
-  protected void doCommit(DefaultTransactionStatus status) throws TransactionException {
-    JtaTransactionObject jtaTransactionObject = (JtaTransactionObject) status
-        .getTransaction();
+  protected void doCommit(DefaultTransactionStatus<Connection> status)
+      throws TransactionException {
+    TransactionEvent event = newTransactionEvent(TransactionEvent.COMMIT);
+
+    try {
+      commitJtaTransaction(status);
+    } catch (RuntimeException e) {
+      event.complete(e);
+      throw e;
+    }
+
+    event.complete(null);
+  }
+
+  private void commitJtaTransaction(DefaultTransactionStatus<Connection> status) {
+    if ((asyncSynchronizationDispatcher != null) && status.isNewSynchronization()
+        && TransactionSynchronizationManager.isSynchronizationActive()) {
+      // Hand the asynchronous synchronizations over to the JTA transaction before it commits
+      List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager
+          .getSynchronizations();
+
+      List<TransactionSynchronization> remainingSynchronizations =
+          registerAsyncSynchronizations(synchronizations);
+
+      if (remainingSynchronizations.size() != synchronizations.size()) {
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+
+        remainingSynchronizations.forEach(TransactionSynchronizationManager::registerSynchronization);
+      }
+    }
+
+    commitJtaTransaction((JtaTransactionObject) status.getTransaction());
+  }
+
+  private void commitJtaTransaction(JtaTransactionObject jtaTransactionObject) {
     try {
       int jtaStatus = jtaTransactionObject.getUserTransaction().getStatus();
 
@@ -208,6 +408,51 @@ public class JtaTransactionManager extends
     }
   }
 
+  /**
+   * Complete a JTA transaction that was begun using
+   * {@link #beginDetachedTransaction(TransactionDefinition)} on the current thread.
+   *
+   * @param detachedTransaction the JTA transaction
+   * @param operation           the operation for the Java Flight Recorder event
+   * @param completion          the completion for the JTA transaction
+   */
+  private void completeDetachedTransaction(DetachedTransaction detachedTransaction,
+      String operation, Consumer<JtaTransactionObject> completion) {
+    TransactionEvent event = new TransactionEvent(dataSourceName, operation);
+
+    if (event.isEnabled()) {
+      event.setTransactionName(detachedTransaction.name);
+      event.setTransaction(detachedTransaction.transaction);
+    }
+
+    event.begin();
+
+    try {
+      if (detachedTransaction.transaction
+          .equals(TransactionUtil.getTransaction(transactionManager))) {
+        completion.accept(detachedTransaction.jtaTransactionObject);
+      } else {
+        TransactionUtil.callInTransaction(transactionManager, detachedTransaction.transaction,
+            () -> {
+              completion.accept(detachedTransaction.jtaTransactionObject);
+              return null;
+            });
+      }
+    } catch (RuntimeException e) {
+      event.complete(e);
+      throw e;
+    } catch (Exception e) {
+      TransactionSystemException transactionSystemException = new TransactionSystemException(
+          "Failed to complete the JTA transaction", e);
+      event.complete(transactionSystemException);
+      throw transactionSystemException;
+    } finally {
+      doCleanupAfterCompletion(detachedTransaction.jtaTransactionObject);
+    }
+
+    event.complete(null);
+  }
+
   @Override
   protected Object doGetTransaction() throws TransactionException {
     return new JtaTransactionObject(userTransaction);
@@ -229,9 +474,25 @@ public class JtaTransactionManager extends
   }
 
   @Override
-  protected void doRollback(DefaultTransactionStatus status) throws TransactionException {
-    JtaTransactionObject jtaTransactionObject = (JtaTransactionObject) status
-        .getTransaction();
+  protected void doRollback(DefaultTransactionStatus<Connection> status)
+      throws TransactionException {
+    TransactionEvent event = newTransactionEvent(TransactionEvent.ROLLBACK);
+
+    try {
+      rollbackJtaTransaction(status);
+    } catch (RuntimeException e) {
+      event.complete(e);
+      throw e;
+    }
+
+    event.complete(null);
+  }
+
+  private void rollbackJtaTransaction(DefaultTransactionStatus<Connection> status) {
+    rollbackJtaTransaction((JtaTransactionObject) status.getTransaction());
+  }
+
+  private void rollbackJtaTransaction(JtaTransactionObject jtaTransactionObject) {
     try {
       int jtaStatus = jtaTransactionObject.getUserTransaction().getStatus();
 
@@ -252,7 +513,7 @@ public class JtaTransactionManager extends
   }
 
   @Override
-  protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+  protected void doSetRollbackOnly(DefaultTransactionStatus<Connection> status) {
     JtaTransactionObject jtaTransactionObject = (JtaTransactionObject) status
         .getTransaction();
     if (status.isDebug()) {
@@ -322,6 +583,10 @@ public class JtaTransactionManager extends
         throw new RollbackException("JTA transaction already rolled back");
       }
 
+      if (asyncSynchronizationDispatcher != null) {
+        synchronizations = registerAsyncSynchronizations(synchronizations);
+      }
+
       this.transactionSynchronizationRegistry.registerInterposedSynchronization(
           new AfterCompletionSynchronization(synchronizations));
     } catch (SystemException e) {
@@ -360,6 +625,53 @@ public class JtaTransactionManager extends
     }
   }
 
+  /**
+   * Returns a new Java Flight Recorder event, which has been started, for the completion of the
+   * JTA transaction associated with the current thread.
+   *
+   * @param operation the operation
+   *
+   * @return the Java Flight Recorder event
+   */
+  private TransactionEvent newTransactionEvent(String operation) {
+    TransactionEvent event = new TransactionEvent(dataSourceName, operation);
+
+    if (event.isEnabled()) {
+      event.setTransactionName(TransactionSynchronizationManager.getCurrentTransactionName());
+      event.setTransaction(TransactionUtil.getTransaction(transactionManager));
+    }
+
+    event.begin();
+
+    return event;
+  }
+
+  /**
+   * Register the asynchronous synchronizations with the dispatcher for the asynchronous
+   * synchronizations.
+   *
+   * @param synchronizations the transaction synchronizations
+   *
+   * @return the transaction synchronizations that are not asynchronous
+   */
+  private List<TransactionSynchronization> registerAsyncSynchronizations(
+      List<TransactionSynchronization> synchronizations) {
+    List<TransactionSynchronization> asyncSynchronizations = new ArrayList<>();
+    List<TransactionSynchronization> remainingSynchronizations = new ArrayList<>();
+
+    for (TransactionSynchronization synchronization : synchronizations) {
+      if (synchronization instanceof AsyncTransactionSynchronization) {
+        asyncSynchronizations.add(synchronization);
+      } else {
+        remainingSynchronizations.add(synchronization);
+      }
+    }
+
+    asyncSynchronizationDispatcher.register(asyncSynchronizations);
+
+    return remainingSynchronizations;
+  }
+
   /**
    * Returns true to indicate that a JTA commit will properly handle transactions that have been
    * marked rollback-only at a global level.
@@ -432,6 +744,40 @@ public class JtaTransactionManager extends
     }
   }
 
+  /**
+   * The <b>DetachedTransaction</b> class holds a JTA transaction that was begun using
+   * {@link #beginDetachedTransaction(TransactionDefinition)} and is not associated with a thread.
+   *
+   * @author Marcus Portmann
+   */
+  public static final class DetachedTransaction {
+
+    private final JtaTransactionObject jtaTransactionObject;
+
+    /**
+     * The name of the transaction.
+     */
+    private final String name;
+
+    private final Transaction transaction;
+
+    private DetachedTransaction(JtaTransactionObject jtaTransactionObject, String name,
+        Transaction transaction) {
+      this.jtaTransactionObject = jtaTransactionObject;
+      this.name = name;
+      this.transaction = transaction;
+    }
+
+    /**
+     * Returns the JTA transaction.
+     *
+     * @return the JTA transaction
+     */
+    public Transaction getTransaction() {
+      return transaction;
+    }
+  }
+
   /**
    * The <b>JtaTransactionObject</b> class provides a SmartTransactionObject implementation that
    * wraps a JTA UserTransaction. It is used as a transaction object by the JtaTransactionManager.
@@ -444,6 +790,12 @@ public class JtaTransactionManager extends
 
     boolean resetTransactionTimeout = false;
 
+    /**
+     * The resource usage sample for the transaction or <b>null</b> if the resource usage for the
+     * transaction is not recorded.
+     */
+    TransactionResourceUsageRecorder.Sample resourceUsageSample;
+
     /**
      * Constructs a new <b>JtaTransactionObject</b>.
      *
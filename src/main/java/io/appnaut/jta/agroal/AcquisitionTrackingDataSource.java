@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.jfr.ConnectionPoolEventListener;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The <b>AcquisitionTrackingDataSource</b> class implements an Agroal data source that counts the
+ * failed attempts to acquire a connection for a data source, e.g. because of an acquisition
+ * timeout, which are not included in the metrics for the connection pool, and reports them to the
+ * listener that emits the connection pool JFR events, which the connection pool does not notify.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class AcquisitionTrackingDataSource extends DelegatingAgroalDataSource {
+
+  private static final long serialVersionUID = 1000000;
+
+  /**
+   * The number of failed attempts to acquire a connection.
+   */
+  private final transient LongAdder acquisitionFailureCount = new LongAdder();
+
+  /**
+   * The listener that emits the connection pool JFR events for the data source.
+   */
+  private final transient ConnectionPoolEventListener connectionPoolEventListener;
+
+  /**
+   * The Agroal data source that is delegated to.
+   */
+  private final AgroalDataSource delegate;
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  /**
+   * The cause of the last failed attempt to acquire a connection.
+   */
+  private transient volatile SQLException lastAcquisitionFailure;
+
+  /**
+   * Constructs a new <b>AcquisitionTrackingDataSource</b>.
+   *
+   * @param name                        the name of the data source
+   * @param delegate                    the Agroal data source that is delegated to
+   * @param connectionPoolEventListener the listener that emits the connection pool JFR events for
+   *                                    the data source
+   */
+  public AcquisitionTrackingDataSource(String name, AgroalDataSource delegate,
+      ConnectionPoolEventListener connectionPoolEventListener) {
+    this.name = name;
+    this.delegate = delegate;
+    this.connectionPoolEventListener = connectionPoolEventListener;
+  }
+
+  /**
+   * Returns the number of failed attempts to acquire a connection.
+   *
+   * @return the number of failed attempts to acquire a connection
+   */
+  public long getAcquisitionFailureCount() {
+    return acquisitionFailureCount.sum();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    try {
+      return delegate.getConnection();
+    } catch (SQLException e) {
+      recordAcquisitionFailure(e);
+
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    try {
+      return delegate.getConnection(username, password);
+    } catch (SQLException e) {
+      recordAcquisitionFailure(e);
+
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the cause of the last failed attempt to acquire a connection.
+   *
+   * @return the cause of the last failed attempt to acquire a connection or <b>null</b> if no
+   * attempt has failed
+   */
+  public SQLException getLastAcquisitionFailure() {
+    return lastAcquisitionFailure;
+  }
+
+  @Override
+  public String toString() {
+    return "AcquisitionTrackingDataSource {name=\"" + name + "\", acquisitionFailureCount=\""
+        + getAcquisitionFailureCount() + "\"}";
+  }
+
+  @Override
+  protected AgroalDataSource getDelegate() {
+    return delegate;
+  }
+
+  private void recordAcquisitionFailure(SQLException cause) {
+    connectionPoolEventListener.onConnectionAcquireFailure();
+
+    acquisitionFailureCount.increment();
+
+    lastAcquisitionFailure = cause;
+  }
+}
@@ -21,7 +21,12 @@ import io.micronaut.context.annotation.EachProperty;
 import io.micronaut.context.annotation.Parameter;
 import io.micronaut.jdbc.BasicJdbcConfiguration;
 import io.micronaut.jdbc.CalculatedSettings;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 
 /**
@@ -43,10 +48,34 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
 
   private final Properties properties = new Properties();
 
+  private boolean circuitBreakerEnabled;
+
+  private int circuitBreakerFailureThreshold = 5;
+
+  private Duration circuitBreakerProbeInterval = Duration.ofSeconds(5);
+
+  private Map<String, String> jdbcProperties = new LinkedHashMap<>();
+
+  private boolean lazy;
+
+  private LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+
   private int maxPoolSize = 5;
 
+  private boolean metricsEnabled = true;
+
   private int minPoolSize = 1;
 
+  private boolean performanceProfileEnabled = true;
+
+  private PoolImplementation poolImplementation = PoolImplementation.AGROAL;
+
+  private Duration readYourWritesWindow = Duration.ZERO;
+
+  private List<String> replicas = new ArrayList<>();
+
+  private boolean resourceManagerJoiningEnabled;
+
   /**
    * Constructs a new <b>AgroalDataSourceConfiguration</b>.
    *
@@ -56,6 +85,34 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
     super();
     this.calculatedSettings = new CalculatedSettings(this);
     this.name = name;
+
+    properties.setProperty(AgroalPropertiesReader.METRICS_ENABLED, Boolean.toString(true));
+
+    // Agroal requires the pool sizes, so apply the defaults when they are not configured
+    properties.setProperty(AgroalPropertiesReader.MAX_SIZE, Integer.toString(maxPoolSize));
+    properties.setProperty(AgroalPropertiesReader.MIN_SIZE, Integer.toString(minPoolSize));
+  }
+
+  /**
+   * Returns the number of consecutive connection creation or validation failures after which
+   * the circuit breaker for the data source opens.
+   *
+   * @return the number of consecutive connection creation or validation failures after which
+   * the circuit breaker for the data source opens
+   */
+  public int getCircuitBreakerFailureThreshold() {
+    return circuitBreakerFailureThreshold;
+  }
+
+  /**
+   * Returns the interval at which the database is probed while the circuit breaker for the data
+   * source is open.
+   *
+   * @return the interval at which the database is probed while the circuit breaker for the data
+   * source is open
+   */
+  public Duration getCircuitBreakerProbeInterval() {
+    return circuitBreakerProbeInterval;
   }
 
   @Override
@@ -88,6 +145,69 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
     return calculatedSettings.getDriverClassName();
   }
 
+  /**
+   * Returns the effective JDBC properties for the data source, which are the JDBC properties for
+   * the performance profile for the driver overridden by the JDBC properties configured for the
+   * data source.
+   *
+   * @param applicationName the name of the application used to identify the application to the
+   *                        database or <b>null</b> if the application should not be identified
+   *
+   * @return the effective JDBC properties for the data source
+   */
+  public Map<String, String> getEffectiveJdbcProperties(String applicationName) {
+    Map<String, String> effectiveJdbcProperties = new LinkedHashMap<>();
+
+    Optional<DriverPerformanceProfile> performanceProfileOptional = getPerformanceProfile();
+
+    if (performanceProfileOptional.isPresent()) {
+      DriverPerformanceProfile performanceProfile = performanceProfileOptional.get();
+
+      effectiveJdbcProperties.putAll(performanceProfile.getJdbcProperties());
+
+      if ((applicationName != null) && (!applicationName.isBlank())) {
+        performanceProfile.getApplicationNameProperty().ifPresent(
+            applicationNameProperty -> effectiveJdbcProperties
+                .put(applicationNameProperty, applicationName));
+      }
+    }
+
+    effectiveJdbcProperties.putAll(jdbcProperties);
+
+    return effectiveJdbcProperties;
+  }
+
+  /**
+   * Returns the effective JDBC URL for the data source, which is the configured JDBC URL with the
+   * URL settings for the performance profile for the driver applied.
+   *
+   * @return the effective JDBC URL for the data source
+   */
+  public String getEffectiveUrl() {
+    String url = getConfiguredUrl();
+
+    return getPerformanceProfile().map(profile -> profile.applyUrlSettings(url)).orElse(url);
+  }
+
+  /**
+   * Returns the JDBC properties configured for the data source, which override the JDBC
+   * properties for the performance profile for the driver.
+   *
+   * @return the JDBC properties configured for the data source
+   */
+  public Map<String, String> getJdbcProperties() {
+    return jdbcProperties;
+  }
+
+  /**
+   * Returns the strategy used to select the replica data source for read-only work.
+   *
+   * @return the strategy used to select the replica data source for read-only work
+   */
+  public LoadBalancing getLoadBalancing() {
+    return loadBalancing;
+  }
+
   /**
    * Returns the maximum size of the connection pool.
    *
@@ -116,6 +236,48 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
     return calculatedSettings.getPassword();
   }
 
+  /**
+   * Returns the performance profile for the driver for the data source.
+   *
+   * @return an Optional containing the performance profile for the driver for the data source or
+   * an empty Optional if there is no performance profile for the driver or performance profiles
+   * are disabled
+   */
+  public Optional<DriverPerformanceProfile> getPerformanceProfile() {
+    return performanceProfileEnabled
+        ? DriverPerformanceProfile.forDriverClassName(getConfiguredDriverClassName())
+        : Optional.empty();
+  }
+
+  /**
+   * Returns the connection pool implementation used for the data source.
+   *
+   * @return the connection pool implementation used for the data source
+   */
+  public PoolImplementation getPoolImplementation() {
+    return poolImplementation;
+  }
+
+  /**
+   * Returns the period after a transaction commits on the primary data source during which
+   * read-only work for the same client is also sent to the primary data source.
+   *
+   * @return the period after a transaction commits on the primary data source during which
+   * read-only work for the same client is also sent to the primary data source
+   */
+  public Duration getReadYourWritesWindow() {
+    return readYourWritesWindow;
+  }
+
+  /**
+   * Returns the names of the replica data sources that read-only work is sent to.
+   *
+   * @return the names of the replica data sources that read-only work is sent to
+   */
+  public List<String> getReplicas() {
+    return replicas;
+  }
+
   /**
    * Returns the properties used to configure the Agroal data source.
    * <p/>
@@ -137,11 +299,100 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
     return calculatedSettings.getUsername();
   }
 
+  /**
+   * Returns whether connection requests fail immediately, instead of waiting for the acquisition
+   * timeout, after repeated connection creation or validation failures for the data source.
+   *
+   * @return true if the circuit breaker is enabled for the data source or false otherwise
+   */
+  public boolean isCircuitBreakerEnabled() {
+    return circuitBreakerEnabled;
+  }
+
+  /**
+   * Returns whether the connection pool is created when the first connection is requested instead
+   * of when the data source is created.
+   *
+   * @return true if the connection pool is created when the first connection is requested or
+   * false otherwise
+   */
+  public boolean isLazy() {
+    return lazy;
+  }
+
+  /**
+   * Returns whether a JTA transaction shares a single connection, and transaction branch, across
+   * this data source and the other data sources with the same effective JDBC URL, username, JDBC
+   * properties and initial SQL, i.e. the same resource manager. Resource manager joining is
+   * disabled by default.
+   *
+   * @return true if resource manager joining is enabled for the data source or false otherwise
+   */
+  public boolean isResourceManagerJoiningEnabled() {
+    return resourceManagerJoiningEnabled;
+  }
+
+  /**
+   * Returns whether the performance profile for the driver is applied to the data source.
+   *
+   * @return true if the performance profile for the driver is applied to the data source or false
+   * otherwise
+   */
+  public boolean isPerformanceProfileEnabled() {
+    return performanceProfileEnabled;
+  }
+
+  /**
+   * Returns whether metrics are collected for the connection pool.
+   * <p/>
+   * Metrics are enabled by default, since the health indicator for the data source and the
+   * least-active load balancing across replicas rely on them.
+   *
+   * @return true if metrics are collected for the connection pool or false otherwise
+   */
+  public boolean isMetricsEnabled() {
+    return metricsEnabled;
+  }
+
   @Override
   public String getValidationQuery() {
     return properties.getProperty(AgroalPropertiesReader.INITIAL_SQL);
   }
 
+  /**
+   * Set whether connection requests fail immediately, instead of waiting for the acquisition
+   * timeout, after repeated connection creation or validation failures for the data source.
+   *
+   * @param circuitBreakerEnabled true if the circuit breaker is enabled for the data source or
+   *                              false otherwise
+   */
+  public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+    this.circuitBreakerEnabled = circuitBreakerEnabled;
+  }
+
+  /**
+   * Set the number of consecutive connection creation or validation failures after which the
+   * circuit breaker for the data source opens.
+   *
+   * @param circuitBreakerFailureThreshold the number of consecutive connection creation or
+   *                                       validation failures after which the circuit breaker for
+   *                                       the data source opens
+   */
+  public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+    this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+  }
+
+  /**
+   * Set the interval at which the database is probed while the circuit breaker for the data source
+   * is open.
+   *
+   * @param circuitBreakerProbeInterval the interval at which the database is probed while the
+   *                                    circuit breaker for the data source is open
+   */
+  public void setCircuitBreakerProbeInterval(Duration circuitBreakerProbeInterval) {
+    this.circuitBreakerProbeInterval = circuitBreakerProbeInterval;
+  }
+
   @Override
   public void setDataSourceProperties(Map<String, ?> dsProperties) {
     if (dsProperties != null) {
@@ -158,6 +409,45 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
     properties.setProperty(AgroalPropertiesReader.PROVIDER_CLASS_NAME, driverClassName);
   }
 
+  /**
+   * Set the JDBC properties configured for the data source, which override the JDBC properties for
+   * the performance profile for the driver. Kebab-case property names, e.g.
+   * re-write-batched-inserts, are converted to the camel-case names used by the drivers.
+   *
+   * @param jdbcProperties the JDBC properties configured for the data source
+   */
+  public void setJdbcProperties(Map<String, String> jdbcProperties) {
+    this.jdbcProperties = new LinkedHashMap<>();
+
+    if (jdbcProperties != null) {
+      jdbcProperties.forEach((name, value) -> {
+        if (value != null) {
+          this.jdbcProperties.put(toCamelCase(name), value);
+        }
+      });
+    }
+  }
+
+  /**
+   * Set whether the connection pool is created when the first connection is requested instead of
+   * when the data source is created.
+   *
+   * @param lazy true if the connection pool is created when the first connection is requested or
+   *             false otherwise
+   */
+  public void setLazy(boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  /**
+   * Set the strategy used to select the replica data source for read-only work.
+   *
+   * @param loadBalancing the strategy used to select the replica data source for read-only work
+   */
+  public void setLoadBalancing(LoadBalancing loadBalancing) {
+    this.loadBalancing = loadBalancing;
+  }
+
   /**
    * Set the maximum size of the connection pool.
    *
@@ -170,6 +460,19 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
         AgroalPropertiesReader.MAX_SIZE, Integer.toString(maxPoolSize));
   }
 
+  /**
+   * Set whether metrics are collected for the connection pool.
+   *
+   * @param metricsEnabled true if metrics are collected for the connection pool or false
+   *                       otherwise
+   */
+  public void setMetricsEnabled(boolean metricsEnabled) {
+    this.metricsEnabled = metricsEnabled;
+
+    properties.setProperty(
+        AgroalPropertiesReader.METRICS_ENABLED, Boolean.toString(metricsEnabled));
+  }
+
   /**
    * Set the minimum size of the connection pool.
    *
@@ -187,6 +490,58 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
     properties.setProperty(AgroalPropertiesReader.CREDENTIAL, password);
   }
 
+  /**
+   * Set whether the performance profile for the driver is applied to the data source.
+   *
+   * @param performanceProfileEnabled true if the performance profile for the driver is applied to
+   *                                  the data source or false otherwise
+   */
+  public void setPerformanceProfileEnabled(boolean performanceProfileEnabled) {
+    this.performanceProfileEnabled = performanceProfileEnabled;
+  }
+
+  /**
+   * Set the connection pool implementation used for the data source.
+   *
+   * @param poolImplementation the connection pool implementation used for the data source
+   */
+  public void setPoolImplementation(PoolImplementation poolImplementation) {
+    this.poolImplementation = poolImplementation;
+  }
+
+  /**
+   * Set the period after a transaction commits on the primary data source during which read-only
+   * work for the same client is also sent to the primary data source.
+   *
+   * @param readYourWritesWindow the period after a transaction commits on the primary data source
+   *                             during which read-only work for the same client is also sent to
+   *                             the primary data source
+   */
+  public void setReadYourWritesWindow(Duration readYourWritesWindow) {
+    this.readYourWritesWindow = readYourWritesWindow;
+  }
+
+  /**
+   * Set the names of the replica data sources that read-only work is sent to.
+   *
+   * @param replicas the names of the replica data sources that read-only work is sent to
+   */
+  public void setReplicas(List<String> replicas) {
+    this.replicas = replicas;
+  }
+
+  /**
+   * Set whether a JTA transaction shares a single connection, and transaction branch, across this
+   * data source and the other data sources with the same effective JDBC URL, username, JDBC
+   * properties and initial SQL, i.e. the same resource manager.
+   *
+   * @param resourceManagerJoiningEnabled true if resource manager joining is enabled for the data
+   *                                      source or false otherwise
+   */
+  public void setResourceManagerJoiningEnabled(boolean resourceManagerJoiningEnabled) {
+    this.resourceManagerJoiningEnabled = resourceManagerJoiningEnabled;
+  }
+
   @Override
   public void setUrl(String url) {
     properties.setProperty(AgroalPropertiesReader.JDBC_URL, url);
@@ -196,6 +551,65 @@ public class AgroalDataSourceConfiguration implements BasicJdbcConfiguration {
   public void setUsername(String username) {
     properties.setProperty(AgroalPropertiesReader.PRINCIPAL, username);
   }
+
+  private static String toCamelCase(String name) {
+    if (name.indexOf('-') == -1) {
+      return name;
+    }
+
+    StringBuilder buffer = new StringBuilder(name.length());
+
+    boolean upperCaseNext = false;
+
+    for (char ch : name.toCharArray()) {
+      if (ch == '-') {
+        upperCaseNext = true;
+      } else if (upperCaseNext) {
+        buffer.append(Character.toUpperCase(ch));
+        upperCaseNext = false;
+      } else {
+        buffer.append(ch);
+      }
+    }
+
+    return buffer.toString();
+  }
+
+  /**
+   * The <b>LoadBalancing</b> enumeration defines the strategies used to select the replica data
+   * source for read-only work.
+   *
+   * @author Marcus Portmann
+   */
+  public enum LoadBalancing {
+    /**
+     * Select the replica data sources in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Select the replica data source with the fewest active connections.
+     */
+    LEAST_ACTIVE
+  }
+
+  /**
+   * The <b>PoolImplementation</b> enumeration defines the connection pool implementations that can
+   * be used for a data source.
+   *
+   * @author Marcus Portmann
+   */
+  public enum PoolImplementation {
+    /**
+     * The Agroal connection pool.
+     */
+    AGROAL,
+
+    /**
+     * The lock-free Appnaut connection pool.
+     */
+    APPNAUT
+  }
 }
 
 
@@ -18,16 +18,32 @@ package io.appnaut.jta.agroal;
 
 import com.arjuna.ats.arjuna.recovery.RecoveryManager;
 import io.agroal.api.AgroalDataSource;
+import io.agroal.api.AgroalDataSourceListener;
+import io.agroal.api.configuration.supplier.AgroalConnectionFactoryConfigurationSupplier;
 import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
 import io.agroal.api.configuration.supplier.AgroalPropertiesReader;
+import io.appnaut.jta.agroal.AgroalDataSourceConfiguration.LoadBalancing;
+import io.appnaut.jta.agroal.AgroalDataSourceConfiguration.PoolImplementation;
+import io.appnaut.jta.jfr.ConnectionPoolEventListener;
+import io.appnaut.jta.pool.PooledDataSource;
+import io.appnaut.jta.statistics.TransactionStatisticsCollector;
+import io.appnaut.jta.statistics.TransactionStatisticsDataSource;
 import io.micronaut.context.BeanContext;
 import io.micronaut.context.annotation.EachBean;
 import io.micronaut.context.annotation.Factory;
 import io.micronaut.context.annotation.Requires;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import io.micronaut.runtime.ApplicationConfiguration;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.PreDestroy;
 import javax.transaction.TransactionManager;
 import javax.transaction.TransactionSynchronizationRegistry;
@@ -50,6 +66,11 @@ public class AgroalDataSourceFactory implements AutoCloseable {
 
   private final List<AgroalDataSource> dataSources = new ArrayList<>();
 
+  /**
+   * The names of the first data source created for each resource manager.
+   */
+  private final Map<String, String> resourceManagerDataSourceNames = new ConcurrentHashMap<>();
+
   /**
    * Constructs a new <b>AgroalDataSourceFactory</b>.
    *
@@ -61,6 +82,9 @@ public class AgroalDataSourceFactory implements AutoCloseable {
 
   /**
    * Create an Agroal data source for each data source configuration.
+   * <p/>
+   * If the data source is configured to be lazy, the connection pool and its JTA transaction
+   * integration are only created when the first connection is requested.
    *
    * @param agroalDataSourceConfiguration the data source configuration
    *
@@ -70,45 +94,17 @@ public class AgroalDataSourceFactory implements AutoCloseable {
   public AgroalDataSource agroalDataSource(
       AgroalDataSourceConfiguration agroalDataSourceConfiguration)
       throws SQLException {
-    AgroalPropertiesReader agroalPropertiesReader =
-        new AgroalPropertiesReader().readProperties(agroalDataSourceConfiguration.getProperties());
-
-    AgroalDataSourceConfigurationSupplier agroalDataSourceConfigurationSupplier =
-        agroalPropertiesReader.modify();
-
-    Optional<TransactionManager> transactionManagerOptional = beanContext
-        .findBean(TransactionManager.class);
-
-    Optional<TransactionSynchronizationRegistry> transactionSynchronizationRegistryOptional = beanContext
-        .findBean(TransactionSynchronizationRegistry.class);
-
-    if (transactionManagerOptional.isPresent() && transactionSynchronizationRegistryOptional
-        .isPresent()) {
-      Optional<RecoveryManager> recoveryManagerOptional = beanContext
-          .findBean(RecoveryManager.class);
-
-      NarayanaTransactionIntegration narayanaTransactionIntegration;
-
-      if (recoveryManagerOptional.isPresent()) {
-        narayanaTransactionIntegration =
-            new NarayanaTransactionIntegration(
-                agroalDataSourceConfiguration.getName(),
-                transactionManagerOptional.get(), transactionSynchronizationRegistryOptional.get(),
-                recoveryManagerOptional.get());
-      } else {
-        narayanaTransactionIntegration =
-            new NarayanaTransactionIntegration(
-                agroalDataSourceConfiguration.getName(),
-                transactionManagerOptional.get(), transactionSynchronizationRegistryOptional.get());
-      }
+    AgroalDataSource dataSource;
 
-      agroalDataSourceConfigurationSupplier
-          .connectionPoolConfiguration()
-          .transactionIntegration(narayanaTransactionIntegration);
+    if (agroalDataSourceConfiguration.isLazy()) {
+      dataSource = new LazyAgroalDataSource(agroalDataSourceConfiguration.getName(),
+          new AgroalPropertiesReader()
+              .readProperties(agroalDataSourceConfiguration.getProperties()).get(),
+          () -> createDataSource(agroalDataSourceConfiguration));
+    } else {
+      dataSource = createDataSource(agroalDataSourceConfiguration);
     }
 
-    AgroalDataSource dataSource = AgroalDataSource.from(agroalDataSourceConfigurationSupplier);
-
     dataSources.add(dataSource);
 
     return dataSource;
@@ -143,4 +139,227 @@ public class AgroalDataSourceFactory implements AutoCloseable {
   public AgroalDataSourcePoolMetadata dataSourcePoolMetadata(AgroalDataSource agroalDataSource) {
     return new AgroalDataSourcePoolMetadata(agroalDataSource);
   }
+
+  private void applyPerformanceProfile(AgroalDataSourceConfiguration agroalDataSourceConfiguration,
+      AgroalDataSourceConfigurationSupplier agroalDataSourceConfigurationSupplier) {
+    Map<String, String> effectiveJdbcProperties = agroalDataSourceConfiguration
+        .getEffectiveJdbcProperties(getApplicationName());
+
+    AgroalConnectionFactoryConfigurationSupplier connectionFactoryConfigurationSupplier =
+        agroalDataSourceConfigurationSupplier.connectionPoolConfiguration()
+            .connectionFactoryConfiguration();
+
+    String effectiveUrl = agroalDataSourceConfiguration.getEffectiveUrl();
+
+    if (effectiveUrl != null) {
+      connectionFactoryConfigurationSupplier.jdbcUrl(effectiveUrl);
+    }
+
+    effectiveJdbcProperties.forEach(connectionFactoryConfigurationSupplier::jdbcProperty);
+
+    if (logger.isInfoEnabled()) {
+      StringBuilder buffer = new StringBuilder();
+
+      buffer.append("The data source (").append(agroalDataSourceConfiguration.getName())
+          .append(") uses the ")
+          .append(agroalDataSourceConfiguration.getPerformanceProfile()
+              .map(DriverPerformanceProfile::getName).orElse("default"))
+          .append(" performance profile with the effective settings:");
+
+      agroalDataSourceConfiguration.getPerformanceProfile().ifPresent(
+          performanceProfile -> performanceProfile.getUrlSettings().keySet().forEach(
+              urlSetting -> buffer.append(' ').append(urlSetting).append("=").append(
+                  extractUrlSetting(effectiveUrl, urlSetting)).append(" (url)")));
+
+      effectiveJdbcProperties.forEach((name, value) -> buffer.append(' ').append(name).append('=')
+          .append(value).append(agroalDataSourceConfiguration.getJdbcProperties()
+              .containsKey(name) ? " (configured)" : " (profile)"));
+
+      logger.info(buffer.toString());
+    }
+  }
+
+  private AgroalDataSource createDataSource(
+      AgroalDataSourceConfiguration agroalDataSourceConfiguration)
+      throws SQLException {
+    AgroalPropertiesReader agroalPropertiesReader =
+        new AgroalPropertiesReader().readProperties(agroalDataSourceConfiguration.getProperties());
+
+    AgroalDataSourceConfigurationSupplier agroalDataSourceConfigurationSupplier =
+        agroalPropertiesReader.modify();
+
+    applyPerformanceProfile(agroalDataSourceConfiguration, agroalDataSourceConfigurationSupplier);
+
+    List<AgroalDataSourceListener> listeners = new ArrayList<>();
+
+    ConnectionPoolEventListener connectionPoolEventListener =
+        new ConnectionPoolEventListener(agroalDataSourceConfiguration.getName());
+
+    listeners.add(connectionPoolEventListener);
+
+    Optional<TransactionManager> transactionManagerOptional = beanContext
+        .findBean(TransactionManager.class);
+
+    Optional<TransactionSynchronizationRegistry> transactionSynchronizationRegistryOptional = beanContext
+        .findBean(TransactionSynchronizationRegistry.class);
+
+    if (transactionManagerOptional.isPresent() && transactionSynchronizationRegistryOptional
+        .isPresent()) {
+      NarayanaTransactionIntegration narayanaTransactionIntegration =
+          new NarayanaTransactionIntegration(agroalDataSourceConfiguration.getName(),
+              getResourceManagerId(agroalDataSourceConfiguration),
+              transactionManagerOptional.get(), transactionSynchronizationRegistryOptional.get(),
+              beanContext.findBean(RecoveryManager.class).orElse(null));
+
+      agroalDataSourceConfigurationSupplier
+          .connectionPoolConfiguration()
+          .transactionIntegration(narayanaTransactionIntegration);
+
+      listeners.add(narayanaTransactionIntegration.getTransactionIsolationTracker());
+    }
+
+    beanContext.findBean(ConnectionHoldTracker.class).ifPresent(connectionHoldTracker -> listeners
+        .add(connectionHoldTracker.newListener(agroalDataSourceConfiguration.getName())));
+
+    CircuitBreaker circuitBreaker = null;
+
+    if (agroalDataSourceConfiguration.isCircuitBreakerEnabled()) {
+      circuitBreaker = new CircuitBreaker(agroalDataSourceConfiguration.getName(),
+          agroalDataSourceConfiguration.getCircuitBreakerFailureThreshold());
+
+      listeners.add(circuitBreaker);
+    }
+
+    AgroalDataSource dataSource;
+
+    if (agroalDataSourceConfiguration.getPoolImplementation() == PoolImplementation.APPNAUT) {
+      dataSource = new PooledDataSource(agroalDataSourceConfiguration.getName(),
+          agroalDataSourceConfigurationSupplier.get(),
+          listeners.toArray(new AgroalDataSourceListener[0]));
+    } else {
+      dataSource = AgroalDataSource.from(agroalDataSourceConfigurationSupplier,
+          listeners.toArray(new AgroalDataSourceListener[0]));
+    }
+
+    dataSource = new AcquisitionTrackingDataSource(agroalDataSourceConfiguration.getName(),
+        dataSource, connectionPoolEventListener);
+
+    if (circuitBreaker != null) {
+      dataSource = new CircuitBreakerDataSource(agroalDataSourceConfiguration.getName(),
+          dataSource, circuitBreaker, agroalDataSourceConfiguration.getCircuitBreakerProbeInterval(),
+          () -> beanContext.getBean(TaskScheduler.class,
+              Qualifiers.byName(TaskExecutors.SCHEDULED)));
+    }
+
+    if (!agroalDataSourceConfiguration.getReplicas().isEmpty()) {
+      List<AgroalDataSource> replicaDataSources = new ArrayList<>();
+
+      for (String replicaName : agroalDataSourceConfiguration.getReplicas()) {
+        AgroalDataSource replicaDataSource = beanContext
+            .getBean(AgroalDataSource.class, Qualifiers.byName(replicaName));
+
+        if ((agroalDataSourceConfiguration.getLoadBalancing() == LoadBalancing.LEAST_ACTIVE)
+            && (!replicaDataSource.isWrapperFor(PooledDataSource.class))
+            && (!replicaDataSource.getConfiguration().metricsEnabled())) {
+          if (logger.isWarnEnabled()) {
+            logger.warn("Metrics are not enabled for the replica data source (" + replicaName
+                + "), which is required for the least-active load balancing used by the data "
+                + "source (" + agroalDataSourceConfiguration.getName() + ")");
+          }
+        }
+
+        replicaDataSources.add(replicaDataSource);
+      }
+
+      dataSource = new ReadWriteRoutingDataSource(agroalDataSourceConfiguration.getName(),
+          dataSource, replicaDataSources, agroalDataSourceConfiguration.getLoadBalancing(),
+          agroalDataSourceConfiguration.getReadYourWritesWindow(),
+          transactionSynchronizationRegistryOptional.orElse(null));
+    }
+
+    Optional<TransactionStatisticsCollector> transactionStatisticsCollectorOptional = beanContext
+        .findBean(TransactionStatisticsCollector.class);
+
+    if (transactionStatisticsCollectorOptional.isPresent()) {
+      dataSource = new TransactionStatisticsDataSource(agroalDataSourceConfiguration.getName(),
+          dataSource, transactionStatisticsCollectorOptional.get());
+    }
+
+    return dataSource;
+  }
+
+  /**
+   * Returns the name of the application used to identify the application to the database.
+   *
+   * @return the name of the application used to identify the application to the database or
+   * <b>null</b> if no application name has been configured
+   */
+  private String getApplicationName() {
+    return beanContext.findBean(ApplicationConfiguration.class)
+        .flatMap(ApplicationConfiguration::getName).orElse(null);
+  }
+
+  /**
+   * Returns the ID uniquely identifying the resource manager for the data source, which is derived
+   * from the effective JDBC URL, username, JDBC properties and initial SQL, if resource manager
+   * joining is enabled.
+   * <p/>
+   * The ID also includes the connection pool implementation, since a connection can only be shared
+   * between data sources that use the same connection pool implementation. The JDBC properties and
+   * initial SQL are included because they can change the session state for a connection, e.g. the
+   * schema or the session settings, so a connection cannot be shared between data sources that
+   * configure them differently.
+   *
+   * @param agroalDataSourceConfiguration the data source configuration
+   *
+   * @return the ID uniquely identifying the resource manager for the data source or <b>null</b> if
+   * resource manager joining is disabled for the data source
+   */
+  private String getResourceManagerId(AgroalDataSourceConfiguration agroalDataSourceConfiguration) {
+    String effectiveUrl = agroalDataSourceConfiguration.getEffectiveUrl();
+
+    if ((!agroalDataSourceConfiguration.isResourceManagerJoiningEnabled())
+        || (effectiveUrl == null)) {
+      return null;
+    }
+
+    Map<String, String> effectiveJdbcProperties = new TreeMap<>(
+        agroalDataSourceConfiguration.getEffectiveJdbcProperties(getApplicationName()));
+
+    String initialSql = agroalDataSourceConfiguration.getProperties()
+        .getProperty(AgroalPropertiesReader.INITIAL_SQL, "");
+
+    String resourceManagerId = agroalDataSourceConfiguration.getPoolImplementation() + "|"
+        + effectiveUrl + "|" + agroalDataSourceConfiguration.getConfiguredUsername() + "|"
+        + effectiveJdbcProperties + "|" + initialSql;
+
+    String firstDataSourceName = resourceManagerDataSourceNames
+        .putIfAbsent(resourceManagerId, agroalDataSourceConfiguration.getName());
+
+    if ((firstDataSourceName != null) && logger.isInfoEnabled()) {
+      logger.info("The data source (" + agroalDataSourceConfiguration.getName()
+          + ") uses the same resource manager as the data source (" + firstDataSourceName
+          + ") and will share its connection in JTA transactions that use both data sources");
+    }
+
+    return resourceManagerId;
+  }
+
+  private String extractUrlSetting(String url, String urlSetting) {
+    if (url == null) {
+      return "";
+    }
+
+    String prefix = ";" + urlSetting.toUpperCase(Locale.ROOT) + "=";
+
+    int index = url.toUpperCase(Locale.ROOT).indexOf(prefix);
+
+    if (index == -1) {
+      return "";
+    }
+
+    int end = url.indexOf(';', index + prefix.length());
+
+    return url.substring(index + prefix.length(), (end == -1) ? url.length() : end);
+  }
 }
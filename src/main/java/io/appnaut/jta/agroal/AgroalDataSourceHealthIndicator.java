@@ -0,0 +1,268 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.AgroalDataSourceMetrics;
+import io.appnaut.jta.agroal.AgroalDataSourceConfiguration.PoolImplementation;
+import io.micronaut.context.BeanContext;
+import io.micronaut.context.annotation.EachBean;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.health.HealthStatus;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import io.micronaut.management.health.indicator.AbstractHealthIndicator;
+import io.micronaut.management.health.indicator.HealthIndicator;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>AgroalDataSourceHealthIndicator</b> class implements the health indicator for an Agroal
+ * data source.
+ * <p/>
+ * The health of the data source is derived from the state of its connection pool, i.e. the
+ * {@link AgroalDataSourcePoolMetadata}, the connection pool metrics, the failed attempts to
+ * acquire a connection and the state of the circuit breaker for the data source if one is
+ * enabled. The data source is down if the circuit breaker is open, or if no connections have been
+ * acquired from the pool since the last check while attempts to acquire a connection failed or
+ * connection requests are waiting.
+ * <p/>
+ * A connection is only borrowed from the pool and validated, using {@link
+ * Connection#isValid(int)}, if no connections have been acquired from the pool since the last
+ * check and the last validation is older than the validation interval, so frequent health probes
+ * do not add load to a database that is already in use. This health indicator
+ * replaces the JDBC health indicator provided by Micronaut, which executes a query against every
+ * data source for every health probe.
+ * <p/>
+ * The health indicator relies on the connection pool metrics, which are enabled by default. If
+ * the metrics are disabled for a data source a warning is logged and a validation query is
+ * executed at every validation interval.
+ *
+ * @author Marcus Portmann
+ */
+@EachBean(AgroalDataSourceConfiguration.class)
+@Requires(classes = HealthIndicator.class)
+@Requires(property = "endpoints.health.agroal.enabled", notEquals = "false")
+@SuppressWarnings("unused")
+public class AgroalDataSourceHealthIndicator extends AbstractHealthIndicator<Map<String, Object>> {
+
+  /**
+   * The timeout in seconds used when validating a connection.
+   */
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(AgroalDataSourceHealthIndicator.class);
+
+  private final BeanContext beanContext;
+
+  /**
+   * The name of the data source.
+   */
+  private final String dataSourceName;
+
+  /**
+   * Are metrics collected for the connection pool for the data source.
+   */
+  private final boolean metricsEnabled;
+
+  private final long validationIntervalNanos;
+
+  /**
+   * The number of connections acquired from the pool at the last check.
+   */
+  private volatile long lastAcquireCount = -1;
+
+  /**
+   * The number of failed attempts to acquire a connection at the last check.
+   */
+  private volatile long lastAcquisitionFailureCount;
+
+  /**
+   * The time the last successful validation query was executed.
+   */
+  private volatile Instant lastSuccessfulValidation;
+
+  /**
+   * The time the last validation query was executed.
+   */
+  private volatile long lastValidationNanos;
+
+  /**
+   * The result of the last validation query.
+   */
+  private volatile boolean lastValidationSucceeded;
+
+  /**
+   * Constructs a new <b>AgroalDataSourceHealthIndicator</b>.
+   *
+   * @param agroalDataSourceConfiguration the data source configuration
+   * @param beanContext                   the bean context
+   * @param validationInterval            the minimum interval between validation queries for an
+   *                                      idle data source
+   */
+  public AgroalDataSourceHealthIndicator(
+      AgroalDataSourceConfiguration agroalDataSourceConfiguration, BeanContext beanContext,
+      @Value("${endpoints.health.agroal.validation-interval:30s}") Duration validationInterval) {
+    this.dataSourceName = agroalDataSourceConfiguration.getName();
+    this.beanContext = beanContext;
+    this.validationIntervalNanos = validationInterval.toNanos();
+    this.metricsEnabled = agroalDataSourceConfiguration.isMetricsEnabled()
+        || (agroalDataSourceConfiguration.getPoolImplementation() == PoolImplementation.APPNAUT);
+
+    if ((!metricsEnabled) && logger.isWarnEnabled()) {
+      logger.warn("Metrics are disabled for the data source (" + dataSourceName + "), so its "
+          + "health is only checked using a validation query at every validation interval");
+    }
+  }
+
+  @Override
+  protected Map<String, Object> getHealthInformation() {
+    Map<String, Object> details = new LinkedHashMap<>();
+
+    Optional<AgroalDataSource> dataSourceOptional = beanContext
+        .findBean(AgroalDataSource.class, Qualifiers.byName(dataSourceName));
+
+    if (dataSourceOptional.isEmpty()) {
+      healthStatus = HealthStatus.UNKNOWN;
+
+      return details;
+    }
+
+    AgroalDataSource dataSource = dataSourceOptional.get();
+
+    // Do not start a lazy data source, which may be wrapped, just to check its health
+    if (LazyAgroalDataSource.isNotStarted(dataSource)) {
+      details.put("state", "not started");
+
+      healthStatus = HealthStatus.UP;
+
+      return details;
+    }
+
+    AgroalDataSourcePoolMetadata poolMetadata = new AgroalDataSourcePoolMetadata(dataSource);
+
+    AgroalDataSourceMetrics metrics = dataSource.getMetrics();
+
+    details.put("active", poolMetadata.getActive());
+    details.put("idle", poolMetadata.getIdle());
+    details.put("awaiting", metrics.awaitingCount());
+    details.put("min", poolMetadata.getMin());
+    details.put("maxSize", dataSource.getConfiguration().connectionPoolConfiguration().maxSize());
+
+    try {
+      if (dataSource.isWrapperFor(CircuitBreakerDataSource.class)) {
+        CircuitBreaker circuitBreaker = dataSource.unwrap(CircuitBreakerDataSource.class)
+            .getCircuitBreaker();
+
+        details.put("circuitBreaker", circuitBreaker.getState());
+        details.put("consecutiveFailures", circuitBreaker.getConsecutiveFailures());
+
+        if (circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+          healthStatus = HealthStatus.DOWN;
+
+          return details;
+        }
+      }
+
+      long acquireCount = metrics.acquireCount();
+
+      boolean acquired = metricsEnabled && (lastAcquireCount != -1)
+          && (acquireCount != lastAcquireCount);
+
+      boolean idle = (!acquired) && (metrics.activeCount() == 0);
+
+      long acquisitionFailureCount = 0;
+
+      if (dataSource.isWrapperFor(AcquisitionTrackingDataSource.class)) {
+        AcquisitionTrackingDataSource acquisitionTrackingDataSource = dataSource
+            .unwrap(AcquisitionTrackingDataSource.class);
+
+        acquisitionFailureCount = acquisitionTrackingDataSource.getAcquisitionFailureCount();
+
+        details.put("acquisitionFailures", acquisitionFailureCount);
+
+        if ((acquisitionFailureCount != lastAcquisitionFailureCount)
+            && (acquisitionTrackingDataSource.getLastAcquisitionFailure() != null)) {
+          details.put("lastAcquisitionFailure",
+              acquisitionTrackingDataSource.getLastAcquisitionFailure().getMessage());
+        }
+      }
+
+      boolean acquisitionsFailing = (!acquired) && (lastAcquireCount != -1)
+          && (acquisitionFailureCount != lastAcquisitionFailureCount);
+
+      boolean exhausted = metricsEnabled && (!acquired) && (lastAcquireCount != -1)
+          && (metrics.awaitingCount() > 0);
+
+      lastAcquireCount = acquireCount;
+      lastAcquisitionFailureCount = acquisitionFailureCount;
+
+      if (acquisitionsFailing || exhausted) {
+        // Connection requests are failing or waiting and none have succeeded since the last check
+        details.put("exhausted", exhausted);
+
+        healthStatus = HealthStatus.DOWN;
+
+        return details;
+      }
+
+      if (idle && ((lastValidationNanos == 0)
+          || ((System.nanoTime() - lastValidationNanos) >= validationIntervalNanos))) {
+        lastValidationSucceeded = validate(dataSource);
+        lastValidationNanos = System.nanoTime();
+
+        if (lastValidationSucceeded) {
+          lastSuccessfulValidation = Instant.now();
+        }
+      } else if (acquired) {
+        // Connections are being acquired from the pool so the database is reachable
+        lastValidationSucceeded = true;
+      }
+    } catch (Throwable e) {
+      lastValidationSucceeded = false;
+      lastValidationNanos = System.nanoTime();
+
+      details.put("error", e.getMessage());
+    }
+
+    if (lastSuccessfulValidation != null) {
+      details.put("lastSuccessfulValidation", lastSuccessfulValidation.toString());
+    }
+
+    healthStatus = lastValidationSucceeded ? HealthStatus.UP : HealthStatus.DOWN;
+
+    return details;
+  }
+
+  @Override
+  protected String getName() {
+    return "jdbc:" + dataSourceName;
+  }
+
+  private boolean validate(AgroalDataSource dataSource) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSourceListener;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>CircuitBreaker</b> class tracks the connection creation and validation failures for a
+ * data source and opens after a number of consecutive failures, so that connection requests can
+ * fail immediately while the database is unavailable instead of each waiting for the acquisition
+ * timeout.
+ * <p/>
+ * The circuit breaker is registered as a listener with the connection pool to observe validation
+ * failures, which are recorded as failures, and whether the pool is failing to create
+ * connections. It is used by a {@link CircuitBreakerDataSource} to record each failed attempt to
+ * acquire a connection that is a connection failure, with an SQLState in the 08 class, or that
+ * occurs while the pool is failing to create connections. Other failures, e.g. acquisition
+ * timeouts caused by an exhausted pool or failures to enlist a connection in a transaction, do not
+ * indicate that the database is unavailable and are ignored. A failed connection creation is not
+ * recorded as a failure itself, since it is also returned to, or causes the timeout for, the
+ * connection request waiting for it.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class CircuitBreaker implements AgroalDataSourceListener {
+
+  /**
+   * The SQLState class for connection exceptions.
+   */
+  private static final String CONNECTION_EXCEPTION_SQL_STATE_CLASS = "08";
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  /**
+   * The number of consecutive failures.
+   */
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+  /**
+   * The name of the data source.
+   */
+  private final String dataSourceName;
+
+  /**
+   * Whether a connection is being created for the data source by the current thread.
+   */
+  private final ThreadLocal<Boolean> creatingConnection = new ThreadLocal<>();
+
+  private final int failureThreshold;
+
+  private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+  /**
+   * Did the last attempt to create a connection for the data source fail.
+   */
+  private volatile boolean creationFailing;
+
+  /**
+   * Constructs a new <b>CircuitBreaker</b>.
+   *
+   * @param dataSourceName   the name of the data source
+   * @param failureThreshold the number of consecutive failures after which the circuit breaker
+   *                         opens
+   */
+  public CircuitBreaker(String dataSourceName, int failureThreshold) {
+    this.dataSourceName = dataSourceName;
+    this.failureThreshold = Math.max(1, failureThreshold);
+  }
+
+  /**
+   * Returns whether the throwable is, or was caused by, a connection failure with an SQLState in
+   * the 08 class, which indicates that the database could not be reached or the connection to it
+   * was lost.
+   *
+   * @param throwable the throwable
+   *
+   * @return true if the throwable is, or was caused by, a connection failure or false otherwise
+   */
+  public static boolean isConnectionFailure(Throwable throwable) {
+    Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    Deque<Throwable> pending = new ArrayDeque<>();
+
+    if (throwable != null) {
+      pending.add(throwable);
+    }
+
+    while (!pending.isEmpty()) {
+      Throwable current = pending.poll();
+
+      if (!visited.add(current)) {
+        continue;
+      }
+
+      if (current instanceof SQLException) {
+        SQLException sqlException = (SQLException) current;
+
+        String sqlState = sqlException.getSQLState();
+
+        if ((sqlState != null) && sqlState.startsWith(CONNECTION_EXCEPTION_SQL_STATE_CLASS)) {
+          return true;
+        }
+
+        if (sqlException.getNextException() != null) {
+          pending.add(sqlException.getNextException());
+        }
+      }
+
+      if (current.getCause() != null) {
+        pending.add(current.getCause());
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public void beforeConnectionCreation() {
+    creatingConnection.set(Boolean.TRUE);
+  }
+
+  /**
+   * Returns the number of consecutive failures.
+   *
+   * @return the number of consecutive failures
+   */
+  public int getConsecutiveFailures() {
+    return consecutiveFailures.get();
+  }
+
+  /**
+   * Returns the state of the circuit breaker.
+   *
+   * @return the state of the circuit breaker
+   */
+  public State getState() {
+    return state.get();
+  }
+
+  /**
+   * Returns whether the failed attempt to acquire a connection should be recorded as a failure,
+   * i.e. whether it is a connection failure or the connection pool is failing to create
+   * connections.
+   *
+   * @param cause the cause of the failed attempt to acquire a connection
+   *
+   * @return true if the failed attempt to acquire a connection should be recorded as a failure or
+   * false otherwise
+   */
+  public boolean isAcquisitionFailure(SQLException cause) {
+    return creationFailing || isConnectionFailure(cause);
+  }
+
+  /**
+   * Returns whether the last attempt to create a connection for the data source failed.
+   *
+   * @return true if the last attempt to create a connection for the data source failed or false
+   * otherwise
+   */
+  public boolean isCreationFailing() {
+    return creationFailing;
+  }
+
+  /**
+   * Returns whether connection requests are allowed.
+   *
+   * @return true if connection requests are allowed or false if the circuit breaker is open
+   */
+  public boolean isRequestAllowed() {
+    return state.get() != State.OPEN;
+  }
+
+  @Override
+  public void onConnectionCreation(Connection connection) {
+    creatingConnection.remove();
+
+    creationFailing = false;
+  }
+
+  @Override
+  public void onConnectionInvalid(Connection connection) {
+    recordFailure(null);
+  }
+
+  @Override
+  public void onWarning(Throwable throwable) {
+    // Only the warnings for failed connection creation attempts show that creation is failing
+    if (creatingConnection.get() != null) {
+      creatingConnection.remove();
+
+      creationFailing = true;
+    }
+  }
+
+  /**
+   * Record a failed attempt to acquire a connection or a validation failure.
+   *
+   * @param cause the cause of the failure or <b>null</b> if the cause is not known
+   */
+  public void recordFailure(Throwable cause) {
+    if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Re-opened the circuit breaker for the data source (" + dataSourceName
+            + ") after a failure following a successful probe", cause);
+      }
+    } else if ((consecutiveFailures.incrementAndGet() >= failureThreshold) && state
+        .compareAndSet(State.CLOSED, State.OPEN)) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Opened the circuit breaker for the data source (" + dataSourceName
+            + ") after " + failureThreshold + " consecutive connection failures", cause);
+      }
+    }
+  }
+
+  /**
+   * Record a successful probe of the database while the circuit breaker is open, which allows
+   * connection requests again until the next failure.
+   */
+  public void recordProbeSuccess() {
+    if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+      consecutiveFailures.set(0);
+
+      if (logger.isInfoEnabled()) {
+        logger.info("Half-opened the circuit breaker for the data source (" + dataSourceName
+            + ") after a successful probe");
+      }
+    }
+  }
+
+  /**
+   * Record a successful connection acquisition.
+   */
+  public void recordSuccess() {
+    if (consecutiveFailures.get() != 0) {
+      consecutiveFailures.set(0);
+    }
+
+    if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+      if (logger.isInfoEnabled()) {
+        logger.info("Closed the circuit breaker for the data source (" + dataSourceName + ")");
+      }
+    }
+  }
+
+  /**
+   * The enumeration giving the possible states for a circuit breaker.
+   */
+  public enum State {
+    /**
+     * Connection requests are allowed.
+     */
+    CLOSED,
+
+    /**
+     * Connection requests fail immediately while the database is probed in the background.
+     */
+    OPEN,
+
+    /**
+     * A probe succeeded and connection requests are allowed, but the next failure re-opens the
+     * circuit breaker.
+     */
+    HALF_OPEN
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSource;
+import io.micronaut.scheduling.TaskScheduler;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.inject.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>CircuitBreakerDataSource</b> class implements an Agroal data source that fails connection
+ * requests immediately while the {@link CircuitBreaker} for the data source is open.
+ * <p/>
+ * While the circuit breaker is open the database is probed in the background, by validating a
+ * connection from the pool, and connection requests are allowed again once a probe succeeds. This
+ * prevents a single unavailable database from tying up the threads for the whole application
+ * waiting for the acquisition timeout. The probe is only scheduled the first time the circuit
+ * breaker is found to be open, so the task scheduler is not looked up while the data source is
+ * being created.
+ * <p/>
+ * Each failed attempt to acquire a connection is recorded as a failure for the circuit breaker if
+ * it is a connection failure, with an SQLState in the 08 class, or if the connection pool is
+ * failing to create connections, see {@link CircuitBreaker#isAcquisitionFailure(SQLException)}.
+ * Other acquisition timeouts and enlistment failures leave the state of the circuit breaker
+ * unchanged.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class CircuitBreakerDataSource extends DelegatingAgroalDataSource {
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerDataSource.class);
+
+  /**
+   * The timeout in seconds used when validating the connection for a probe.
+   */
+  private static final int PROBE_VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final long serialVersionUID = 1000000;
+
+  private final CircuitBreaker circuitBreaker;
+
+  /**
+   * The Agroal data source that is delegated to.
+   */
+  private final AgroalDataSource delegate;
+
+  /**
+   * The lock used to ensure the probe is only scheduled once.
+   */
+  private final transient ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  /**
+   * The interval at which the database is probed while the circuit breaker is open.
+   */
+  private final Duration probeInterval;
+
+  /**
+   * The provider for the task scheduler used to probe the database.
+   */
+  private final transient Provider<TaskScheduler> taskSchedulerProvider;
+
+  private volatile boolean closed;
+
+  /**
+   * The scheduled task used to probe the database while the circuit breaker is open or
+   * <b>null</b> if the probe has not been scheduled.
+   */
+  private transient volatile ScheduledFuture<?> probeTask;
+
+  /**
+   * Constructs a new <b>CircuitBreakerDataSource</b>.
+   *
+   * @param name                  the name of the data source
+   * @param delegate              the Agroal data source that is delegated to
+   * @param circuitBreaker        the circuit breaker for the data source
+   * @param probeInterval         the interval at which the database is probed while the circuit
+   *                              breaker is open
+   * @param taskSchedulerProvider the provider for the task scheduler used to probe the database
+   */
+  public CircuitBreakerDataSource(String name, AgroalDataSource delegate,
+      CircuitBreaker circuitBreaker, Duration probeInterval,
+      Provider<TaskScheduler> taskSchedulerProvider) {
+    this.name = name;
+    this.delegate = delegate;
+    this.circuitBreaker = circuitBreaker;
+    this.probeInterval = probeInterval;
+    this.taskSchedulerProvider = taskSchedulerProvider;
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+
+    try {
+      closed = true;
+
+      if (probeTask != null) {
+        probeTask.cancel(false);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    super.close();
+  }
+
+  /**
+   * Returns the circuit breaker for the data source.
+   *
+   * @return the circuit breaker for the data source
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    checkRequestAllowed();
+
+    try {
+      Connection connection = delegate.getConnection();
+
+      circuitBreaker.recordSuccess();
+
+      return connection;
+    } catch (SQLException e) {
+      recordFailure(e);
+
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    checkRequestAllowed();
+
+    try {
+      Connection connection = delegate.getConnection(username, password);
+
+      circuitBreaker.recordSuccess();
+
+      return connection;
+    } catch (SQLException e) {
+      recordFailure(e);
+
+      throw e;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreakerDataSource {name=\"" + name + "\", state=\"" + circuitBreaker.getState()
+        + "\"}";
+  }
+
+  @Override
+  protected AgroalDataSource getDelegate() {
+    return delegate;
+  }
+
+  private void checkRequestAllowed() throws SQLTransientConnectionException {
+    if (!circuitBreaker.isRequestAllowed()) {
+      scheduleProbe();
+
+      throw new SQLTransientConnectionException("Failed to retrieve a connection for the data "
+          + "source (" + name + "): The circuit breaker for the data source is open");
+    }
+  }
+
+  private void probe() {
+    if (circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+      return;
+    }
+
+    try (Connection connection = delegate.getConnection()) {
+      if (connection.isValid(PROBE_VALIDATION_TIMEOUT_SECONDS)) {
+        circuitBreaker.recordProbeSuccess();
+      }
+    } catch (Throwable e) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Failed to probe the database for the data source (" + name + ")", e);
+      }
+    }
+  }
+
+  private void recordFailure(SQLException cause) {
+    if (circuitBreaker.isAcquisitionFailure(cause)) {
+      circuitBreaker.recordFailure(cause);
+
+      if (!circuitBreaker.isRequestAllowed()) {
+        scheduleProbe();
+      }
+    }
+  }
+
+  private void scheduleProbe() {
+    if (probeTask != null) {
+      return;
+    }
+
+    lock.lock();
+
+    try {
+      if ((probeTask == null) && (!closed)) {
+        probeTask = taskSchedulerProvider.get().scheduleWithFixedDelay(probeInterval,
+            probeInterval, this::probe);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSourceListener;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.scheduling.annotation.Scheduled;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>ConnectionHoldTracker</b> class tracks how long the code paths in an application hold the
+ * connections for the Agroal data sources.
+ * <p/>
+ * A configurable fraction of connection acquisitions is sampled. For a sampled acquisition the
+ * application stack frames of the acquiring code path are captured and the time until the
+ * connection is returned is recorded against that code path. Acquisitions that are not sampled
+ * cost a single random number, so the tracker can be left enabled in production. The tracker
+ * periodically reports the code paths with the highest total and 99th percentile hold times, and
+ * reports sampled connections held for longer than the leak threshold as potential leaks.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@Requires(property = ConnectionHoldTrackerConfiguration.PREFIX + ".enabled", value = "true")
+@SuppressWarnings("unused")
+public class ConnectionHoldTracker {
+
+  /**
+   * The prefixes for the classes whose stack frames are ignored when identifying the code path
+   * that acquired a connection.
+   */
+  private static final String[] IGNORED_CLASS_NAME_PREFIXES = {"io.agroal.", "io.appnaut.jta.",
+      "io.micronaut.", "org.hibernate.", "com.arjuna.", "org.h2.", "org.postgresql.", "liquibase.",
+      "java.", "javax.", "jdk.", "sun.", "com.sun."};
+
+  /**
+   * The number of hold times retained for each code path to calculate the 99th percentile.
+   */
+  private static final int SAMPLES_PER_SITE = 256;
+
+  private static final String UNKNOWN_SITE = "<unknown>";
+
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionHoldTracker.class);
+
+  private final ConnectionHoldTrackerConfiguration configuration;
+
+  /**
+   * The listeners for the data sources.
+   */
+  private final Map<String, DataSourceListener> listeners = new ConcurrentHashMap<>();
+
+  private final StackWalker stackWalker = StackWalker.getInstance();
+
+  /**
+   * Constructs a new <b>ConnectionHoldTracker</b>.
+   *
+   * @param configuration the connection hold tracker configuration
+   */
+  public ConnectionHoldTracker(ConnectionHoldTrackerConfiguration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * Report the sampled connections that have been held for longer than the leak threshold.
+   */
+  @Scheduled(fixedDelay = "${" + ConnectionHoldTrackerConfiguration.PREFIX
+      + ".leak-check-interval:30s}")
+  public void checkForLeaks() {
+    long leakThresholdNanos = configuration.getLeakThreshold().toNanos();
+
+    long now = System.nanoTime();
+
+    for (DataSourceListener listener : listeners.values()) {
+      for (Acquisition acquisition : listener.acquisitions.values()) {
+        if ((!acquisition.leakReported) && ((now - acquisition.acquiredNanos)
+            > leakThresholdNanos)) {
+          acquisition.leakReported = true;
+
+          if (logger.isWarnEnabled()) {
+            logger.warn("A connection for the data source (" + listener.dataSourceName
+                + ") has been held by the thread (" + acquisition.threadName + ") for "
+                + TimeUnit.NANOSECONDS.toMillis(now - acquisition.acquiredNanos)
+                + " ms and may have leaked, it was acquired at: " + acquisition.site);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the code paths with the highest hold times for the data source.
+   *
+   * @param dataSourceName the name of the data source
+   * @param comparator     the comparator used to rank the code paths
+   *
+   * @return the code paths with the highest hold times for the data source
+   */
+  public List<HoldSiteStatistics> getTopHolders(String dataSourceName,
+      Comparator<HoldSiteStatistics> comparator) {
+    DataSourceListener listener = listeners.get(dataSourceName);
+
+    if (listener == null) {
+      return List.of();
+    }
+
+    return listener.sites.values().stream().map(HoldSite::getStatistics)
+        .sorted(comparator.reversed()).limit(configuration.getTopHolders())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns a new listener that tracks the connections for the data source.
+   *
+   * @param dataSourceName the name of the data source
+   *
+   * @return a new listener that tracks the connections for the data source
+   */
+  public AgroalDataSourceListener newListener(String dataSourceName) {
+    return listeners.computeIfAbsent(dataSourceName, DataSourceListener::new);
+  }
+
+  /**
+   * Report the code paths with the highest total and 99th percentile hold times for each data
+   * source.
+   */
+  @Scheduled(fixedDelay = "${" + ConnectionHoldTrackerConfiguration.PREFIX
+      + ".report-interval:5m}", initialDelay = "${" + ConnectionHoldTrackerConfiguration.PREFIX
+      + ".report-interval:5m}")
+  public void report() {
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
+
+    for (String dataSourceName : listeners.keySet()) {
+      report(dataSourceName, "total",
+          getTopHolders(dataSourceName, Comparator.comparingLong(HoldSiteStatistics::getTotalMillis)));
+      report(dataSourceName, "99th percentile",
+          getTopHolders(dataSourceName, Comparator.comparingLong(HoldSiteStatistics::getP99Millis)));
+    }
+  }
+
+  private String captureSite() {
+    String site = stackWalker.walk(frames -> frames
+        .filter(frame -> isApplicationFrame(frame.getClassName()))
+        .limit(configuration.getMaxStackDepth())
+        .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame
+            .getLineNumber())
+        .collect(Collectors.joining(" <- ")));
+
+    return site.isEmpty() ? UNKNOWN_SITE : site;
+  }
+
+  private boolean isApplicationFrame(String className) {
+    if (className.contains("$Intercepted")) {
+      return false;
+    }
+
+    for (String ignoredClassNamePrefix : IGNORED_CLASS_NAME_PREFIXES) {
+      if (className.startsWith(ignoredClassNamePrefix)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void report(String dataSourceName, String ranking,
+      List<HoldSiteStatistics> topHolders) {
+    if (topHolders.isEmpty()) {
+      return;
+    }
+
+    StringBuilder buffer = new StringBuilder();
+
+    buffer.append("The code paths with the highest ").append(ranking)
+        .append(" connection hold times for the data source (").append(dataSourceName)
+        .append("):");
+
+    for (HoldSiteStatistics statistics : topHolders) {
+      buffer.append("\n  total=").append(statistics.getTotalMillis()).append(" ms, p99=")
+          .append(statistics.getP99Millis()).append(" ms, max=")
+          .append(statistics.getMaxMillis()).append(" ms, samples=")
+          .append(statistics.getCount()).append(", site=").append(statistics.getSite());
+    }
+
+    logger.info(buffer.toString());
+  }
+
+  /**
+   * The <b>HoldSiteStatistics</b> class holds a snapshot of the connection hold times for a code
+   * path.
+   *
+   * @author Marcus Portmann
+   */
+  public static class HoldSiteStatistics {
+
+    private final long count;
+
+    private final long maxMillis;
+
+    private final long p99Millis;
+
+    private final String site;
+
+    private final long totalMillis;
+
+    /**
+     * Constructs a new <b>HoldSiteStatistics</b>.
+     *
+     * @param site        the code path
+     * @param count       the number of sampled acquisitions for the code path
+     * @param totalMillis the total hold time in milliseconds for the sampled acquisitions
+     * @param p99Millis   the 99th percentile hold time in milliseconds
+     * @param maxMillis   the maximum hold time in milliseconds
+     */
+    HoldSiteStatistics(String site, long count, long totalMillis, long p99Millis,
+        long maxMillis) {
+      this.site = site;
+      this.count = count;
+      this.totalMillis = totalMillis;
+      this.p99Millis = p99Millis;
+      this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Returns the number of sampled acquisitions for the code path.
+     *
+     * @return the number of sampled acquisitions for the code path
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Returns the maximum hold time in milliseconds.
+     *
+     * @return the maximum hold time in milliseconds
+     */
+    public long getMaxMillis() {
+      return maxMillis;
+    }
+
+    /**
+     * Returns the 99th percentile hold time in milliseconds.
+     *
+     * @return the 99th percentile hold time in milliseconds
+     */
+    public long getP99Millis() {
+      return p99Millis;
+    }
+
+    /**
+     * Returns the code path.
+     *
+     * @return the code path
+     */
+    public String getSite() {
+      return site;
+    }
+
+    /**
+     * Returns the total hold time in milliseconds for the sampled acquisitions.
+     *
+     * @return the total hold time in milliseconds for the sampled acquisitions
+     */
+    public long getTotalMillis() {
+      return totalMillis;
+    }
+  }
+
+  /**
+   * The <b>Acquisition</b> class holds the information for a sampled connection acquisition.
+   */
+  private static class Acquisition {
+
+    private final long acquiredNanos;
+
+    private final String site;
+
+    private final String threadName;
+
+    private volatile boolean leakReported;
+
+    Acquisition(String site, long acquiredNanos, String threadName) {
+      this.site = site;
+      this.acquiredNanos = acquiredNanos;
+      this.threadName = threadName;
+    }
+  }
+
+  /**
+   * The <b>HoldSite</b> class accumulates the connection hold times for a code path.
+   */
+  private static class HoldSite {
+
+    private final LongAdder count = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final AtomicInteger nextSample = new AtomicInteger();
+
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLES_PER_SITE);
+
+    private final String site;
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    HoldSite(String site) {
+      this.site = site;
+    }
+
+    HoldSiteStatistics getStatistics() {
+      int sampleCount = Math.min(nextSample.get(), SAMPLES_PER_SITE);
+
+      long[] sortedSamples = new long[sampleCount];
+
+      for (int i = 0; i < sampleCount; i++) {
+        sortedSamples[i] = samples.get(i);
+      }
+
+      Arrays.sort(sortedSamples);
+
+      long p99Nanos = (sampleCount == 0) ? 0
+          : sortedSamples[Math.max(0, (int) Math.ceil(sampleCount * 0.99) - 1)];
+
+      return new HoldSiteStatistics(site, count.sum(),
+          TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()), TimeUnit.NANOSECONDS.toMillis(p99Nanos),
+          TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+    }
+
+    void record(long heldNanos) {
+      count.increment();
+      totalNanos.add(heldNanos);
+      maxNanos.accumulateAndGet(heldNanos, Math::max);
+      samples.set(Math.floorMod(nextSample.getAndIncrement(), SAMPLES_PER_SITE), heldNanos);
+    }
+  }
+
+  /**
+   * The <b>DataSourceListener</b> class implements the Agroal data source listener that samples
+   * the connection acquisitions for a data source.
+   */
+  private class DataSourceListener implements AgroalDataSourceListener {
+
+    /**
+     * The sampled acquisitions for the connections that have not been returned yet.
+     */
+    private final Map<Connection, Acquisition> acquisitions = new ConcurrentHashMap<>();
+
+    private final String dataSourceName;
+
+    /**
+     * The hold times for the code paths that acquired connections.
+     */
+    private final Map<String, HoldSite> sites = new ConcurrentHashMap<>();
+
+    DataSourceListener(String dataSourceName) {
+      this.dataSourceName = dataSourceName;
+    }
+
+    @Override
+    public void beforeConnectionReturn(Connection connection) {
+      if (acquisitions.isEmpty()) {
+        return;
+      }
+
+      Acquisition acquisition = acquisitions.remove(connection);
+
+      if (acquisition != null) {
+        sites.computeIfAbsent(acquisition.site, HoldSite::new)
+            .record(System.nanoTime() - acquisition.acquiredNanos);
+      }
+    }
+
+    @Override
+    public void onConnectionAcquire(Connection connection) {
+      if (ThreadLocalRandom.current().nextDouble() >= configuration.getSampleRate()) {
+        return;
+      }
+
+      acquisitions.put(connection,
+          new Acquisition(captureSite(), System.nanoTime(), Thread.currentThread().getName()));
+    }
+
+    @Override
+    public void onConnectionDestroy(Connection connection) {
+      acquisitions.remove(connection);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/**
+ * The <b>ConnectionHoldTrackerConfiguration</b> class holds the configuration information for the
+ * {@link ConnectionHoldTracker}.
+ *
+ * @author Marcus Portmann
+ */
+@ConfigurationProperties(ConnectionHoldTrackerConfiguration.PREFIX)
+@SuppressWarnings("unused")
+public class ConnectionHoldTrackerConfiguration {
+
+  /**
+   * The prefix for the connection hold tracker configuration.
+   */
+  public static final String PREFIX = "appnaut.connection-hold-tracker";
+
+  private boolean enabled;
+
+  private Duration leakThreshold = Duration.ofMinutes(1);
+
+  private int maxStackDepth = 8;
+
+  private double sampleRate = 0.01;
+
+  private int topHolders = 10;
+
+  /**
+   * Returns the hold time after which a sampled connection that has not been returned is reported
+   * as a leak.
+   *
+   * @return the hold time after which a sampled connection that has not been returned is reported
+   * as a leak
+   */
+  public Duration getLeakThreshold() {
+    return leakThreshold;
+  }
+
+  /**
+   * Returns the maximum number of application stack frames used to identify the code path that
+   * acquired a connection.
+   *
+   * @return the maximum number of application stack frames used to identify the code path that
+   * acquired a connection
+   */
+  public int getMaxStackDepth() {
+    return maxStackDepth;
+  }
+
+  /**
+   * Returns the fraction of connection acquisitions, between 0 and 1, that are sampled.
+   *
+   * @return the fraction of connection acquisitions that are sampled
+   */
+  public double getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Returns the number of code paths included in each ranking in the report.
+   *
+   * @return the number of code paths included in each ranking in the report
+   */
+  public int getTopHolders() {
+    return topHolders;
+  }
+
+  /**
+   * Returns whether the connection hold tracker is enabled.
+   *
+   * @return true if the connection hold tracker is enabled or false otherwise
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Set whether the connection hold tracker is enabled.
+   *
+   * @param enabled true if the connection hold tracker is enabled or false otherwise
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Set the hold time after which a sampled connection that has not been returned is reported as
+   * a leak.
+   *
+   * @param leakThreshold the hold time after which a sampled connection that has not been returned
+   *                      is reported as a leak
+   */
+  public void setLeakThreshold(Duration leakThreshold) {
+    this.leakThreshold = leakThreshold;
+  }
+
+  /**
+   * Set the maximum number of application stack frames used to identify the code path that
+   * acquired a connection.
+   *
+   * @param maxStackDepth the maximum number of application stack frames used to identify the code
+   *                      path that acquired a connection
+   */
+  public void setMaxStackDepth(int maxStackDepth) {
+    this.maxStackDepth = maxStackDepth;
+  }
+
+  /**
+   * Set the fraction of connection acquisitions, between 0 and 1, that are sampled.
+   *
+   * @param sampleRate the fraction of connection acquisitions that are sampled
+   */
+  public void setSampleRate(double sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Set the number of code paths included in each ranking in the report.
+   *
+   * @param topHolders the number of code paths included in each ranking in the report
+   */
+  public void setTopHolders(int topHolders) {
+    this.topHolders = topHolders;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.AgroalDataSourceMetrics;
+import io.agroal.api.AgroalPoolInterceptor;
+import io.agroal.api.configuration.AgroalDataSourceConfiguration;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The <b>DelegatingAgroalDataSource</b> class provides the base class for Agroal data sources that
+ * wrap another Agroal data source and delegate to it by default.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public abstract class DelegatingAgroalDataSource implements AgroalDataSource {
+
+  private static final long serialVersionUID = 1000000;
+
+  /**
+   * Constructs a new <b>DelegatingAgroalDataSource</b>.
+   */
+  protected DelegatingAgroalDataSource() {
+  }
+
+  @Override
+  public void close() {
+    getDelegate().close();
+  }
+
+  @Override
+  public void flush(FlushMode mode) {
+    getDelegate().flush(mode);
+  }
+
+  @Override
+  public AgroalDataSourceConfiguration getConfiguration() {
+    return getDelegate().getConfiguration();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return getDelegate().getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return getDelegate().getConnection(username, password);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return getDelegate().getLoginTimeout();
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return getDelegate().getLogWriter();
+  }
+
+  @Override
+  public AgroalDataSourceMetrics getMetrics() {
+    return getDelegate().getMetrics();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return getDelegate().getParentLogger();
+  }
+
+  @Override
+  public List<AgroalPoolInterceptor> getPoolInterceptors() {
+    return getDelegate().getPoolInterceptors();
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || getDelegate().isWrapperFor(iface);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    getDelegate().setLoginTimeout(seconds);
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    getDelegate().setLogWriter(out);
+  }
+
+  @Override
+  public void setPoolInterceptors(Collection<? extends AgroalPoolInterceptor> interceptors) {
+    getDelegate().setPoolInterceptors(interceptors);
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+
+    return getDelegate().unwrap(iface);
+  }
+
+  /**
+   * Returns the Agroal data source that is delegated to.
+   *
+   * @return the Agroal data source that is delegated to
+   */
+  protected abstract AgroalDataSource getDelegate();
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The <b>DriverPerformanceProfile</b> enumeration defines the curated performance settings that
+ * are applied to a data source based on its JDBC driver.
+ * <p/>
+ * A profile consists of JDBC properties, which are set on the driver or data source when
+ * connections are created, and URL settings, which are appended to the JDBC URL for drivers that
+ * are only configured through the URL. Every value can be overridden using the
+ * <b>jdbc-properties</b> for the data source, or by including the setting in the JDBC URL.
+ *
+ * @author Marcus Portmann
+ */
+public enum DriverPerformanceProfile {
+  /**
+   * The performance profile for the H2 JDBC driver.
+   */
+  H2("H2", "org.h2.", Map.of(), Map.of("QUERY_CACHE_SIZE", "64"), null),
+
+  /**
+   * The performance profile for the PostgreSQL JDBC driver.
+   */
+  POSTGRESQL("PostgreSQL", "org.postgresql.", orderedMap(
+      "reWriteBatchedInserts", "true",
+      "prepareThreshold", "3",
+      "defaultRowFetchSize", "1000",
+      "tcpKeepAlive", "true",
+      "binaryTransfer", "true"), Map.of(), "ApplicationName");
+
+  /**
+   * The name of the JDBC property used to identify the application to the database or
+   * <b>null</b> if the driver does not support this.
+   */
+  private final String applicationNameProperty;
+
+  private final String driverClassNamePrefix;
+
+  private final Map<String, String> jdbcProperties;
+
+  private final String name;
+
+  private final Map<String, String> urlSettings;
+
+  DriverPerformanceProfile(String name, String driverClassNamePrefix,
+      Map<String, String> jdbcProperties, Map<String, String> urlSettings,
+      String applicationNameProperty) {
+    this.name = name;
+    this.driverClassNamePrefix = driverClassNamePrefix;
+    this.jdbcProperties = jdbcProperties;
+    this.urlSettings = urlSettings;
+    this.applicationNameProperty = applicationNameProperty;
+  }
+
+  /**
+   * Returns the performance profile for the JDBC driver or data source class.
+   *
+   * @param driverClassName the fully qualified name of the JDBC driver or data source class
+   *
+   * @return an Optional containing the performance profile for the JDBC driver or data source
+   * class or an empty Optional if there is no performance profile for the driver
+   */
+  public static Optional<DriverPerformanceProfile> forDriverClassName(String driverClassName) {
+    if (driverClassName != null) {
+      for (DriverPerformanceProfile profile : values()) {
+        if (driverClassName.startsWith(profile.driverClassNamePrefix)) {
+          return Optional.of(profile);
+        }
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  private static Map<String, String> orderedMap(String... keysAndValues) {
+    Map<String, String> map = new LinkedHashMap<>();
+
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      map.put(keysAndValues[i], keysAndValues[i + 1]);
+    }
+
+    return map;
+  }
+
+  /**
+   * Apply the URL settings for the performance profile to the JDBC URL. Settings that are already
+   * present in the JDBC URL are not changed.
+   *
+   * @param url the JDBC URL
+   *
+   * @return the JDBC URL with the URL settings for the performance profile applied
+   */
+  public String applyUrlSettings(String url) {
+    if ((url == null) || urlSettings.isEmpty()) {
+      return url;
+    }
+
+    StringBuilder buffer = new StringBuilder(url);
+
+    String upperCaseUrl = url.toUpperCase(Locale.ROOT);
+
+    for (Map.Entry<String, String> urlSetting : urlSettings.entrySet()) {
+      if (!upperCaseUrl.contains(";" + urlSetting.getKey().toUpperCase(Locale.ROOT) + "=")) {
+        buffer.append(';').append(urlSetting.getKey()).append('=').append(urlSetting.getValue());
+      }
+    }
+
+    return buffer.toString();
+  }
+
+  /**
+   * Returns the name of the JDBC property used to identify the application to the database.
+   *
+   * @return an Optional containing the name of the JDBC property used to identify the application
+   * to the database or an empty Optional if the driver does not support this
+   */
+  public Optional<String> getApplicationNameProperty() {
+    return Optional.ofNullable(applicationNameProperty);
+  }
+
+  /**
+   * Returns the JDBC properties for the performance profile.
+   *
+   * @return the JDBC properties for the performance profile
+   */
+  public Map<String, String> getJdbcProperties() {
+    return jdbcProperties;
+  }
+
+  /**
+   * Returns the name of the performance profile.
+   *
+   * @return the name of the performance profile
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the URL settings for the performance profile.
+   *
+   * @return the URL settings for the performance profile
+   */
+  public Map<String, String> getUrlSettings() {
+    return urlSettings;
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.AgroalDataSourceMetrics;
+import io.agroal.api.AgroalPoolInterceptor;
+import io.agroal.api.configuration.AgroalDataSourceConfiguration;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.DataSource;
+
+/**
+ * The <b>LazyAgroalDataSource</b> class implements an Agroal data source that defers the creation
+ * of the underlying connection pool, and its JTA transaction integration, until the first
+ * connection is requested.
+ * <p/>
+ * Until the connection pool has been created, the data source reports the configuration it was
+ * constructed with and empty metrics, it only reports that it wraps itself, and flushing or
+ * closing the data source has no effect. Health checks, the warm-up phase and Liquibase migrations
+ * use {@link #isNotStarted(DataSource)} so that they do not create the connection pool.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class LazyAgroalDataSource extends DelegatingAgroalDataSource {
+
+  private static final AgroalDataSourceMetrics EMPTY_METRICS = new AgroalDataSourceMetrics() {
+  };
+
+  private static final long serialVersionUID = 1000000;
+
+  /**
+   * The configuration reported for the data source before the connection pool is created.
+   */
+  private final AgroalDataSourceConfiguration configuration;
+
+  private final Initializer initializer;
+
+  /**
+   * The lock used to ensure the connection pool is only created once.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  private volatile boolean closed;
+
+  /**
+   * The connection pool or <b>null</b> if it has not been created yet.
+   */
+  private volatile AgroalDataSource delegate;
+
+  private volatile List<AgroalPoolInterceptor> interceptors = List.of();
+
+  /**
+   * Constructs a new <b>LazyAgroalDataSource</b>.
+   *
+   * @param name          the name of the data source
+   * @param configuration the configuration reported for the data source before the connection
+   *                      pool is created
+   * @param initializer   the initializer used to create the connection pool
+   */
+  public LazyAgroalDataSource(String name, AgroalDataSourceConfiguration configuration,
+      Initializer initializer) {
+    this.name = name;
+    this.configuration = configuration;
+    this.initializer = initializer;
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+
+    try {
+      closed = true;
+
+      if (delegate != null) {
+        delegate.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void flush(FlushMode mode) {
+    AgroalDataSource currentDelegate = delegate;
+
+    if (currentDelegate != null) {
+      currentDelegate.flush(mode);
+    }
+  }
+
+  @Override
+  public AgroalDataSourceConfiguration getConfiguration() {
+    AgroalDataSource currentDelegate = delegate;
+
+    return (currentDelegate != null) ? currentDelegate.getConfiguration() : configuration;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return initialize().getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return initialize().getConnection(username, password);
+  }
+
+  @Override
+  public AgroalDataSourceMetrics getMetrics() {
+    AgroalDataSource currentDelegate = delegate;
+
+    return (currentDelegate != null) ? currentDelegate.getMetrics() : EMPTY_METRICS;
+  }
+
+  @Override
+  public List<AgroalPoolInterceptor> getPoolInterceptors() {
+    AgroalDataSource currentDelegate = delegate;
+
+    return (currentDelegate != null) ? currentDelegate.getPoolInterceptors() : interceptors;
+  }
+
+  /**
+   * Returns whether the data source is, or wraps, a lazy data source whose connection pool has not
+   * been created, without creating the connection pool.
+   *
+   * @param dataSource the data source
+   *
+   * @return true if the data source is, or wraps, a lazy data source whose connection pool has not
+   * been created or false otherwise
+   */
+  public static boolean isNotStarted(DataSource dataSource) {
+    try {
+      return dataSource.isWrapperFor(LazyAgroalDataSource.class) && (!dataSource
+          .unwrap(LazyAgroalDataSource.class).isInitialized());
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether the connection pool for the data source has been created.
+   *
+   * @return true if the connection pool for the data source has been created or false otherwise
+   */
+  public boolean isInitialized() {
+    return delegate != null;
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    // Do not create the connection pool to check what it wraps
+    AgroalDataSource currentDelegate = delegate;
+
+    return iface.isInstance(this) || ((currentDelegate != null) && currentDelegate
+        .isWrapperFor(iface));
+  }
+
+  @Override
+  public void setPoolInterceptors(Collection<? extends AgroalPoolInterceptor> interceptors) {
+    lock.lock();
+
+    try {
+      this.interceptors = (interceptors != null) ? List.copyOf(interceptors) : List.of();
+
+      if (delegate != null) {
+        delegate.setPoolInterceptors(interceptors);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LazyAgroalDataSource {name=\"" + name + "\", initialized=\"" + isInitialized()
+        + "\"}";
+  }
+
+  @Override
+  protected AgroalDataSource getDelegate() {
+    try {
+      return initialize();
+    } catch (SQLException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  private AgroalDataSource initialize() throws SQLException {
+    AgroalDataSource currentDelegate = delegate;
+
+    if (currentDelegate != null) {
+      return currentDelegate;
+    }
+
+    lock.lock();
+
+    try {
+      if (delegate == null) {
+        if (closed) {
+          throw new SQLException("The data source (" + name + ") is closed");
+        }
+
+        AgroalDataSource newDelegate = initializer.initialize();
+
+        if (!interceptors.isEmpty()) {
+          newDelegate.setPoolInterceptors(interceptors);
+        }
+
+        delegate = newDelegate;
+      }
+
+      return delegate;
+    } catch (SQLException e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new SQLException("Failed to initialize the data source (" + name + ")", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The <b>Initializer</b> interface defines the callback used to create the connection pool for
+   * a lazy data source.
+   *
+   * @author Marcus Portmann
+   */
+  @FunctionalInterface
+  public interface Initializer {
+
+    /**
+     * Create the connection pool for the data source.
+     *
+     * @return the connection pool for the data source
+     */
+    AgroalDataSource initialize() throws SQLException;
+  }
+}
@@ -20,7 +20,15 @@ import com.arjuna.ats.arjuna.recovery.RecoveryManager;
 import com.arjuna.ats.internal.jta.recovery.arjunacore.XARecoveryModule;
 import com.arjuna.ats.jta.recovery.XAResourceRecoveryHelper;
 import io.agroal.api.transaction.TransactionAware;
+import io.appnaut.jta.jfr.FlightRecorderXAResource;
+import io.appnaut.jta.statistics.TransactionStatistics;
+import io.appnaut.jta.statistics.TransactionStatisticsXAResource;
+import io.appnaut.jta.tracing.TracedTransaction;
+import io.appnaut.jta.tracing.TracingXAResource;
 import io.appnaut.jta.util.TransactionUtil;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -40,8 +48,12 @@ public class NarayanaTransactionIntegration implements
    */
   private final String dataSourceName;
 
-  // In order to construct a UID that is globally unique, simply pair a UID with an InetAddress.
-  private final UUID key = UUID.randomUUID();
+  /**
+   * The key used to store the transaction aware connection resource enlisted in a transaction
+   * with the transaction synchronization registry, which is shared by the data sources for the
+   * same resource manager when resource manager joining is enabled.
+   */
+  private final Object key;
 
   private final RecoveryManager recoveryManager;
 
@@ -49,6 +61,12 @@ public class NarayanaTransactionIntegration implements
 
   private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 
+  /**
+   * The tracker for the isolation levels of the connections for the data source.
+   */
+  private final TransactionIsolationTracker transactionIsolationTracker =
+      new TransactionIsolationTracker();
+
   public NarayanaTransactionIntegration(String dataSourceName,
       TransactionManager transactionManager,
       TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
@@ -59,7 +77,34 @@ public class NarayanaTransactionIntegration implements
       TransactionManager transactionManager,
       TransactionSynchronizationRegistry transactionSynchronizationRegistry,
       RecoveryManager recoveryManager) {
+    this(dataSourceName, null, transactionManager, transactionSynchronizationRegistry,
+        recoveryManager);
+  }
+
+  /**
+   * Constructs a new <b>NarayanaTransactionIntegration</b>.
+   * <p/>
+   * The data sources created with the same resource manager ID share the connection enlisted in a
+   * transaction, so that a transaction that uses more than one of these data sources has a single
+   * transaction branch and can be completed using a one-phase commit.
+   *
+   * @param dataSourceName                     the name of the data source
+   * @param resourceManagerId                  the ID uniquely identifying the resource manager for
+   *                                           the data source or <b>null</b> if the connections
+   *                                           for the data source should not be shared
+   * @param transactionManager                 the JTA transaction manager
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param recoveryManager                    the Narayana recovery manager or <b>null</b> if
+   *                                           recovery is not supported
+   */
+  public NarayanaTransactionIntegration(String dataSourceName, String resourceManagerId,
+      TransactionManager transactionManager,
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      RecoveryManager recoveryManager) {
     this.dataSourceName = dataSourceName;
+    this.key = (resourceManagerId != null)
+        ? NarayanaTransactionIntegration.class.getName() + ".resourceManager:" + resourceManagerId
+        : UUID.randomUUID();
     this.transactionManager = transactionManager;
     this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
     this.recoveryManager = recoveryManager;
@@ -67,6 +112,11 @@ public class NarayanaTransactionIntegration implements
 
   @Override
   public void addResourceRecoveryFactory(ResourceRecoveryFactory resourceRecoveryFactory) {
+    // There is no recovery manager when the local transaction manager is used
+    if (recoveryManager == null) {
+      return;
+    }
+
     XARecoveryModule xaRecoveryModule = (XARecoveryModule) recoveryManager.getModules().stream()
         .filter(recoveryModule -> recoveryModule instanceof XARecoveryModule).findFirst()
         .orElse(null);
@@ -79,7 +129,8 @@ public class NarayanaTransactionIntegration implements
     xaRecoveryModule.addXAResourceRecoveryHelper(
         xaResourceRecoveryHelperImplCache
             .computeIfAbsent(resourceRecoveryFactory, rrf -> new XAResourceRecoveryHelperImpl(
-                new RecoveryXAResource(dataSourceName, rrf)
+                new FlightRecorderXAResource(dataSourceName,
+                    new RecoveryXAResource(dataSourceName, rrf))
             )));
   }
 
@@ -89,21 +140,29 @@ public class NarayanaTransactionIntegration implements
     try {
       if (transactionRunning()) {
         if (transactionSynchronizationRegistry.getResource(key) == null) {
-          transactionSynchronizationRegistry
-              .registerInterposedSynchronization(new InterposedSynchronization(transactionAware));
-          transactionSynchronizationRegistry.putResource(key, transactionAware);
-
-          XAResource xaResourceToEnlist;
-          if (xaResource != null) {
-            xaResourceToEnlist = new TransactionAwareXAResource(dataSourceName, transactionAware,
-                xaResource);
+          TracedTransaction tracedTransaction =
+              TracedTransaction.getCurrent(transactionSynchronizationRegistry);
+
+          if (tracedTransaction != null) {
+            Span span = tracedTransaction.startSpan("JTA enlist", dataSourceName);
+
+            try {
+              enlist(transactionAware, xaResource, tracedTransaction);
+            } catch (Exception e) {
+              span.recordException(e);
+              span.setStatus(StatusCode.ERROR);
+              throw e;
+            } finally {
+              span.end();
+            }
           } else {
-            xaResourceToEnlist = new LocalXAResource(dataSourceName, transactionAware);
+            enlist(transactionAware, xaResource, null);
           }
-          transactionManager.getTransaction().enlistResource(xaResourceToEnlist);
         } else {
           transactionAware.transactionStart();
         }
+      } else {
+        applyIsolationLevel(transactionAware, -1);
       }
       transactionAware.transactionCheckCallback(this::transactionRunning);
     } catch (Exception e) {
@@ -120,6 +179,16 @@ public class NarayanaTransactionIntegration implements
     return true;
   }
 
+  /**
+   * Returns the tracker for the isolation levels of the connections for the data source, which
+   * must be registered as a listener with the connection pool.
+   *
+   * @return the tracker for the isolation levels of the connections for the data source
+   */
+  public TransactionIsolationTracker getTransactionIsolationTracker() {
+    return transactionIsolationTracker;
+  }
+
   @Override
   public TransactionAware getTransactionAware() {
     if (transactionRunning()) {
@@ -130,6 +199,11 @@ public class NarayanaTransactionIntegration implements
 
   @Override
   public void removeResourceRecoveryFactory(ResourceRecoveryFactory resourceRecoveryFactory) {
+    // There is no recovery manager when the local transaction manager is used
+    if (recoveryManager == null) {
+      return;
+    }
+
     XARecoveryModule xaRecoveryModule = (XARecoveryModule) recoveryManager.getModules().stream()
         .filter(recoveryModule -> recoveryModule instanceof XARecoveryModule).findFirst()
         .orElse(null);
@@ -143,6 +217,62 @@ public class NarayanaTransactionIntegration implements
         xaResourceRecoveryHelperImplCache.remove(resourceRecoveryFactory));
   }
 
+  private void applyIsolationLevel(TransactionAware transactionAware, int isolationLevel)
+      throws SQLException {
+    Object connection = transactionAware.getConnection();
+
+    if (connection instanceof Connection) {
+      transactionIsolationTracker.apply((Connection) connection, isolationLevel);
+    }
+  }
+
+  /**
+   * Enlist the transaction aware connection resource in the JTA transaction associated with the
+   * current thread.
+   *
+   * @param transactionAware  the Agroal transaction aware connection resource
+   * @param xaResource        the XA resource for the connection or <b>null</b> if the data source
+   *                          is not an XA data source
+   * @param tracedTransaction the traced transaction or <b>null</b> if the transaction is not being
+   *                          traced
+   */
+  private void enlist(TransactionAware transactionAware, XAResource xaResource,
+      TracedTransaction tracedTransaction) throws Exception {
+    applyIsolationLevel(transactionAware,
+        TransactionUtil.getIsolationLevel(transactionSynchronizationRegistry));
+
+    transactionSynchronizationRegistry
+        .registerInterposedSynchronization(new InterposedSynchronization(transactionAware));
+    transactionSynchronizationRegistry.putResource(key, transactionAware);
+
+    XAResource xaResourceToEnlist;
+    if (xaResource != null) {
+      xaResourceToEnlist = new TransactionAwareXAResource(dataSourceName, transactionAware,
+          xaResource);
+    } else {
+      xaResourceToEnlist = new LocalXAResource(dataSourceName, transactionAware);
+    }
+
+    xaResourceToEnlist = new FlightRecorderXAResource(dataSourceName, xaResourceToEnlist);
+
+    TransactionStatistics transactionStatistics =
+        TransactionStatistics.getCurrent(transactionSynchronizationRegistry);
+
+    if (transactionStatistics != null) {
+      transactionStatistics.recordConnection();
+
+      xaResourceToEnlist = new TransactionStatisticsXAResource(xaResourceToEnlist,
+          transactionStatistics);
+    }
+
+    if (tracedTransaction != null) {
+      xaResourceToEnlist = new TracingXAResource(dataSourceName, xaResourceToEnlist,
+          tracedTransaction);
+    }
+
+    transactionManager.getTransaction().enlistResource(xaResourceToEnlist);
+  }
+
   private boolean transactionRunning() {
     return TransactionUtil.transactionExists(transactionManager);
   }
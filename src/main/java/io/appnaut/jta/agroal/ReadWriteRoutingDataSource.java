@@ -0,0 +1,305 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.agroal.AgroalDataSourceConfiguration.LoadBalancing;
+import io.micronaut.transaction.support.TransactionSynchronizationManager;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>ReadWriteRoutingDataSource</b> class implements an Agroal data source that fronts a
+ * primary data source and one or more replica data sources.
+ * <p/>
+ * Connections for read-only transactions are retrieved from a replica data source, selected
+ * round-robin or based on the number of active connections for each replica, and all other
+ * connections are retrieved from the primary data source. The data source selected for a JTA
+ * transaction is pinned for the lifetime of the transaction. After a transaction that used the
+ * primary data source commits, read-only transactions for the same client are also sent to the
+ * primary data source for the read-your-writes window, so that they do not miss the changes that
+ * have not yet been replicated.
+ * <p/>
+ * While an HTTP request is being processed, the client is identified by the {@link
+ * ReadYourWritesToken} for the request, which the {@link ReadYourWritesFilter} carries between
+ * requests in a cookie or header, so the window applies to the later requests from the client
+ * regardless of the thread or application instance that processes them. Outside an HTTP request,
+ * e.g. for scheduled or message-driven work, the window is tracked per thread on a best-effort
+ * basis and is not applied to work for the same client on other threads.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class ReadWriteRoutingDataSource extends DelegatingAgroalDataSource {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+  private static final long serialVersionUID = 1000000;
+
+  /**
+   * The time the last transaction that used the primary data source committed on each thread,
+   * which is used outside HTTP requests on a best-effort basis.
+   */
+  private final ThreadLocal<long[]> lastWriteCommit = ThreadLocal.withInitial(() -> new long[1]);
+
+  private final LoadBalancing loadBalancing;
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  /**
+   * The primary data source.
+   */
+  private final AgroalDataSource primary;
+
+  private final long readYourWritesWindowMillis;
+
+  private final long readYourWritesWindowNanos;
+
+  /**
+   * The replica data sources.
+   */
+  private final List<AgroalDataSource> replicas;
+
+  /**
+   * The key used to store the data source selected for a transaction with the transaction
+   * synchronization registry.
+   */
+  private final Object transactionResourceKey = new Object();
+
+  private final AtomicInteger roundRobinIndex = new AtomicInteger();
+
+  /**
+   * The transaction synchronization registry or <b>null</b> if JTA transactions are not
+   * supported.
+   */
+  private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+  /**
+   * Constructs a new <b>ReadWriteRoutingDataSource</b>.
+   *
+   * @param name                               the name of the data source
+   * @param primary                            the primary data source
+   * @param replicas                           the replica data sources
+   * @param loadBalancing                      the strategy used to select the replica data source
+   *                                           for read-only work
+   * @param readYourWritesWindow               the period after a transaction commits on the
+   *                                           primary data source during which read-only work on
+   *                                           the same thread is also sent to the primary data
+   *                                           source
+   * @param transactionSynchronizationRegistry the transaction synchronization registry or
+   *                                           <b>null</b> if JTA transactions are not supported
+   */
+  public ReadWriteRoutingDataSource(String name, AgroalDataSource primary,
+      List<AgroalDataSource> replicas, LoadBalancing loadBalancing, Duration readYourWritesWindow,
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+    this.name = name;
+    this.primary = primary;
+    this.replicas = List.copyOf(replicas);
+    this.loadBalancing = loadBalancing;
+    this.readYourWritesWindowMillis = readYourWritesWindow.toMillis();
+    this.readYourWritesWindowNanos = readYourWritesWindow.toNanos();
+    this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    AgroalDataSource target = route();
+
+    if (target != primary) {
+      try {
+        return target.getConnection();
+      } catch (SQLException e) {
+        if (logger.isWarnEnabled()) {
+          logger.warn("Failed to retrieve a connection from a replica for the data source (" + name
+              + "), falling back to the primary data source", e);
+        }
+
+        if (isTransactionActive()) {
+          transactionSynchronizationRegistry.putResource(transactionResourceKey, primary);
+        }
+      }
+    }
+
+    return primary.getConnection();
+  }
+
+  /**
+   * Returns the primary data source.
+   *
+   * @return the primary data source
+   */
+  public AgroalDataSource getPrimary() {
+    return primary;
+  }
+
+  /**
+   * Returns the replica data sources.
+   *
+   * @return the replica data sources
+   */
+  public List<AgroalDataSource> getReplicas() {
+    return replicas;
+  }
+
+  @Override
+  public String toString() {
+    return "ReadWriteRoutingDataSource {name=\"" + name + "\", replicas=\"" + replicas.size()
+        + "\"}";
+  }
+
+  @Override
+  protected AgroalDataSource getDelegate() {
+    return primary;
+  }
+
+  private boolean isTransactionActive() {
+    return (transactionSynchronizationRegistry != null)
+        && (transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_ACTIVE);
+  }
+
+  private boolean isWithinReadYourWritesWindow() {
+    if (readYourWritesWindowNanos <= 0) {
+      return false;
+    }
+
+    ReadYourWritesToken readYourWritesToken = ReadYourWritesToken.current();
+
+    if (readYourWritesToken != null) {
+      long lastWriteCommitMillis = readYourWritesToken.getLastWriteCommitMillis();
+
+      return (lastWriteCommitMillis != 0)
+          && ((System.currentTimeMillis() - lastWriteCommitMillis) < readYourWritesWindowMillis);
+    }
+
+    long lastWriteCommitNanos = lastWriteCommit.get()[0];
+
+    return (lastWriteCommitNanos != 0)
+        && ((System.nanoTime() - lastWriteCommitNanos) < readYourWritesWindowNanos);
+  }
+
+  private AgroalDataSource route() {
+    boolean transactionActive = isTransactionActive();
+
+    if (transactionActive) {
+      AgroalDataSource pinned =
+          (AgroalDataSource) transactionSynchronizationRegistry.getResource(transactionResourceKey);
+
+      if (pinned != null) {
+        return pinned;
+      }
+    }
+
+    AgroalDataSource target;
+
+    if (replicas.isEmpty() || (!TransactionSynchronizationManager.isCurrentTransactionReadOnly())
+        || isWithinReadYourWritesWindow()) {
+      target = primary;
+    } else {
+      target = selectReplica();
+    }
+
+    if (transactionActive) {
+      transactionSynchronizationRegistry.putResource(transactionResourceKey, target);
+
+      if ((target == primary) && (readYourWritesWindowNanos > 0)) {
+        transactionSynchronizationRegistry.registerInterposedSynchronization(
+            new WriteCommitSynchronization(lastWriteCommit.get(), ReadYourWritesToken.current()));
+      }
+    }
+
+    return target;
+  }
+
+  private AgroalDataSource selectReplica() {
+    if (replicas.size() == 1) {
+      return replicas.get(0);
+    }
+
+    if (loadBalancing == LoadBalancing.LEAST_ACTIVE) {
+      AgroalDataSource selected = null;
+      long selectedActiveCount = Long.MAX_VALUE;
+
+      for (AgroalDataSource replica : replicas) {
+        long activeCount = replica.getMetrics().activeCount();
+
+        if (activeCount < selectedActiveCount) {
+          selected = replica;
+          selectedActiveCount = activeCount;
+        }
+      }
+
+      return selected;
+    } else {
+      return replicas.get(Math.floorMod(roundRobinIndex.getAndIncrement(), replicas.size()));
+    }
+  }
+
+  /**
+   * The <b>WriteCommitSynchronization</b> class records the time a transaction that used the
+   * primary data source committed for the thread the transaction was started on and for the HTTP
+   * request being processed if there is one.
+   */
+  private static class WriteCommitSynchronization implements Synchronization {
+
+    private final long[] lastWriteCommit;
+
+    /**
+     * The token for the HTTP request being processed or <b>null</b> if no HTTP request is being
+     * processed.
+     */
+    private final ReadYourWritesToken readYourWritesToken;
+
+    /**
+     * Constructs a new <b>WriteCommitSynchronization</b>.
+     *
+     * @param lastWriteCommit     the holder for the time the last transaction that used the
+     *                            primary data source committed on the thread
+     * @param readYourWritesToken the token for the HTTP request being processed or <b>null</b> if
+     *                            no HTTP request is being processed
+     */
+    WriteCommitSynchronization(long[] lastWriteCommit, ReadYourWritesToken readYourWritesToken) {
+      this.lastWriteCommit = lastWriteCommit;
+      this.readYourWritesToken = readYourWritesToken;
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      if (status == Status.STATUS_COMMITTED) {
+        lastWriteCommit[0] = System.nanoTime();
+
+        if (readYourWritesToken != null) {
+          readYourWritesToken.recordWriteCommit();
+        }
+      }
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+  }
+}
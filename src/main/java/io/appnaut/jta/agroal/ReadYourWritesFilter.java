@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.cookie.Cookie;
+import io.micronaut.http.filter.HttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.reactivex.Flowable;
+import java.util.Optional;
+import org.reactivestreams.Publisher;
+
+/**
+ * The <b>ReadYourWritesFilter</b> class implements the HTTP server filter that makes the
+ * read-your-writes window for a {@link ReadWriteRoutingDataSource} follow the client rather than
+ * the thread processing the request.
+ * <p/>
+ * The time the last write committed for the client is read from the {@link
+ * ReadYourWritesToken#HEADER_NAME} header or the {@link ReadYourWritesToken#COOKIE_NAME} cookie
+ * and stored as a {@link ReadYourWritesToken} attribute of the request. If a transaction that
+ * used a primary data source commits while the request is processed, the updated time is returned
+ * to the client in both the header and the cookie. The filter is only loaded when replicas are
+ * configured for at least one data source.
+ *
+ * @author Marcus Portmann
+ */
+@Filter("/**")
+@Requires(condition = ReplicasConfiguredCondition.class)
+@SuppressWarnings("unused")
+public class ReadYourWritesFilter implements HttpServerFilter {
+
+  @Override
+  public Publisher<MutableHttpResponse<?>> doFilter(HttpRequest<?> request,
+      ServerFilterChain chain) {
+    ReadYourWritesToken token = new ReadYourWritesToken(getLastWriteCommitMillis(request));
+
+    request.setAttribute(ReadYourWritesToken.ATTRIBUTE, token);
+
+    return Flowable.fromPublisher(chain.proceed(request))
+        .doOnNext(response -> {
+          if (token.isUpdated()) {
+            String lastWriteCommitMillis = Long.toString(token.getLastWriteCommitMillis());
+
+            response.header(ReadYourWritesToken.HEADER_NAME, lastWriteCommitMillis);
+            response.cookie(Cookie.of(ReadYourWritesToken.COOKIE_NAME, lastWriteCommitMillis)
+                .path("/").httpOnly(true));
+          }
+        });
+  }
+
+  private long getLastWriteCommitMillis(HttpRequest<?> request) {
+    String value = request.getHeaders().get(ReadYourWritesToken.HEADER_NAME);
+
+    if (value == null) {
+      Optional<Cookie> cookieOptional = request.getCookies()
+          .findCookie(ReadYourWritesToken.COOKIE_NAME);
+
+      if (cookieOptional.isPresent()) {
+        value = cookieOptional.get().getValue();
+      }
+    }
+
+    if (value == null) {
+      return 0;
+    }
+
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.micronaut.http.context.ServerRequestContext;
+
+/**
+ * The <b>ReadYourWritesToken</b> class holds the time the last transaction that used the primary
+ * data source for a {@link ReadWriteRoutingDataSource} committed for a client.
+ * <p/>
+ * The token is stored as an attribute of the HTTP request being processed by the
+ * {@link ReadYourWritesFilter}, which restores the time from, and returns the updated time to, the
+ * client using a cookie or header. This makes the read-your-writes guarantee follow the client
+ * across requests, threads and application instances. The time is the wall-clock time of the
+ * instance that committed the transaction, so the guarantee across instances is only as accurate
+ * as the synchronization of their clocks.
+ *
+ * @author Marcus Portmann
+ */
+public class ReadYourWritesToken {
+
+  /**
+   * The name of the request attribute used to store the token for the request.
+   */
+  public static final String ATTRIBUTE = ReadYourWritesToken.class.getName();
+
+  /**
+   * The name of the cookie used to store the time the last write committed for the client.
+   */
+  public static final String COOKIE_NAME = "appnaut-last-write";
+
+  /**
+   * The name of the header used to pass the time the last write committed for the client.
+   */
+  public static final String HEADER_NAME = "X-Appnaut-Last-Write";
+
+  /**
+   * The time in milliseconds since the epoch that the last write committed for the client or 0 if
+   * there has been no write.
+   */
+  private volatile long lastWriteCommitMillis;
+
+  /**
+   * Has a write committed while processing the current request.
+   */
+  private volatile boolean updated;
+
+  /**
+   * Constructs a new <b>ReadYourWritesToken</b>.
+   *
+   * @param lastWriteCommitMillis the time in milliseconds since the epoch that the last write
+   *                              committed for the client or 0 if there has been no write
+   */
+  public ReadYourWritesToken(long lastWriteCommitMillis) {
+    this.lastWriteCommitMillis = lastWriteCommitMillis;
+  }
+
+  /**
+   * Returns the token for the HTTP request being processed.
+   *
+   * @return the token for the HTTP request being processed or <b>null</b> if no HTTP request is
+   * being processed
+   */
+  public static ReadYourWritesToken current() {
+    return ServerRequestContext.currentRequest()
+        .flatMap(request -> request.getAttribute(ATTRIBUTE, ReadYourWritesToken.class))
+        .orElse(null);
+  }
+
+  /**
+   * Returns the time in milliseconds since the epoch that the last write committed for the
+   * client.
+   *
+   * @return the time in milliseconds since the epoch that the last write committed for the client
+   * or 0 if there has been no write
+   */
+  public long getLastWriteCommitMillis() {
+    return lastWriteCommitMillis;
+  }
+
+  /**
+   * Returns whether a write committed while processing the current request.
+   *
+   * @return true if a write committed while processing the current request or false otherwise
+   */
+  public boolean isUpdated() {
+    return updated;
+  }
+
+  /**
+   * Record that a transaction that used the primary data source committed.
+   */
+  public void recordWriteCommit() {
+    lastWriteCommitMillis = System.currentTimeMillis();
+    updated = true;
+  }
+}
@@ -100,7 +100,10 @@ public class RecoveryXAResource implements AutoCloseable, XAResource {
     if (flag == TMSTARTRSCAN) {
       try {
         xaConnection = resourceRecoveryFactory.getRecoveryConnection();
-        xaResource = xaConnection.getXAResource();
+
+        if (xaConnection != null) {
+          xaResource = xaConnection.getXAResource();
+        }
       } catch (SQLException e) {
         XAExceptionUtil.xaException(XAException.XAER_RMFAIL, "Failed to retrieve the recovery XAConnection from the ResourceRecoveryFactory for the data source (" + dataSourceName  + ")", e);
       }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.micronaut.context.condition.Condition;
+import io.micronaut.context.condition.ConditionContext;
+
+/**
+ * The <b>ReplicasConfiguredCondition</b> class implements the condition that is only satisfied
+ * when replicas are configured for at least one data source, i.e. when at least one {@link
+ * ReadWriteRoutingDataSource} is created.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class ReplicasConfiguredCondition implements Condition {
+
+  @Override
+  public boolean matches(ConditionContext context) {
+    for (AgroalDataSourceConfiguration agroalDataSourceConfiguration : context.getBeanContext()
+        .getBeansOfType(AgroalDataSourceConfiguration.class)) {
+      if (!agroalDataSourceConfiguration.getReplicas().isEmpty()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.agroal;
+
+import io.agroal.api.AgroalDataSourceListener;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The <b>TransactionIsolationTracker</b> class tracks the transaction isolation level for the
+ * physical connections for a data source, so that the isolation level is only changed when a
+ * transaction requires a different isolation level to the one the connection already has.
+ * <p/>
+ * The isolation level for a connection is not restored when a transaction completes. Instead, the
+ * original isolation level is restored the next time the connection is used by a transaction
+ * with the default isolation level or outside a transaction. Connections whose isolation level has
+ * never been changed are not tracked, so transactions with the default isolation level never incur
+ * an additional round-trip to the database.
+ *
+ * @author Marcus Portmann
+ */
+public class TransactionIsolationTracker implements AgroalDataSourceListener {
+
+  /**
+   * The isolation levels for the physical connections whose isolation level has been changed.
+   */
+  private final Map<Connection, IsolationLevel> isolationLevels = new ConcurrentHashMap<>();
+
+  /**
+   * Apply the isolation level to the physical connection if it does not already have this
+   * isolation level.
+   *
+   * @param connection     the physical connection
+   * @param isolationLevel the JDBC isolation level or -1 to apply the original isolation level for
+   *                       the connection
+   */
+  public void apply(Connection connection, int isolationLevel) throws SQLException {
+    IsolationLevel trackedIsolationLevel = isolationLevels.get(connection);
+
+    if (trackedIsolationLevel == null) {
+      if (isolationLevel == -1) {
+        return;
+      }
+
+      int originalIsolationLevel = connection.getTransactionIsolation();
+
+      if (originalIsolationLevel == isolationLevel) {
+        return;
+      }
+
+      connection.setTransactionIsolation(isolationLevel);
+
+      isolationLevels.put(connection, new IsolationLevel(originalIsolationLevel, isolationLevel));
+    } else {
+      int requiredIsolationLevel = (isolationLevel == -1) ? trackedIsolationLevel.original
+          : isolationLevel;
+
+      if (trackedIsolationLevel.current != requiredIsolationLevel) {
+        connection.setTransactionIsolation(requiredIsolationLevel);
+
+        trackedIsolationLevel.current = requiredIsolationLevel;
+      }
+    }
+  }
+
+  @Override
+  public void onConnectionDestroy(Connection connection) {
+    isolationLevels.remove(connection);
+  }
+
+  /**
+   * The <b>IsolationLevel</b> class holds the original and current isolation levels for a
+   * physical connection. It is only accessed by the thread the connection is checked out to.
+   */
+  private static class IsolationLevel {
+
+    private final int original;
+
+    private int current;
+
+    IsolationLevel(int original, int current) {
+      this.original = original;
+      this.current = current;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.batch;
+
+/**
+ * The <b>BatchJobResult</b> class holds the result of executing a batch job.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class BatchJobResult {
+
+  private final long chunksProcessed;
+
+  private final long chunksSkipped;
+
+  private final long itemsProcessed;
+
+  /**
+   * Constructs a new <b>BatchJobResult</b>.
+   *
+   * @param chunksProcessed the number of chunks processed
+   * @param chunksSkipped   the number of chunks skipped because they were processed by an earlier
+   *                        execution of the batch job
+   * @param itemsProcessed  the number of items processed
+   */
+  public BatchJobResult(long chunksProcessed, long chunksSkipped, long itemsProcessed) {
+    this.chunksProcessed = chunksProcessed;
+    this.chunksSkipped = chunksSkipped;
+    this.itemsProcessed = itemsProcessed;
+  }
+
+  /**
+   * Returns the number of chunks processed.
+   *
+   * @return the number of chunks processed
+   */
+  public long getChunksProcessed() {
+    return chunksProcessed;
+  }
+
+  /**
+   * Returns the number of chunks skipped because they were processed by an earlier execution of
+   * the batch job.
+   *
+   * @return the number of chunks skipped because they were processed by an earlier execution of
+   * the batch job
+   */
+  public long getChunksSkipped() {
+    return chunksSkipped;
+  }
+
+  /**
+   * Returns the number of items processed.
+   *
+   * @return the number of items processed
+   */
+  public long getItemsProcessed() {
+    return itemsProcessed;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchJobResult {chunksProcessed=\"" + chunksProcessed + "\", chunksSkipped=\""
+        + chunksSkipped + "\", itemsProcessed=\"" + itemsProcessed + "\"}";
+  }
+}
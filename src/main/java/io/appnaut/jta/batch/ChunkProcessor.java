@@ -0,0 +1,39 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.batch;
+
+import java.util.List;
+
+/**
+ * The <b>ChunkProcessor</b> interface defines the work performed for a single chunk of a batch
+ * job, in the JTA transaction for the chunk.
+ *
+ * @param <T> the type of item processed by the batch job
+ *
+ * @author Marcus Portmann
+ */
+@FunctionalInterface
+public interface ChunkProcessor<T> {
+
+  /**
+   * Process the chunk.
+   *
+   * @param chunk the items in the chunk
+   */
+  void process(List<T> chunk) throws Exception;
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.batch;
+
+import io.micronaut.transaction.SynchronousTransactionManager;
+import io.micronaut.transaction.support.DefaultTransactionDefinition;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>ChunkedBatchExecutor</b> class executes a batch job by splitting its input into chunks
+ * and processing each chunk in its own JTA transaction, so that no single transaction has to
+ * cover the whole input.
+ * <p/>
+ * The chunks are processed in parallel by a fixed number of worker threads, while the input is
+ * read sequentially on the calling thread, and at most one chunk per worker is held in memory at
+ * any time. A checkpoint for each chunk is recorded in the <b>poc.batch_job_checkpoints</b> table
+ * in the same transaction as the work for the chunk, so the chunk and its checkpoint are committed
+ * atomically. When a batch job with the same name is executed again, e.g. after a failure, the
+ * chunks that have already been committed are skipped, which requires the input to contain the
+ * same items in the same order. The checkpoints are retained after a batch job completes, so a
+ * batch job that should run again from the start must use a new name or have its checkpoints
+ * reset.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class ChunkedBatchExecutor {
+
+  private static final String DELETE_CHECKPOINTS_SQL =
+      "DELETE FROM poc.batch_job_checkpoints WHERE job_name = ?";
+
+  private static final String INSERT_CHECKPOINT_SQL =
+      "INSERT INTO poc.batch_job_checkpoints (job_name, chunk_number, item_count, completed) "
+          + "VALUES (?, ?, ?, ?)";
+
+  private static final String SELECT_CHECKPOINTS_SQL =
+      "SELECT chunk_number FROM poc.batch_job_checkpoints WHERE job_name = ?";
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkedBatchExecutor.class);
+
+  /**
+   * The maximum number of items in a chunk.
+   */
+  private final int chunkSize;
+
+  private final SynchronousTransactionManager<Connection> transactionManager;
+
+  /**
+   * The number of worker threads used to process the chunks in parallel.
+   */
+  private final int workers;
+
+  /**
+   * Constructs a new <b>ChunkedBatchExecutor</b>.
+   *
+   * @param transactionManager the transaction manager for the data source that the work for the
+   *                           chunks and the checkpoints are written to
+   * @param chunkSize          the maximum number of items in a chunk
+   * @param workers            the number of worker threads used to process the chunks in
+   *                           parallel
+   */
+  public ChunkedBatchExecutor(SynchronousTransactionManager<Connection> transactionManager,
+      int chunkSize, int workers) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("The chunk size must be greater than zero");
+    }
+
+    if (workers < 1) {
+      throw new IllegalArgumentException("The number of workers must be greater than zero");
+    }
+
+    this.transactionManager = transactionManager;
+    this.chunkSize = chunkSize;
+    this.workers = workers;
+  }
+
+  /**
+   * Execute the batch job.
+   *
+   * @param jobName   the name of the batch job
+   * @param items     the input for the batch job, which will be closed once it has been read
+   * @param processor the processor for the chunks
+   * @param <T>       the type of item processed by the batch job
+   *
+   * @return the result of executing the batch job
+   */
+  public <T> BatchJobResult execute(String jobName, Stream<T> items, ChunkProcessor<T> processor) {
+    try (items) {
+      return execute(jobName, items.iterator(), processor);
+    }
+  }
+
+  /**
+   * Execute the batch job.
+   *
+   * @param jobName   the name of the batch job
+   * @param items     the input for the batch job
+   * @param processor the processor for the chunks
+   * @param <T>       the type of item processed by the batch job
+   *
+   * @return the result of executing the batch job
+   */
+  public <T> BatchJobResult execute(String jobName, Iterator<T> items,
+      ChunkProcessor<T> processor) {
+    Set<Long> completedChunks = getCompletedChunks(jobName);
+
+    AtomicInteger threadNumber = new AtomicInteger();
+
+    ExecutorService executorService = Executors.newFixedThreadPool(workers, runnable -> {
+      Thread thread = new Thread(runnable,
+          "batch-job-" + jobName + "-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    // Limits the chunks held in memory to the chunks being processed by the workers
+    Semaphore availableWorkers = new Semaphore(workers);
+
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    LongAdder chunksProcessed = new LongAdder();
+    LongAdder itemsProcessed = new LongAdder();
+    long chunksSkipped = 0;
+    long chunkNumber = 0;
+
+    try {
+      while (items.hasNext() && (failure.get() == null)) {
+        List<T> chunk = new ArrayList<>(chunkSize);
+
+        while ((chunk.size() < chunkSize) && items.hasNext()) {
+          chunk.add(items.next());
+        }
+
+        long currentChunkNumber = chunkNumber++;
+
+        if (completedChunks.contains(currentChunkNumber)) {
+          chunksSkipped++;
+          continue;
+        }
+
+        availableWorkers.acquire();
+
+        executorService.execute(() -> {
+          try {
+            processChunk(jobName, currentChunkNumber, chunk, processor);
+
+            chunksProcessed.increment();
+            itemsProcessed.add(chunk.size());
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            availableWorkers.release();
+          }
+        });
+      }
+
+      // Wait for the chunks that are still being processed
+      availableWorkers.acquire(workers);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new BatchJobException(
+          "Interrupted while executing the batch job (" + jobName + ")", e);
+    } finally {
+      executorService.shutdown();
+    }
+
+    if (failure.get() != null) {
+      throw new BatchJobException("Failed to execute the batch job (" + jobName + ") after "
+          + chunksProcessed.sum() + " chunks were processed", failure.get());
+    }
+
+    BatchJobResult result = new BatchJobResult(chunksProcessed.sum(), chunksSkipped,
+        itemsProcessed.sum());
+
+    if (logger.isInfoEnabled()) {
+      logger.info("Executed the batch job (" + jobName + "): " + result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Reset the checkpoints for the batch job, so that the next execution of the batch job
+   * processes all the chunks.
+   *
+   * @param jobName the name of the batch job
+   */
+  public void resetCheckpoints(String jobName) {
+    transactionManager.executeWrite(status -> {
+      try (Connection connection = transactionManager.getConnection();
+          PreparedStatement statement = connection.prepareStatement(DELETE_CHECKPOINTS_SQL)) {
+        statement.setString(1, jobName);
+        statement.executeUpdate();
+      }
+
+      return null;
+    });
+  }
+
+  private Set<Long> getCompletedChunks(String jobName) {
+    // The checkpoints are read in a read-write transaction so that they are never read from a
+    // replica that has not caught up with the primary
+    return transactionManager.executeWrite(status -> {
+      Set<Long> completedChunks = new HashSet<>();
+
+      try (Connection connection = transactionManager.getConnection();
+          PreparedStatement statement = connection.prepareStatement(SELECT_CHECKPOINTS_SQL)) {
+        statement.setString(1, jobName);
+
+        try (ResultSet rs = statement.executeQuery()) {
+          while (rs.next()) {
+            completedChunks.add(rs.getLong(1));
+          }
+        }
+      }
+
+      return completedChunks;
+    });
+  }
+
+  private <T> void processChunk(String jobName, long chunkNumber, List<T> chunk,
+      ChunkProcessor<T> processor) {
+    DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+    definition.setName(jobName);
+
+    transactionManager.execute(definition, status -> {
+      processor.process(chunk);
+
+      try (Connection connection = transactionManager.getConnection();
+          PreparedStatement statement = connection.prepareStatement(INSERT_CHECKPOINT_SQL)) {
+        statement.setString(1, jobName);
+        statement.setLong(2, chunkNumber);
+        statement.setInt(3, chunk.size());
+        statement.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+        statement.executeUpdate();
+      }
+
+      return null;
+    });
+  }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.concurrent;
+
+import io.appnaut.jta.util.TransactionUtil;
+import io.micronaut.transaction.exceptions.TransactionSystemException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The <b>TransactionPropagatingExecutorService</b> class implements an executor service that runs
+ * each task in the JTA transaction that was associated with the thread that submitted the task.
+ * <p/>
+ * The transaction is resumed on the worker thread before the task runs and is disassociated from
+ * the worker thread when the task completes, without being committed or rolled back, so the
+ * submitting thread remains responsible for completing the transaction. Tasks submitted without a
+ * transaction run without a transaction. The connections enlisted in a transaction are shared by
+ * all the threads the transaction is associated with, so tasks running in parallel within the same
+ * transaction should use different data sources, e.g. the shards in a shard set.
+ * <p/>
+ * A transaction cannot be completed while tasks submitted in it are still outstanding. Before the
+ * transaction commits, the committing thread waits for the outstanding tasks to finish, for up to
+ * the completion timeout, and the transaction is rolled back if they do not finish in time. Tasks
+ * submitted once the transaction has started to complete are rejected. A task must therefore not
+ * wait for the thread that completes its transaction. Tasks that are still running when a
+ * transaction is rolled back fail when they next use the transaction.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class TransactionPropagatingExecutorService extends AbstractExecutorService {
+
+  /**
+   * The maximum time to wait for the outstanding tasks for a transaction before it commits.
+   */
+  private final Duration completionTimeout;
+
+  /**
+   * The executor service that is delegated to.
+   */
+  private final ExecutorService delegate;
+
+  /**
+   * The key used to store the outstanding tasks for a transaction with the transaction
+   * synchronization registry.
+   */
+  private final Object outstandingTasksKey =
+      TransactionPropagatingExecutorService.class.getName() + ".outstandingTasks@"
+          + Integer.toHexString(System.identityHashCode(this));
+
+  /**
+   * The lock used to register the outstanding tasks for a transaction only once.
+   */
+  private final ReentrantLock outstandingTasksLock = new ReentrantLock();
+
+  private final TransactionManager transactionManager;
+
+  private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+  /**
+   * Constructs a new <b>TransactionPropagatingExecutorService</b>.
+   *
+   * @param delegate                           the executor service that is delegated to
+   * @param transactionManager                 the JTA transaction manager
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param completionTimeout                  the maximum time to wait for the outstanding tasks
+   *                                           for a transaction before it commits
+   */
+  public TransactionPropagatingExecutorService(ExecutorService delegate,
+      TransactionManager transactionManager,
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      Duration completionTimeout) {
+    this.delegate = delegate;
+    this.transactionManager = transactionManager;
+    this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+    this.completionTimeout = completionTimeout;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (command instanceof TransactionPropagatingFutureTask) {
+      TransactionPropagatingFutureTask<?> task = (TransactionPropagatingFutureTask<?>) command;
+
+      try {
+        delegate.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.release();
+
+        throw e;
+      }
+    } else {
+      Transaction transaction = TransactionUtil.getTransaction(transactionManager);
+
+      if (transaction == null) {
+        delegate.execute(command);
+      } else {
+        OutstandingTasks outstandingTasks = registerTask();
+
+        try {
+          delegate.execute(() -> {
+            try {
+              TransactionUtil.callInTransaction(transactionManager, transaction, () -> {
+                command.run();
+                return null;
+              });
+            } catch (RuntimeException e) {
+              throw e;
+            } catch (Exception e) {
+              throw new TransactionSystemException(
+                  "Failed to run the task in the JTA transaction", e);
+            } finally {
+              outstandingTasks.deregister();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          outstandingTasks.deregister();
+
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+    return newTaskFor(() -> {
+      runnable.run();
+      return value;
+    });
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+    Transaction transaction = TransactionUtil.getTransaction(transactionManager);
+
+    if (transaction == null) {
+      return new TransactionPropagatingFutureTask<>(callable, null);
+    } else {
+      return new TransactionPropagatingFutureTask<>(
+          () -> TransactionUtil.callInTransaction(transactionManager, transaction, callable),
+          registerTask());
+    }
+  }
+
+  /**
+   * Register a task for the JTA transaction associated with the current thread.
+   *
+   * @return the outstanding tasks for the JTA transaction
+   */
+  private OutstandingTasks registerTask() {
+    outstandingTasksLock.lock();
+
+    try {
+      OutstandingTasks outstandingTasks = (OutstandingTasks) transactionSynchronizationRegistry
+          .getResource(outstandingTasksKey);
+
+      if (outstandingTasks == null) {
+        outstandingTasks = new OutstandingTasks();
+
+        transactionSynchronizationRegistry.registerInterposedSynchronization(outstandingTasks);
+        transactionSynchronizationRegistry.putResource(outstandingTasksKey, outstandingTasks);
+      }
+
+      if (!outstandingTasks.register()) {
+        throw new RejectedExecutionException(
+            "Failed to submit the task because its JTA transaction is completing");
+      }
+
+      return outstandingTasks;
+    } catch (IllegalStateException e) {
+      throw new RejectedExecutionException(
+          "Failed to submit the task because its JTA transaction is completing", e);
+    } finally {
+      outstandingTasksLock.unlock();
+    }
+  }
+
+  /**
+   * The <b>OutstandingTasks</b> class tracks the tasks submitted in a JTA transaction that have
+   * not finished and delays the completion of the transaction until they have finished.
+   */
+  private class OutstandingTasks implements Synchronization {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The condition signalled when all the outstanding tasks have finished.
+     */
+    private final Condition finished = lock.newCondition();
+
+    /**
+     * Has the transaction started to complete.
+     */
+    private boolean completing;
+
+    /**
+     * The number of outstanding tasks.
+     */
+    private int count;
+
+    @Override
+    public void afterCompletion(int status) {
+      lock.lock();
+
+      try {
+        completing = true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void beforeCompletion() {
+      lock.lock();
+
+      try {
+        completing = true;
+
+        long remainingNanos = completionTimeout.toNanos();
+
+        while (count > 0) {
+          if (remainingNanos <= 0) {
+            transactionSynchronizationRegistry.setRollbackOnly();
+
+            throw new IllegalStateException("Failed to complete the JTA transaction because "
+                + count + " task(s) submitted in the transaction did not finish within "
+                + completionTimeout.toMillis() + " ms");
+          }
+
+          remainingNanos = finished.awaitNanos(remainingNanos);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        transactionSynchronizationRegistry.setRollbackOnly();
+
+        throw new IllegalStateException("Interrupted while waiting for the " + count
+            + " task(s) submitted in the JTA transaction to finish", e);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void deregister() {
+      lock.lock();
+
+      try {
+        if (--count == 0) {
+          finished.signalAll();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    boolean register() {
+      lock.lock();
+
+      try {
+        if (completing) {
+          return false;
+        }
+
+        count++;
+
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * The <b>TransactionPropagatingFutureTask</b> class implements the tasks whose transaction has
+   * already been captured when they were submitted, and releases the task from the outstanding
+   * tasks for the transaction once it has finished or has been cancelled before it started.
+   *
+   * @param <T> the result type
+   */
+  private static class TransactionPropagatingFutureTask<T> extends FutureTask<T> {
+
+    private static final int FINISHED = 2;
+
+    private static final int NEW = 0;
+
+    private static final int RUNNING = 1;
+
+    /**
+     * The outstanding tasks for the transaction or <b>null</b> if the task was submitted without a
+     * transaction.
+     */
+    private final OutstandingTasks outstandingTasks;
+
+    private final AtomicInteger state;
+
+    TransactionPropagatingFutureTask(Callable<T> callable, OutstandingTasks outstandingTasks) {
+      this(callable, outstandingTasks, new AtomicInteger(NEW));
+    }
+
+    private TransactionPropagatingFutureTask(Callable<T> callable,
+        OutstandingTasks outstandingTasks, AtomicInteger state) {
+      super(() -> {
+        if (!state.compareAndSet(NEW, RUNNING)) {
+          return null;
+        }
+
+        try {
+          return callable.call();
+        } finally {
+          state.set(FINISHED);
+
+          if (outstandingTasks != null) {
+            outstandingTasks.deregister();
+          }
+        }
+      });
+      this.outstandingTasks = outstandingTasks;
+      this.state = state;
+    }
+
+    @Override
+    protected void done() {
+      // A task cancelled before it started never runs, a running task releases itself
+      release();
+    }
+
+    /**
+     * Release the task from the outstanding tasks for the transaction if it has not started.
+     */
+    void release() {
+      if (state.compareAndSet(NEW, FINISHED) && (outstandingTasks != null)) {
+        outstandingTasks.deregister();
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.concurrent;
+
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.TaskExecutors;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The <b>TransactionPropagationFactory</b> class implements the factory responsible for creating
+ * the executor service that propagates the JTA transaction for the submitting thread to the
+ * threads that run its tasks.
+ * <p/>
+ * The executor service is named <b>jta</b>, so methods annotated with <b>@Async("jta")</b> and
+ * completable futures created with the executor service run in the caller's JTA transaction. A
+ * transaction only commits once the tasks submitted in it have finished, waiting for up to
+ * <b>appnaut.jta.executor.completion-timeout</b> (30 seconds by default) before rolling back, so
+ * <b>@Async("jta")</b> methods cannot outlive the transaction they were called in.
+ *
+ * @author Marcus Portmann
+ */
+@Factory
+@SuppressWarnings("unused")
+public class TransactionPropagationFactory {
+
+  /**
+   * The prefix for the configuration properties for the executor service.
+   */
+  public static final String PREFIX = "appnaut.jta.executor";
+
+  /**
+   * The name of the executor service that propagates the JTA transaction.
+   */
+  public static final String JTA = "jta";
+
+  /**
+   * Create the executor service that propagates the JTA transaction for the submitting thread to
+   * the threads that run its tasks.
+   *
+   * @param executorService                    the I/O executor service the tasks are run on
+   * @param transactionManager                 the JTA transaction manager
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param completionTimeout                  the maximum time to wait for the outstanding tasks
+   *                                           for a transaction before it commits
+   *
+   * @return the executor service that propagates the JTA transaction
+   */
+  @Singleton
+  @Named(JTA)
+  public ExecutorService jtaExecutorService(
+      @Named(TaskExecutors.IO) ExecutorService executorService,
+      TransactionManager transactionManager,
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      @Value("${" + PREFIX + ".completion-timeout:30s}") Duration completionTimeout) {
+    return new TransactionPropagatingExecutorService(executorService, transactionManager,
+        transactionSynchronizationRegistry, completionTimeout);
+  }
+}
@@ -16,15 +16,22 @@
 
 package io.appnaut.jta.hibernate;
 
+import io.appnaut.jta.local.LocalTransactionFactory;
 import io.micronaut.configuration.hibernate.jpa.JpaConfiguration;
+import io.micronaut.context.annotation.Value;
 import io.micronaut.context.event.BeanCreatedEvent;
 import io.micronaut.context.event.BeanCreatedEventListener;
+import java.util.Map;
+import javax.inject.Provider;
 import javax.inject.Singleton;
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.UserTransaction;
 import org.hibernate.cfg.AvailableSettings;
 
 /**
  * The <b>JpaConfigurationListener</b> class implements a BeanCreatedEventListener that modifies the
- * JpaConfiguration to enable JTA transaction support for Hibernate.
+ * JpaConfiguration to enable JTA transaction support and JDBC batching for Hibernate.
  *
  * @author Marcus Portmann
  */
@@ -32,15 +39,69 @@ import org.hibernate.cfg.AvailableSettings;
 @SuppressWarnings("unused")
 public class JpaConfigurationListener implements BeanCreatedEventListener<JpaConfiguration> {
 
+  /**
+   * The default JDBC batch size for Hibernate.
+   */
+  public static final int DEFAULT_JDBC_BATCH_SIZE = 50;
+
+  /**
+   * The name of the JTA transaction manager implementation.
+   */
+  private final String engine;
+
+  private final Provider<TransactionManager> transactionManager;
+
+  private final Provider<TransactionSynchronizationRegistry> transactionSynchronizationRegistry;
+
+  private final Provider<UserTransaction> userTransaction;
+
+  /**
+   * Constructs a new <b>JpaConfigurationListener</b>.
+   *
+   * @param engine                             the name of the JTA transaction manager
+   *                                           implementation
+   * @param transactionManager                 the provider for the JTA transaction manager
+   * @param transactionSynchronizationRegistry the provider for the JTA transaction
+   *                                           synchronization registry
+   * @param userTransaction                    the provider for the JTA user transaction
+   */
+  public JpaConfigurationListener(
+      @Value("${" + LocalTransactionFactory.ENGINE_PROPERTY + ":narayana}") String engine,
+      Provider<TransactionManager> transactionManager,
+      Provider<TransactionSynchronizationRegistry> transactionSynchronizationRegistry,
+      Provider<UserTransaction> userTransaction) {
+    this.engine = engine;
+    this.transactionManager = transactionManager;
+    this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+    this.userTransaction = userTransaction;
+  }
+
   @Override
   public JpaConfiguration onCreated(BeanCreatedEvent<JpaConfiguration> event) {
     JpaConfiguration jpaConfiguration = event.getBean();
 
     // Enable JTA transaction support for Hibernate
     jpaConfiguration.getProperties().put(AvailableSettings.TRANSACTION_COORDINATOR_STRATEGY, "jta");
-    jpaConfiguration.getProperties().put(AvailableSettings.JTA_PLATFORM, "JBossTS");
+
+    if ("local".equals(engine)) {
+      // The JBossTS platform would look up the static Narayana transaction manager
+      jpaConfiguration.getProperties().put(AvailableSettings.JTA_PLATFORM,
+          new TransactionManagerJtaPlatform(transactionManager.get(),
+              transactionSynchronizationRegistry.get(), userTransaction.get()));
+    } else {
+      jpaConfiguration.getProperties().put(AvailableSettings.JTA_PLATFORM, "JBossTS");
+    }
+
     //jpaConfiguration.getProperties().put(AvailableSettings.PERSISTENCE_UNIT_NAME, "xxx");
 
+    // Enable JDBC batching for inserts and updates unless it has been explicitly configured
+    Map<String, Object> properties = jpaConfiguration.getProperties();
+    properties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE,
+        String.valueOf(DEFAULT_JDBC_BATCH_SIZE));
+    properties.putIfAbsent(AvailableSettings.ORDER_INSERTS, "true");
+    properties.putIfAbsent(AvailableSettings.ORDER_UPDATES, "true");
+    properties.putIfAbsent(AvailableSettings.BATCH_VERSIONED_DATA, "true");
+
     return jpaConfiguration;
   }
 }
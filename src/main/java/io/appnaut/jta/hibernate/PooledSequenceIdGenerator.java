@@ -0,0 +1,213 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.hibernate;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * The <b>PooledSequenceIdGenerator</b> class implements a Hibernate identifier generator that
+ * reserves blocks of IDs from a database sequence and hands out the IDs in each block from
+ * memory.
+ * <p/>
+ * The database sequence must be incremented by the block size, so that each value retrieved from
+ * the sequence reserves the block of IDs starting at that value for a single generator, which
+ * makes the IDs unique across all the application nodes that share the database. IDs are handed
+ * out from the current block without locking, and a lock is only taken by the thread that
+ * reserves the next block when the current block is exhausted. Unlike an identity column, the IDs
+ * are known before the insert, so Hibernate can still use JDBC batching. The IDs that have not
+ * been handed out when the application stops are never used.
+ * <p/>
+ * The generator is configured using the following parameters:
+ * <ul>
+ *   <li><b>sequence_name</b> - the name of the database sequence, which is required</li>
+ *   <li><b>block_size</b> - the number of IDs in each block, which must match the increment for
+ *   the database sequence and defaults to 1000</li>
+ * </ul>
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class PooledSequenceIdGenerator implements IdentifierGenerator, Configurable {
+
+  /**
+   * The name of the parameter for the number of IDs in each block.
+   */
+  public static final String BLOCK_SIZE_PARAMETER = "block_size";
+
+  /**
+   * The default number of IDs in each block.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+  /**
+   * The name of the parameter for the name of the database sequence.
+   */
+  public static final String SEQUENCE_NAME_PARAMETER = "sequence_name";
+
+  /**
+   * The lock held while reserving the next block of IDs, which does not pin virtual threads.
+   */
+  private final ReentrantLock reserveLock = new ReentrantLock();
+
+  /**
+   * The current block of IDs.
+   */
+  private volatile Block block = new Block(0, 0);
+
+  private int blockSize;
+
+  private String sequenceName;
+
+  /**
+   * The SQL statement used to retrieve the next value from the database sequence.
+   */
+  private String sequenceNextValueSql;
+
+  @Override
+  public void configure(Type type, Properties params, ServiceRegistry serviceRegistry)
+      throws MappingException {
+    if (!Long.class.equals(type.getReturnedClass())) {
+      throw new MappingException("The PooledSequenceIdGenerator only supports long IDs");
+    }
+
+    sequenceName = params.getProperty(SEQUENCE_NAME_PARAMETER);
+
+    if ((sequenceName == null) || sequenceName.isBlank()) {
+      throw new MappingException("The " + SEQUENCE_NAME_PARAMETER
+          + " parameter is required for the PooledSequenceIdGenerator");
+    }
+
+    try {
+      blockSize = Integer.parseInt(
+          params.getProperty(BLOCK_SIZE_PARAMETER, String.valueOf(DEFAULT_BLOCK_SIZE)));
+    } catch (NumberFormatException e) {
+      throw new MappingException("The " + BLOCK_SIZE_PARAMETER
+          + " parameter for the PooledSequenceIdGenerator must be a number", e);
+    }
+
+    if (blockSize < 1) {
+      throw new MappingException("The " + BLOCK_SIZE_PARAMETER
+          + " parameter for the PooledSequenceIdGenerator must be greater than zero");
+    }
+
+    Dialect dialect = serviceRegistry.getService(JdbcEnvironment.class).getDialect();
+
+    sequenceNextValueSql = dialect.getSequenceNextValString(sequenceName);
+  }
+
+  @Override
+  public Serializable generate(SharedSessionContractImplementor session, Object object)
+      throws HibernateException {
+    while (true) {
+      Block currentBlock = block;
+
+      long id = currentBlock.next.getAndIncrement();
+
+      if (id < currentBlock.limit) {
+        return id;
+      }
+
+      reserveLock.lock();
+
+      try {
+        // Only reserve the next block if another thread has not already done so
+        if (block == currentBlock) {
+          long start = getSequenceNextValue(session);
+
+          block = new Block(start, start + blockSize);
+        }
+      } finally {
+        reserveLock.unlock();
+      }
+    }
+  }
+
+  private long getSequenceNextValue(SharedSessionContractImplementor session) {
+    JdbcCoordinator jdbcCoordinator = session.getJdbcCoordinator();
+
+    try {
+      PreparedStatement statement = jdbcCoordinator.getStatementPreparer()
+          .prepareStatement(sequenceNextValueSql);
+
+      try {
+        ResultSet rs = jdbcCoordinator.getResultSetReturn().extract(statement);
+
+        try {
+          if (!rs.next()) {
+            throw new HibernateException(
+                "No value was returned by the database sequence (" + sequenceName + ")");
+          }
+
+          return rs.getLong(1);
+        } finally {
+          jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(rs, statement);
+        }
+      } finally {
+        jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+        jdbcCoordinator.afterStatementExecution();
+      }
+    } catch (SQLException e) {
+      throw session.getJdbcServices().getSqlExceptionHelper().convert(e,
+          "Failed to retrieve the next value from the database sequence (" + sequenceName + ")",
+          sequenceNextValueSql);
+    }
+  }
+
+  /**
+   * The <b>Block</b> class holds a block of IDs reserved from the database sequence.
+   */
+  private static final class Block {
+
+    /**
+     * The ID after the last ID in the block.
+     */
+    private final long limit;
+
+    /**
+     * The next ID in the block.
+     */
+    private final AtomicLong next;
+
+    /**
+     * Constructs a new <b>Block</b>.
+     *
+     * @param start the first ID in the block
+     * @param limit the ID after the last ID in the block
+     */
+    Block(long start, long limit) {
+      this.next = new AtomicLong(start);
+      this.limit = limit;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.hibernate;
+
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.UserTransaction;
+import org.hibernate.engine.transaction.jta.platform.internal.AbstractJtaPlatform;
+import org.hibernate.engine.transaction.jta.platform.internal.JtaSynchronizationStrategy;
+import org.hibernate.engine.transaction.jta.platform.internal.SynchronizationRegistryBasedSynchronizationStrategy;
+
+/**
+ * The <b>TransactionManagerJtaPlatform</b> class implements a Hibernate JTA platform that is backed
+ * by the JTA transaction management beans, rather than by the static Narayana singletons used by
+ * the <b>JBossTS</b> platform, so that Hibernate participates in the transactions for the JTA
+ * transaction manager that has been selected, e.g. the local transaction manager.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class TransactionManagerJtaPlatform extends AbstractJtaPlatform {
+
+  private static final long serialVersionUID = 1000000;
+
+  private final transient TransactionManager transactionManager;
+
+  private final transient TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+  private final transient UserTransaction userTransaction;
+
+  /**
+   * Constructs a new <b>TransactionManagerJtaPlatform</b>.
+   *
+   * @param transactionManager                 the JTA transaction manager
+   * @param transactionSynchronizationRegistry the JTA transaction synchronization registry
+   * @param userTransaction                    the JTA user transaction
+   */
+  public TransactionManagerJtaPlatform(TransactionManager transactionManager,
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      UserTransaction userTransaction) {
+    this.transactionManager = transactionManager;
+    this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+    this.userTransaction = userTransaction;
+  }
+
+  @Override
+  protected JtaSynchronizationStrategy getSynchronizationStrategy() {
+    // Register the Hibernate synchronizations as interposed synchronizations with the registry
+    return new SynchronizationRegistryBasedSynchronizationStrategy(
+        () -> transactionSynchronizationRegistry);
+  }
+
+  @Override
+  protected TransactionManager locateTransactionManager() {
+    return transactionManager;
+  }
+
+  @Override
+  protected UserTransaction locateUserTransaction() {
+    return userTransaction;
+  }
+}
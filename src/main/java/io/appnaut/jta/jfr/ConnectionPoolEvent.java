@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The <b>ConnectionPoolEvent</b> class implements the Java Flight Recorder event emitted when a
+ * connection is acquired from or returned to a connection pool.
+ *
+ * @author Marcus Portmann
+ */
+@Name("io.appnaut.jta.ConnectionPool")
+@Label("Connection Pool")
+@Category({"Appnaut", "Connection Pool"})
+@Description("A connection acquired from or returned to a connection pool")
+public class ConnectionPoolEvent extends Event {
+
+  @Label("Data Source")
+  String dataSource;
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Outcome")
+  String outcome;
+}
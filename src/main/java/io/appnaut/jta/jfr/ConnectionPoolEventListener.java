@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.jfr;
+
+import io.agroal.api.AgroalDataSourceListener;
+import java.sql.Connection;
+
+/**
+ * The <b>ConnectionPoolEventListener</b> class implements the Agroal data source listener that
+ * emits a {@link ConnectionPoolEvent} for each connection acquired from or returned to the
+ * connection pool for a data source.
+ * <p/>
+ * The connection pool does not notify its listeners when a connection cannot be acquired, so the
+ * data source that wraps the connection pool must call {@link #onConnectionAcquireFailure()} when
+ * an attempt to acquire a connection fails, so that the acquisition is recorded as failed and is
+ * not retained by the thread. An operation that is still in progress when the next operation of
+ * the same kind starts on the same thread is also recorded as failed.
+ *
+ * @author Marcus Portmann
+ */
+public class ConnectionPoolEventListener implements AgroalDataSourceListener {
+
+  private final ThreadLocal<ConnectionPoolEvent> acquireEvent = new ThreadLocal<>();
+
+  /**
+   * The name of the data source.
+   */
+  private final String dataSourceName;
+
+  private final ThreadLocal<ConnectionPoolEvent> returnEvent = new ThreadLocal<>();
+
+  /**
+   * Constructs a new <b>ConnectionPoolEventListener</b>.
+   *
+   * @param dataSourceName the name of the data source
+   */
+  public ConnectionPoolEventListener(String dataSourceName) {
+    this.dataSourceName = dataSourceName;
+  }
+
+  @Override
+  public void beforeConnectionAcquire() {
+    beginEvent(acquireEvent, "acquire");
+  }
+
+  @Override
+  public void beforeConnectionReturn(Connection connection) {
+    beginEvent(returnEvent, "return");
+  }
+
+  @Override
+  public void onConnectionAcquire(Connection connection) {
+    completeEvent(acquireEvent, "success");
+  }
+
+  /**
+   * Invoked when an attempt to acquire a connection from the connection pool on the current
+   * thread fails.
+   */
+  public void onConnectionAcquireFailure() {
+    completeEvent(acquireEvent, "failure");
+  }
+
+  @Override
+  public void onConnectionReturn(Connection connection) {
+    completeEvent(returnEvent, "success");
+  }
+
+  private void beginEvent(ThreadLocal<ConnectionPoolEvent> threadEvent, String operation) {
+    // Record the previous operation on this thread, which did not complete, as failed
+    completeEvent(threadEvent, "failure");
+
+    ConnectionPoolEvent event = new ConnectionPoolEvent();
+
+    if (event.isEnabled()) {
+      event.dataSource = dataSourceName;
+      event.operation = operation;
+      event.begin();
+
+      threadEvent.set(event);
+    }
+  }
+
+  private void completeEvent(ThreadLocal<ConnectionPoolEvent> threadEvent, String outcome) {
+    ConnectionPoolEvent event = threadEvent.get();
+
+    if (event != null) {
+      threadEvent.remove();
+
+      event.end();
+
+      if (event.shouldCommit()) {
+        event.outcome = outcome;
+        event.commit();
+      }
+    }
+  }
+}
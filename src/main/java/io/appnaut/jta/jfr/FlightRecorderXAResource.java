@@ -0,0 +1,208 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.jfr;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+/**
+ * The <b>FlightRecorderXAResource</b> class provides a wrapper for an XA resource that emits an
+ * {@link XAResourceEvent} for each call to start, end, prepare, commit, rollback, forget or recover
+ * a transaction branch.
+ *
+ * @author Marcus Portmann
+ */
+public class FlightRecorderXAResource implements XAResource {
+
+  /**
+   * The name of the data source the XA resource is associated with.
+   */
+  private final String dataSourceName;
+
+  /**
+   * The underlying XA resource.
+   */
+  private final XAResource xaResource;
+
+  /**
+   * Constructs a new <b>FlightRecorderXAResource</b>.
+   *
+   * @param dataSourceName the name of the data source the XA resource is associated with
+   * @param xaResource     the underlying XA resource
+   */
+  public FlightRecorderXAResource(String dataSourceName, XAResource xaResource) {
+    this.dataSourceName = dataSourceName;
+    this.xaResource = xaResource;
+  }
+
+  @Override
+  public void commit(Xid xid, boolean onePhase) throws XAException {
+    XAResourceEvent event = beginEvent();
+
+    try {
+      xaResource.commit(xid, onePhase);
+    } catch (Throwable e) {
+      completeEvent(event, onePhase ? "commit-one-phase" : "commit", xid, 0, e);
+      throw e;
+    }
+
+    completeEvent(event, onePhase ? "commit-one-phase" : "commit", xid, 0, null);
+  }
+
+  @Override
+  public void end(Xid xid, int flags) throws XAException {
+    XAResourceEvent event = beginEvent();
+
+    try {
+      xaResource.end(xid, flags);
+    } catch (Throwable e) {
+      completeEvent(event, "end", xid, flags, e);
+      throw e;
+    }
+
+    completeEvent(event, "end", xid, flags, null);
+  }
+
+  @Override
+  public void forget(Xid xid) throws XAException {
+    XAResourceEvent event = beginEvent();
+
+    try {
+      xaResource.forget(xid);
+    } catch (Throwable e) {
+      completeEvent(event, "forget", xid, 0, e);
+      throw e;
+    }
+
+    completeEvent(event, "forget", xid, 0, null);
+  }
+
+  @Override
+  public int getTransactionTimeout() throws XAException {
+    return xaResource.getTransactionTimeout();
+  }
+
+  @Override
+  public boolean isSameRM(XAResource xaResource) throws XAException {
+    if (xaResource instanceof FlightRecorderXAResource) {
+      return this.xaResource.isSameRM(((FlightRecorderXAResource) xaResource).xaResource);
+    } else {
+      return this.xaResource.isSameRM(xaResource);
+    }
+  }
+
+  @Override
+  public int prepare(Xid xid) throws XAException {
+    XAResourceEvent event = beginEvent();
+
+    int vote;
+
+    try {
+      vote = xaResource.prepare(xid);
+    } catch (Throwable e) {
+      completeEvent(event, "prepare", xid, 0, e);
+      throw e;
+    }
+
+    completeEvent(event, "prepare", xid, 0, null);
+
+    return vote;
+  }
+
+  @Override
+  public Xid[] recover(int flag) throws XAException {
+    XAResourceEvent event = beginEvent();
+
+    Xid[] xids;
+
+    try {
+      xids = xaResource.recover(flag);
+    } catch (Throwable e) {
+      completeEvent(event, "recover", null, flag, e);
+      throw e;
+    }
+
+    completeEvent(event, "recover", null, flag, null);
+
+    return xids;
+  }
+
+  @Override
+  public void rollback(Xid xid) throws XAException {
+    XAResourceEvent event = beginEvent();
+
+    try {
+      xaResource.rollback(xid);
+    } catch (Throwable e) {
+      completeEvent(event, "rollback", xid, 0, e);
+      throw e;
+    }
+
+    completeEvent(event, "rollback", xid, 0, null);
+  }
+
+  @Override
+  public boolean setTransactionTimeout(int seconds) throws XAException {
+    return xaResource.setTransactionTimeout(seconds);
+  }
+
+  @Override
+  public void start(Xid xid, int flags) throws XAException {
+    XAResourceEvent event = beginEvent();
+
+    try {
+      xaResource.start(xid, flags);
+    } catch (Throwable e) {
+      completeEvent(event, "start", xid, flags, e);
+      throw e;
+    }
+
+    completeEvent(event, "start", xid, flags, null);
+  }
+
+  private XAResourceEvent beginEvent() {
+    XAResourceEvent event = new XAResourceEvent();
+
+    event.begin();
+
+    return event;
+  }
+
+  private void completeEvent(XAResourceEvent event, String operation, Xid xid, int flags,
+      Throwable failure) {
+    event.end();
+
+    if (event.shouldCommit()) {
+      event.dataSource = dataSourceName;
+      event.operation = operation;
+      event.xid = (xid != null) ? xid.toString() : null;
+      event.flags = flags;
+
+      if (failure == null) {
+        event.outcome = "success";
+      } else if (failure instanceof XAException) {
+        event.outcome = "XAException(" + ((XAException) failure).errorCode + ")";
+      } else {
+        event.outcome = failure.getClass().getSimpleName();
+      }
+
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The <b>TransactionEvent</b> class implements the Java Flight Recorder event emitted when a JTA
+ * transaction is begun, committed or rolled back by the JTA transaction manager.
+ *
+ * @author Marcus Portmann
+ */
+@Name("io.appnaut.jta.Transaction")
+@Label("JTA Transaction")
+@Category({"Appnaut", "Transactions"})
+@Description("A JTA transaction begin, commit or rollback")
+@StackTrace(false)
+public class TransactionEvent extends Event {
+
+  /**
+   * The begin operation.
+   */
+  public static final String BEGIN = "begin";
+
+  /**
+   * The commit operation.
+   */
+  public static final String COMMIT = "commit";
+
+  /**
+   * The rollback operation.
+   */
+  public static final String ROLLBACK = "rollback";
+
+  @Label("Data Source")
+  String dataSource;
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Outcome")
+  String outcome;
+
+  @Label("Transaction")
+  String transaction;
+
+  @Label("Transaction Name")
+  String transactionName;
+
+  /**
+   * Constructs a new <b>TransactionEvent</b>.
+   *
+   * @param dataSource the name of the data source for the JTA transaction manager
+   * @param operation  the operation
+   */
+  public TransactionEvent(String dataSource, String operation) {
+    this.dataSource = dataSource;
+    this.operation = operation;
+  }
+
+  /**
+   * Complete the event, which is only recorded if the event is enabled and exceeds the threshold.
+   *
+   * @param failure the failure for the operation or <b>null</b> if the operation succeeded
+   */
+  public void complete(Throwable failure) {
+    end();
+
+    if (shouldCommit()) {
+      outcome = (failure == null) ? "success" : failure.getClass().getSimpleName();
+      commit();
+    }
+  }
+
+  /**
+   * Set the JTA transaction for the event.
+   *
+   * @param transaction the JTA transaction
+   */
+  public void setTransaction(Object transaction) {
+    this.transaction = String.valueOf(transaction);
+  }
+
+  /**
+   * Set the name of the transaction, which is usually the name of the transactional method that
+   * started it.
+   *
+   * @param transactionName the name of the transaction
+   */
+  public void setTransactionName(String transactionName) {
+    this.transactionName = transactionName;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The <b>XAResourceEvent</b> class implements the Java Flight Recorder event emitted for each call
+ * to start, end, prepare, commit, rollback, forget or recover a transaction branch on an XA
+ * resource.
+ *
+ * @author Marcus Portmann
+ */
+@Name("io.appnaut.jta.XAResource")
+@Label("XA Resource Call")
+@Category({"Appnaut", "Transactions"})
+@Description("A call to an XA resource for a transaction branch")
+@StackTrace(false)
+public class XAResourceEvent extends Event {
+
+  @Label("Data Source")
+  String dataSource;
+
+  @Label("Flags")
+  int flags;
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Outcome")
+  String outcome;
+
+  @Label("Xid")
+  String xid;
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.liquibase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The <b>ChangeLogChecksum</b> class provides the support for calculating the checksum for a
+ * Liquibase changelog on the classpath, and for storing and retrieving the checksum for the
+ * changelog that was last applied to a database.
+ * <p/>
+ * The checksum covers the changelog, all the changelogs it includes using <b>include</b> elements
+ * and the contexts and labels the changelog is applied with. No checksum is calculated for a
+ * changelog that uses <b>includeAll</b>, since the set of included changelogs cannot be determined
+ * reliably from the classpath, or for a changelog with <b>runAlways</b> or <b>runOnChange</b>
+ * change sets, since Liquibase must be run to apply these even when the changelog is unchanged.
+ * <p/>
+ * The checksums are stored in the <b>appnaut_changelog_checksum</b> table, which is created using
+ * the Liquibase changelog {@link #CHANGE_LOG}.
+ *
+ * @author Marcus Portmann
+ */
+final class ChangeLogChecksum {
+
+  /**
+   * The classpath location of the Liquibase changelog used to create the checksum table.
+   */
+  static final String CHANGE_LOG = "io/appnaut/jta/liquibase/changelog-checksum.changelog.xml";
+
+  private static final Pattern INCLUDE_ALL_PATTERN = Pattern.compile("<includeAll\\b");
+
+  private static final Pattern INCLUDE_PATTERN = Pattern.compile("<include\\s+([^>]*)>");
+
+  private static final Pattern FILE_ATTRIBUTE_PATTERN = Pattern.compile("\\bfile\\s*=\\s*\"([^\"]+)\"");
+
+  private static final Pattern RELATIVE_ATTRIBUTE_PATTERN = Pattern
+      .compile("\\brelativeToChangelogFile\\s*=\\s*\"true\"");
+
+  private static final Pattern RUN_ALWAYS_OR_ON_CHANGE_PATTERN = Pattern
+      .compile("\\brun(Always|OnChange)\\s*[=:]\\s*\"?true\\b");
+
+  private static final String INSERT_SQL =
+      "INSERT INTO appnaut_changelog_checksum (change_log, checksum, updated) VALUES (?, ?, ?)";
+
+  private static final String SELECT_SQL =
+      "SELECT checksum FROM appnaut_changelog_checksum WHERE change_log = ?";
+
+  private static final String TABLE_NAME = "appnaut_changelog_checksum";
+
+  private static final String UPDATE_SQL =
+      "UPDATE appnaut_changelog_checksum SET checksum = ?, updated = ? WHERE change_log = ?";
+
+  private ChangeLogChecksum() {
+  }
+
+  /**
+   * Calculate the SHA-256 checksum for the changelog on the classpath.
+   *
+   * @param classLoader the class loader used to load the changelog
+   * @param changeLog   the classpath location of the changelog
+   * @param contexts    the contexts the changelog is applied with or <b>null</b>
+   * @param labels      the label expression the changelog is applied with or <b>null</b>
+   *
+   * @return the hex-encoded SHA-256 checksum for the changelog or <b>null</b> if no checksum
+   * could be calculated
+   */
+  static String calculate(ClassLoader classLoader, String changeLog, String contexts,
+      String labels) {
+    try {
+      MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+
+      messageDigest.update(("contexts=" + ((contexts != null) ? contexts : "") + "\nlabels="
+          + ((labels != null) ? labels : "") + "\n").getBytes(StandardCharsets.UTF_8));
+
+      if (!digest(classLoader, changeLog, messageDigest, new HashSet<>())) {
+        return null;
+      }
+
+      StringBuilder buffer = new StringBuilder();
+
+      for (byte b : messageDigest.digest()) {
+        buffer.append(String.format("%02x", b));
+      }
+
+      return buffer.toString();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Retrieve the checksum for the changelog that was last applied to the database.
+   *
+   * @param connection the database connection
+   * @param changeLog  the classpath location of the changelog
+   *
+   * @return the checksum for the changelog that was last applied to the database or <b>null</b>
+   * if no checksum has been stored
+   */
+  static String retrieve(Connection connection, String changeLog) throws SQLException {
+    /*
+     * Check for the checksum table using the database metadata instead of querying it and
+     * ignoring the failure, since a failed query aborts the current transaction on PostgreSQL.
+     */
+    if (!tableExists(connection)) {
+      return null;
+    }
+
+    try (PreparedStatement statement = connection.prepareStatement(SELECT_SQL)) {
+      statement.setString(1, changeLog);
+
+      try (ResultSet rs = statement.executeQuery()) {
+        return rs.next() ? rs.getString(1) : null;
+      }
+    }
+  }
+
+  /**
+   * Store the checksum for the changelog that was applied to the database.
+   * <p/>
+   * The checksum table must have been created using the Liquibase changelog {@link #CHANGE_LOG}.
+   *
+   * @param connection the database connection
+   * @param changeLog  the classpath location of the changelog
+   * @param checksum   the checksum for the changelog
+   */
+  static void store(Connection connection, String changeLog, String checksum)
+      throws SQLException {
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+    try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+      statement.setString(1, checksum);
+      statement.setTimestamp(2, now);
+      statement.setString(3, changeLog);
+
+      if (statement.executeUpdate() > 0) {
+        return;
+      }
+    }
+
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+      statement.setString(1, changeLog);
+      statement.setString(2, checksum);
+      statement.setTimestamp(3, now);
+
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Returns whether the checksum table exists in the current schema for the connection.
+   *
+   * @param connection the database connection
+   *
+   * @return true if the checksum table exists or false otherwise
+   */
+  static boolean tableExists(Connection connection) throws SQLException {
+    DatabaseMetaData metaData = connection.getMetaData();
+
+    String tableName = TABLE_NAME;
+
+    if (metaData.storesUpperCaseIdentifiers()) {
+      tableName = tableName.toUpperCase();
+    } else if (metaData.storesLowerCaseIdentifiers()) {
+      tableName = tableName.toLowerCase();
+    }
+
+    try (ResultSet rs = metaData.getTables(connection.getCatalog(), connection.getSchema(),
+        tableName, new String[]{"TABLE"})) {
+      return rs.next();
+    }
+  }
+
+  private static boolean digest(ClassLoader classLoader, String path, MessageDigest messageDigest,
+      Set<String> visited) throws IOException {
+    if (!visited.add(path)) {
+      return true;
+    }
+
+    byte[] content;
+
+    try (InputStream inputStream = classLoader.getResourceAsStream(path)) {
+      if (inputStream == null) {
+        return false;
+      }
+
+      content = inputStream.readAllBytes();
+    }
+
+    messageDigest.update(path.getBytes(StandardCharsets.UTF_8));
+    messageDigest.update(content);
+
+    String xml = new String(content, StandardCharsets.UTF_8);
+
+    if (INCLUDE_ALL_PATTERN.matcher(xml).find()
+        || RUN_ALWAYS_OR_ON_CHANGE_PATTERN.matcher(xml).find()) {
+      return false;
+    }
+
+    Matcher includeMatcher = INCLUDE_PATTERN.matcher(xml);
+
+    while (includeMatcher.find()) {
+      String attributes = includeMatcher.group(1);
+
+      Matcher fileMatcher = FILE_ATTRIBUTE_PATTERN.matcher(attributes);
+
+      if (!fileMatcher.find()) {
+        return false;
+      }
+
+      String includedPath = fileMatcher.group(1);
+
+      if (RELATIVE_ATTRIBUTE_PATTERN.matcher(attributes).find()) {
+        int index = path.lastIndexOf('/');
+
+        includedPath = (index == -1) ? includedPath : path.substring(0, index + 1) + includedPath;
+      }
+
+      if (includedPath.startsWith("classpath:")) {
+        includedPath = includedPath.substring("classpath:".length());
+      }
+
+      if (includedPath.startsWith("/")) {
+        includedPath = includedPath.substring(1);
+      }
+
+      if (!digest(classLoader, includedPath, messageDigest, visited)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
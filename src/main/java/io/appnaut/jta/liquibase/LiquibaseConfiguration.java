@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.liquibase;
+
+import io.micronaut.context.annotation.EachProperty;
+import io.micronaut.context.annotation.Parameter;
+
+/**
+ * The <b>LiquibaseConfiguration</b> class holds the configuration information for the Liquibase
+ * migration of a data source.
+ *
+ * @author Marcus Portmann
+ */
+@EachProperty(LiquibaseConfiguration.PREFIX)
+@SuppressWarnings("unused")
+public class LiquibaseConfiguration {
+
+  /**
+   * The prefix for the Liquibase configuration.
+   */
+  public static final String PREFIX = "appnaut.liquibase.datasources";
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  private String changeLog;
+
+  private boolean checksumEnabled = true;
+
+  private String contexts;
+
+  private boolean enabled = true;
+
+  private String labels;
+
+  /**
+   * Constructs a new <b>LiquibaseConfiguration</b>.
+   *
+   * @param name the name of the data source configured from properties
+   */
+  public LiquibaseConfiguration(@Parameter String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the location of the Liquibase changelog, e.g. classpath:db/poc.changelog.xml.
+   *
+   * @return the location of the Liquibase changelog
+   */
+  public String getChangeLog() {
+    return changeLog;
+  }
+
+  /**
+   * Returns the comma-separated list of Liquibase contexts the changelog is applied with.
+   *
+   * @return the comma-separated list of Liquibase contexts the changelog is applied with or
+   * <b>null</b> if all the change sets are applied regardless of their context
+   */
+  public String getContexts() {
+    return contexts;
+  }
+
+  /**
+   * Returns the Liquibase label expression the changelog is applied with.
+   *
+   * @return the Liquibase label expression the changelog is applied with or <b>null</b> if all the
+   * change sets are applied regardless of their labels
+   */
+  public String getLabels() {
+    return labels;
+  }
+
+  /**
+   * Returns the name of the data source.
+   *
+   * @return the name of the data source
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns whether the Liquibase migration is skipped when the stored checksum for the changelog
+   * matches the checksum for the changelog on the classpath.
+   *
+   * @return true if the Liquibase migration is skipped when the stored checksum for the changelog
+   * matches or false otherwise
+   */
+  public boolean isChecksumEnabled() {
+    return checksumEnabled;
+  }
+
+  /**
+   * Returns whether the Liquibase migration is enabled for the data source.
+   *
+   * @return true if the Liquibase migration is enabled for the data source or false otherwise
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Set the location of the Liquibase changelog, e.g. classpath:db/poc.changelog.xml.
+   *
+   * @param changeLog the location of the Liquibase changelog
+   */
+  public void setChangeLog(String changeLog) {
+    this.changeLog = changeLog;
+  }
+
+  /**
+   * Set whether the Liquibase migration is skipped when the stored checksum for the changelog
+   * matches the checksum for the changelog on the classpath.
+   *
+   * @param checksumEnabled true if the Liquibase migration is skipped when the stored checksum for
+   *                        the changelog matches or false otherwise
+   */
+  public void setChecksumEnabled(boolean checksumEnabled) {
+    this.checksumEnabled = checksumEnabled;
+  }
+
+  /**
+   * Set the comma-separated list of Liquibase contexts the changelog is applied with.
+   *
+   * @param contexts the comma-separated list of Liquibase contexts the changelog is applied with
+   *                 or <b>null</b> if all the change sets are applied regardless of their context
+   */
+  public void setContexts(String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Set whether the Liquibase migration is enabled for the data source.
+   *
+   * @param enabled true if the Liquibase migration is enabled for the data source or false
+   *                otherwise
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Set the Liquibase label expression the changelog is applied with.
+   *
+   * @param labels the Liquibase label expression the changelog is applied with or <b>null</b> if
+   *               all the change sets are applied regardless of their labels
+   */
+  public void setLabels(String labels) {
+    this.labels = labels;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.liquibase;
+
+/**
+ * The <b>LiquibaseMigrationException</b> exception is thrown to indicate an error condition when
+ * applying a Liquibase migration to a data source.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class LiquibaseMigrationException extends RuntimeException {
+
+  private static final long serialVersionUID = 1000000;
+
+  /**
+   * Constructs a new <b>LiquibaseMigrationException</b> with the specified message.
+   *
+   * @param message The message saved for later retrieval by the <b>getMessage()</b> method.
+   */
+  public LiquibaseMigrationException(String message) {
+    super(message);
+  }
+
+  /**
+   * Constructs a new <b>LiquibaseMigrationException</b> with the specified message and cause.
+   *
+   * @param message The message saved for later retrieval by the <b>getMessage()</b> method.
+   * @param cause   The cause saved for later retrieval by the <b>getCause()</b> method. (A
+   *                <b>null</b> value is permitted if the cause is nonexistent or unknown)
+   */
+  public LiquibaseMigrationException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
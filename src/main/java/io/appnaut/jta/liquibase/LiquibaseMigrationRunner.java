@@ -0,0 +1,306 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.liquibase;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.agroal.LazyAgroalDataSource;
+import io.micronaut.context.BeanContext;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import java.sql.Connection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import javax.sql.DataSource;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>LiquibaseMigrationRunner</b> class applies the Liquibase migrations configured under
+ * <b>appnaut.liquibase.datasources</b> to the corresponding data sources.
+ * <p/>
+ * The migration for a data source is started on a dedicated executor as soon as the data source
+ * is created, and the data source is replaced with a {@link MigrationAwareDataSource}, which
+ * blocks the requests for connections until the migration has completed. A data source is
+ * therefore never used before its migration has been applied. The data sources with a migration
+ * are created when the application starts, and the startup of the application waits for all the
+ * migrations to complete, so a failed migration still prevents the application from starting. The
+ * migration for a lazy data source is only started by the first request for a connection, so its
+ * connection pool is not created when the application starts, and a failed migration for a lazy
+ * data source only fails the requests for connections.
+ * <p/>
+ * A migration is skipped without acquiring the Liquibase lock when the checksum stored for the
+ * changelog in the database matches the checksum for the changelog on the classpath, and the
+ * contexts and labels it is applied with. The checksum is not used for changelogs that Liquibase
+ * must always be run for, see {@link ChangeLogChecksum}. The checksums for the different data
+ * sources are checked in parallel, but Liquibase itself is only run for one data source at a time,
+ * since Liquibase keeps its scope in a single global scope manager that is corrupted by concurrent
+ * updates.
+ * <p/>
+ * This replaces the Micronaut Liquibase integration, which migrates the data sources one after
+ * another, and requires <b>liquibase.enabled</b> to be set to <b>false</b>.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@SuppressWarnings("unused")
+public class LiquibaseMigrationRunner implements BeanCreatedEventListener<DataSource>,
+    ApplicationEventListener<StartupEvent> {
+
+  private static final String CLASSPATH_PREFIX = "classpath:";
+
+  /**
+   * The time in seconds after which an idle migration thread is terminated.
+   */
+  private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+  private static final Logger logger = LoggerFactory.getLogger(LiquibaseMigrationRunner.class);
+
+  private final BeanContext beanContext;
+
+  /**
+   * The executor used to apply the migrations.
+   */
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * The lock used to ensure that Liquibase is only run for one data source at a time.
+   */
+  private final ReentrantLock liquibaseLock = new ReentrantLock();
+
+  /**
+   * The migrations for the data sources.
+   */
+  private final Map<String, CompletableFuture<Void>> migrations = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a new <b>LiquibaseMigrationRunner</b>.
+   *
+   * @param beanContext the bean context
+   */
+  public LiquibaseMigrationRunner(BeanContext beanContext) {
+    this.beanContext = beanContext;
+
+    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    AtomicInteger threadNumber = new AtomicInteger();
+
+    this.executor = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_TIMEOUT_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable,
+          "liquibase-migration-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Shutdown the executor used to apply the migrations.
+   */
+  @PreDestroy
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public DataSource onCreated(BeanCreatedEvent<DataSource> event) {
+    String name = event.getBeanIdentifier().getName();
+
+    if (name.equalsIgnoreCase("primary")) {
+      name = "default";
+    }
+
+    Optional<LiquibaseConfiguration> liquibaseConfigurationOptional = beanContext
+        .findBean(LiquibaseConfiguration.class, Qualifiers.byName(name));
+
+    if (liquibaseConfigurationOptional.isEmpty() || (!liquibaseConfigurationOptional.get()
+        .isEnabled())) {
+      return event.getBean();
+    }
+
+    LiquibaseConfiguration liquibaseConfiguration = liquibaseConfigurationOptional.get();
+
+    DataSource dataSource = event.getBean();
+
+    // Only Agroal data sources can be replaced without changing the type of the bean
+    if (!(dataSource instanceof AgroalDataSource)) {
+      migrate(liquibaseConfiguration, dataSource);
+
+      return dataSource;
+    }
+
+    // Do not create the connection pool for a lazy data source until it is first used
+    if (LazyAgroalDataSource.isNotStarted(dataSource)) {
+      return new MigrationAwareDataSource(name, (AgroalDataSource) dataSource,
+          () -> startMigration(liquibaseConfiguration, dataSource));
+    }
+
+    CompletableFuture<Void> migration = startMigration(liquibaseConfiguration, dataSource);
+
+    migrations.put(name, migration);
+
+    return new MigrationAwareDataSource(name, (AgroalDataSource) dataSource, migration);
+  }
+
+  /**
+   * Create the data sources with a Liquibase configuration, which starts their migrations, and
+   * wait for all the migrations to complete.
+   *
+   * @param event the startup event
+   */
+  @Override
+  public void onApplicationEvent(StartupEvent event) {
+    for (LiquibaseConfiguration liquibaseConfiguration : beanContext
+        .getBeansOfType(LiquibaseConfiguration.class)) {
+      if (liquibaseConfiguration.isEnabled()) {
+        beanContext.findBean(DataSource.class,
+            Qualifiers.byName(liquibaseConfiguration.getName()));
+      }
+    }
+
+    for (Map.Entry<String, CompletableFuture<Void>> migration : migrations.entrySet()) {
+      try {
+        migration.getValue().get();
+      } catch (ExecutionException e) {
+        throw new LiquibaseMigrationException(
+            "Failed to apply the Liquibase migration for the data source (" + migration.getKey()
+                + ")", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        throw new LiquibaseMigrationException(
+            "Interrupted while waiting for the Liquibase migration for the data source ("
+                + migration.getKey() + ")", e);
+      }
+    }
+  }
+
+  private void migrate(LiquibaseConfiguration liquibaseConfiguration, DataSource dataSource) {
+    String changeLog = liquibaseConfiguration.getChangeLog();
+
+    if (changeLog == null) {
+      throw new LiquibaseMigrationException(
+          "No changelog has been configured for the data source (" + liquibaseConfiguration
+              .getName() + ")");
+    }
+
+    if (changeLog.startsWith(CLASSPATH_PREFIX)) {
+      changeLog = changeLog.substring(CLASSPATH_PREFIX.length());
+    }
+
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    if (classLoader == null) {
+      classLoader = LiquibaseMigrationRunner.class.getClassLoader();
+    }
+
+    long start = System.currentTimeMillis();
+
+    try (Connection connection = dataSource.getConnection()) {
+      String checksum = liquibaseConfiguration.isChecksumEnabled()
+          ? ChangeLogChecksum.calculate(classLoader, changeLog,
+          liquibaseConfiguration.getContexts(), liquibaseConfiguration.getLabels())
+          : null;
+
+      if ((checksum != null) && checksum
+          .equals(ChangeLogChecksum.retrieve(connection, changeLog))) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Skipping the Liquibase migration for the data source ("
+              + liquibaseConfiguration.getName() + ") since the changelog (" + changeLog
+              + ") is unchanged");
+        }
+
+        return;
+      }
+
+      liquibaseLock.lock();
+
+      try {
+        Database database = DatabaseFactory.getInstance()
+            .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+
+        Liquibase liquibase = new Liquibase(changeLog,
+            new ClassLoaderResourceAccessor(classLoader), database);
+
+        liquibase.update(new Contexts(liquibaseConfiguration.getContexts()),
+            new LabelExpression(liquibaseConfiguration.getLabels()));
+
+        if ((checksum != null) && (!ChangeLogChecksum.tableExists(connection))) {
+          new Liquibase(ChangeLogChecksum.CHANGE_LOG,
+              new ClassLoaderResourceAccessor(ChangeLogChecksum.class.getClassLoader()), database)
+              .update(new Contexts(), new LabelExpression());
+        }
+      } finally {
+        liquibaseLock.unlock();
+      }
+
+      if (checksum != null) {
+        ChangeLogChecksum.store(connection, changeLog, checksum);
+
+        if (!connection.getAutoCommit()) {
+          connection.commit();
+        }
+      }
+
+      if (logger.isInfoEnabled()) {
+        logger.info("Applied the Liquibase migration for the data source ("
+            + liquibaseConfiguration.getName() + ") in " + (System.currentTimeMillis() - start)
+            + " ms");
+      }
+    } catch (LiquibaseMigrationException e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new LiquibaseMigrationException(
+          "Failed to apply the Liquibase migration for the data source (" + liquibaseConfiguration
+              .getName() + ") using the changelog (" + changeLog + ")", e);
+    }
+  }
+
+  private CompletableFuture<Void> startMigration(LiquibaseConfiguration liquibaseConfiguration,
+      DataSource dataSource) {
+    CompletableFuture<Void> migration = CompletableFuture
+        .runAsync(() -> migrate(liquibaseConfiguration, dataSource), executor);
+
+    migration.whenComplete((result, cause) -> {
+      if ((cause != null) && logger.isErrorEnabled()) {
+        logger.error("Failed to apply the Liquibase migration for the data source ("
+            + liquibaseConfiguration.getName() + ")", cause.getCause());
+      }
+    });
+
+    return migration;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.liquibase;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.agroal.DelegatingAgroalDataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The <b>MigrationAwareDataSource</b> class implements an Agroal data source that blocks the
+ * requests for connections until the Liquibase migration for the data source, which is applied
+ * asynchronously, has completed.
+ * <p/>
+ * This ensures that a data source is never used before its migration has been applied, even when
+ * it is injected and used by another bean before the application has started. If the migration
+ * fails, all the requests for connections fail with the cause of the migration failure. The
+ * migration for a data source whose connection pool is created lazily is only started by the first
+ * request for a connection, so the connection pool is not created when the application starts.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class MigrationAwareDataSource extends DelegatingAgroalDataSource {
+
+  private static final long serialVersionUID = 1000000;
+
+  /**
+   * The Agroal data source that is delegated to.
+   */
+  private final AgroalDataSource delegate;
+
+  /**
+   * The lock used to ensure the Liquibase migration for the data source is only started once.
+   */
+  private final transient ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The supplier that starts the Liquibase migration for the data source.
+   */
+  private final transient Supplier<CompletableFuture<Void>> migrationSupplier;
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  /**
+   * Whether the Liquibase migration for the data source has been applied successfully.
+   */
+  private volatile boolean migrated;
+
+  /**
+   * The Liquibase migration for the data source or <b>null</b> if it has not been started.
+   */
+  private transient volatile CompletableFuture<Void> migration;
+
+  /**
+   * Constructs a new <b>MigrationAwareDataSource</b>.
+   *
+   * @param name      the name of the data source
+   * @param delegate  the Agroal data source that is delegated to
+   * @param migration the Liquibase migration for the data source
+   */
+  public MigrationAwareDataSource(String name, AgroalDataSource delegate,
+      CompletableFuture<Void> migration) {
+    this(name, delegate, () -> migration);
+  }
+
+  /**
+   * Constructs a new <b>MigrationAwareDataSource</b> for a data source whose Liquibase migration
+   * is started by the first request for a connection.
+   *
+   * @param name              the name of the data source
+   * @param delegate          the Agroal data source that is delegated to
+   * @param migrationSupplier the supplier that starts the Liquibase migration for the data source
+   */
+  public MigrationAwareDataSource(String name, AgroalDataSource delegate,
+      Supplier<CompletableFuture<Void>> migrationSupplier) {
+    this.name = name;
+    this.delegate = delegate;
+    this.migrationSupplier = migrationSupplier;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    awaitMigration();
+
+    return delegate.getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    awaitMigration();
+
+    return delegate.getConnection(username, password);
+  }
+
+  /**
+   * Returns whether the Liquibase migration for the data source has been applied successfully.
+   *
+   * @return true if the Liquibase migration for the data source has been applied successfully or
+   * false otherwise
+   */
+  public boolean isMigrated() {
+    return migrated;
+  }
+
+  @Override
+  public String toString() {
+    return "MigrationAwareDataSource {name=\"" + name + "\", migrated=\"" + migrated + "\"}";
+  }
+
+  @Override
+  protected AgroalDataSource getDelegate() {
+    return delegate;
+  }
+
+  private void awaitMigration() throws SQLException {
+    if (migrated) {
+      return;
+    }
+
+    CompletableFuture<Void> currentMigration = migration;
+
+    if (currentMigration == null) {
+      lock.lock();
+
+      try {
+        if (migration == null) {
+          migration = migrationSupplier.get();
+        }
+
+        currentMigration = migration;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    try {
+      currentMigration.get();
+
+      migrated = true;
+    } catch (ExecutionException e) {
+      throw new SQLException(
+          "The Liquibase migration for the data source (" + name + ") failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new SQLException(
+          "Interrupted while waiting for the Liquibase migration for the data source (" + name
+              + ")", e);
+    }
+  }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.local;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>LocalTransaction</b> class implements a JTA transaction managed by the local transaction
+ * manager.
+ * <p/>
+ * A local transaction coordinates a single resource manager. The first XA resource enlisted in the
+ * transaction starts the transaction branch, subsequent XA resources for the same resource manager
+ * join it, and the branch is completed using a one-phase commit, so nothing is written to a
+ * transaction log. Enlisting an XA resource for a different resource manager fails.
+ * <p/>
+ * The transaction timeout is enforced when the transaction is next used, rather than by a
+ * background reaper, by marking the transaction for rollback once the timeout has expired.
+ <p/>
+ * The completion of the transaction and changes to its XA resources and synchronizations are
+ * serialized using a lock rather than a monitor, so that a virtual thread that is blocked on the
+ * resource manager while holding the lock does not pin its carrier thread.
+ *
+ * @author Marcus Portmann
+ */
+public class LocalTransaction implements Transaction {
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalTransaction.class);
+
+  /**
+   * The XA resources associated with the transaction branch, mapped to whether the association
+   * is active (true) or suspended (false).
+   */
+  private final Map<XAResource, Boolean> associations = new IdentityHashMap<>();
+
+  /**
+   * The time, in nanoseconds, after which the transaction times out or 0 if the transaction does
+   * not time out.
+   */
+  private final long deadlineNanos;
+
+  /**
+   * The interposed synchronizations registered with the transaction synchronization registry.
+   */
+  private final List<Synchronization> interposedSynchronizations = new ArrayList<>();
+
+  /**
+   * The lock held while the transaction is completed or its XA resources and synchronizations are
+   * changed, which does not pin a virtual thread while the XA resources are invoked.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The resources stored with the transaction synchronization registry.
+   */
+  private final ConcurrentMap<Object, Object> resources = new ConcurrentHashMap<>();
+
+  private final AtomicInteger status = new AtomicInteger(Status.STATUS_ACTIVE);
+
+  private final List<Synchronization> synchronizations = new ArrayList<>();
+
+  private final LocalXid xid = new LocalXid();
+
+  /**
+   * The XA resource for the transaction branch, which is used to complete the transaction.
+   */
+  private XAResource branch;
+
+  /**
+   * Has the after completion processing for the transaction started.
+   */
+  private boolean completing;
+
+  /**
+   * The cause of the transaction being marked for rollback.
+   */
+  private Throwable rollbackCause;
+
+  /**
+   * Constructs a new <b>LocalTransaction</b>.
+   *
+   * @param timeoutSeconds the transaction timeout in seconds or 0 if the transaction does not time
+   *                       out
+   */
+  LocalTransaction(int timeoutSeconds) {
+    this.deadlineNanos = (timeoutSeconds > 0)
+        ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds) : 0;
+  }
+
+  @Override
+  public void commit() throws RollbackException, HeuristicMixedException,
+      HeuristicRollbackException, SystemException {
+    lock.lock();
+
+    try {
+      checkTimeout();
+
+      int currentStatus = status.get();
+
+      if ((currentStatus != Status.STATUS_ACTIVE)
+          && (currentStatus != Status.STATUS_MARKED_ROLLBACK)) {
+        throw new IllegalStateException(
+            "Failed to commit the transaction (" + xid + ") with status (" + currentStatus + ")");
+      }
+
+      if (currentStatus == Status.STATUS_ACTIVE) {
+        beforeCompletion();
+      }
+
+      if (status.get() == Status.STATUS_MARKED_ROLLBACK) {
+        status.set(Status.STATUS_ROLLING_BACK);
+        rollbackBranch();
+        afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        throw withCause(new RollbackException(
+            "The transaction (" + xid + ") was rolled back because it was marked for rollback"),
+            rollbackCause);
+      }
+
+      status.set(Status.STATUS_COMMITTING);
+
+      if (branch == null) {
+        afterCompletion(Status.STATUS_COMMITTED);
+        return;
+      }
+
+      XAException endFailure = endAssociations(XAResource.TMSUCCESS);
+
+      if (endFailure != null) {
+        status.set(Status.STATUS_ROLLING_BACK);
+        rollbackBranch();
+        afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        throw withCause(new RollbackException("The transaction (" + xid
+            + ") was rolled back because the XA resources could not be disassociated from it"),
+            endFailure);
+      }
+
+      try {
+        branch.commit(xid, true);
+      } catch (XAException e) {
+        if ((e.errorCode >= XAException.XA_RBBASE) && (e.errorCode <= XAException.XA_RBEND)) {
+          afterCompletion(Status.STATUS_ROLLEDBACK);
+
+          throw withCause(new RollbackException(
+              "The transaction (" + xid + ") was rolled back by the resource manager"), e);
+        } else if (e.errorCode == XAException.XA_HEURRB) {
+          forget();
+          afterCompletion(Status.STATUS_ROLLEDBACK);
+
+          throw withCause(new HeuristicRollbackException("The transaction (" + xid
+              + ") was heuristically rolled back by the resource manager"), e);
+        } else if ((e.errorCode == XAException.XA_HEURMIX)
+            || (e.errorCode == XAException.XA_HEURHAZ)) {
+          forget();
+          afterCompletion(Status.STATUS_UNKNOWN);
+
+          throw withCause(new HeuristicMixedException("The transaction (" + xid
+              + ") may have been partially committed by the resource manager"), e);
+        } else if (e.errorCode != XAException.XA_HEURCOM) {
+          afterCompletion(Status.STATUS_UNKNOWN);
+
+          throw withCause(new SystemException(
+              "Failed to commit the transaction (" + xid + "): " + e.getMessage()), e);
+        }
+
+        forget();
+      }
+
+      afterCompletion(Status.STATUS_COMMITTED);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean delistResource(XAResource xaResource, int flags)
+      throws SystemException {
+    lock.lock();
+
+    try {
+      int currentStatus = status.get();
+
+      if ((currentStatus != Status.STATUS_ACTIVE)
+          && (currentStatus != Status.STATUS_MARKED_ROLLBACK)) {
+        throw new IllegalStateException("Failed to delist the XA resource from the transaction ("
+            + xid + ") with status (" + currentStatus + ")");
+      }
+
+      Boolean active = associations.get(xaResource);
+
+      if (active == null) {
+        throw new IllegalStateException("Failed to delist the XA resource that is not enlisted in "
+            + "the transaction (" + xid + ")");
+      }
+
+      try {
+        if (active || (flags != XAResource.TMSUSPEND)) {
+          xaResource.end(xid, flags);
+        }
+      } catch (XAException e) {
+        setRollbackOnly(e);
+
+        throw withCause(new SystemException(
+            "Failed to delist the XA resource from the transaction (" + xid + "): " + e
+                .getMessage()), e);
+      }
+
+      if (flags == XAResource.TMSUSPEND) {
+        associations.put(xaResource, Boolean.FALSE);
+      } else {
+        associations.remove(xaResource);
+      }
+
+      if (flags == XAResource.TMFAIL) {
+        setRollbackOnly(null);
+      }
+
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean enlistResource(XAResource xaResource)
+      throws RollbackException, SystemException {
+    lock.lock();
+
+    try {
+      checkActive("enlist the XA resource in");
+
+      Boolean active = associations.get(xaResource);
+
+      if (Boolean.TRUE.equals(active)) {
+        return true;
+      }
+
+      try {
+        if (active != null) {
+          xaResource.start(xid, XAResource.TMRESUME);
+        } else if (branch == null) {
+          xaResource.start(xid, XAResource.TMNOFLAGS);
+
+          branch = xaResource;
+        } else if (branch.isSameRM(xaResource) || xaResource.isSameRM(branch)) {
+          xaResource.start(xid, XAResource.TMJOIN);
+        } else {
+          throw new SystemException("Failed to enlist the XA resource in the transaction (" + xid
+              + ") because the local transaction manager only supports a single resource manager "
+              + "for each transaction");
+        }
+      } catch (XAException e) {
+        throw withCause(new SystemException(
+            "Failed to enlist the XA resource in the transaction (" + xid + "): " + e.getMessage()),
+            e);
+      }
+
+      associations.put(xaResource, Boolean.TRUE);
+
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int getStatus() {
+    checkTimeout();
+
+    return status.get();
+  }
+
+  /**
+   * Returns the transaction ID.
+   *
+   * @return the transaction ID
+   */
+  public LocalXid getXid() {
+    return xid;
+  }
+
+  @Override
+  public void registerSynchronization(Synchronization synchronization)
+      throws RollbackException {
+    lock.lock();
+
+    try {
+      checkActive("register the synchronization with");
+
+      synchronizations.add(synchronization);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void rollback() throws SystemException {
+    lock.lock();
+
+    try {
+      int currentStatus = status.get();
+
+      if ((currentStatus != Status.STATUS_ACTIVE)
+          && (currentStatus != Status.STATUS_MARKED_ROLLBACK)) {
+        throw new IllegalStateException(
+            "Failed to rollback the transaction (" + xid + ") with status (" + currentStatus + ")");
+      }
+
+      status.set(Status.STATUS_ROLLING_BACK);
+      rollbackBranch();
+      afterCompletion(Status.STATUS_ROLLEDBACK);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void setRollbackOnly() {
+    setRollbackOnly(null);
+  }
+
+  @Override
+  public String toString() {
+    return "LocalTransaction {xid=\"" + xid + "\", status=\"" + status.get() + "\"}";
+  }
+
+  /**
+   * Returns the resource stored with the transaction synchronization registry.
+   *
+   * @param key the key for the resource
+   *
+   * @return the resource or <b>null</b> if no resource is stored for the key
+   */
+  Object getResource(Object key) {
+    return resources.get(key);
+  }
+
+  /**
+   * Returns whether the transaction has been marked for rollback.
+   *
+   * @return true if the transaction has been marked for rollback or false otherwise
+   */
+  boolean isRollbackOnly() {
+    return getStatus() == Status.STATUS_MARKED_ROLLBACK;
+  }
+
+  /**
+   * Store the resource with the transaction synchronization registry.
+   *
+   * @param key   the key for the resource
+   * @param value the resource or <b>null</b> to remove the resource
+   */
+  void putResource(Object key, Object value) {
+    if (value == null) {
+      resources.remove(key);
+    } else {
+      resources.put(key, value);
+    }
+  }
+
+  /**
+   * Register the interposed synchronization, which is invoked after the synchronizations
+   * registered directly with the transaction before completion, and before them after completion.
+   *
+   * @param synchronization the interposed synchronization
+   */
+  void registerInterposedSynchronization(Synchronization synchronization) {
+    lock.lock();
+
+    try {
+      int currentStatus = status.get();
+
+      if (((currentStatus != Status.STATUS_ACTIVE) && (currentStatus
+          != Status.STATUS_MARKED_ROLLBACK)) || completing) {
+        throw new IllegalStateException("Failed to register the interposed synchronization with "
+            + "the transaction (" + xid + ") with status (" + currentStatus + ")");
+      }
+
+      interposedSynchronizations.add(synchronization);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static <T extends Exception> T withCause(T exception, Throwable cause) {
+    if (cause != null) {
+      exception.initCause(cause);
+    }
+
+    return exception;
+  }
+
+  private void afterCompletion(int completionStatus) {
+    status.set(completionStatus);
+
+    completing = true;
+
+    for (Synchronization synchronization : interposedSynchronizations) {
+      afterCompletion(synchronization, completionStatus);
+    }
+
+    for (Synchronization synchronization : synchronizations) {
+      afterCompletion(synchronization, completionStatus);
+    }
+  }
+
+  private void afterCompletion(Synchronization synchronization, int completionStatus) {
+    try {
+      synchronization.afterCompletion(completionStatus);
+    } catch (Throwable e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("The synchronization (" + synchronization
+            + ") failed after the completion of the transaction (" + xid + ")", e);
+      }
+    }
+  }
+
+  private void beforeCompletion() {
+    try {
+      // Synchronizations may be registered while the existing synchronizations are invoked
+      for (int i = 0; i < synchronizations.size(); i++) {
+        synchronizations.get(i).beforeCompletion();
+      }
+
+      for (int i = 0; i < interposedSynchronizations.size(); i++) {
+        interposedSynchronizations.get(i).beforeCompletion();
+      }
+    } catch (Throwable e) {
+      setRollbackOnly(e);
+    }
+  }
+
+  private void checkActive(String action) throws RollbackException {
+    checkTimeout();
+
+    int currentStatus = status.get();
+
+    if (currentStatus == Status.STATUS_MARKED_ROLLBACK) {
+      throw withCause(new RollbackException("Failed to " + action + " the transaction (" + xid
+          + ") because it was marked for rollback"), rollbackCause);
+    } else if ((currentStatus != Status.STATUS_ACTIVE) || completing) {
+      throw new IllegalStateException("Failed to " + action + " the transaction (" + xid
+          + ") with status (" + currentStatus + ")");
+    }
+  }
+
+  private void checkTimeout() {
+    if ((deadlineNanos != 0) && ((System.nanoTime() - deadlineNanos) > 0)
+        && status.compareAndSet(Status.STATUS_ACTIVE, Status.STATUS_MARKED_ROLLBACK)) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("The transaction (" + xid + ") timed out and was marked for rollback");
+      }
+    }
+  }
+
+  private XAException endAssociations(int flags) {
+    XAException failure = null;
+
+    for (XAResource xaResource : associations.keySet()) {
+      try {
+        xaResource.end(xid, flags);
+      } catch (XAException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+
+    associations.clear();
+
+    return failure;
+  }
+
+  private void forget() {
+    try {
+      branch.forget(xid);
+    } catch (XAException e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Failed to forget the heuristically completed transaction (" + xid + ")", e);
+      }
+    }
+  }
+
+  private void rollbackBranch() {
+    if (branch == null) {
+      return;
+    }
+
+    endAssociations(XAResource.TMFAIL);
+
+    try {
+      branch.rollback(xid);
+    } catch (XAException e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Failed to rollback the transaction (" + xid + ")", e);
+      }
+    }
+  }
+
+  private void setRollbackOnly(Throwable cause) {
+    while (true) {
+      int currentStatus = status.get();
+
+      if (currentStatus == Status.STATUS_MARKED_ROLLBACK) {
+        return;
+      } else if (currentStatus != Status.STATUS_ACTIVE) {
+        throw new IllegalStateException("Failed to mark the transaction (" + xid
+            + ") for rollback with status (" + currentStatus + ")");
+      }
+
+      if (status.compareAndSet(Status.STATUS_ACTIVE, Status.STATUS_MARKED_ROLLBACK)) {
+        if (cause != null) {
+          rollbackCause = cause;
+        }
+
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.local;
+
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import java.time.Duration;
+import javax.inject.Singleton;
+
+/**
+ * The <b>LocalTransactionFactory</b> class produces the JTA transaction management beans for the
+ * local transaction manager, which is used instead of Narayana when the
+ * <b>appnaut.jta.engine</b> configuration property is set to <b>local</b>.
+ *
+ * @author Marcus Portmann
+ */
+@Factory
+@Requires(property = LocalTransactionFactory.ENGINE_PROPERTY, value = "local")
+@SuppressWarnings("unused")
+public class LocalTransactionFactory {
+
+  /**
+   * The configuration property used to select the JTA transaction manager implementation.
+   */
+  public static final String ENGINE_PROPERTY = "appnaut.jta.engine";
+
+  /**
+   * Returns the local JTA transaction manager.
+   *
+   * @param defaultTimeout the default transaction timeout
+   *
+   * @return the local JTA transaction manager
+   */
+  @Bean
+  @Singleton
+  public LocalTransactionManager transactionManager(
+      @Value("${appnaut.jta.local.default-timeout:60s}") Duration defaultTimeout) {
+    return new LocalTransactionManager(defaultTimeout);
+  }
+
+  /**
+   * Returns the local JTA transaction synchronization registry.
+   *
+   * @param transactionManager the local JTA transaction manager
+   *
+   * @return the local JTA transaction synchronization registry
+   */
+  @Bean
+  @Singleton
+  public LocalTransactionSynchronizationRegistry transactionSynchronizationRegistry(
+      LocalTransactionManager transactionManager) {
+    return new LocalTransactionSynchronizationRegistry(transactionManager);
+  }
+
+  /**
+   * Returns the local JTA user transaction.
+   *
+   * @param transactionManager the local JTA transaction manager
+   *
+   * @return the local JTA user transaction
+   */
+  @Bean
+  @Singleton
+  public LocalUserTransaction userTransaction(LocalTransactionManager transactionManager) {
+    return new LocalUserTransaction(transactionManager);
+  }
+}
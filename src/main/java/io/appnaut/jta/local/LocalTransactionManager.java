@@ -0,0 +1,166 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.local;
+
+import java.time.Duration;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.InvalidTransactionException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+/**
+ * The <b>LocalTransactionManager</b> class implements a lightweight JTA transaction manager for
+ * deployments where each transaction uses a single resource manager.
+ * <p/>
+ * Unlike Narayana, the local transaction manager does not write a transaction log, run a
+ * transaction reaper or support recovery, which removes the overhead of these from every
+ * transaction. Transactions that need to enlist more than one resource manager must use the
+ * Narayana transaction manager.
+ *
+ * @author Marcus Portmann
+ * @see LocalTransaction
+ */
+public class LocalTransactionManager implements TransactionManager {
+
+  /**
+   * The default transaction timeout in seconds.
+   */
+  private final int defaultTimeoutSeconds;
+
+  /**
+   * The transaction timeout in seconds for the transactions started on each thread or 0 if the
+   * default transaction timeout should be used.
+   */
+  private final ThreadLocal<int[]> threadTimeoutSeconds = ThreadLocal.withInitial(() -> new int[1]);
+
+  /**
+   * The transaction associated with each thread.
+   */
+  private final ThreadLocal<LocalTransaction> threadTransaction = new ThreadLocal<>();
+
+  /**
+   * Constructs a new <b>LocalTransactionManager</b>.
+   *
+   * @param defaultTimeout the default transaction timeout
+   */
+  public LocalTransactionManager(Duration defaultTimeout) {
+    this.defaultTimeoutSeconds = (int) defaultTimeout.toSeconds();
+  }
+
+  @Override
+  public void begin() throws NotSupportedException {
+    if (threadTransaction.get() != null) {
+      throw new NotSupportedException(
+          "Failed to begin a transaction because the thread (" + Thread.currentThread().getName()
+              + ") is already associated with the transaction (" + threadTransaction.get() + ")");
+    }
+
+    int timeoutSeconds = threadTimeoutSeconds.get()[0];
+
+    threadTransaction.set(
+        new LocalTransaction((timeoutSeconds > 0) ? timeoutSeconds : defaultTimeoutSeconds));
+  }
+
+  @Override
+  public void commit()
+      throws RollbackException, HeuristicMixedException, HeuristicRollbackException, SystemException {
+    try {
+      getRequiredTransaction("commit").commit();
+    } finally {
+      threadTransaction.remove();
+    }
+  }
+
+  @Override
+  public int getStatus() {
+    LocalTransaction transaction = threadTransaction.get();
+
+    return (transaction != null) ? transaction.getStatus() : Status.STATUS_NO_TRANSACTION;
+  }
+
+  @Override
+  public LocalTransaction getTransaction() {
+    return threadTransaction.get();
+  }
+
+  @Override
+  public void resume(Transaction transaction) throws InvalidTransactionException {
+    if (!(transaction instanceof LocalTransaction)) {
+      throw new InvalidTransactionException(
+          "Failed to resume the transaction (" + transaction + ") that was not started by the "
+              + "local transaction manager");
+    }
+
+    if (threadTransaction.get() != null) {
+      throw new IllegalStateException("Failed to resume the transaction (" + transaction
+          + ") because the thread (" + Thread.currentThread().getName()
+          + ") is already associated with the transaction (" + threadTransaction.get() + ")");
+    }
+
+    threadTransaction.set((LocalTransaction) transaction);
+  }
+
+  @Override
+  public void rollback() throws SystemException {
+    try {
+      getRequiredTransaction("rollback").rollback();
+    } finally {
+      threadTransaction.remove();
+    }
+  }
+
+  @Override
+  public void setRollbackOnly() {
+    getRequiredTransaction("mark for rollback").setRollbackOnly();
+  }
+
+  @Override
+  public void setTransactionTimeout(int seconds) throws SystemException {
+    if (seconds < 0) {
+      throw new SystemException("Invalid transaction timeout (" + seconds + ")");
+    }
+
+    threadTimeoutSeconds.get()[0] = seconds;
+  }
+
+  @Override
+  public LocalTransaction suspend() {
+    LocalTransaction transaction = threadTransaction.get();
+
+    threadTransaction.remove();
+
+    return transaction;
+  }
+
+  private LocalTransaction getRequiredTransaction(String action) {
+    LocalTransaction transaction = threadTransaction.get();
+
+    if (transaction == null) {
+      throw new IllegalStateException("Failed to " + action
+          + " the transaction because the thread (" + Thread.currentThread().getName()
+          + ") is not associated with a transaction");
+    }
+
+    return transaction;
+  }
+}
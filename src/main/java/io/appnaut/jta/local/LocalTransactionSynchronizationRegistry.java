@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.local;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The <b>LocalTransactionSynchronizationRegistry</b> class implements the JTA transaction
+ * synchronization registry for the local transaction manager.
+ *
+ * @author Marcus Portmann
+ */
+public class LocalTransactionSynchronizationRegistry implements
+    TransactionSynchronizationRegistry {
+
+  private final LocalTransactionManager transactionManager;
+
+  /**
+   * Constructs a new <b>LocalTransactionSynchronizationRegistry</b>.
+   *
+   * @param transactionManager the local transaction manager
+   */
+  public LocalTransactionSynchronizationRegistry(LocalTransactionManager transactionManager) {
+    this.transactionManager = transactionManager;
+  }
+
+  @Override
+  public Object getResource(Object key) {
+    return getRequiredTransaction().getResource(key);
+  }
+
+  @Override
+  public boolean getRollbackOnly() {
+    return getRequiredTransaction().isRollbackOnly();
+  }
+
+  @Override
+  public Object getTransactionKey() {
+    return transactionManager.getTransaction();
+  }
+
+  @Override
+  public int getTransactionStatus() {
+    return transactionManager.getStatus();
+  }
+
+  @Override
+  public void putResource(Object key, Object value) {
+    if (key == null) {
+      throw new NullPointerException("Failed to store the resource with the null key");
+    }
+
+    getRequiredTransaction().putResource(key, value);
+  }
+
+  @Override
+  public void registerInterposedSynchronization(Synchronization synchronization) {
+    getRequiredTransaction().registerInterposedSynchronization(synchronization);
+  }
+
+  @Override
+  public void setRollbackOnly() {
+    getRequiredTransaction().setRollbackOnly();
+  }
+
+  private LocalTransaction getRequiredTransaction() {
+    LocalTransaction transaction = transactionManager.getTransaction();
+
+    if ((transaction == null) || (transaction.getStatus() == Status.STATUS_NO_TRANSACTION)) {
+      throw new IllegalStateException("The thread (" + Thread.currentThread().getName()
+          + ") is not associated with a transaction");
+    }
+
+    return transaction;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.local;
+
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import javax.transaction.UserTransaction;
+
+/**
+ * The <b>LocalUserTransaction</b> class implements the JTA user transaction for the local
+ * transaction manager.
+ *
+ * @author Marcus Portmann
+ */
+public class LocalUserTransaction implements UserTransaction {
+
+  private final LocalTransactionManager transactionManager;
+
+  /**
+   * Constructs a new <b>LocalUserTransaction</b>.
+   *
+   * @param transactionManager the local transaction manager
+   */
+  public LocalUserTransaction(LocalTransactionManager transactionManager) {
+    this.transactionManager = transactionManager;
+  }
+
+  @Override
+  public void begin() throws NotSupportedException {
+    transactionManager.begin();
+  }
+
+  @Override
+  public void commit()
+      throws RollbackException, HeuristicMixedException, HeuristicRollbackException, SystemException {
+    transactionManager.commit();
+  }
+
+  @Override
+  public int getStatus() {
+    return transactionManager.getStatus();
+  }
+
+  @Override
+  public void rollback() throws SystemException {
+    transactionManager.rollback();
+  }
+
+  @Override
+  public void setRollbackOnly() {
+    transactionManager.setRollbackOnly();
+  }
+
+  @Override
+  public void setTransactionTimeout(int seconds) throws SystemException {
+    transactionManager.setTransactionTimeout(seconds);
+  }
+}
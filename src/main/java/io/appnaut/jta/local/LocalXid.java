@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.local;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.transaction.xa.Xid;
+
+/**
+ * The <b>LocalXid</b> class provides the transaction ID for a transaction managed by the local
+ * transaction manager.
+ * <p/>
+ * The global transaction ID combines a random node ID, generated when the class is loaded, with a
+ * sequence number, so that the transaction IDs are unique without writing to a transaction log.
+ *
+ * @author Marcus Portmann
+ */
+public class LocalXid implements Xid {
+
+  /**
+   * The format ID for the transaction IDs generated by the local transaction manager.
+   */
+  public static final int FORMAT_ID = 0x4C4F43;
+
+  private static final byte[] BRANCH_QUALIFIER = new byte[]{1};
+
+  private static final long NODE_ID = new SecureRandom().nextLong();
+
+  private static final AtomicLong sequence = new AtomicLong();
+
+  private final byte[] globalTransactionId;
+
+  private final int hashCode;
+
+  /**
+   * Constructs a new <b>LocalXid</b>.
+   */
+  public LocalXid() {
+    this.globalTransactionId = ByteBuffer.allocate(16).putLong(NODE_ID)
+        .putLong(sequence.incrementAndGet()).array();
+    this.hashCode = Arrays.hashCode(globalTransactionId);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+
+    if (!(object instanceof Xid)) {
+      return false;
+    }
+
+    Xid xid = (Xid) object;
+
+    return (xid.getFormatId() == FORMAT_ID)
+        && Arrays.equals(globalTransactionId, xid.getGlobalTransactionId())
+        && Arrays.equals(BRANCH_QUALIFIER, xid.getBranchQualifier());
+  }
+
+  @Override
+  public byte[] getBranchQualifier() {
+    return BRANCH_QUALIFIER.clone();
+  }
+
+  @Override
+  public int getFormatId() {
+    return FORMAT_ID;
+  }
+
+  @Override
+  public byte[] getGlobalTransactionId() {
+    return globalTransactionId.clone();
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buffer = new StringBuilder("LocalXid {globalTransactionId=\"");
+
+    for (byte b : globalTransactionId) {
+      buffer.append(Character.forDigit((b >> 4) & 0xF, 16))
+          .append(Character.forDigit(b & 0xF, 16));
+    }
+
+    return buffer.append("\"}").toString();
+  }
+}
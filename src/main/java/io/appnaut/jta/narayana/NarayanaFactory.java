@@ -18,6 +18,7 @@ package io.appnaut.jta.narayana;
 
 import com.arjuna.ats.arjuna.coordinator.TxControl;
 import com.arjuna.ats.arjuna.recovery.RecoveryManager;
+import io.appnaut.jta.local.LocalTransactionFactory;
 import io.micronaut.context.annotation.Bean;
 import io.micronaut.context.annotation.Factory;
 import io.micronaut.context.annotation.Requires;
@@ -27,12 +28,14 @@ import javax.transaction.UserTransaction;
 
 /**
  * The <b>TransactionFactory</b> class produces the JTA transaction management beans for the
- * Narayana transactions toolkit.
+ * Narayana transactions toolkit, which is the default JTA transaction manager implementation.
  *
  * @author Marcus Portmann
  * @see <a href="https://narayana.io">Naryana</a>
  */
 @Factory
+@Requires(property = LocalTransactionFactory.ENGINE_PROPERTY, value = "narayana",
+    defaultValue = "narayana")
 @SuppressWarnings("unused")
 public class NarayanaFactory {
 
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.pool;
+
+import java.util.Arrays;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The <b>ConnectionBag</b> class implements the lock-free collection of pooled connections used by
+ * a {@link PooledDataSource}.
+ * <p/>
+ * A connection is claimed by atomically changing its state from free to in use. A thread first
+ * scans the shared array of connections, and then waits on a handoff queue that returned
+ * connections are passed to directly while there are waiting threads. There is no thread-affinity
+ * slot, since virtual threads are rarely reused, so the slot would never be hit, and it would keep
+ * connections that have been removed from the pool reachable. No monitors are used, so threads
+ * waiting for a connection never pin a carrier thread.
+ *
+ * @author Marcus Portmann
+ */
+final class ConnectionBag {
+
+  private static final PooledConnection[] EMPTY = new PooledConnection[0];
+
+  /**
+   * The copy-on-write array of all the connections in the bag.
+   */
+  private final AtomicReference<PooledConnection[]> connections = new AtomicReference<>(EMPTY);
+
+  /**
+   * The queue used to hand returned connections directly to waiting threads.
+   */
+  private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<>(true);
+
+  /**
+   * The number of threads waiting for a connection.
+   */
+  private final AtomicInteger waiters = new AtomicInteger();
+
+  /**
+   * Add a new connection, which is in use by the calling thread, to the bag.
+   *
+   * @param connection the connection
+   */
+  void add(PooledConnection connection) {
+    PooledConnection[] current;
+    PooledConnection[] updated;
+    do {
+      current = connections.get();
+      updated = Arrays.copyOf(current, current.length + 1);
+      updated[current.length] = connection;
+    } while (!connections.compareAndSet(current, updated));
+  }
+
+  /**
+   * Returns a snapshot of all the connections in the bag.
+   *
+   * @return a snapshot of all the connections in the bag
+   */
+  PooledConnection[] getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * Returns the number of threads waiting for a connection.
+   *
+   * @return the number of threads waiting for a connection
+   */
+  int getWaiters() {
+    return waiters.get();
+  }
+
+  /**
+   * Remove the connection from the bag.
+   *
+   * @param connection the connection
+   *
+   * @return true if the connection was removed or false if it was not in the bag
+   */
+  boolean remove(PooledConnection connection) {
+    connection.setState(PooledConnection.STATE_REMOVED);
+
+    PooledConnection[] current;
+    PooledConnection[] updated;
+    do {
+      current = connections.get();
+
+      int index = -1;
+      for (int i = 0; i < current.length; i++) {
+        if (current[i] == connection) {
+          index = i;
+          break;
+        }
+      }
+
+      if (index == -1) {
+        return false;
+      }
+
+      updated = new PooledConnection[current.length - 1];
+      System.arraycopy(current, 0, updated, 0, index);
+      System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+    } while (!connections.compareAndSet(current, updated));
+
+    return true;
+  }
+
+  /**
+   * Release the connection, which was in use, back into the bag and hand it to a waiting thread if
+   * there is one.
+   *
+   * @param connection the connection
+   */
+  void release(PooledConnection connection) {
+    connection.setState(PooledConnection.STATE_FREE);
+
+    for (int i = 0; waiters.get() > 0; i++) {
+      if ((connection.getState() != PooledConnection.STATE_FREE)
+          || handoffQueue.offer(connection)) {
+        return;
+      } else if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Try to claim a free connection without waiting.
+   *
+   * @return the claimed connection or <b>null</b> if no connection is free
+   */
+  PooledConnection tryClaim() {
+    return scan();
+  }
+
+  /**
+   * Wait for a free connection.
+   *
+   * @param timeoutNanos the maximum time to wait in nanoseconds
+   *
+   * @return the claimed connection or <b>null</b> if no connection became free before the timeout
+   * expired
+   */
+  PooledConnection waitForConnection(long timeoutNanos) throws InterruptedException {
+    waiters.incrementAndGet();
+    try {
+      // Check again now that returning threads are guaranteed to see us waiting
+      PooledConnection connection = scan();
+
+      if (connection != null) {
+        return connection;
+      }
+
+      long deadline = System.nanoTime() + timeoutNanos;
+
+      long remaining = timeoutNanos;
+
+      while (remaining > 0) {
+        connection = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+
+        if ((connection != null) && connection
+            .compareAndSetState(PooledConnection.STATE_FREE, PooledConnection.STATE_IN_USE)) {
+          return connection;
+        }
+
+        remaining = deadline - System.nanoTime();
+      }
+
+      return null;
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  private PooledConnection scan() {
+    for (PooledConnection connection : connections.get()) {
+      if (connection
+          .compareAndSetState(PooledConnection.STATE_FREE, PooledConnection.STATE_IN_USE)) {
+        return connection;
+      }
+    }
+
+    return null;
+  }
+}
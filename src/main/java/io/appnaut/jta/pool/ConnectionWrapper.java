@@ -0,0 +1,498 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.pool;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The <b>ConnectionWrapper</b> class implements the logical connection handed out by a {@link
+ * PooledDataSource}. Closing the wrapper releases its reference to the pooled connection instead of
+ * closing the physical connection.
+ * <p/>
+ * The statements created using the wrapper are tracked and any that are still open when the
+ * wrapper is closed are closed, so that a caller that does not close its statements cannot leak
+ * them to the next user of the physical connection.
+ *
+ * @author Marcus Portmann
+ */
+final class ConnectionWrapper implements Connection {
+
+  /**
+   * The number of statements that are tracked between checks for statements that have already
+   * been closed.
+   */
+  private static final int STATEMENT_PRUNE_INTERVAL = 32;
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  private final PooledConnection pooledConnection;
+
+  /**
+   * The statements created using the wrapper that may still be open.
+   */
+  private final Queue<Statement> statements = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The number of statements created using the wrapper.
+   */
+  private final AtomicInteger statementCount = new AtomicInteger();
+
+  private final Connection connection;
+
+  /**
+   * Constructs a new <b>ConnectionWrapper</b>.
+   *
+   * @param pooledConnection the pooled connection
+   */
+  ConnectionWrapper(PooledConnection pooledConnection) {
+    this.pooledConnection = pooledConnection;
+    this.connection = pooledConnection.getPhysicalConnection();
+  }
+
+  @Override
+  public void abort(Executor executor) throws SQLException {
+    if (closed.compareAndSet(false, true)) {
+      statements.clear();
+      pooledConnection.setFlushOnly();
+      try {
+        connection.abort(executor);
+      } finally {
+        pooledConnection.release();
+      }
+    }
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    checkClosed();
+    connection.clearWarnings();
+  }
+
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      try {
+        closeStatements();
+      } finally {
+        pooledConnection.release();
+      }
+    }
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    checkNotEnlisted("commit");
+    connection.commit();
+  }
+
+  @Override
+  public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+    checkClosed();
+    return connection.createArrayOf(typeName, elements);
+  }
+
+  @Override
+  public Blob createBlob() throws SQLException {
+    checkClosed();
+    return connection.createBlob();
+  }
+
+  @Override
+  public Clob createClob() throws SQLException {
+    checkClosed();
+    return connection.createClob();
+  }
+
+  @Override
+  public NClob createNClob() throws SQLException {
+    checkClosed();
+    return connection.createNClob();
+  }
+
+  @Override
+  public SQLXML createSQLXML() throws SQLException {
+    checkClosed();
+    return connection.createSQLXML();
+  }
+
+  @Override
+  public Statement createStatement() throws SQLException {
+    checkClosed();
+    return track(connection.createStatement());
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency)
+      throws SQLException {
+    checkClosed();
+    return track(connection.createStatement(resultSetType, resultSetConcurrency));
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency,
+      int resultSetHoldability) throws SQLException {
+    checkClosed();
+    return track(
+        connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+  }
+
+  @Override
+  public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+    checkClosed();
+    return connection.createStruct(typeName, attributes);
+  }
+
+  @Override
+  public boolean getAutoCommit() throws SQLException {
+    checkClosed();
+    return connection.getAutoCommit();
+  }
+
+  @Override
+  public String getCatalog() throws SQLException {
+    checkClosed();
+    return connection.getCatalog();
+  }
+
+  @Override
+  public Properties getClientInfo() throws SQLException {
+    checkClosed();
+    return connection.getClientInfo();
+  }
+
+  @Override
+  public String getClientInfo(String name) throws SQLException {
+    checkClosed();
+    return connection.getClientInfo(name);
+  }
+
+  @Override
+  public int getHoldability() throws SQLException {
+    checkClosed();
+    return connection.getHoldability();
+  }
+
+  @Override
+  public DatabaseMetaData getMetaData() throws SQLException {
+    checkClosed();
+    return connection.getMetaData();
+  }
+
+  @Override
+  public int getNetworkTimeout() throws SQLException {
+    checkClosed();
+    return connection.getNetworkTimeout();
+  }
+
+  @Override
+  public String getSchema() throws SQLException {
+    checkClosed();
+    return connection.getSchema();
+  }
+
+  @Override
+  public int getTransactionIsolation() throws SQLException {
+    checkClosed();
+    return connection.getTransactionIsolation();
+  }
+
+  @Override
+  public Map<String, Class<?>> getTypeMap() throws SQLException {
+    checkClosed();
+    return connection.getTypeMap();
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    checkClosed();
+    return connection.getWarnings();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed.get();
+  }
+
+  @Override
+  public boolean isReadOnly() throws SQLException {
+    checkClosed();
+    return connection.isReadOnly();
+  }
+
+  @Override
+  public boolean isValid(int timeout) throws SQLException {
+    return !closed.get() && connection.isValid(timeout);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || connection.isWrapperFor(iface);
+  }
+
+  @Override
+  public String nativeSQL(String sql) throws SQLException {
+    checkClosed();
+    return connection.nativeSQL(sql);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql) throws SQLException {
+    checkClosed();
+    return track(connection.prepareCall(sql));
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+      throws SQLException {
+    checkClosed();
+    return track(connection.prepareCall(sql, resultSetType, resultSetConcurrency));
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+      int resultSetHoldability) throws SQLException {
+    checkClosed();
+    return track(connection
+        .prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql) throws SQLException {
+    checkClosed();
+    return track(connection.prepareStatement(sql));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+      throws SQLException {
+    checkClosed();
+    return track(connection.prepareStatement(sql, autoGeneratedKeys));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType,
+      int resultSetConcurrency) throws SQLException {
+    checkClosed();
+    return track(connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType,
+      int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    checkClosed();
+    return track(connection
+        .prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int[] columnIndexes)
+      throws SQLException {
+    checkClosed();
+    return track(connection.prepareStatement(sql, columnIndexes));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, String[] columnNames)
+      throws SQLException {
+    checkClosed();
+    return track(connection.prepareStatement(sql, columnNames));
+  }
+
+  @Override
+  public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+    checkClosed();
+    connection.releaseSavepoint(savepoint);
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    checkNotEnlisted("rollback");
+    connection.rollback();
+  }
+
+  @Override
+  public void rollback(Savepoint savepoint) throws SQLException {
+    checkClosed();
+    connection.rollback(savepoint);
+  }
+
+  @Override
+  public void setAutoCommit(boolean autoCommit) throws SQLException {
+    if (autoCommit) {
+      checkNotEnlisted("enable auto-commit");
+    } else {
+      checkClosed();
+    }
+    connection.setAutoCommit(autoCommit);
+  }
+
+  @Override
+  public void setCatalog(String catalog) throws SQLException {
+    checkClosed();
+    pooledConnection.beforeCatalogChange();
+    connection.setCatalog(catalog);
+  }
+
+  @Override
+  public void setClientInfo(String name, String value) throws SQLClientInfoException {
+    connection.setClientInfo(name, value);
+  }
+
+  @Override
+  public void setClientInfo(Properties properties) throws SQLClientInfoException {
+    connection.setClientInfo(properties);
+  }
+
+  @Override
+  public void setHoldability(int holdability) throws SQLException {
+    checkClosed();
+    connection.setHoldability(holdability);
+  }
+
+  @Override
+  public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+    checkClosed();
+    connection.setNetworkTimeout(executor, milliseconds);
+  }
+
+  @Override
+  public void setReadOnly(boolean readOnly) throws SQLException {
+    checkClosed();
+    pooledConnection.beforeReadOnlyChange();
+    connection.setReadOnly(readOnly);
+  }
+
+  @Override
+  public Savepoint setSavepoint() throws SQLException {
+    checkClosed();
+    return connection.setSavepoint();
+  }
+
+  @Override
+  public Savepoint setSavepoint(String name) throws SQLException {
+    checkClosed();
+    return connection.setSavepoint(name);
+  }
+
+  @Override
+  public void setSchema(String schema) throws SQLException {
+    checkClosed();
+    pooledConnection.beforeSchemaChange();
+    connection.setSchema(schema);
+  }
+
+  @Override
+  public void setTransactionIsolation(int level) throws SQLException {
+    checkClosed();
+    pooledConnection.beforeTransactionIsolationChange();
+    connection.setTransactionIsolation(level);
+  }
+
+  @Override
+  public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+    checkClosed();
+    connection.setTypeMap(map);
+  }
+
+  @Override
+  public String toString() {
+    return "ConnectionWrapper {connection=\"" + connection + "\"}";
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+
+    return connection.unwrap(iface);
+  }
+
+  private static boolean isStatementClosed(Statement statement) {
+    try {
+      return statement.isClosed();
+    } catch (Throwable e) {
+      return true;
+    }
+  }
+
+  private void checkClosed() throws SQLException {
+    if (closed.get()) {
+      throw new SQLException("The connection is closed");
+    }
+  }
+
+  private void checkNotEnlisted(String operation) throws SQLException {
+    checkClosed();
+
+    if (pooledConnection.isEnlisted()) {
+      throw new SQLException(
+          "Failed to " + operation + " the connection while it is enlisted in a transaction");
+    }
+  }
+
+  /**
+   * Close the statements created using the wrapper that are still open.
+   */
+  private void closeStatements() {
+    Statement statement;
+
+    while ((statement = statements.poll()) != null) {
+      try {
+        if (!statement.isClosed()) {
+          statement.close();
+        }
+      } catch (Throwable ignored) {
+      }
+    }
+  }
+
+  /**
+   * Track the statement created using the wrapper so that it can be closed when the wrapper is
+   * closed, and periodically stop tracking the statements that have already been closed.
+   */
+  private <T extends Statement> T track(T statement) {
+    if ((statementCount.incrementAndGet() % STATEMENT_PRUNE_INTERVAL) == 0) {
+      statements.removeIf(ConnectionWrapper::isStatementClosed);
+    }
+
+    statements.add(statement);
+
+    return statement;
+  }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.pool;
+
+import io.agroal.api.transaction.TransactionAware;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAResource;
+
+/**
+ * The <b>PooledConnection</b> class holds a physical connection managed by a {@link
+ * PooledDataSource} and implements the Agroal <b>TransactionAware</b> contract, which allows the
+ * connection to be enlisted in a JTA transaction by a <b>TransactionIntegration</b>.
+ * <p/>
+ * A pooled connection is reference counted. Each open connection wrapper holds one reference and
+ * an active transaction enlistment holds another, and the connection is returned to the pool when
+ * the last reference is released.
+ * <p/>
+ * The catalog, read-only flag, schema and transaction isolation level for the connection are
+ * recorded the first time they are changed through a connection wrapper and restored when the
+ * connection is returned to the pool, so that changes made by one user of the connection are
+ * never seen by the next.
+ *
+ * @author Marcus Portmann
+ */
+final class PooledConnection implements TransactionAware {
+
+  /**
+   * The state for a pooled connection that is available for use.
+   */
+  static final int STATE_FREE = 0;
+
+  /**
+   * The state for a pooled connection that is in use.
+   */
+  static final int STATE_IN_USE = 1;
+
+  /**
+   * The state for a pooled connection that has been removed from the pool.
+   */
+  static final int STATE_REMOVED = 2;
+
+  /**
+   * The physical connection.
+   */
+  private final Connection connection;
+
+  /**
+   * The time in nanoseconds when the connection was created.
+   */
+  private final long creationNanos = System.nanoTime();
+
+  /**
+   * The pooled data source the connection is associated with.
+   */
+  private final PooledDataSource dataSource;
+
+  /**
+   * Is the connection enlisted in a transaction.
+   */
+  private final AtomicBoolean enlisted = new AtomicBoolean();
+
+  /**
+   * The number of references to the connection.
+   */
+  private final AtomicInteger references = new AtomicInteger();
+
+  /**
+   * The state of the pooled connection.
+   */
+  private final AtomicInteger state = new AtomicInteger(STATE_IN_USE);
+
+  /**
+   * The XA connection the physical connection was retrieved from if this is an XA connection.
+   */
+  private final XAConnection xaConnection;
+
+  /**
+   * The XA resource for the physical connection if this is an XA connection.
+   */
+  private final XAResource xaResource;
+
+  /**
+   * Has the catalog for the connection been changed through a connection wrapper.
+   */
+  private boolean catalogChanged;
+
+  /**
+   * The catalog for the connection before it was changed through a connection wrapper.
+   */
+  private String originalCatalog;
+
+  /**
+   * The read-only flag for the connection before it was changed through a connection wrapper or
+   * <b>null</b> if it has not been changed.
+   */
+  private Boolean originalReadOnly;
+
+  /**
+   * The schema for the connection before it was changed through a connection wrapper.
+   */
+  private String originalSchema;
+
+  /**
+   * The transaction isolation level for the connection before it was changed through a connection
+   * wrapper or <b>null</b> if it has not been changed.
+   */
+  private Integer originalTransactionIsolation;
+
+  /**
+   * Has the schema for the connection been changed through a connection wrapper.
+   */
+  private boolean schemaChanged;
+
+  /**
+   * The time in nanoseconds when the connection was last acquired from the pool.
+   */
+  private volatile long acquisitionNanos;
+
+  /**
+   * Should the connection be destroyed instead of being returned to the pool.
+   */
+  private volatile boolean flushOnly;
+
+  /**
+   * The thread that acquired the connection from the pool or <b>null</b> if the connection is not
+   * in use.
+   */
+  private volatile Thread holdingThread;
+
+  /**
+   * The time in nanoseconds when the connection was last returned to the pool.
+   */
+  private volatile long lastUsedNanos = creationNanos;
+
+  /**
+   * Has the connection been reported as a leak since it was acquired.
+   */
+  private volatile boolean leakReported;
+
+  /**
+   * Was auto-commit disabled when the connection was enlisted in a transaction.
+   */
+  private volatile boolean resetAutoCommit;
+
+  /**
+   * The callback used to check whether the transaction the connection is enlisted in is still
+   * running.
+   */
+  private volatile SQLCallable<Boolean> transactionCheck;
+
+  /**
+   * Constructs a new <b>PooledConnection</b>.
+   *
+   * @param dataSource   the pooled data source the connection is associated with
+   * @param xaConnection the XA connection the physical connection was retrieved from or
+   *                     <b>null</b> if this is not an XA connection
+   * @param connection   the physical connection
+   * @param xaResource   the XA resource for the physical connection or <b>null</b> if this is not
+   *                     an XA connection
+   */
+  PooledConnection(PooledDataSource dataSource, XAConnection xaConnection, Connection connection,
+      XAResource xaResource) {
+    this.dataSource = dataSource;
+    this.xaConnection = xaConnection;
+    this.connection = connection;
+    this.xaResource = xaResource;
+  }
+
+  /**
+   * Returns the physical connection.
+   *
+   * @return the physical connection
+   */
+  public Object getConnection() {
+    return connection;
+  }
+
+  @Override
+  public void setFlushOnly() {
+    flushOnly = true;
+  }
+
+  @Override
+  public void transactionBeforeCompletion(boolean successful) {
+  }
+
+  @Override
+  public void transactionCheckCallback(SQLCallable<Boolean> transactionCheck) {
+    this.transactionCheck = transactionCheck;
+  }
+
+  @Override
+  public void transactionCommit() throws SQLException {
+    connection.commit();
+  }
+
+  @Override
+  public void transactionEnd() throws SQLException {
+    if (enlisted.compareAndSet(true, false)) {
+      try {
+        if (resetAutoCommit) {
+          resetAutoCommit = false;
+          connection.setAutoCommit(true);
+        }
+      } finally {
+        release();
+      }
+    }
+  }
+
+  @Override
+  public void transactionRollback() throws SQLException {
+    connection.rollback();
+  }
+
+  @Override
+  public void transactionStart() throws SQLException {
+    if (enlisted.compareAndSet(false, true)) {
+      references.incrementAndGet();
+
+      if (connection.getAutoCommit()) {
+        connection.setAutoCommit(false);
+        resetAutoCommit = true;
+      }
+    }
+  }
+
+  /**
+   * Record that the connection has been acquired from the pool by the current thread.
+   */
+  void acquired() {
+    acquisitionNanos = System.nanoTime();
+    leakReported = false;
+    holdingThread = Thread.currentThread();
+  }
+
+  /**
+   * Record the catalog for the connection before it is changed through a connection wrapper for
+   * the first time.
+   */
+  void beforeCatalogChange() throws SQLException {
+    if (!catalogChanged) {
+      originalCatalog = connection.getCatalog();
+      catalogChanged = true;
+    }
+  }
+
+  /**
+   * Record the read-only flag for the connection before it is changed through a connection
+   * wrapper for the first time.
+   */
+  void beforeReadOnlyChange() throws SQLException {
+    if (originalReadOnly == null) {
+      originalReadOnly = connection.isReadOnly();
+    }
+  }
+
+  /**
+   * Record the schema for the connection before it is changed through a connection wrapper for
+   * the first time.
+   */
+  void beforeSchemaChange() throws SQLException {
+    if (!schemaChanged) {
+      originalSchema = connection.getSchema();
+      schemaChanged = true;
+    }
+  }
+
+  /**
+   * Record the transaction isolation level for the connection before it is changed through a
+   * connection wrapper for the first time.
+   */
+  void beforeTransactionIsolationChange() throws SQLException {
+    if (originalTransactionIsolation == null) {
+      originalTransactionIsolation = connection.getTransactionIsolation();
+    }
+  }
+
+  /**
+   * Check whether the connection has been held for longer than the leak timeout without having
+   * been reported as a leak since it was acquired.
+   *
+   * @param now              the current time in nanoseconds
+   * @param leakTimeoutNanos the leak timeout in nanoseconds
+   *
+   * @return true if the connection has leaked and should be reported or false otherwise
+   */
+  boolean checkLeak(long now, long leakTimeoutNanos) {
+    if ((holdingThread == null) || leakReported || ((now - acquisitionNanos) < leakTimeoutNanos)) {
+      return false;
+    }
+
+    leakReported = true;
+
+    return true;
+  }
+
+  /**
+   * Attempt to change the state of the pooled connection.
+   *
+   * @param expectedState the expected state
+   * @param newState      the new state
+   *
+   * @return true if the state was changed or false otherwise
+   */
+  boolean compareAndSetState(int expectedState, int newState) {
+    return state.compareAndSet(expectedState, newState);
+  }
+
+  /**
+   * Close the physical connection.
+   */
+  void destroy() {
+    try {
+      if (xaConnection != null) {
+        xaConnection.close();
+      } else {
+        connection.close();
+      }
+    } catch (Throwable ignored) {
+    }
+  }
+
+  /**
+   * Returns the time in nanoseconds when the connection was last acquired from the pool.
+   *
+   * @return the time in nanoseconds when the connection was last acquired from the pool
+   */
+  long getAcquisitionNanos() {
+    return acquisitionNanos;
+  }
+
+  /**
+   * Returns the time in nanoseconds when the connection was created.
+   *
+   * @return the time in nanoseconds when the connection was created
+   */
+  long getCreationNanos() {
+    return creationNanos;
+  }
+
+  /**
+   * Returns the thread that acquired the connection from the pool.
+   *
+   * @return the thread that acquired the connection from the pool or <b>null</b> if the
+   * connection is not in use
+   */
+  Thread getHoldingThread() {
+    return holdingThread;
+  }
+
+  /**
+   * Returns the time in nanoseconds when the connection was last returned to the pool.
+   *
+   * @return the time in nanoseconds when the connection was last returned to the pool
+   */
+  long getLastUsedNanos() {
+    return lastUsedNanos;
+  }
+
+  /**
+   * Returns the physical connection.
+   *
+   * @return the physical connection
+   */
+  Connection getPhysicalConnection() {
+    return connection;
+  }
+
+  /**
+   * Returns the state of the pooled connection.
+   *
+   * @return the state of the pooled connection
+   */
+  int getState() {
+    return state.get();
+  }
+
+  /**
+   * Returns the XA resource for the physical connection.
+   *
+   * @return the XA resource for the physical connection or <b>null</b> if this is not an XA
+   * connection
+   */
+  XAResource getXAResource() {
+    return xaResource;
+  }
+
+  /**
+   * Returns whether the connection is enlisted in a transaction.
+   *
+   * @return true if the connection is enlisted in a transaction or false otherwise
+   */
+  boolean isEnlisted() {
+    return enlisted.get();
+  }
+
+  /**
+   * Returns whether the connection should be destroyed instead of being returned to the pool.
+   *
+   * @return true if the connection should be destroyed instead of being returned to the pool or
+   * false otherwise
+   */
+  boolean isFlushOnly() {
+    return flushOnly;
+  }
+
+  /**
+   * Returns whether the transaction the connection is enlisted in is still running.
+   *
+   * @return true if the transaction the connection is enlisted in is still running or false
+   * otherwise
+   */
+  boolean isTransactionRunning() throws SQLException {
+    SQLCallable<Boolean> transactionCheck = this.transactionCheck;
+
+    return (transactionCheck != null) && Boolean.TRUE.equals(transactionCheck.call());
+  }
+
+  /**
+   * Returns a new connection wrapper for the pooled connection, which holds a reference to the
+   * pooled connection until it is closed.
+   *
+   * @return a new connection wrapper for the pooled connection
+   */
+  ConnectionWrapper newConnectionWrapper() {
+    references.incrementAndGet();
+
+    return new ConnectionWrapper(this);
+  }
+
+  /**
+   * Release a reference to the pooled connection and return it to the pool if this was the last
+   * reference.
+   */
+  void release() {
+    if (references.decrementAndGet() == 0) {
+      dataSource.returnConnection(this);
+    }
+  }
+
+  /**
+   * Reset the pooled connection after it has been removed from the pool so that it can be reused.
+   */
+  void reset() {
+    flushOnly = false;
+    holdingThread = null;
+    lastUsedNanos = System.nanoTime();
+    transactionCheck = null;
+  }
+
+  /**
+   * Restore the catalog, read-only flag, schema and transaction isolation level that were changed
+   * through a connection wrapper since the connection was acquired.
+   */
+  void restoreAttributes() throws SQLException {
+    try {
+      if (originalReadOnly != null) {
+        connection.setReadOnly(originalReadOnly);
+      }
+
+      if (originalTransactionIsolation != null) {
+        connection.setTransactionIsolation(originalTransactionIsolation);
+      }
+
+      if (catalogChanged) {
+        connection.setCatalog(originalCatalog);
+      }
+
+      if (schemaChanged) {
+        connection.setSchema(originalSchema);
+      }
+    } finally {
+      originalReadOnly = null;
+      originalTransactionIsolation = null;
+      originalCatalog = null;
+      originalSchema = null;
+      catalogChanged = false;
+      schemaChanged = false;
+    }
+  }
+
+  /**
+   * Set the state of the pooled connection.
+   *
+   * @param newState the new state
+   */
+  void setState(int newState) {
+    state.set(newState);
+  }
+}
@@ -0,0 +1,1040 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.pool;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.AgroalDataSourceListener;
+import io.agroal.api.AgroalDataSourceMetrics;
+import io.agroal.api.AgroalPoolInterceptor;
+import io.agroal.api.configuration.AgroalConnectionFactoryConfiguration;
+import io.agroal.api.configuration.AgroalConnectionPoolConfiguration;
+import io.agroal.api.configuration.AgroalDataSourceConfiguration;
+import io.agroal.api.security.SimplePassword;
+import io.agroal.api.transaction.TransactionAware;
+import io.agroal.api.transaction.TransactionIntegration;
+import io.agroal.api.transaction.TransactionIntegration.ResourceRecoveryFactory;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import javax.sql.XAConnection;
+import javax.sql.XADataSource;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>PooledDataSource</b> class implements a lock-free JDBC connection pool that can be used
+ * in place of the Agroal connection pool.
+ * <p/>
+ * The pool is configured using the same Agroal configuration and JTA transaction integration as
+ * the Agroal connection pool and implements the <b>AgroalDataSource</b> interface, so the two
+ * implementations are interchangeable. Connections are held in a {@link ConnectionBag}, which
+ * allows a connection to be acquired and returned using only atomic operations.
+ * <p/>
+ * Like the Agroal connection pool, the pool is filled to its minimum size asynchronously when it
+ * is created, and a housekeeping thread for the pool reaps connections that have been idle for
+ * longer than the reap timeout, retires connections that have exceeded their maximum lifetime,
+ * validates idle connections in the background and reports connections that have been held for
+ * longer than the leak timeout, when these are enabled in the pool configuration.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class PooledDataSource implements AgroalDataSource, ResourceRecoveryFactory {
+
+  /**
+   * The maximum time in nanoseconds to wait for a returned connection before checking whether a
+   * new connection can be created.
+   */
+  private static final long MAX_WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /**
+   * The number of times per maximum lifetime that the connections are checked for connections that
+   * have exceeded their maximum lifetime.
+   */
+  private static final int MAX_LIFETIME_CHECKS = 4;
+
+  /**
+   * The timeout in seconds used when validating a connection.
+   */
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final org.slf4j.Logger logger = LoggerFactory.getLogger(PooledDataSource.class);
+
+  private static final long serialVersionUID = 1000000;
+
+  private final Duration acquisitionTimeout;
+
+  private final boolean autoCommit;
+
+  private final AgroalDataSourceConfiguration configuration;
+
+  private final ConnectionBag connectionBag = new ConnectionBag();
+
+  /**
+   * The executor used to fill the pool and run the housekeeping tasks for the pool.
+   */
+  private final ScheduledExecutorService housekeepingExecutor;
+
+  private final String initialSql;
+
+  private final Properties jdbcProperties;
+
+  private final Duration leakTimeout;
+
+  private final AgroalDataSourceListener[] listeners;
+
+  private final Duration maxLifetime;
+
+  private final int maxSize;
+
+  private final PooledDataSourceMetrics metrics;
+
+  private final int minSize;
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  private final String password;
+
+  private final Duration reapTimeout;
+
+  /**
+   * The connection provider, which is an XA data source, a data source or a JDBC driver, or
+   * <b>null</b> if connections should be retrieved from the driver manager.
+   */
+  private final Object provider;
+
+  /**
+   * The number of physical connections, including connections that are being created.
+   */
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final TransactionIntegration transactionIntegration;
+
+  private final String url;
+
+  private final String username;
+
+  private final Duration validationTimeout;
+
+  private volatile boolean closed;
+
+  private volatile List<AgroalPoolInterceptor> interceptors = List.of();
+
+  /**
+   * Constructs a new <b>PooledDataSource</b>.
+   *
+   * @param name          the name of the data source
+   * @param configuration the Agroal configuration for the data source
+   * @param listeners     the listeners for the data source
+   */
+  public PooledDataSource(String name, AgroalDataSourceConfiguration configuration,
+      AgroalDataSourceListener... listeners) throws SQLException {
+    this.name = name;
+    this.configuration = configuration;
+    this.listeners = listeners;
+    this.metrics = new PooledDataSourceMetrics(connectionBag);
+
+    AgroalConnectionPoolConfiguration poolConfiguration =
+        configuration.connectionPoolConfiguration();
+
+    AgroalConnectionFactoryConfiguration factoryConfiguration =
+        poolConfiguration.connectionFactoryConfiguration();
+
+    this.minSize = poolConfiguration.minSize();
+    this.maxSize = poolConfiguration.maxSize();
+    this.acquisitionTimeout = poolConfiguration.acquisitionTimeout();
+    this.leakTimeout = poolConfiguration.leakTimeout();
+    this.maxLifetime = poolConfiguration.maxLifetime();
+    this.reapTimeout = poolConfiguration.reapTimeout();
+    this.validationTimeout = poolConfiguration.validationTimeout();
+    this.transactionIntegration = (poolConfiguration.transactionIntegration() != null)
+        ? poolConfiguration.transactionIntegration()
+        : TransactionIntegration.none();
+    this.url = factoryConfiguration.jdbcUrl();
+    this.autoCommit = factoryConfiguration.autoCommit();
+    this.initialSql = factoryConfiguration.initialSql();
+    this.jdbcProperties = factoryConfiguration.jdbcProperties();
+
+    Principal principal = factoryConfiguration.principal();
+
+    this.username = (principal != null) ? principal.getName() : null;
+
+    String password = null;
+
+    for (Object credential : factoryConfiguration.credentials()) {
+      if (credential instanceof SimplePassword) {
+        password = ((SimplePassword) credential).getWord();
+      }
+    }
+
+    this.password = password;
+
+    this.provider = newProvider(factoryConfiguration.connectionProviderClass());
+
+    if (provider instanceof XADataSource) {
+      transactionIntegration.addResourceRecoveryFactory(this);
+    }
+
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "appnaut-pool-" + name);
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.setRemoveOnCancelPolicy(true);
+
+    this.housekeepingExecutor = executor;
+
+    // Like the Agroal connection pool, fill the pool asynchronously so creating it does not block
+    if (minSize > 0) {
+      housekeepingExecutor.execute(() -> fillQuietly(minSize));
+    }
+
+    scheduleHousekeeping(leakTimeout, this::detectLeaks);
+    scheduleHousekeeping(isEnabled(maxLifetime) ? maxLifetime.dividedBy(MAX_LIFETIME_CHECKS)
+        : Duration.ZERO, this::retireConnections);
+    scheduleHousekeeping(reapTimeout, this::reapConnections);
+    scheduleHousekeeping(validationTimeout, this::validateConnections);
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+
+    housekeepingExecutor.shutdownNow();
+
+    if (provider instanceof XADataSource) {
+      transactionIntegration.removeResourceRecoveryFactory(this);
+    }
+
+    // Destroy the idle connections, connections in use are destroyed when they are returned
+    for (PooledConnection connection : connectionBag.getConnections()) {
+      if (connection.compareAndSetState(PooledConnection.STATE_FREE, PooledConnection.STATE_IN_USE)) {
+        destroyConnection(connection);
+      } else {
+        connection.setFlushOnly();
+      }
+    }
+  }
+
+  @Override
+  public void flush(FlushMode mode) {
+    switch (mode) {
+      case ALL:
+        flushConnections(0);
+        break;
+
+      case GRACEFUL:
+        flushConnections(0);
+        fillQuietly(minSize);
+        break;
+
+      case IDLE:
+        flushConnections(minSize);
+        break;
+
+      case INVALID:
+        validateConnections();
+        fillQuietly(minSize);
+        break;
+
+      case FILL:
+        fillQuietly(minSize);
+        break;
+
+      case LEAK:
+        flushLeakedConnections();
+        fillQuietly(minSize);
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public AgroalDataSourceConfiguration getConfiguration() {
+    return configuration;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (closed) {
+      throw new SQLException("The data source (" + name + ") is closed");
+    }
+
+    // Reuse the connection already enlisted in the current transaction if there is one
+    TransactionAware transactionAware = transactionIntegration.getTransactionAware();
+
+    if (transactionAware instanceof PooledConnection) {
+      return ((PooledConnection) transactionAware).newConnectionWrapper();
+    }
+
+    for (AgroalDataSourceListener listener : listeners) {
+      listener.beforeConnectionAcquire();
+    }
+
+    long start = System.nanoTime();
+
+    PooledConnection pooledConnection = acquire();
+
+    metrics.afterAcquire(System.nanoTime() - start);
+
+    pooledConnection.acquired();
+
+    try {
+      transactionIntegration.associate(pooledConnection, pooledConnection.getXAResource());
+    } catch (Throwable e) {
+      pooledConnection.setFlushOnly();
+      returnConnection(pooledConnection);
+
+      throw (e instanceof SQLException) ? (SQLException) e : new SQLException(
+          "Failed to associate the connection for the data source (" + name
+              + ") with the current transaction", e);
+    }
+
+    ConnectionWrapper connectionWrapper = pooledConnection.newConnectionWrapper();
+
+    for (AgroalDataSourceListener listener : listeners) {
+      listener.onConnectionAcquire(pooledConnection.getPhysicalConnection());
+    }
+
+    for (AgroalPoolInterceptor interceptor : interceptors) {
+      interceptor.onConnectionAcquire(connectionWrapper);
+    }
+
+    return connectionWrapper;
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException(
+        "Connections for a specific user are not supported by the data source (" + name + ")");
+  }
+
+  @Override
+  public int getLoginTimeout() {
+    // Match Agroal, which reports the acquisition timeout as the login timeout
+    return (int) configuration.connectionPoolConfiguration().acquisitionTimeout().getSeconds();
+  }
+
+  @Override
+  public PrintWriter getLogWriter() {
+    return null;
+  }
+
+  @Override
+  public AgroalDataSourceMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the name of the data source.
+   *
+   * @return the name of the data source
+   */
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public List<AgroalPoolInterceptor> getPoolInterceptors() {
+    return interceptors;
+  }
+
+  @Override
+  public XAConnection getRecoveryConnection() {
+    Throwable cause;
+
+    if (provider instanceof XADataSource) {
+      XADataSource xaDataSource = (XADataSource) provider;
+
+      try {
+        return (username != null)
+            ? xaDataSource.getXAConnection(username, password)
+            : xaDataSource.getXAConnection();
+      } catch (Throwable e) {
+        cause = e;
+      }
+    } else {
+      cause = new SQLException(
+          "Failed to retrieve a recovery connection for the non-XA data source (" + name + ")");
+    }
+
+    // Like Agroal, report the failure to the listeners and return no recovery connection
+    for (AgroalDataSourceListener listener : listeners) {
+      listener.onWarning(cause);
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns whether the data source is healthy.
+   *
+   * @param newConnection should a new connection be created to check the health of the data source
+   *                      instead of using a pooled connection
+   *
+   * @return true if the data source is healthy or false otherwise
+   */
+  public boolean isHealthy(boolean newConnection) throws SQLException {
+    if (newConnection) {
+      PooledConnection pooledConnection = createConnection();
+
+      try {
+        return pooledConnection.getPhysicalConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+      } finally {
+        pooledConnection.destroy();
+      }
+    } else {
+      try (Connection connection = getConnection()) {
+        return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+      }
+    }
+  }
+
+  /**
+   * Returns whether connections for the data source can be recovered.
+   *
+   * @return true if connections for the data source can be recovered or false otherwise
+   */
+  public boolean isRecoverable() {
+    return provider instanceof XADataSource;
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this) || iface.isInstance(provider);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) {
+  }
+
+  @Override
+  public void setPoolInterceptors(Collection<? extends AgroalPoolInterceptor> interceptors) {
+    this.interceptors = (interceptors != null) ? List.copyOf(interceptors) : List.of();
+  }
+
+  @Override
+  public String toString() {
+    return "PooledDataSource {name=\"" + name + "\", size=\"" + size.get() + "\", metrics="
+        + metrics + "}";
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    } else if (iface.isInstance(provider)) {
+      return iface.cast(provider);
+    }
+
+    throw new SQLException(
+        "The data source (" + name + ") does not wrap an object of type (" + iface.getName()
+            + ")");
+  }
+
+  /**
+   * Return the pooled connection, whose last reference has been released, to the pool.
+   *
+   * @param pooledConnection the pooled connection
+   */
+  void returnConnection(PooledConnection pooledConnection) {
+    Connection connection = pooledConnection.getPhysicalConnection();
+
+    for (AgroalDataSourceListener listener : listeners) {
+      listener.beforeConnectionReturn(connection);
+    }
+
+    for (AgroalPoolInterceptor interceptor : interceptors) {
+      interceptor.onConnectionReturn(connection);
+    }
+
+    metrics.afterReturn();
+
+    boolean destroy = closed || pooledConnection.isFlushOnly();
+
+    try {
+      transactionIntegration.disassociate(pooledConnection);
+    } catch (Throwable e) {
+      destroy = true;
+    }
+
+    if (!destroy) {
+      try {
+        if (connection.getAutoCommit() != autoCommit) {
+          connection.setAutoCommit(autoCommit);
+        }
+
+        pooledConnection.restoreAttributes();
+      } catch (Throwable e) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Failed to reset the connection for the data source (" + name
+              + "), which will be destroyed", e);
+        }
+
+        destroy = true;
+      }
+    }
+
+    pooledConnection.reset();
+
+    for (AgroalDataSourceListener listener : listeners) {
+      listener.onConnectionReturn(connection);
+    }
+
+    if (destroy) {
+      destroyConnection(pooledConnection);
+    } else {
+      connectionBag.release(pooledConnection);
+    }
+  }
+
+  private static Object convertPropertyValue(String value, Class<?> type) {
+    if (type == String.class) {
+      return value;
+    } else if ((type == int.class) || (type == Integer.class)) {
+      return Integer.valueOf(value);
+    } else if ((type == long.class) || (type == Long.class)) {
+      return Long.valueOf(value);
+    } else if ((type == boolean.class) || (type == Boolean.class)) {
+      return Boolean.valueOf(value);
+    } else {
+      return null;
+    }
+  }
+
+  private static void injectProperty(Object target, String name, String value)
+      throws SQLException {
+    String setterName = "set" + name;
+
+    for (Method method : target.getClass().getMethods()) {
+      if (method.getName().equalsIgnoreCase(setterName) && (method.getParameterCount() == 1)) {
+        try {
+          Object argument = convertPropertyValue(value, method.getParameterTypes()[0]);
+
+          if (argument != null) {
+            method.invoke(target, argument);
+            return;
+          }
+        } catch (Throwable e) {
+          throw new SQLException(
+              "Failed to set the property (" + name + ") on the connection provider ("
+                  + target.getClass().getName() + ")", e);
+        }
+      }
+    }
+
+    throw new SQLException(
+        "Failed to find the property (" + name + ") on the connection provider (" + target
+            .getClass().getName() + ")");
+  }
+
+  private PooledConnection acquire() throws SQLException {
+    PooledConnection pooledConnection = claim();
+
+    if (pooledConnection != null) {
+      return pooledConnection;
+    }
+
+    boolean waitForever = acquisitionTimeout.isZero();
+
+    long deadline = System.nanoTime() + (waitForever ? 0 : acquisitionTimeout.toNanos());
+
+    while (true) {
+      pooledConnection = tryCreateConnection();
+
+      if (pooledConnection != null) {
+        return pooledConnection;
+      }
+
+      long remaining = waitForever ? MAX_WAIT_SLICE_NANOS : deadline - System.nanoTime();
+
+      if (remaining <= 0) {
+        throw new SQLException(
+            "Failed to acquire a connection from the data source (" + name + ") within "
+                + acquisitionTimeout.toMillis() + " ms");
+      }
+
+      try {
+        pooledConnection = connectionBag
+            .waitForConnection(Math.min(remaining, MAX_WAIT_SLICE_NANOS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        throw new SQLException(
+            "Interrupted while acquiring a connection from the data source (" + name + ")", e);
+      }
+
+      if ((pooledConnection != null) && (!isBroken(pooledConnection))) {
+        return pooledConnection;
+      }
+    }
+  }
+
+  private PooledConnection claim() {
+    PooledConnection pooledConnection;
+
+    while ((pooledConnection = connectionBag.tryClaim()) != null) {
+      if (!isBroken(pooledConnection)) {
+        return pooledConnection;
+      }
+    }
+
+    return null;
+  }
+
+  private PooledConnection createConnection() throws SQLException {
+    for (AgroalDataSourceListener listener : listeners) {
+      listener.beforeConnectionCreation();
+    }
+
+    long start = System.nanoTime();
+
+    PooledConnection pooledConnection;
+
+    if (provider instanceof XADataSource) {
+      XADataSource xaDataSource = (XADataSource) provider;
+
+      XAConnection xaConnection = (username != null)
+          ? xaDataSource.getXAConnection(username, password)
+          : xaDataSource.getXAConnection();
+
+      try {
+        pooledConnection = new PooledConnection(this, xaConnection, xaConnection.getConnection(),
+            xaConnection.getXAResource());
+      } catch (Throwable e) {
+        xaConnection.close();
+
+        throw e;
+      }
+    } else if (provider instanceof DataSource) {
+      DataSource dataSource = (DataSource) provider;
+
+      Connection connection = (username != null)
+          ? dataSource.getConnection(username, password)
+          : dataSource.getConnection();
+
+      pooledConnection = new PooledConnection(this, null, connection, null);
+    } else {
+      Properties properties = new Properties();
+      properties.putAll(jdbcProperties);
+
+      if (username != null) {
+        properties.setProperty("user", username);
+      }
+
+      if (password != null) {
+        properties.setProperty("password", password);
+      }
+
+      Connection connection = (provider instanceof Driver)
+          ? ((Driver) provider).connect(url, properties)
+          : DriverManager.getConnection(url, properties);
+
+      if (connection == null) {
+        throw new SQLException(
+            "The JDBC driver for the data source (" + name + ") does not accept the URL (" + url
+                + ")");
+      }
+
+      pooledConnection = new PooledConnection(this, null, connection, null);
+    }
+
+    Connection connection = pooledConnection.getPhysicalConnection();
+
+    try {
+      if (connection.getAutoCommit() != autoCommit) {
+        connection.setAutoCommit(autoCommit);
+      }
+
+      if ((initialSql != null) && (!initialSql.isBlank())) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute(initialSql);
+        }
+      }
+    } catch (Throwable e) {
+      pooledConnection.destroy();
+
+      throw e;
+    }
+
+    metrics.afterCreation(System.nanoTime() - start);
+
+    for (AgroalDataSourceListener listener : listeners) {
+      listener.onConnectionCreation(connection);
+    }
+
+    return pooledConnection;
+  }
+
+  private void destroyConnection(PooledConnection pooledConnection) {
+    if (connectionBag.remove(pooledConnection)) {
+      size.decrementAndGet();
+
+      Connection connection = pooledConnection.getPhysicalConnection();
+
+      for (AgroalDataSourceListener listener : listeners) {
+        listener.beforeConnectionDestroy(connection);
+      }
+
+      pooledConnection.destroy();
+
+      metrics.afterDestroy();
+
+      for (AgroalDataSourceListener listener : listeners) {
+        listener.onConnectionDestroy(connection);
+      }
+    }
+  }
+
+  /**
+   * Report the connections that have been held for longer than the leak timeout.
+   */
+  private void detectLeaks() {
+    long now = System.nanoTime();
+
+    for (PooledConnection pooledConnection : connectionBag.getConnections()) {
+      Thread holdingThread = pooledConnection.getHoldingThread();
+
+      if ((holdingThread != null) && pooledConnection.checkLeak(now, leakTimeout.toNanos())) {
+        Connection connection = pooledConnection.getPhysicalConnection();
+
+        for (AgroalDataSourceListener listener : listeners) {
+          listener.beforeConnectionLeak(connection);
+        }
+
+        metrics.afterLeakDetection();
+
+        if (logger.isWarnEnabled()) {
+          logger.warn("A connection for the data source (" + name + ") has been held by the "
+              + "thread (" + holdingThread.getName() + ") for longer than the leak timeout ("
+              + leakTimeout.toMillis() + " ms)");
+        }
+
+        for (AgroalDataSourceListener listener : listeners) {
+          listener.onConnectionLeak(connection, holdingThread);
+        }
+      }
+    }
+  }
+
+  private void fill(int targetSize) throws SQLException {
+    while ((!closed) && (size.get() < targetSize)) {
+      PooledConnection pooledConnection = tryCreateConnection();
+
+      if (pooledConnection == null) {
+        return;
+      }
+
+      connectionBag.release(pooledConnection);
+
+      for (AgroalDataSourceListener listener : listeners) {
+        listener.onConnectionPooled(pooledConnection.getPhysicalConnection());
+      }
+    }
+  }
+
+  private void fillQuietly(int targetSize) {
+    try {
+      fill(targetSize);
+    } catch (Throwable e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Failed to fill the connection pool for the data source (" + name + ")", e);
+      }
+    }
+  }
+
+  private void flushConnections(int retainedSize) {
+    metrics.afterFlush();
+
+    for (PooledConnection connection : connectionBag.getConnections()) {
+      if (connection.compareAndSetState(PooledConnection.STATE_FREE, PooledConnection.STATE_IN_USE)) {
+        if (size.get() > retainedSize) {
+          destroyConnection(connection);
+        } else {
+          connectionBag.release(connection);
+        }
+      } else if (retainedSize == 0) {
+        connection.setFlushOnly();
+      }
+    }
+  }
+
+  /**
+   * Destroy the connections that have been held for longer than the leak timeout. The connections
+   * are destroyed immediately, since a leaked connection may never be returned to the pool.
+   */
+  private void flushLeakedConnections() {
+    if (!isEnabled(leakTimeout)) {
+      return;
+    }
+
+    metrics.afterFlush();
+
+    long now = System.nanoTime();
+
+    for (PooledConnection pooledConnection : connectionBag.getConnections()) {
+      if ((pooledConnection.getHoldingThread() != null)
+          && ((now - pooledConnection.getAcquisitionNanos()) >= leakTimeout.toNanos())) {
+        Connection connection = pooledConnection.getPhysicalConnection();
+
+        for (AgroalDataSourceListener listener : listeners) {
+          listener.beforeConnectionFlush(connection);
+        }
+
+        pooledConnection.setFlushOnly();
+
+        destroyConnection(pooledConnection);
+
+        for (AgroalDataSourceListener listener : listeners) {
+          listener.onConnectionFlush(connection);
+        }
+      }
+    }
+  }
+
+  /**
+   * Check whether the claimed connection has been closed underneath the pool, e.g. because the
+   * database was restarted, and destroy it if it has.
+   */
+  private boolean isBroken(PooledConnection pooledConnection) {
+    try {
+      if (!pooledConnection.getPhysicalConnection().isClosed()) {
+        return false;
+      }
+    } catch (Throwable ignored) {
+    }
+
+    metrics.afterInvalid();
+
+    destroyConnection(pooledConnection);
+
+    return true;
+  }
+
+  private boolean isEnabled(Duration timeout) {
+    return (timeout != null) && (!timeout.isZero()) && (!timeout.isNegative());
+  }
+
+  private Object newProvider(Class<?> providerClass) throws SQLException {
+    if (providerClass == null) {
+      return null;
+    }
+
+    Object provider;
+
+    try {
+      provider = providerClass.getDeclaredConstructor().newInstance();
+    } catch (Throwable e) {
+      throw new SQLException(
+          "Failed to create the connection provider (" + providerClass.getName()
+              + ") for the data source (" + name + ")", e);
+    }
+
+    if ((provider instanceof XADataSource) || (provider instanceof DataSource)) {
+      if (url != null) {
+        injectProperty(provider, "url", url);
+      }
+
+      for (String propertyName : jdbcProperties.stringPropertyNames()) {
+        injectProperty(provider, propertyName, jdbcProperties.getProperty(propertyName));
+      }
+    }
+
+    return provider;
+  }
+
+  /**
+   * Destroy the idle connections that have been idle for longer than the reap timeout, while the
+   * pool holds more than the minimum number of connections.
+   */
+  private void reapConnections() {
+    long now = System.nanoTime();
+
+    for (PooledConnection pooledConnection : connectionBag.getConnections()) {
+      if (size.get() <= minSize) {
+        return;
+      }
+
+      if (((now - pooledConnection.getLastUsedNanos()) >= reapTimeout.toNanos())
+          && pooledConnection.compareAndSetState(PooledConnection.STATE_FREE,
+          PooledConnection.STATE_IN_USE)) {
+        if ((now - pooledConnection.getLastUsedNanos()) < reapTimeout.toNanos()) {
+          // The connection was used after it was checked
+          connectionBag.release(pooledConnection);
+          continue;
+        }
+
+        Connection connection = pooledConnection.getPhysicalConnection();
+
+        for (AgroalDataSourceListener listener : listeners) {
+          listener.beforeConnectionReap(connection);
+        }
+
+        metrics.afterReap();
+
+        destroyConnection(pooledConnection);
+
+        for (AgroalDataSourceListener listener : listeners) {
+          listener.onConnectionReap(connection);
+        }
+      }
+    }
+  }
+
+  /**
+   * Destroy the connections that have exceeded their maximum lifetime. Idle connections are
+   * destroyed immediately and connections in use are destroyed when they are returned to the pool.
+   */
+  private void retireConnections() {
+    long now = System.nanoTime();
+
+    boolean retired = false;
+
+    for (PooledConnection pooledConnection : connectionBag.getConnections()) {
+      if ((now - pooledConnection.getCreationNanos()) >= maxLifetime.toNanos()) {
+        if (pooledConnection.compareAndSetState(PooledConnection.STATE_FREE,
+            PooledConnection.STATE_IN_USE)) {
+          destroyConnection(pooledConnection);
+
+          retired = true;
+        } else {
+          pooledConnection.setFlushOnly();
+        }
+      }
+    }
+
+    if (retired) {
+      fillQuietly(minSize);
+    }
+  }
+
+  private void scheduleHousekeeping(Duration interval, Runnable task) {
+    if (isEnabled(interval)) {
+      long intervalNanos = interval.toNanos();
+
+      housekeepingExecutor.scheduleWithFixedDelay(() -> {
+        try {
+          task.run();
+        } catch (Throwable e) {
+          if (logger.isWarnEnabled()) {
+            logger.warn("Failed to perform the housekeeping for the connection pool for the data "
+                + "source (" + name + ")", e);
+          }
+        }
+      }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private PooledConnection tryCreateConnection() throws SQLException {
+    int currentSize;
+
+    do {
+      currentSize = size.get();
+
+      if (currentSize >= maxSize) {
+        return null;
+      }
+    } while (!size.compareAndSet(currentSize, currentSize + 1));
+
+    try {
+      PooledConnection pooledConnection = createConnection();
+
+      connectionBag.add(pooledConnection);
+
+      return pooledConnection;
+    } catch (Throwable e) {
+      size.decrementAndGet();
+
+      for (AgroalDataSourceListener listener : listeners) {
+        listener.onWarning(e);
+      }
+
+      throw (e instanceof SQLException) ? (SQLException) e : new SQLException(
+          "Failed to create a connection for the data source (" + name + ")", e);
+    }
+  }
+
+  private void validateConnections() {
+    for (PooledConnection connection : connectionBag.getConnections()) {
+      if (connection.compareAndSetState(PooledConnection.STATE_FREE, PooledConnection.STATE_IN_USE)) {
+        Connection physicalConnection = connection.getPhysicalConnection();
+
+        for (AgroalDataSourceListener listener : listeners) {
+          listener.beforeConnectionValidation(physicalConnection);
+        }
+
+        boolean valid;
+
+        try {
+          valid = physicalConnection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (Throwable e) {
+          valid = false;
+        }
+
+        if (valid) {
+          for (AgroalDataSourceListener listener : listeners) {
+            listener.onConnectionValid(physicalConnection);
+          }
+
+          connectionBag.release(connection);
+        } else {
+          for (AgroalDataSourceListener listener : listeners) {
+            listener.onConnectionInvalid(physicalConnection);
+          }
+
+          metrics.afterInvalid();
+
+          destroyConnection(connection);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.jta.pool;
+
+import io.agroal.api.AgroalDataSourceMetrics;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The <b>PooledDataSourceMetrics</b> class implements the Agroal metrics for a {@link
+ * PooledDataSource} using striped counters so that recording a metric never contends.
+ *
+ * @author Marcus Portmann
+ */
+final class PooledDataSourceMetrics implements AgroalDataSourceMetrics {
+
+  private final LongAdder acquireCount = new LongAdder();
+
+  private final AtomicInteger activeCount = new AtomicInteger();
+
+  private final LongAdder blockingTimeNanos = new LongAdder();
+
+  private final AtomicLong blockingTimeMaxNanos = new AtomicLong();
+
+  private final ConnectionBag connectionBag;
+
+  private final LongAdder creationCount = new LongAdder();
+
+  private final AtomicLong creationTimeMaxNanos = new AtomicLong();
+
+  private final LongAdder creationTimeNanos = new LongAdder();
+
+  private final LongAdder destroyCount = new LongAdder();
+
+  private final LongAdder flushCount = new LongAdder();
+
+  private final LongAdder invalidCount = new LongAdder();
+
+  private final LongAdder leakDetectionCount = new LongAdder();
+
+  private final AtomicLong maxUsedCount = new AtomicLong();
+
+  private final LongAdder reapCount = new LongAdder();
+
+  /**
+   * Constructs a new <b>PooledDataSourceMetrics</b>.
+   *
+   * @param connectionBag the connection bag for the pooled data source
+   */
+  PooledDataSourceMetrics(ConnectionBag connectionBag) {
+    this.connectionBag = connectionBag;
+  }
+
+  @Override
+  public long acquireCount() {
+    return acquireCount.sum();
+  }
+
+  @Override
+  public long activeCount() {
+    return activeCount.get();
+  }
+
+  @Override
+  public long availableCount() {
+    long available = 0;
+
+    for (PooledConnection connection : connectionBag.getConnections()) {
+      if (connection.getState() == PooledConnection.STATE_FREE) {
+        available++;
+      }
+    }
+
+    return available;
+  }
+
+  @Override
+  public long awaitingCount() {
+    return connectionBag.getWaiters();
+  }
+
+  @Override
+  public Duration blockingTimeAverage() {
+    long count = acquireCount.sum();
+
+    return (count == 0) ? Duration.ZERO : Duration.ofNanos(blockingTimeNanos.sum() / count);
+  }
+
+  @Override
+  public Duration blockingTimeMax() {
+    return Duration.ofNanos(blockingTimeMaxNanos.get());
+  }
+
+  @Override
+  public Duration blockingTimeTotal() {
+    return Duration.ofNanos(blockingTimeNanos.sum());
+  }
+
+  @Override
+  public long creationCount() {
+    return creationCount.sum();
+  }
+
+  @Override
+  public Duration creationTimeAverage() {
+    long count = creationCount.sum();
+
+    return (count == 0) ? Duration.ZERO : Duration.ofNanos(creationTimeNanos.sum() / count);
+  }
+
+  @Override
+  public Duration creationTimeMax() {
+    return Duration.ofNanos(creationTimeMaxNanos.get());
+  }
+
+  @Override
+  public Duration creationTimeTotal() {
+    return Duration.ofNanos(creationTimeNanos.sum());
+  }
+
+  @Override
+  public long destroyCount() {
+    return destroyCount.sum();
+  }
+
+  @Override
+  public long flushCount() {
+    return flushCount.sum();
+  }
+
+  @Override
+  public long invalidCount() {
+    return invalidCount.sum();
+  }
+
+  @Override
+  public long leakDetectionCount() {
+    return leakDetectionCount.sum();
+  }
+
+  @Override
+  public long maxUsedCount() {
+    return maxUsedCount.get();
+  }
+
+  @Override
+  public long reapCount() {
+    return reapCount.sum();
+  }
+
+  @Override
+  public void reset() {
+    acquireCount.reset();
+    blockingTimeNanos.reset();
+    blockingTimeMaxNanos.set(0);
+    creationCount.reset();
+    creationTimeNanos.reset();
+    creationTimeMaxNanos.set(0);
+    destroyCount.reset();
+    flushCount.reset();
+    invalidCount.reset();
+    leakDetectionCount.reset();
+    maxUsedCount.set(activeCount.get());
+    reapCount.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "PooledDataSourceMetrics {acquireCount=\"" + acquireCount() + "\", activeCount=\""
+        + activeCount() + "\", availableCount=\"" + availableCount() + "\", awaitingCount=\""
+        + awaitingCount() + "\", creationCount=\"" + creationCount() + "\", destroyCount=\""
+        + destroyCount() + "\", maxUsedCount=\"" + maxUsedCount() + "\"}";
+  }
+
+  void afterAcquire(long blockingNanos) {
+    acquireCount.increment();
+    blockingTimeNanos.add(blockingNanos);
+    blockingTimeMaxNanos.accumulateAndGet(blockingNanos, Math::max);
+    maxUsedCount.accumulateAndGet(activeCount.incrementAndGet(), Math::max);
+  }
+
+  void afterCreation(long creationNanos) {
+    creationCount.increment();
+    creationTimeNanos.add(creationNanos);
+    creationTimeMaxNanos.accumulateAndGet(creationNanos, Math::max);
+  }
+
+  void afterDestroy() {
+    destroyCount.increment();
+  }
+
+  void afterFlush() {
+    flushCount.increment();
+  }
+
+  void afterInvalid() {
+    invalidCount.increment();
+  }
+
+  void afterLeakDetection() {
+    leakDetectionCount.increment();
+  }
+
+  void afterReap() {
+    reapCount.increment();
+  }
+
+  void afterReturn() {
+    activeCount.decrementAndGet();
+  }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.reactive;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.JtaTransactionManager;
+import io.appnaut.jta.JtaTransactionManager.DetachedTransaction;
+import io.appnaut.jta.util.TransactionUtil;
+import io.micronaut.context.annotation.EachBean;
+import io.micronaut.context.annotation.Parameter;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.transaction.TransactionDefinition;
+import io.micronaut.transaction.exceptions.IllegalTransactionStateException;
+import io.micronaut.transaction.exceptions.NoTransactionException;
+import io.micronaut.transaction.exceptions.TransactionSystemException;
+import io.micronaut.transaction.exceptions.TransactionUsageException;
+import io.micronaut.transaction.exceptions.UnexpectedRollbackException;
+import io.micronaut.transaction.jdbc.DelegatingDataSource;
+import io.micronaut.transaction.reactive.ReactiveTransactionOperations;
+import io.micronaut.transaction.reactive.ReactiveTransactionStatus;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import java.sql.Connection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>ReactiveJtaTransactionManager</b> class provides a {@link ReactiveTransactionOperations}
+ * implementation that uses a JTA transaction manager, which allows methods that return a
+ * <b>Publisher</b> to participate in JTA transactions without blocking the calling thread.
+ * <p/>
+ * The JTA transaction is begun on a dedicated scheduler, whose size matches the maximum size of
+ * the connection pool for the data source, and is not associated with any thread while the
+ * reactive pipeline is idle. The transaction is resumed on the current thread while the callback
+ * is invoked, while its publisher is subscribed to and while items are requested from it, and is
+ * propagated to the work scheduled on the scheduler returned by {@link #getScheduler()}. The
+ * transaction is committed when the publisher completes, and rolled back when the publisher
+ * fails with any exception, as for the {@link JtaTransactionManager}, or when the subscription is
+ * cancelled.
+ * <p/>
+ * The transaction is begun and completed by the {@link JtaTransactionManager} for the data
+ * source, so it is included in the transaction statistics, traces and events in the same way as
+ * the transactions for synchronous methods.
+ *
+ * @author Marcus Portmann
+ */
+@EachBean(DataSource.class)
+@SuppressWarnings("unused")
+public class ReactiveJtaTransactionManager implements ReactiveTransactionOperations<Connection>,
+    AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReactiveJtaTransactionManager.class);
+
+  private final DataSource dataSource;
+
+  /**
+   * The executor service for the scheduler used to perform the blocking JDBC and XA work.
+   */
+  private final ExecutorService executorService;
+
+  /**
+   * The JTA transaction manager for the data source used to begin and complete transactions.
+   */
+  private final JtaTransactionManager jtaTransactionManager;
+
+  /**
+   * The scheduler used to perform the blocking JDBC and XA work.
+   */
+  private final Scheduler scheduler;
+
+  private final TransactionManager transactionManager;
+
+  /**
+   * Constructs a new <b>ReactiveJtaTransactionManager</b>.
+   *
+   * @param jtaTransactionManager          the JTA transaction manager for the data source
+   * @param reactiveTransactionPropagation the propagation of JTA transactions to the work
+   *                                       scheduled on the scheduler for the transaction manager
+   * @param dataSource                     the data source
+   */
+  public ReactiveJtaTransactionManager(@Parameter JtaTransactionManager jtaTransactionManager,
+      ReactiveTransactionPropagation reactiveTransactionPropagation, DataSource dataSource) {
+    this.jtaTransactionManager = jtaTransactionManager;
+    this.transactionManager = jtaTransactionManager.getTransactionManager();
+    this.dataSource = DelegatingDataSource.unwrapDataSource(dataSource);
+
+    int threads = (this.dataSource instanceof AgroalDataSource)
+        ? ((AgroalDataSource) this.dataSource).getConfiguration().connectionPoolConfiguration()
+        .maxSize()
+        : Runtime.getRuntime().availableProcessors();
+
+    AtomicInteger threadNumber = new AtomicInteger();
+
+    this.executorService = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+      Thread thread = new Thread(runnable, "reactive-jta-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler = reactiveTransactionPropagation.wrap(Schedulers.from(executorService));
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    executorService.shutdown();
+  }
+
+  /**
+   * Returns the scheduler used to perform the blocking JDBC and XA work, which propagates the JTA
+   * transaction associated with the thread that schedules work to the thread that performs it.
+   * <p/>
+   * A reactive pipeline that switches threads within a transaction, e.g. using the
+   * <b>subscribeOn</b> or <b>observeOn</b> operators, must use this scheduler for the transaction
+   * to remain associated with the work.
+   *
+   * @return the scheduler used to perform the blocking JDBC and XA work
+   */
+  public Scheduler getScheduler() {
+    return scheduler;
+  }
+
+  @Override
+  @NonNull
+  public <T> Publisher<T> withTransaction(@NonNull TransactionDefinition definition,
+      @NonNull TransactionalCallback<Connection, T> handler) {
+    return Flowable.defer(() -> {
+      ReactiveJtaTransactionStatus status = begin(definition);
+
+      return Flowable.<T>fromPublisher(subscriber -> invoke(status, handler, subscriber))
+          .concatWith(Completable.fromAction(() -> commit(status)))
+          .onErrorResumeNext((Function<Throwable, Publisher<T>>) e -> {
+            completeAfterFailure(status);
+            return Flowable.error(e);
+          })
+          .doOnCancel(() -> rollback(status));
+    }).subscribeOn(scheduler);
+  }
+
+  private ReactiveJtaTransactionStatus begin(TransactionDefinition definition) {
+    Transaction existingTransaction = TransactionUtil.getTransaction(transactionManager);
+
+    switch (definition.getPropagationBehavior()) {
+      case MANDATORY:
+        if (existingTransaction == null) {
+          throw new IllegalTransactionStateException(
+              "No existing transaction found for transaction marked with propagation 'mandatory'");
+        }
+        return new ReactiveJtaTransactionStatus(existingTransaction, null);
+      case NEVER:
+        if (existingTransaction != null) {
+          throw new IllegalTransactionStateException(
+              "Existing transaction found for transaction marked with propagation 'never'");
+        }
+        return new ReactiveJtaTransactionStatus(null, null);
+      case NOT_SUPPORTED:
+        return new ReactiveJtaTransactionStatus(null, null);
+      case SUPPORTS:
+        return new ReactiveJtaTransactionStatus(existingTransaction, null);
+      case REQUIRED:
+        if (existingTransaction != null) {
+          return new ReactiveJtaTransactionStatus(existingTransaction, null);
+        }
+        return newTransactionStatus(definition);
+      case REQUIRES_NEW:
+        return newTransactionStatus(definition);
+      default:
+        throw new TransactionUsageException("The propagation behavior ("
+            + definition.getPropagationBehavior()
+            + ") is not supported by the reactive JTA transaction manager");
+    }
+  }
+
+  private void commit(ReactiveJtaTransactionStatus status) {
+    if (!status.isNewTransaction()) {
+      return;
+    }
+
+    if (status.isRollbackOnly()) {
+      rollback(status);
+
+      throw new UnexpectedRollbackException(
+          "The JTA transaction was rolled back because it was marked as rollback-only");
+    }
+
+    if (status.completed.compareAndSet(false, true)) {
+      jtaTransactionManager.commitDetachedTransaction(status.detachedTransaction);
+    }
+  }
+
+  private void completeAfterFailure(ReactiveJtaTransactionStatus status) {
+    // Roll back on any failure, like the JtaTransactionManager
+    if (!status.isCompleted()) {
+      rollback(status);
+    }
+  }
+
+  private <T> void invoke(ReactiveJtaTransactionStatus status,
+      TransactionalCallback<Connection, T> handler, Subscriber<? super T> subscriber) {
+    try {
+      if (status.transaction != null) {
+        TransactionUtil.callInTransaction(transactionManager, status.transaction, () -> {
+          handler.doInTransaction(status)
+              .subscribe(new TransactionalSubscriber<>(status.transaction, subscriber));
+          return null;
+        });
+      } else {
+        Transaction suspendedTransaction = transactionManager.suspend();
+
+        try {
+          handler.doInTransaction(status).subscribe(subscriber);
+        } finally {
+          if (suspendedTransaction != null) {
+            transactionManager.resume(suspendedTransaction);
+          }
+        }
+      }
+    } catch (Throwable e) {
+      Flowable.<T>error(e).subscribe(subscriber);
+    }
+  }
+
+  private ReactiveJtaTransactionStatus newTransactionStatus(TransactionDefinition definition) {
+    DetachedTransaction detachedTransaction = jtaTransactionManager
+        .beginDetachedTransaction(definition);
+
+    return new ReactiveJtaTransactionStatus(detachedTransaction.getTransaction(),
+        detachedTransaction);
+  }
+
+  private void rollback(ReactiveJtaTransactionStatus status) {
+    if (status.transaction == null) {
+      return;
+    }
+
+    try {
+      if (status.isNewTransaction()) {
+        if (status.completed.compareAndSet(false, true)) {
+          jtaTransactionManager.rollbackDetachedTransaction(status.detachedTransaction);
+        }
+      } else {
+        status.transaction.setRollbackOnly();
+      }
+    } catch (Throwable e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Failed to roll back the JTA transaction", e);
+      }
+    }
+  }
+
+  /**
+   * The <b>ReactiveJtaTransactionStatus</b> class holds the status for a JTA transaction used by
+   * a reactive pipeline.
+   */
+  private class ReactiveJtaTransactionStatus implements ReactiveTransactionStatus<Connection> {
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    /**
+     * The JTA transaction begun for the reactive pipeline or <b>null</b> if the reactive pipeline
+     * participates in an existing transaction or is not transactional.
+     */
+    private final DetachedTransaction detachedTransaction;
+
+    /**
+     * The JTA transaction or <b>null</b> if the reactive pipeline is not transactional.
+     */
+    private final Transaction transaction;
+
+    private volatile boolean rollbackOnly;
+
+    ReactiveJtaTransactionStatus(Transaction transaction,
+        DetachedTransaction detachedTransaction) {
+      this.transaction = transaction;
+      this.detachedTransaction = detachedTransaction;
+    }
+
+    @Override
+    public Connection getConnection() {
+      if (transaction == null) {
+        throw new NoTransactionException("No JTA transaction is associated with the publisher");
+      }
+
+      try {
+        return TransactionUtil
+            .callInTransaction(transactionManager, transaction, dataSource::getConnection);
+      } catch (Throwable e) {
+        throw new TransactionSystemException(
+            "Failed to retrieve the connection from the data source associated with the JTA "
+                + "transaction", e);
+      }
+    }
+
+    @Override
+    public boolean isCompleted() {
+      return completed.get();
+    }
+
+    @Override
+    public boolean isNewTransaction() {
+      return detachedTransaction != null;
+    }
+
+    @Override
+    public boolean isRollbackOnly() {
+      return rollbackOnly;
+    }
+
+    @Override
+    public void setRollbackOnly() {
+      rollbackOnly = true;
+
+      if ((!isNewTransaction()) && (transaction != null)) {
+        try {
+          transaction.setRollbackOnly();
+        } catch (Throwable e) {
+          throw new TransactionSystemException("Failed to mark the JTA transaction rollback-only",
+              e);
+        }
+      }
+    }
+  }
+
+  /**
+   * The <b>TransactionalSubscriber</b> class implements a subscriber for the publisher returned by
+   * a transactional callback, which resumes the JTA transaction while items are requested from the
+   * publisher, so the work performed by the publisher on the requesting thread participates in the
+   * transaction.
+   *
+   * @param <T> the type of items
+   */
+  private class TransactionalSubscriber<T> implements Subscriber<T> {
+
+    private final Subscriber<? super T> subscriber;
+
+    private final Transaction transaction;
+
+    TransactionalSubscriber(Transaction transaction, Subscriber<? super T> subscriber) {
+      this.transaction = transaction;
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void onComplete() {
+      subscriber.onComplete();
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+      subscriber.onError(cause);
+    }
+
+    @Override
+    public void onNext(T item) {
+      subscriber.onNext(item);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void cancel() {
+          subscription.cancel();
+        }
+
+        @Override
+        public void request(long count) {
+          if (transaction.equals(TransactionUtil.getTransaction(transactionManager))) {
+            subscription.request(count);
+
+            return;
+          }
+
+          try {
+            TransactionUtil.callInTransaction(transactionManager, transaction, () -> {
+              subscription.request(count);
+              return null;
+            });
+          } catch (Throwable e) {
+            subscription.cancel();
+
+            subscriber.onError(e);
+          }
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.reactive;
+
+import io.appnaut.jta.util.TransactionUtil;
+import io.micronaut.transaction.exceptions.TransactionSystemException;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Singleton;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+/**
+ * The <b>ReactiveTransactionPropagation</b> class propagates the JTA transaction associated with
+ * the thread that schedules work on an RxJava scheduler to the thread that performs the work.
+ * <p/>
+ * The propagation is limited to the schedulers wrapped using {@link #wrap(Scheduler)}, e.g. the
+ * scheduler for a {@link ReactiveJtaTransactionManager}, so it only applies to the reactive
+ * pipelines that use these schedulers and does not affect any other RxJava work in the
+ * application. The transaction is resumed before the work is performed and suspended afterwards.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@SuppressWarnings("unused")
+public class ReactiveTransactionPropagation {
+
+  private final TransactionManager transactionManager;
+
+  /**
+   * Constructs a new <b>ReactiveTransactionPropagation</b>.
+   *
+   * @param transactionManager the JTA transaction manager
+   */
+  public ReactiveTransactionPropagation(TransactionManager transactionManager) {
+    this.transactionManager = transactionManager;
+  }
+
+  /**
+   * Returns a runnable that performs the work for the specified runnable in the JTA transaction
+   * associated with the current thread.
+   *
+   * @param runnable the runnable
+   *
+   * @return the runnable that performs the work in the JTA transaction associated with the current
+   * thread or the specified runnable if there is no JTA transaction associated with the current
+   * thread
+   */
+  public Runnable propagate(Runnable runnable) {
+    Transaction transaction = TransactionUtil.getTransaction(transactionManager);
+
+    if (transaction == null) {
+      return runnable;
+    }
+
+    return () -> {
+      try {
+        TransactionUtil.callInTransaction(transactionManager, transaction, () -> {
+          runnable.run();
+          return null;
+        });
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new TransactionSystemException(
+            "Failed to run the scheduled work in the JTA transaction", e);
+      }
+    };
+  }
+
+  /**
+   * Wrap the RxJava scheduler so the JTA transaction associated with the thread that schedules
+   * work on the scheduler is propagated to the thread that performs the work.
+   *
+   * @param scheduler the RxJava scheduler
+   *
+   * @return the wrapped RxJava scheduler
+   */
+  public Scheduler wrap(Scheduler scheduler) {
+    return new TransactionPropagatingScheduler(scheduler);
+  }
+
+  /**
+   * The <b>TransactionPropagatingScheduler</b> class implements an RxJava scheduler that
+   * propagates JTA transactions to the work scheduled on another scheduler.
+   */
+  private class TransactionPropagatingScheduler extends Scheduler {
+
+    private final Scheduler scheduler;
+
+    TransactionPropagatingScheduler(Scheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    @Override
+    public Worker createWorker() {
+      Worker worker = scheduler.createWorker();
+
+      return new Worker() {
+        @Override
+        public void dispose() {
+          worker.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+          return worker.isDisposed();
+        }
+
+        @Override
+        public Disposable schedule(Runnable runnable, long delay, TimeUnit unit) {
+          return worker.schedule(propagate(runnable), delay, unit);
+        }
+      };
+    }
+
+    @Override
+    public Disposable scheduleDirect(Runnable runnable, long delay, TimeUnit unit) {
+      return scheduler.scheduleDirect(propagate(runnable), delay, unit);
+    }
+
+    @Override
+    public void shutdown() {
+      scheduler.shutdown();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.retry;
+
+import io.micronaut.aop.Around;
+import io.micronaut.context.annotation.Type;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The <b>TransactionRetry</b> annotation indicates that a transactional method, or all the
+ * transactional methods of a type, should be re-invoked when the transaction fails with a
+ * serialization failure or a deadlock.
+ * <p/>
+ * The retry is applied outside the transaction started for the method, so each attempt runs in a
+ * new transaction. Methods invoked within an existing transaction are not retried, because only
+ * the outermost transaction can be rolled back and started again. Values that are not specified
+ * default to the values configured under <b>appnaut.transaction-retry</b>.
+ *
+ * @author Marcus Portmann
+ */
+@Around
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Type(TransactionRetryInterceptor.class)
+public @interface TransactionRetry {
+
+  /**
+   * The maximum number of attempts, including the first, or 0 to use the configured default.
+   *
+   * @return the maximum number of attempts, including the first, or 0 to use the configured
+   * default
+   */
+  int attempts() default 0;
+
+  /**
+   * The delay in milliseconds before the first retry, which is doubled for each subsequent retry
+   * and randomized, or 0 to use the configured default.
+   *
+   * @return the delay in milliseconds before the first retry or 0 to use the configured default
+   */
+  long delay() default 0;
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.retry;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The <b>TransactionRetryConfiguration</b> class holds the default configuration information for
+ * the methods annotated with {@link TransactionRetry}.
+ *
+ * @author Marcus Portmann
+ */
+@ConfigurationProperties(TransactionRetryConfiguration.PREFIX)
+@SuppressWarnings("unused")
+public class TransactionRetryConfiguration {
+
+  /**
+   * The prefix for the transaction retry configuration.
+   */
+  public static final String PREFIX = "appnaut.transaction-retry";
+
+  private int attempts = 3;
+
+  private Duration delay = Duration.ofMillis(50);
+
+  private boolean enabled = true;
+
+  private Duration maxDelay = Duration.ofSeconds(1);
+
+  private List<String> sqlStates = new ArrayList<>(List.of("40001", "40P01"));
+
+  /**
+   * Returns the maximum number of attempts, including the first.
+   *
+   * @return the maximum number of attempts, including the first
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * Returns the delay before the first retry.
+   *
+   * @return the delay before the first retry
+   */
+  public Duration getDelay() {
+    return delay;
+  }
+
+  /**
+   * Returns the maximum delay between retries.
+   *
+   * @return the maximum delay between retries
+   */
+  public Duration getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * Returns the SQL states for the failures that are retried.
+   *
+   * @return the SQL states for the failures that are retried
+   */
+  public List<String> getSqlStates() {
+    return sqlStates;
+  }
+
+  /**
+   * Returns whether failed transactions are retried.
+   *
+   * @return true if failed transactions are retried or false otherwise
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Set the maximum number of attempts, including the first.
+   *
+   * @param attempts the maximum number of attempts, including the first
+   */
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  /**
+   * Set the delay before the first retry.
+   *
+   * @param delay the delay before the first retry
+   */
+  public void setDelay(Duration delay) {
+    this.delay = delay;
+  }
+
+  /**
+   * Set whether failed transactions are retried.
+   *
+   * @param enabled true if failed transactions are retried or false otherwise
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Set the maximum delay between retries.
+   *
+   * @param maxDelay the maximum delay between retries
+   */
+  public void setMaxDelay(Duration maxDelay) {
+    this.maxDelay = maxDelay;
+  }
+
+  /**
+   * Set the SQL states for the failures that are retried.
+   *
+   * @param sqlStates the SQL states for the failures that are retried
+   */
+  public void setSqlStates(List<String> sqlStates) {
+    this.sqlStates = sqlStates;
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.retry;
+
+import io.appnaut.jta.util.TransactionUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.aop.InterceptPhase;
+import io.micronaut.aop.MethodInterceptor;
+import io.micronaut.aop.MethodInvocationContext;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.async.publisher.Publishers;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.inject.Singleton;
+import javax.transaction.TransactionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>TransactionRetryInterceptor</b> class implements the interceptor that re-invokes the
+ * methods annotated with {@link TransactionRetry} when their transaction fails with one of the
+ * configured SQL states, e.g. a serialization failure (40001) or a deadlock (40P01).
+ * <p/>
+ * The interceptor runs in the retry phase, before the transaction interceptor, so that each attempt
+ * begins a new transaction. The delay between attempts grows exponentially and is randomized so
+ * that the transactions that conflicted do not conflict again on the next attempt.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@SuppressWarnings("unused")
+public class TransactionRetryInterceptor implements MethodInterceptor<Object, Object> {
+
+  private static final Logger logger = LoggerFactory.getLogger(TransactionRetryInterceptor.class);
+
+  private final TransactionRetryConfiguration configuration;
+
+  /**
+   * The meter registry or <b>null</b> if metrics are not collected.
+   */
+  private final MeterRegistry meterRegistry;
+
+  private final Set<String> sqlStates;
+
+  private final TransactionManager transactionManager;
+
+  /**
+   * Constructs a new <b>TransactionRetryInterceptor</b>.
+   *
+   * @param configuration      the transaction retry configuration
+   * @param transactionManager the JTA transaction manager
+   * @param meterRegistry      the meter registry or <b>null</b> if metrics are not collected
+   */
+  public TransactionRetryInterceptor(TransactionRetryConfiguration configuration,
+      TransactionManager transactionManager, @Nullable MeterRegistry meterRegistry) {
+    this.configuration = configuration;
+    this.transactionManager = transactionManager;
+    this.meterRegistry = meterRegistry;
+    this.sqlStates = new HashSet<>(configuration.getSqlStates());
+  }
+
+  @Override
+  public int getOrder() {
+    return InterceptPhase.RETRY.getPosition();
+  }
+
+  @Override
+  public Object intercept(MethodInvocationContext<Object, Object> context) {
+    Class<?> returnType = context.getReturnType().getType();
+
+    // Only the outermost transaction for a synchronous method can be retried
+    if ((!configuration.isEnabled()) || Publishers.isConvertibleToPublisher(returnType)
+        || CompletionStage.class.isAssignableFrom(returnType)
+        || TransactionUtil.transactionExists(transactionManager)) {
+      return context.proceed();
+    }
+
+    int attempts = context.intValue(TransactionRetry.class, "attempts").orElse(0);
+
+    if (attempts <= 0) {
+      attempts = configuration.getAttempts();
+    }
+
+    long delay = context.longValue(TransactionRetry.class, "delay").orElse(0);
+
+    if (delay <= 0) {
+      delay = configuration.getDelay().toMillis();
+    }
+
+    long maxDelay = configuration.getMaxDelay().toMillis();
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return context.proceed(this);
+      } catch (RuntimeException e) {
+        String sqlState = getRetryableSqlState(e);
+
+        if (sqlState == null) {
+          throw e;
+        }
+
+        if (attempt >= attempts) {
+          increment("appnaut.transaction.retries.exhausted", context, sqlState);
+
+          if (logger.isWarnEnabled()) {
+            logger.warn("Failed to invoke the method (" + context.getDeclaringType().getName() + "."
+                + context.getMethodName() + ") after " + attempt
+                + " attempts as a result of transaction failures with the SQL state (" + sqlState
+                + ")");
+          }
+
+          throw e;
+        }
+
+        increment("appnaut.transaction.retries", context, sqlState);
+
+        long backoff = Math.min(maxDelay, delay << Math.min(attempt - 1, 20));
+
+        // Use equal jitter, i.e. half the backoff plus a random part of the other half
+        long sleep = (backoff / 2) + ThreadLocalRandom.current().nextLong((backoff / 2) + 1);
+
+        if (logger.isDebugEnabled()) {
+          logger.debug("Retrying the method (" + context.getDeclaringType().getName() + "."
+              + context.getMethodName() + ") in " + sleep
+              + " ms after a transaction failure with the SQL state (" + sqlState + ")");
+        }
+
+        try {
+          Thread.sleep(sleep);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+
+          throw e;
+        }
+      }
+    }
+  }
+
+  private String getRetryableSqlState(Throwable throwable) {
+    Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Follow both the causes and the chained SQL exceptions, since a batch failure is reported as a
+    // BatchUpdateException whose chained exceptions may wrap the underlying failure
+    Deque<Throwable> pending = new ArrayDeque<>();
+    pending.push(throwable);
+
+    while (!pending.isEmpty()) {
+      Throwable cause = pending.pop();
+
+      if (!visited.add(cause)) {
+        continue;
+      }
+
+      if (cause instanceof SQLException) {
+        SQLException sqlException = (SQLException) cause;
+
+        String sqlState = sqlException.getSQLState();
+
+        if ((sqlState != null) && sqlStates.contains(sqlState)) {
+          return sqlState;
+        }
+
+        if (sqlException.getNextException() != null) {
+          pending.push(sqlException.getNextException());
+        }
+      }
+
+      if (cause.getCause() != null) {
+        pending.push(cause.getCause());
+      }
+    }
+
+    return null;
+  }
+
+  private void increment(String name, MethodInvocationContext<Object, Object> context,
+      String sqlState) {
+    if (meterRegistry != null) {
+      meterRegistry.counter(name, "method",
+          context.getDeclaringType().getSimpleName() + "." + context.getMethodName(), "sqlState",
+          sqlState).increment();
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.sharding;
+
+import java.sql.SQLException;
+import javax.sql.DataSource;
+
+/**
+ * The <b>ShardCallback</b> interface defines the work performed against the data source for a
+ * single shard.
+ *
+ * @param <T> the type of result returned for the shard
+ *
+ * @author Marcus Portmann
+ */
+@FunctionalInterface
+public interface ShardCallback<T> {
+
+  /**
+   * Perform the work against the data source for the shard.
+   *
+   * @param dataSource the data source for the shard
+   *
+   * @return the result for the shard
+   */
+  T doInShard(DataSource dataSource) throws SQLException;
+}
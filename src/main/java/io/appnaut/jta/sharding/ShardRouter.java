@@ -0,0 +1,199 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.sharding;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
+
+/**
+ * The <b>ShardRouter</b> class routes work for a key to the data source for the shard that owns
+ * the key and scatter-gathers work across all the shards in a shard set.
+ * <p/>
+ * Keys are assigned to shards using jump consistent hashing, so that when a shard is added to the
+ * end of a shard set with <i>n</i> shards only the 1/(<i>n</i>+1) of the keys that now belong to
+ * the new shard move, and no keys move between the existing shards. The limits of this scheme are:
+ * <ul>
+ *   <li>The data sources for a shard set must always be configured in the same order, and shards
+ *   can only be added to, or removed from, the end of the list.</li>
+ *   <li>The rows for the keys that move are not migrated, so they must be copied to the new shard
+ *   before the shard is added to the configuration, or they will no longer be found.</li>
+ *   <li>Keys are spread evenly across the shards, so all the shards should have the same
+ *   capacity.</li>
+ * </ul>
+ * Work for a single shard is
+ * always performed on the calling thread, so writes to several shards within a JTA transaction
+ * are committed atomically using two-phase commit. Work across all the shards is performed in
+ * parallel. When there is a JTA transaction on the calling thread, the work for each shard runs in
+ * that transaction, using an executor service that propagates the transaction, so that it sees the
+ * uncommitted changes made by the transaction. Work for a shard that is still running when
+ * {@link #scatterGather(ShardCallback)} fails is cancelled, and the transaction does not commit
+ * until that work has stopped.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class ShardRouter {
+
+  /**
+   * The data sources for the shards, in shard order.
+   */
+  private final List<DataSource> dataSources;
+
+  private final ExecutorService executorService;
+
+  /**
+   * The name of the shard set.
+   */
+  private final String name;
+
+  /**
+   * Constructs a new <b>ShardRouter</b>.
+   *
+   * @param name            the name of the shard set
+   * @param dataSources     the data sources for the shards, in shard order
+   * @param executorService the executor service, which propagates the JTA transaction, used to
+   *                        query the shards in parallel
+   */
+  public ShardRouter(String name, List<DataSource> dataSources, ExecutorService executorService) {
+    this.name = name;
+    this.dataSources = List.copyOf(dataSources);
+    this.executorService = executorService;
+  }
+
+  /**
+   * Returns the data source for the shard that owns the key.
+   *
+   * @param key the key
+   *
+   * @return the data source for the shard that owns the key
+   */
+  public DataSource getDataSource(long key) {
+    return dataSources.get(getShard(key));
+  }
+
+  /**
+   * Returns the data sources for the shards, in shard order.
+   *
+   * @return the data sources for the shards, in shard order
+   */
+  public List<DataSource> getDataSources() {
+    return dataSources;
+  }
+
+  /**
+   * Returns the name of the shard set.
+   *
+   * @return the name of the shard set
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the index of the shard that owns the key.
+   *
+   * @param key the key
+   *
+   * @return the index of the shard that owns the key
+   */
+  public int getShard(long key) {
+    // Jump consistent hash (Lamping and Veach), which walks the shard counts at which the key
+    // would have moved using a linear congruential generator seeded with the key
+    long seed = key;
+    long shard = -1;
+    long nextShard = 0;
+
+    while (nextShard < dataSources.size()) {
+      shard = nextShard;
+      seed = seed * 2862933555777941757L + 1;
+      nextShard = (long) ((shard + 1) * ((double) (1L << 31) / (double) ((seed >>> 33) + 1)));
+    }
+
+    return (int) shard;
+  }
+
+  /**
+   * Returns the number of shards.
+   *
+   * @return the number of shards
+   */
+  public int getShardCount() {
+    return dataSources.size();
+  }
+
+  /**
+   * Perform the work against the data source for the shard that owns the key.
+   *
+   * @param key      the key
+   * @param callback the work to perform
+   * @param <T>      the type of result
+   *
+   * @return the result
+   */
+  public <T> T route(long key, ShardCallback<T> callback) throws SQLException {
+    return callback.doInShard(getDataSource(key));
+  }
+
+  /**
+   * Perform the work against the data sources for all the shards.
+   *
+   * @param callback the work to perform
+   * @param <T>      the type of result returned for each shard
+   *
+   * @return the results for the shards, in shard order
+   */
+  public <T> List<T> scatterGather(ShardCallback<T> callback) throws SQLException {
+    List<T> results = new ArrayList<>(dataSources.size());
+
+    List<Future<T>> futures = new ArrayList<>(dataSources.size());
+
+    for (DataSource dataSource : dataSources) {
+      futures.add(executorService.submit(() -> callback.doInShard(dataSource)));
+    }
+
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof SQLException) {
+            throw (SQLException) e.getCause();
+          }
+
+          throw new SQLException(
+              "Failed to perform the work for shard " + i + " of the shard set (" + name + ")",
+              e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new SQLException(
+          "Interrupted while performing the work for the shard set (" + name + ")", e);
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    return results;
+  }
+}
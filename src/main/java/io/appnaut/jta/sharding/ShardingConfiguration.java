@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.sharding;
+
+import io.micronaut.context.annotation.EachProperty;
+import io.micronaut.context.annotation.Parameter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The <b>ShardingConfiguration</b> class holds the configuration information for a set of data
+ * source shards that rows are partitioned across by key.
+ *
+ * @author Marcus Portmann
+ */
+@EachProperty(ShardingConfiguration.PREFIX)
+@SuppressWarnings("unused")
+public class ShardingConfiguration {
+
+  /**
+   * The prefix for the sharding configuration.
+   */
+  public static final String PREFIX = "appnaut.sharding";
+
+  /**
+   * The name of the shard set.
+   */
+  private final String name;
+
+  private List<String> dataSources = new ArrayList<>();
+
+  /**
+   * Constructs a new <b>ShardingConfiguration</b>.
+   *
+   * @param name the name of the shard set configured from properties
+   */
+  public ShardingConfiguration(@Parameter String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the names of the data sources for the shards, in shard order.
+   *
+   * @return the names of the data sources for the shards, in shard order
+   */
+  public List<String> getDataSources() {
+    return dataSources;
+  }
+
+  /**
+   * Returns the name of the shard set.
+   *
+   * @return the name of the shard set
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Set the names of the data sources for the shards, in shard order.
+   *
+   * @param dataSources the names of the data sources for the shards, in shard order
+   */
+  public void setDataSources(List<String> dataSources) {
+    this.dataSources = dataSources;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.jta.sharding;
+
+import io.appnaut.jta.concurrent.TransactionPropagationFactory;
+import io.micronaut.context.BeanContext;
+import io.micronaut.context.annotation.EachBean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import javax.inject.Named;
+import javax.sql.DataSource;
+
+/**
+ * The <b>ShardingFactory</b> class implements the factory responsible for creating the shard
+ * routers for the configured shard sets.
+ *
+ * @author Marcus Portmann
+ */
+@Factory
+@SuppressWarnings("unused")
+public class ShardingFactory {
+
+  private final BeanContext beanContext;
+
+  /**
+   * Constructs a new <b>ShardingFactory</b>.
+   *
+   * @param beanContext the bean context
+   */
+  public ShardingFactory(BeanContext beanContext) {
+    this.beanContext = beanContext;
+  }
+
+  /**
+   * Create a shard router for each sharding configuration.
+   *
+   * @param shardingConfiguration the sharding configuration
+   * @param executorService       the executor service, which propagates the JTA transaction, used
+   *                              to query the shards in parallel
+   *
+   * @return the shard router
+   */
+  @EachBean(ShardingConfiguration.class)
+  public ShardRouter shardRouter(ShardingConfiguration shardingConfiguration,
+      @Named(TransactionPropagationFactory.JTA) ExecutorService executorService) {
+    if (shardingConfiguration.getDataSources().isEmpty()) {
+      throw new IllegalStateException(
+          "No data sources have been configured for the shard set (" + shardingConfiguration
+              .getName() + ")");
+    }
+
+    List<DataSource> dataSources = new ArrayList<>();
+
+    for (String dataSourceName : shardingConfiguration.getDataSources()) {
+      dataSources
+          .add(beanContext.getBean(DataSource.class, Qualifiers.byName(dataSourceName)));
+    }
+
+    return new ShardRouter(shardingConfiguration.getName(), dataSources, executorService);
+  }
+}
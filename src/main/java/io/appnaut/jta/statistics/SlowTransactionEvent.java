@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.statistics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The <b>SlowTransactionEvent</b> class implements the Java Flight Recorder event emitted for a
+ * JTA transaction that exceeds the slow transaction threshold.
+ *
+ * @author Marcus Portmann
+ */
+@Name("io.appnaut.jta.SlowTransaction")
+@Label("Slow Transaction")
+@Category({"Appnaut", "Transactions"})
+@Description("A JTA transaction that exceeded the slow transaction threshold")
+@StackTrace(false)
+class SlowTransactionEvent extends Event {
+
+  @Label("Commit Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long commitTime;
+
+  @Label("Connections")
+  long connections;
+
+  @Label("JDBC Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long jdbcTime;
+
+  @Label("Name")
+  String name;
+
+  @Label("Non-JDBC Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long nonJdbcTime;
+
+  @Label("Outcome")
+  String outcome;
+
+  @Label("Prepare Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long prepareTime;
+
+  @Label("Rollback Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long rollbackTime;
+
+  @Label("Rows Read")
+  long rowsRead;
+
+  @Label("Rows Written")
+  long rowsWritten;
+
+  @Label("Statements")
+  long statements;
+
+  @Label("Transaction Duration")
+  @Timespan(Timespan.NANOSECONDS)
+  long transactionDuration;
+}
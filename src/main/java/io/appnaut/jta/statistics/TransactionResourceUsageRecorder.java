@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.statistics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Requires;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>TransactionResourceUsageRecorder</b> class records the number of bytes allocated and the
+ * CPU time consumed by the thread that started a JTA transaction, between the transaction being
+ * started and the transaction being cleaned up after completion.
+ * <p/>
+ * The figures are recorded as the <b>appnaut.transaction.allocated</b> distribution summary and
+ * the <b>appnaut.transaction.cpu</b> timer, both published with a percentile histogram and tagged
+ * with the name of the data source and the name of the transaction, which is the
+ * <b>@Transactional</b> method that started it. The figures are per-thread, so a transaction that
+ * completes on a different thread to the one it was started on is not recorded, and the figures
+ * for a transaction include the work performed by any transactions started while it was
+ * suspended on the same thread.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@Requires(property = TransactionResourceUsageRecorder.PREFIX + ".enabled", value = "true")
+@Requires(beans = MeterRegistry.class)
+@SuppressWarnings("unused")
+public class TransactionResourceUsageRecorder {
+
+  /**
+   * The name of the distribution summary for the bytes allocated by a transaction.
+   */
+  public static final String ALLOCATED_METRIC = "appnaut.transaction.allocated";
+
+  /**
+   * The name of the timer for the CPU time consumed by a transaction.
+   */
+  public static final String CPU_METRIC = "appnaut.transaction.cpu";
+
+  /**
+   * The prefix for the transaction resource usage configuration.
+   */
+  public static final String PREFIX = "appnaut.transaction.resource-usage";
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(TransactionResourceUsageRecorder.class);
+
+  /**
+   * Is recording the bytes allocated by a thread supported and enabled?
+   */
+  private final boolean allocationEnabled;
+
+  /**
+   * Is recording the CPU time consumed by a thread supported and enabled?
+   */
+  private final boolean cpuTimeEnabled;
+
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * The meters for each combination of data source and transaction name.
+   */
+  private final ConcurrentMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+  private final com.sun.management.ThreadMXBean threadMXBean;
+
+  /**
+   * Constructs a new <b>TransactionResourceUsageRecorder</b>.
+   *
+   * @param meterRegistry the meter registry
+   */
+  public TransactionResourceUsageRecorder(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+
+    ThreadMXBean platformThreadMXBean = ManagementFactory.getThreadMXBean();
+
+    if (platformThreadMXBean instanceof com.sun.management.ThreadMXBean) {
+      threadMXBean = (com.sun.management.ThreadMXBean) platformThreadMXBean;
+
+      if (threadMXBean.isThreadAllocatedMemorySupported()
+          && (!threadMXBean.isThreadAllocatedMemoryEnabled())) {
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+      }
+
+      if (threadMXBean.isCurrentThreadCpuTimeSupported()
+          && (!threadMXBean.isThreadCpuTimeEnabled())) {
+        threadMXBean.setThreadCpuTimeEnabled(true);
+      }
+
+      allocationEnabled = threadMXBean.isThreadAllocatedMemorySupported()
+          && threadMXBean.isThreadAllocatedMemoryEnabled();
+      cpuTimeEnabled = threadMXBean.isCurrentThreadCpuTimeSupported()
+          && threadMXBean.isThreadCpuTimeEnabled();
+    } else {
+      threadMXBean = null;
+      allocationEnabled = false;
+      cpuTimeEnabled = false;
+    }
+
+    if ((!allocationEnabled) && (!cpuTimeEnabled) && logger.isWarnEnabled()) {
+      logger.warn("The resource usage for JTA transactions will not be recorded because the JVM "
+          + "does not support measuring the memory allocated and CPU time consumed by a thread");
+    }
+  }
+
+  /**
+   * Start recording the resource usage for a JTA transaction on the current thread.
+   *
+   * @param dataSourceName  the name of the data source associated with the transaction
+   * @param transactionName the name of the transaction
+   *
+   * @return the resource usage sample for the transaction or <b>null</b> if the resource usage
+   * cannot be recorded
+   */
+  public Sample begin(String dataSourceName, String transactionName) {
+    if ((!allocationEnabled) && (!cpuTimeEnabled)) {
+      return null;
+    }
+
+    return new Sample(dataSourceName, transactionName, Thread.currentThread(),
+        allocationEnabled ? threadMXBean.getCurrentThreadAllocatedBytes() : -1,
+        cpuTimeEnabled ? threadMXBean.getCurrentThreadCpuTime() : -1);
+  }
+
+  /**
+   * Finish recording the resource usage for a JTA transaction on the current thread.
+   *
+   * @param sample the resource usage sample for the transaction
+   */
+  public void complete(Sample sample) {
+    if (sample.thread != Thread.currentThread()) {
+      return;
+    }
+
+    Meters transactionMeters = meters.computeIfAbsent(
+        sample.dataSourceName + "|" + sample.transactionName,
+        key -> new Meters(sample.dataSourceName, sample.transactionName));
+
+    // The per-thread figures are not available for virtual threads
+    if (sample.startAllocatedBytes >= 0) {
+      long allocatedBytes = threadMXBean.getCurrentThreadAllocatedBytes();
+
+      if (allocatedBytes >= 0) {
+        transactionMeters.allocated.record(allocatedBytes - sample.startAllocatedBytes);
+      }
+    }
+
+    if (sample.startCpuNanos >= 0) {
+      long cpuNanos = threadMXBean.getCurrentThreadCpuTime();
+
+      if (cpuNanos >= 0) {
+        transactionMeters.cpu.record(cpuNanos - sample.startCpuNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  /**
+   * The <b>Sample</b> class holds the resource usage for the thread that started a JTA
+   * transaction at the time the transaction was started.
+   */
+  public static final class Sample {
+
+    private final String dataSourceName;
+
+    private final long startAllocatedBytes;
+
+    private final long startCpuNanos;
+
+    private final Thread thread;
+
+    private final String transactionName;
+
+    private Sample(String dataSourceName, String transactionName, Thread thread,
+        long startAllocatedBytes, long startCpuNanos) {
+      this.dataSourceName = dataSourceName;
+      this.transactionName = (transactionName != null) ? transactionName : "unknown";
+      this.thread = thread;
+      this.startAllocatedBytes = startAllocatedBytes;
+      this.startCpuNanos = startCpuNanos;
+    }
+  }
+
+  /**
+   * The <b>Meters</b> class holds the meters for a combination of data source and transaction
+   * name.
+   */
+  private class Meters {
+
+    private final DistributionSummary allocated;
+
+    private final Timer cpu;
+
+    /**
+     * Constructs a new <b>Meters</b>.
+     *
+     * @param dataSourceName  the name of the data source
+     * @param transactionName the name of the transaction
+     */
+    Meters(String dataSourceName, String transactionName) {
+      allocated = DistributionSummary.builder(ALLOCATED_METRIC)
+          .description("The bytes allocated by the thread that started a JTA transaction")
+          .baseUnit("bytes")
+          .tags("dataSource", dataSourceName, "method", transactionName)
+          .publishPercentileHistogram()
+          .register(meterRegistry);
+
+      cpu = Timer.builder(CPU_METRIC)
+          .description("The CPU time consumed by the thread that started a JTA transaction")
+          .tags("dataSource", dataSourceName, "method", transactionName)
+          .publishPercentileHistogram()
+          .register(meterRegistry);
+    }
+  }
+}
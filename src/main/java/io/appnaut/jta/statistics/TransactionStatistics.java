@@ -0,0 +1,272 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The <b>TransactionStatistics</b> class holds the statement, row, connection and XA phase
+ * statistics for a JTA transaction.
+ * <p/>
+ * The statistics are stored as a resource with the transaction synchronization registry, and may
+ * be updated concurrently when the transaction is propagated to other threads.
+ *
+ * @author Marcus Portmann
+ */
+public class TransactionStatistics {
+
+  /**
+   * The key used to store the statistics for a transaction with the transaction synchronization
+   * registry.
+   */
+  private static final String RESOURCE_KEY = TransactionStatistics.class.getName();
+
+  private final LongAdder commitNanos = new LongAdder();
+
+  private final LongAdder connections = new LongAdder();
+
+  /**
+   * The time the transaction completed or 0 if the transaction has not completed.
+   */
+  private volatile long endNanos;
+
+  private final LongAdder jdbcNanos = new LongAdder();
+
+  /**
+   * The name of the transaction, which is usually the name of the transactional method that
+   * started it.
+   */
+  private final String name;
+
+  private final LongAdder prepareNanos = new LongAdder();
+
+  private final LongAdder rollbackNanos = new LongAdder();
+
+  private final LongAdder rowsRead = new LongAdder();
+
+  private final LongAdder rowsWritten = new LongAdder();
+
+  private final long startNanos = System.nanoTime();
+
+  private final LongAdder statements = new LongAdder();
+
+  /**
+   * Constructs a new <b>TransactionStatistics</b>.
+   *
+   * @param name the name of the transaction
+   */
+  TransactionStatistics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the statistics for the JTA transaction associated with the current thread.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   *
+   * @return the statistics for the JTA transaction associated with the current thread or
+   * <b>null</b> if there is no active transaction or statistics are not collected for it
+   */
+  public static TransactionStatistics getCurrent(
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+    int status = transactionSynchronizationRegistry.getTransactionStatus();
+
+    if ((status != Status.STATUS_ACTIVE) && (status != Status.STATUS_MARKED_ROLLBACK)) {
+      return null;
+    }
+
+    return (TransactionStatistics) transactionSynchronizationRegistry.getResource(RESOURCE_KEY);
+  }
+
+  /**
+   * Store the statistics for the JTA transaction associated with the current thread.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param transactionStatistics              the statistics
+   */
+  static void setCurrent(TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      TransactionStatistics transactionStatistics) {
+    transactionSynchronizationRegistry.putResource(RESOURCE_KEY, transactionStatistics);
+  }
+
+  /**
+   * Returns the time spent committing the XA resources in nanoseconds.
+   *
+   * @return the time spent committing the XA resources in nanoseconds
+   */
+  public long getCommitNanos() {
+    return commitNanos.sum();
+  }
+
+  /**
+   * Returns the number of connections enlisted in the transaction.
+   *
+   * @return the number of connections enlisted in the transaction
+   */
+  public long getConnections() {
+    return connections.sum();
+  }
+
+  /**
+   * Returns the duration of the transaction, or the time elapsed since it started if it has not
+   * completed, in nanoseconds.
+   *
+   * @return the duration of the transaction in nanoseconds
+   */
+  public long getDurationNanos() {
+    long completedNanos = endNanos;
+
+    return ((completedNanos != 0) ? completedNanos : System.nanoTime()) - startNanos;
+  }
+
+  /**
+   * Returns the time spent outside JDBC calls and XA phases in nanoseconds.
+   *
+   * @return the time spent outside JDBC calls and XA phases in nanoseconds
+   */
+  public long getNonJdbcNanos() {
+    return Math.max(0, getDurationNanos() - getJdbcNanos() - getPrepareNanos() - getCommitNanos()
+        - getRollbackNanos());
+  }
+
+  /**
+   * Returns the time spent executing statements and reading results in nanoseconds.
+   *
+   * @return the time spent executing statements and reading results in nanoseconds
+   */
+  public long getJdbcNanos() {
+    return jdbcNanos.sum();
+  }
+
+  /**
+   * Returns the name of the transaction.
+   *
+   * @return the name of the transaction
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the time spent preparing the XA resources in nanoseconds.
+   *
+   * @return the time spent preparing the XA resources in nanoseconds
+   */
+  public long getPrepareNanos() {
+    return prepareNanos.sum();
+  }
+
+  /**
+   * Returns the time spent rolling back the XA resources in nanoseconds.
+   *
+   * @return the time spent rolling back the XA resources in nanoseconds
+   */
+  public long getRollbackNanos() {
+    return rollbackNanos.sum();
+  }
+
+  /**
+   * Returns the number of rows read from result sets.
+   *
+   * @return the number of rows read from result sets
+   */
+  public long getRowsRead() {
+    return rowsRead.sum();
+  }
+
+  /**
+   * Returns the number of rows inserted, updated or deleted.
+   *
+   * @return the number of rows inserted, updated or deleted
+   */
+  public long getRowsWritten() {
+    return rowsWritten.sum();
+  }
+
+  /**
+   * Returns the number of statements executed.
+   *
+   * @return the number of statements executed
+   */
+  public long getStatements() {
+    return statements.sum();
+  }
+
+  /**
+   * Record that a connection was enlisted in the transaction.
+   */
+  public void recordConnection() {
+    connections.increment();
+  }
+
+  @Override
+  public String toString() {
+    return "name=" + name
+        + " durationMs=" + toMillis(getDurationNanos())
+        + " jdbcMs=" + toMillis(getJdbcNanos())
+        + " nonJdbcMs=" + toMillis(getNonJdbcNanos())
+        + " statements=" + getStatements()
+        + " rowsRead=" + getRowsRead()
+        + " rowsWritten=" + getRowsWritten()
+        + " connections=" + getConnections()
+        + " prepareMs=" + toMillis(getPrepareNanos())
+        + " commitMs=" + toMillis(getCommitNanos())
+        + " rollbackMs=" + toMillis(getRollbackNanos());
+  }
+
+  void complete() {
+    endNanos = System.nanoTime();
+  }
+
+  void recordCommit(long nanos) {
+    commitNanos.add(nanos);
+  }
+
+  void recordJdbc(long nanos) {
+    jdbcNanos.add(nanos);
+  }
+
+  void recordPrepare(long nanos) {
+    prepareNanos.add(nanos);
+  }
+
+  void recordRollback(long nanos) {
+    rollbackNanos.add(nanos);
+  }
+
+  void recordRowRead() {
+    rowsRead.increment();
+  }
+
+  void recordRowsWritten(long count) {
+    if (count > 0) {
+      rowsWritten.add(count);
+    }
+  }
+
+  void recordStatement() {
+    statements.increment();
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.statistics;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import java.time.Duration;
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <b>TransactionStatisticsCollector</b> class collects the statistics for each JTA transaction
+ * and reports the transactions that exceed the slow transaction threshold, with a single
+ * structured log entry and a {@link SlowTransactionEvent} Java Flight Recorder event.
+ * <p/>
+ * The statement and row statistics are collected for the connections retrieved from a
+ * {@link TransactionStatisticsDataSource}, and the connection and XA phase statistics are
+ * collected when a connection is enlisted in the transaction.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@Requires(property = TransactionStatisticsCollector.PREFIX + ".enabled", value = "true")
+@SuppressWarnings("unused")
+public class TransactionStatisticsCollector {
+
+  /**
+   * The prefix for the transaction statistics configuration.
+   */
+  public static final String PREFIX = "appnaut.transaction.statistics";
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(TransactionStatisticsCollector.class);
+
+  private final long slowThresholdNanos;
+
+  private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+  /**
+   * Constructs a new <b>TransactionStatisticsCollector</b>.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param slowThreshold                      the duration after which a transaction is reported
+   *                                           as slow
+   */
+  public TransactionStatisticsCollector(
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      @Value("${" + PREFIX + ".slow-threshold:1s}") Duration slowThreshold) {
+    this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+    this.slowThresholdNanos = slowThreshold.toNanos();
+  }
+
+  /**
+   * Start collecting the statistics for the JTA transaction associated with the current thread.
+   *
+   * @param name the name of the transaction
+   */
+  public void begin(String name) {
+    TransactionStatistics transactionStatistics = new TransactionStatistics(name);
+
+    TransactionStatistics.setCurrent(transactionSynchronizationRegistry, transactionStatistics);
+
+    transactionSynchronizationRegistry.registerInterposedSynchronization(
+        new StatisticsSynchronization(transactionStatistics));
+  }
+
+  /**
+   * Returns the statistics for the JTA transaction associated with the current thread.
+   *
+   * @return the statistics for the JTA transaction associated with the current thread or
+   * <b>null</b> if there is no active transaction or statistics are not collected for it
+   */
+  public TransactionStatistics getCurrentStatistics() {
+    return TransactionStatistics.getCurrent(transactionSynchronizationRegistry);
+  }
+
+  private void report(TransactionStatistics transactionStatistics, int status) {
+    transactionStatistics.complete();
+
+    if (transactionStatistics.getDurationNanos() < slowThresholdNanos) {
+      return;
+    }
+
+    String outcome = (status == Status.STATUS_COMMITTED) ? "committed"
+        : ((status == Status.STATUS_ROLLEDBACK) ? "rolled-back" : "unknown");
+
+    if (logger.isWarnEnabled()) {
+      logger.warn("Slow transaction: " + transactionStatistics + " outcome=" + outcome);
+    }
+
+    SlowTransactionEvent event = new SlowTransactionEvent();
+
+    if (event.shouldCommit()) {
+      event.name = transactionStatistics.getName();
+      event.outcome = outcome;
+      event.transactionDuration = transactionStatistics.getDurationNanos();
+      event.jdbcTime = transactionStatistics.getJdbcNanos();
+      event.nonJdbcTime = transactionStatistics.getNonJdbcNanos();
+      event.statements = transactionStatistics.getStatements();
+      event.rowsRead = transactionStatistics.getRowsRead();
+      event.rowsWritten = transactionStatistics.getRowsWritten();
+      event.connections = transactionStatistics.getConnections();
+      event.prepareTime = transactionStatistics.getPrepareNanos();
+      event.commitTime = transactionStatistics.getCommitNanos();
+      event.rollbackTime = transactionStatistics.getRollbackNanos();
+      event.commit();
+    }
+  }
+
+  /**
+   * The <b>StatisticsSynchronization</b> class reports the statistics for a transaction once it
+   * has completed.
+   */
+  private class StatisticsSynchronization implements Synchronization {
+
+    private final TransactionStatistics transactionStatistics;
+
+    /**
+     * Constructs a new <b>StatisticsSynchronization</b>.
+     *
+     * @param transactionStatistics the statistics for the transaction
+     */
+    StatisticsSynchronization(TransactionStatistics transactionStatistics) {
+      this.transactionStatistics = transactionStatistics;
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      try {
+        report(transactionStatistics, status);
+      } catch (Throwable e) {
+        if (logger.isWarnEnabled()) {
+          logger.warn("Failed to report the statistics for the transaction ("
+              + transactionStatistics.getName() + ")", e);
+        }
+      }
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+  }
+}
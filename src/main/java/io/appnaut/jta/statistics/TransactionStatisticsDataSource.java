@@ -0,0 +1,208 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.statistics;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.agroal.DelegatingAgroalDataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The <b>TransactionStatisticsDataSource</b> class implements an Agroal data source that records
+ * the statements executed, the rows read and written, and the time spent in JDBC calls, for the
+ * connections retrieved within a JTA transaction, with the statistics for the transaction.
+ * <p/>
+ * Connections retrieved outside a transaction, or for a transaction that statistics are not
+ * collected for, are returned unwrapped.
+ *
+ * @author Marcus Portmann
+ */
+@SuppressWarnings("unused")
+public class TransactionStatisticsDataSource extends DelegatingAgroalDataSource {
+
+  private static final long serialVersionUID = 1000000;
+
+  /**
+   * The data source being wrapped.
+   */
+  private final AgroalDataSource delegate;
+
+  /**
+   * The name of the data source.
+   */
+  private final String name;
+
+  private final transient TransactionStatisticsCollector transactionStatisticsCollector;
+
+  /**
+   * Constructs a new <b>TransactionStatisticsDataSource</b>.
+   *
+   * @param name                           the name of the data source
+   * @param delegate                       the data source being wrapped
+   * @param transactionStatisticsCollector the transaction statistics collector
+   */
+  public TransactionStatisticsDataSource(String name, AgroalDataSource delegate,
+      TransactionStatisticsCollector transactionStatisticsCollector) {
+    this.name = name;
+    this.delegate = delegate;
+    this.transactionStatisticsCollector = transactionStatisticsCollector;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return wrap(delegate.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return wrap(delegate.getConnection(username, password));
+  }
+
+  @Override
+  public String toString() {
+    return "TransactionStatisticsDataSource {name=\"" + name + "\"}";
+  }
+
+  @Override
+  protected AgroalDataSource getDelegate() {
+    return delegate;
+  }
+
+  private static Object newProxy(Class<?> type, Object target,
+      TransactionStatistics transactionStatistics) {
+    return Proxy.newProxyInstance(TransactionStatisticsDataSource.class.getClassLoader(),
+        new Class<?>[]{type}, new StatisticsInvocationHandler(target, transactionStatistics));
+  }
+
+  private Connection wrap(Connection connection) {
+    TransactionStatistics transactionStatistics =
+        transactionStatisticsCollector.getCurrentStatistics();
+
+    // The connections retrieved from a replica data source have already been wrapped
+    if ((transactionStatistics == null) || (Proxy.isProxyClass(connection.getClass())
+        && (Proxy.getInvocationHandler(connection) instanceof StatisticsInvocationHandler))) {
+      return connection;
+    }
+
+    return (Connection) newProxy(Connection.class, connection, transactionStatistics);
+  }
+
+  /**
+   * The <b>StatisticsInvocationHandler</b> class records the statistics for the calls to a
+   * connection and the statements and result sets created from it.
+   */
+  private static class StatisticsInvocationHandler implements InvocationHandler {
+
+    private final Object target;
+
+    private final TransactionStatistics transactionStatistics;
+
+    /**
+     * Constructs a new <b>StatisticsInvocationHandler</b>.
+     *
+     * @param target                the connection, statement or result set being wrapped
+     * @param transactionStatistics the statistics for the transaction
+     */
+    StatisticsInvocationHandler(Object target, TransactionStatistics transactionStatistics) {
+      this.target = target;
+      this.transactionStatistics = transactionStatistics;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+
+      if (methodName.equals("equals") && (args != null) && (args.length == 1)) {
+        return proxy == args[0];
+      } else if (methodName.equals("hashCode") && (args == null)) {
+        return System.identityHashCode(proxy);
+      }
+
+      if ((target instanceof ResultSet) && methodName.equals("next")) {
+        long start = System.nanoTime();
+
+        boolean next = (Boolean) invokeTarget(method, args);
+
+        transactionStatistics.recordJdbc(System.nanoTime() - start);
+
+        if (next) {
+          transactionStatistics.recordRowRead();
+        }
+
+        return next;
+      }
+
+      if ((target instanceof Statement) && methodName.startsWith("execute")) {
+        long start = System.nanoTime();
+
+        Object result;
+
+        try {
+          result = invokeTarget(method, args);
+        } finally {
+          transactionStatistics.recordJdbc(System.nanoTime() - start);
+          transactionStatistics.recordStatement();
+        }
+
+        if (result instanceof Integer) {
+          transactionStatistics.recordRowsWritten((Integer) result);
+        } else if (result instanceof Long) {
+          transactionStatistics.recordRowsWritten((Long) result);
+        } else if (result instanceof int[]) {
+          for (int count : (int[]) result) {
+            transactionStatistics.recordRowsWritten(count);
+          }
+        } else if (result instanceof long[]) {
+          for (long count : (long[]) result) {
+            transactionStatistics.recordRowsWritten(count);
+          }
+        } else if (result instanceof ResultSet) {
+          return newProxy(ResultSet.class, result, transactionStatistics);
+        }
+
+        return result;
+      }
+
+      Object result = invokeTarget(method, args);
+
+      // Wrap the statements created from the connection and the result sets they return
+      if ((result instanceof Statement) && (method.getReturnType().isInterface())
+          && Statement.class.isAssignableFrom(method.getReturnType())) {
+        return newProxy(method.getReturnType(), result, transactionStatistics);
+      } else if ((result instanceof ResultSet) && (target instanceof Statement)) {
+        return newProxy(ResultSet.class, result, transactionStatistics);
+      }
+
+      return result;
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.statistics;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+/**
+ * The <b>TransactionStatisticsXAResource</b> class provides a wrapper for an XA resource that
+ * records the time spent in the prepare, commit and rollback phases with the statistics for the
+ * transaction it is enlisted in.
+ *
+ * @author Marcus Portmann
+ */
+public class TransactionStatisticsXAResource implements XAResource {
+
+  private final TransactionStatistics transactionStatistics;
+
+  /**
+   * The underlying XA resource.
+   */
+  private final XAResource xaResource;
+
+  /**
+   * Constructs a new <b>TransactionStatisticsXAResource</b>.
+   *
+   * @param xaResource            the underlying XA resource
+   * @param transactionStatistics the statistics for the transaction the XA resource is enlisted
+   *                              in
+   */
+  public TransactionStatisticsXAResource(XAResource xaResource,
+      TransactionStatistics transactionStatistics) {
+    this.xaResource = xaResource;
+    this.transactionStatistics = transactionStatistics;
+  }
+
+  @Override
+  public void commit(Xid xid, boolean onePhase) throws XAException {
+    long start = System.nanoTime();
+
+    try {
+      xaResource.commit(xid, onePhase);
+    } finally {
+      transactionStatistics.recordCommit(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void end(Xid xid, int flags) throws XAException {
+    xaResource.end(xid, flags);
+  }
+
+  @Override
+  public void forget(Xid xid) throws XAException {
+    xaResource.forget(xid);
+  }
+
+  @Override
+  public int getTransactionTimeout() throws XAException {
+    return xaResource.getTransactionTimeout();
+  }
+
+  @Override
+  public boolean isSameRM(XAResource xaResource) throws XAException {
+    if (xaResource instanceof TransactionStatisticsXAResource) {
+      return this.xaResource.isSameRM(((TransactionStatisticsXAResource) xaResource).xaResource);
+    } else {
+      return this.xaResource.isSameRM(xaResource);
+    }
+  }
+
+  @Override
+  public int prepare(Xid xid) throws XAException {
+    long start = System.nanoTime();
+
+    try {
+      return xaResource.prepare(xid);
+    } finally {
+      transactionStatistics.recordPrepare(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public Xid[] recover(int flag) throws XAException {
+    return xaResource.recover(flag);
+  }
+
+  @Override
+  public void rollback(Xid xid) throws XAException {
+    long start = System.nanoTime();
+
+    try {
+      xaResource.rollback(xid);
+    } finally {
+      transactionStatistics.recordRollback(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public boolean setTransactionTimeout(int seconds) throws XAException {
+    return xaResource.setTransactionTimeout(seconds);
+  }
+
+  @Override
+  public void start(Xid xid, int flags) throws XAException {
+    xaResource.start(xid, flags);
+  }
+}
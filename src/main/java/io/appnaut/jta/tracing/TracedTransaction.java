@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The <b>TracedTransaction</b> class holds the OpenTelemetry span for a JTA transaction, which the
+ * spans for the connections enlisted in the transaction and the XA phases are parented to.
+ *
+ * @author Marcus Portmann
+ */
+public class TracedTransaction {
+
+  /**
+   * The key used to store the traced transaction with the transaction synchronization registry.
+   */
+  private static final String RESOURCE_KEY = TracedTransaction.class.getName();
+
+  /**
+   * The OpenTelemetry context containing the span for the transaction.
+   */
+  private final Context context;
+
+  private final Tracer tracer;
+
+  /**
+   * Constructs a new <b>TracedTransaction</b>.
+   *
+   * @param tracer  the tracer
+   * @param context the OpenTelemetry context containing the span for the transaction
+   */
+  TracedTransaction(Tracer tracer, Context context) {
+    this.tracer = tracer;
+    this.context = context;
+  }
+
+  /**
+   * Returns the traced transaction for the JTA transaction associated with the current thread.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   *
+   * @return the traced transaction for the JTA transaction associated with the current thread or
+   * <b>null</b> if there is no active transaction or it is not being traced
+   */
+  public static TracedTransaction getCurrent(
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+    int status = transactionSynchronizationRegistry.getTransactionStatus();
+
+    if ((status != Status.STATUS_ACTIVE) && (status != Status.STATUS_MARKED_ROLLBACK)) {
+      return null;
+    }
+
+    return (TracedTransaction) transactionSynchronizationRegistry.getResource(RESOURCE_KEY);
+  }
+
+  /**
+   * Store the traced transaction for the JTA transaction associated with the current thread.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param tracedTransaction                  the traced transaction
+   */
+  static void setCurrent(TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+      TracedTransaction tracedTransaction) {
+    transactionSynchronizationRegistry.putResource(RESOURCE_KEY, tracedTransaction);
+  }
+
+  /**
+   * Returns the span for the transaction.
+   *
+   * @return the span for the transaction
+   */
+  public Span getSpan() {
+    return Span.fromContext(context);
+  }
+
+  /**
+   * Start a new span, parented to the span for the transaction.
+   *
+   * @param name           the name of the span
+   * @param dataSourceName the name of the data source the span is associated with
+   *
+   * @return the new span
+   */
+  public Span startSpan(String name, String dataSourceName) {
+    return tracer.spanBuilder(name)
+        .setParent(context)
+        .setAttribute(TransactionTracer.DATA_SOURCE_ATTRIBUTE, dataSourceName)
+        .startSpan();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+/**
+ * The <b>TracingXAResource</b> class provides a wrapper for an XA resource that creates an
+ * OpenTelemetry span, parented to the span for the transaction, for the prepare, commit and
+ * rollback phases.
+ *
+ * @author Marcus Portmann
+ */
+public class TracingXAResource implements XAResource {
+
+  /**
+   * The name of the data source the XA resource is associated with.
+   */
+  private final String dataSourceName;
+
+  private final TracedTransaction tracedTransaction;
+
+  /**
+   * The underlying XA resource.
+   */
+  private final XAResource xaResource;
+
+  /**
+   * Constructs a new <b>TracingXAResource</b>.
+   *
+   * @param dataSourceName    the name of the data source the XA resource is associated with
+   * @param xaResource        the underlying XA resource
+   * @param tracedTransaction the traced transaction the XA resource is enlisted in
+   */
+  public TracingXAResource(String dataSourceName, XAResource xaResource,
+      TracedTransaction tracedTransaction) {
+    this.dataSourceName = dataSourceName;
+    this.xaResource = xaResource;
+    this.tracedTransaction = tracedTransaction;
+  }
+
+  @Override
+  public void commit(Xid xid, boolean onePhase) throws XAException {
+    Span span = tracedTransaction.startSpan("XA commit", dataSourceName);
+    span.setAttribute("appnaut.xa.one_phase", onePhase);
+
+    try {
+      xaResource.commit(xid, onePhase);
+    } catch (Throwable e) {
+      recordFailure(span, e);
+      throw e;
+    } finally {
+      span.end();
+    }
+  }
+
+  @Override
+  public void end(Xid xid, int flags) throws XAException {
+    xaResource.end(xid, flags);
+  }
+
+  @Override
+  public void forget(Xid xid) throws XAException {
+    xaResource.forget(xid);
+  }
+
+  @Override
+  public int getTransactionTimeout() throws XAException {
+    return xaResource.getTransactionTimeout();
+  }
+
+  @Override
+  public boolean isSameRM(XAResource xaResource) throws XAException {
+    if (xaResource instanceof TracingXAResource) {
+      return this.xaResource.isSameRM(((TracingXAResource) xaResource).xaResource);
+    } else {
+      return this.xaResource.isSameRM(xaResource);
+    }
+  }
+
+  @Override
+  public int prepare(Xid xid) throws XAException {
+    Span span = tracedTransaction.startSpan("XA prepare", dataSourceName);
+
+    try {
+      return xaResource.prepare(xid);
+    } catch (Throwable e) {
+      recordFailure(span, e);
+      throw e;
+    } finally {
+      span.end();
+    }
+  }
+
+  @Override
+  public Xid[] recover(int flag) throws XAException {
+    return xaResource.recover(flag);
+  }
+
+  @Override
+  public void rollback(Xid xid) throws XAException {
+    Span span = tracedTransaction.startSpan("XA rollback", dataSourceName);
+
+    try {
+      xaResource.rollback(xid);
+    } catch (Throwable e) {
+      recordFailure(span, e);
+      throw e;
+    } finally {
+      span.end();
+    }
+  }
+
+  @Override
+  public boolean setTransactionTimeout(int seconds) throws XAException {
+    return xaResource.setTransactionTimeout(seconds);
+  }
+
+  @Override
+  public void start(Xid xid, int flags) throws XAException {
+    xaResource.start(xid, flags);
+  }
+
+  private void recordFailure(Span span, Throwable failure) {
+    if (failure instanceof XAException) {
+      span.setAttribute("appnaut.xa.error_code", ((XAException) failure).errorCode);
+    }
+
+    span.recordException(failure);
+    span.setStatus(StatusCode.ERROR);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.jta.tracing;
+
+import io.appnaut.core.tracing.TracingContext;
+import io.micronaut.context.annotation.Requires;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The <b>TransactionTracer</b> class creates an OpenTelemetry span for each JTA transaction, which
+ * is parented to the span for the HTTP request being processed, if any, and ends when the
+ * transaction completes.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@Requires(beans = OpenTelemetry.class)
+@SuppressWarnings("unused")
+public class TransactionTracer {
+
+  /**
+   * The name of the span attribute for the data source name.
+   */
+  public static final String DATA_SOURCE_ATTRIBUTE = "appnaut.data_source";
+
+  /**
+   * The name of the span for a JTA transaction.
+   */
+  public static final String TRANSACTION_SPAN_NAME = "JTA transaction";
+
+  private final Tracer tracer;
+
+  private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+  /**
+   * Constructs a new <b>TransactionTracer</b>.
+   *
+   * @param openTelemetry                      the OpenTelemetry instance
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   */
+  public TransactionTracer(OpenTelemetry openTelemetry,
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+    this.tracer = openTelemetry.getTracer("io.appnaut.jta");
+    this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+  }
+
+  /**
+   * Start the span for the JTA transaction associated with the current thread.
+   *
+   * @param dataSourceName  the name of the data source for the JTA transaction manager that
+   *                        started the transaction
+   * @param transactionName the name of the transaction
+   */
+  public void begin(String dataSourceName, String transactionName) {
+    Context parentContext = TracingContext.current();
+
+    Span span = tracer.spanBuilder(TRANSACTION_SPAN_NAME)
+        .setParent(parentContext)
+        .setAttribute(DATA_SOURCE_ATTRIBUTE, dataSourceName)
+        .setAttribute("appnaut.transaction.name", String.valueOf(transactionName))
+        .startSpan();
+
+    TracedTransaction.setCurrent(transactionSynchronizationRegistry,
+        new TracedTransaction(tracer, parentContext.with(span)));
+
+    transactionSynchronizationRegistry.registerInterposedSynchronization(
+        new TracingSynchronization(span));
+  }
+
+  /**
+   * The <b>TracingSynchronization</b> class ends the span for a transaction once it has
+   * completed.
+   */
+  private static class TracingSynchronization implements Synchronization {
+
+    private final Span span;
+
+    /**
+     * Constructs a new <b>TracingSynchronization</b>.
+     *
+     * @param span the span for the transaction
+     */
+    TracingSynchronization(Span span) {
+      this.span = span;
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      if (status == Status.STATUS_COMMITTED) {
+        span.setAttribute("appnaut.transaction.outcome", "committed");
+      } else if (status == Status.STATUS_ROLLEDBACK) {
+        span.setAttribute("appnaut.transaction.outcome", "rolled-back");
+      } else {
+        span.setAttribute("appnaut.transaction.outcome", "unknown");
+        span.setStatus(StatusCode.ERROR);
+      }
+
+      span.end();
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+  }
+}
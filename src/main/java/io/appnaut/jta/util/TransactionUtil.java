@@ -17,9 +17,14 @@
 package io.appnaut.jta.util;
 
 import io.micronaut.transaction.exceptions.TransactionSystemException;
+import java.util.concurrent.Callable;
 import javax.transaction.Status;
+import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The <b>TransactionUtil</b> class provides a helper class for working with transactions.
@@ -28,6 +33,109 @@ import javax.transaction.TransactionManager;
  */
 public class TransactionUtil {
 
+  /**
+   * The key used to store the JDBC isolation level for a JTA transaction with the transaction
+   * synchronization registry.
+   */
+  private static final String ISOLATION_LEVEL_RESOURCE_KEY =
+      TransactionUtil.class.getName() + ".isolationLevel";
+
+  private static final Logger logger = LoggerFactory.getLogger(TransactionUtil.class);
+
+  /**
+   * Invoke the callable with the JTA transaction associated with the current thread, restoring the
+   * JTA transaction previously associated with the current thread afterwards.
+   * <p/>
+   * The transaction is not committed or rolled back.
+   *
+   * @param transactionManager the JTA transaction manager
+   * @param transaction        the JTA transaction
+   * @param callable           the callable
+   * @param <T>                the result type
+   *
+   * @return the result of the callable
+   */
+  public static <T> T callInTransaction(TransactionManager transactionManager,
+      Transaction transaction, Callable<T> callable) throws Exception {
+    Transaction previousTransaction;
+
+    try {
+      previousTransaction = transactionManager.suspend();
+
+      transactionManager.resume(transaction);
+    } catch (Throwable e) {
+      throw new TransactionSystemException(
+          "Failed to resume the JTA transaction on the thread (" + Thread.currentThread().getName()
+              + ")", e);
+    }
+
+    try {
+      return callable.call();
+    } finally {
+      try {
+        transactionManager.suspend();
+
+        if (previousTransaction != null) {
+          transactionManager.resume(previousTransaction);
+        }
+      } catch (Throwable e) {
+        if (logger.isWarnEnabled()) {
+          logger.warn("Failed to disassociate the JTA transaction from the thread ("
+              + Thread.currentThread().getName() + ")", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the JDBC isolation level for the JTA transaction associated with the current thread.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   *
+   * @return the JDBC isolation level for the JTA transaction associated with the current thread or
+   * -1 if the default isolation level should be used
+   */
+  public static int getIsolationLevel(
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+    Object isolationLevel = transactionSynchronizationRegistry
+        .getResource(ISOLATION_LEVEL_RESOURCE_KEY);
+
+    return (isolationLevel != null) ? (Integer) isolationLevel : -1;
+  }
+
+  /**
+   * Returns the active JTA transaction associated with the current thread.
+   *
+   * @param transactionManager the JTA transaction manager
+   *
+   * @return the active JTA transaction associated with the current thread or <b>null</b> if there
+   * is no active JTA transaction
+   */
+  public static Transaction getTransaction(TransactionManager transactionManager) {
+    if (!transactionExists(transactionManager)) {
+      return null;
+    }
+
+    try {
+      return transactionManager.getTransaction();
+    } catch (SystemException e) {
+      throw new TransactionSystemException(
+          "Failed to retrieve the JTA transaction associated with the current thread", e);
+    }
+  }
+
+  /**
+   * Set the JDBC isolation level for the JTA transaction associated with the current thread, which
+   * will be applied to each connection enlisted in the transaction.
+   *
+   * @param transactionSynchronizationRegistry the transaction synchronization registry
+   * @param isolationLevel                     the JDBC isolation level
+   */
+  public static void setIsolationLevel(
+      TransactionSynchronizationRegistry transactionSynchronizationRegistry, int isolationLevel) {
+    transactionSynchronizationRegistry.putResource(ISOLATION_LEVEL_RESOURCE_KEY, isolationLevel);
+  }
+
   /**
    * Check whether there is an existing JTA transaction.
    *
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.appnaut.jta.hibernate.PooledSequenceIdGenerator;
 import io.swagger.v3.oas.annotations.media.Schema;
 import java.io.Serializable;
 import java.time.LocalDate;
@@ -27,10 +28,13 @@ import java.time.LocalDateTime;
 import java.util.Objects;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 /**
  * The <b>Data</b> class.
@@ -67,12 +71,19 @@ public class Data implements Serializable {
   private LocalDate dateValue;
 
   /**
-   * The ID for the data.
+   * The ID for the data, which is allocated from the poc.data_id_seq sequence when the data is
+   * persisted.
    */
-  @Schema(description = "The ID for the data", required = true)
-  @JsonProperty(required = true)
-  @NotNull
+  @Schema(description = "The ID for the data, which is allocated when the data is created",
+      accessMode = Schema.AccessMode.READ_ONLY)
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
   @Id
+  @GeneratedValue(generator = "data_id")
+  @GenericGenerator(name = "data_id",
+      strategy = "io.appnaut.jta.hibernate.PooledSequenceIdGenerator", parameters = {
+          @Parameter(name = PooledSequenceIdGenerator.SEQUENCE_NAME_PARAMETER,
+              value = "poc.data_id_seq"),
+          @Parameter(name = PooledSequenceIdGenerator.BLOCK_SIZE_PARAMETER, value = "1000")})
   @Column(name = "id", nullable = false)
   private long id;
 
@@ -101,6 +112,25 @@ public class Data implements Serializable {
   public Data() {
   }
 
+  /**
+   * Constructs a new <b>Data</b> whose ID will be allocated when it is persisted.
+   *
+   * @param integerValue   the integer value
+   * @param stringValue    the string value for the data
+   * @param dateValue      the date value for the data
+   * @param timestampValue the timestamp value for the data
+   */
+  public Data(
+      Integer integerValue,
+      String stringValue,
+      LocalDate dateValue,
+      LocalDateTime timestampValue) {
+    this.integerValue = integerValue;
+    this.stringValue = stringValue;
+    this.dateValue = dateValue;
+    this.timestampValue = timestampValue;
+  }
+
   /**
    * Constructs a new <b>Data</b>.
    *
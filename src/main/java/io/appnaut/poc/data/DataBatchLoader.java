@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.poc.data;
+
+import io.appnaut.jta.batch.BatchJobResult;
+import io.appnaut.jta.batch.ChunkedBatchExecutor;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.transaction.SynchronousTransactionManager;
+import java.sql.Connection;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.inject.Singleton;
+
+/**
+ * The <b>DataBatchLoader</b> class loads large volumes of data using a {@link ChunkedBatchExecutor},
+ * so that each chunk of data is committed in its own JTA transaction and a load that fails can be
+ * restarted from the last committed chunk.
+ * <p/>
+ * Each chunk is created using {@link IDataService#createData(List)}, which joins the transaction
+ * for the chunk and flushes and clears the entity manager after each JDBC batch, so that the
+ * persistence context never holds more than a single batch of data.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@SuppressWarnings("unused")
+public class DataBatchLoader {
+
+  private final ChunkedBatchExecutor batchExecutor;
+
+  private final IDataService dataService;
+
+  /**
+   * Constructs a new <b>DataBatchLoader</b>.
+   *
+   * @param transactionManager the transaction manager
+   * @param dataService        the data service
+   * @param chunkSize          the number of data items committed in each transaction
+   * @param workers            the number of worker threads used to load the chunks in parallel
+   */
+  public DataBatchLoader(SynchronousTransactionManager<Connection> transactionManager,
+      IDataService dataService,
+      @Value("${poc.data.batch.chunk-size:1000}") int chunkSize,
+      @Value("${poc.data.batch.workers:4}") int workers) {
+    this.dataService = dataService;
+    this.batchExecutor = new ChunkedBatchExecutor(transactionManager, chunkSize, workers);
+  }
+
+  /**
+   * Load the data.
+   *
+   * @param jobName the name of the load, which is used to resume the load if it is restarted
+   * @param data    the data to load, which must contain the same data in the same order if the
+   *                load is restarted
+   *
+   * @return the result of the load
+   */
+  public BatchJobResult load(String jobName, Stream<Data> data) {
+    return batchExecutor.execute(jobName, data, dataService::createData);
+  }
+
+  /**
+   * Reset the checkpoints for the load, so that the next load with the same name loads all the
+   * data.
+   *
+   * @param jobName the name of the load
+   */
+  public void reset(String jobName) {
+    batchExecutor.resetCheckpoints(jobName);
+  }
+}
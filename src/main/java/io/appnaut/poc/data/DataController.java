@@ -20,10 +20,13 @@ package io.appnaut.poc.data;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import io.micronaut.http.annotation.Post;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
 import java.util.List;
 import javax.inject.Inject;
 
 @Controller("/data")
+@ExecuteOn(TaskExecutors.IO)
 public class DataController {
 
   @Inject
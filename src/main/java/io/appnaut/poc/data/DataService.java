@@ -1,9 +1,17 @@
 package io.appnaut.poc.data;
 
+import io.appnaut.jta.hibernate.JpaConfigurationListener;
+import io.appnaut.jta.retry.TransactionRetry;
+import io.micronaut.configuration.hibernate.jpa.scope.CurrentSession;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.transaction.annotation.ReadOnly;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import javax.inject.Singleton;
+import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
@@ -15,10 +23,22 @@ import javax.transaction.Transactional.TxType;
 @Singleton
 public class DataService implements IDataService {
 
+  /**
+   * The number of data items persisted before the entity manager is flushed and cleared, which
+   * matches the JDBC batch size for Hibernate so that each flush sends a single batch.
+   */
+  private final int batchSize;
+
   private final DataRepository dataRepository;
 
-  public DataService(DataRepository dataRepository) {
+  private final EntityManager entityManager;
+
+  public DataService(DataRepository dataRepository, @CurrentSession EntityManager entityManager,
+      @Value("${jpa.default.properties.hibernate.jdbc.batch_size:"
+          + JpaConfigurationListener.DEFAULT_JDBC_BATCH_SIZE + "}") int batchSize) {
     this.dataRepository = dataRepository;
+    this.entityManager = entityManager;
+    this.batchSize = Math.max(1, batchSize);
   }
 
   /**
@@ -29,11 +49,47 @@ public class DataService implements IDataService {
    * @return the data that was created
    */
   @Transactional(value = TxType.REQUIRED)
+  @TransactionRetry
   @Override
   public Data createData(Data data) {
+    // A retried attempt must not reuse the ID allocated by the attempt that failed
+    data.setId(0);
+
     return dataRepository.saveAndFlush(data);
   }
 
+  /**
+   * Create the new data in a single transaction using JDBC batching.
+   *
+   * @param data the data
+   *
+   * @return the data that was created
+   */
+  @Transactional(value = TxType.REQUIRED)
+  @TransactionRetry
+  @Override
+  public List<Data> createData(List<Data> data) {
+    persistInBatches(data.iterator());
+
+    return data;
+  }
+
+  /**
+   * Create the new data in a single transaction using JDBC batching, without holding all the
+   * data in memory.
+   *
+   * @param data the data, which will be closed once it has been read
+   *
+   * @return the number of data items that were created
+   */
+  @Transactional(value = TxType.REQUIRED)
+  @Override
+  public long createData(Stream<Data> data) {
+    try (data) {
+      return persistInBatches(data.iterator());
+    }
+  }
+
   /**
    * Create a new data with a nested transaction and throw a checked Exception with no rollback.
    *
@@ -123,10 +179,43 @@ public class DataService implements IDataService {
    *
    * @return all the data
    */
+  @ReadOnly
   @Override
   public List<Data> getAllData() {
     return StreamSupport.stream(dataRepository.findAll().spliterator(), false)
         .collect(Collectors.toList());
   }
 
+  /**
+   * Persist the data, flushing and clearing the entity manager after each batch so that the
+   * inserts are sent as JDBC batches and the persistence context does not grow with the data.
+   *
+   * @param data the data
+   *
+   * @return the number of data items that were persisted
+   */
+  private long persistInBatches(Iterator<Data> data) {
+    long count = 0;
+
+    while (data.hasNext()) {
+      Data item = data.next();
+
+      // A retried attempt must not reuse the ID allocated by the attempt that failed
+      item.setId(0);
+
+      entityManager.persist(item);
+
+      if ((++count % batchSize) == 0) {
+        entityManager.flush();
+        entityManager.clear();
+      }
+    }
+
+    if ((count % batchSize) != 0) {
+      entityManager.flush();
+      entityManager.clear();
+    }
+
+    return count;
+  }
 }
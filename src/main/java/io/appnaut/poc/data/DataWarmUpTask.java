@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.poc.data;
+
+import io.appnaut.application.WarmUpTask;
+import io.micronaut.transaction.SynchronousTransactionManager;
+import io.micronaut.transaction.TransactionDefinition;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import javax.inject.Singleton;
+
+/**
+ * The <b>DataWarmUpTask</b> class implements the warm-up task for the data, which primes the
+ * Hibernate metadata, the prepared statements and the JTA transaction paths used to create and
+ * retrieve data.
+ * <p/>
+ * Each execution inserts data in a JTA transaction that is always rolled back, and then retrieves
+ * all the data.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@SuppressWarnings("unused")
+public class DataWarmUpTask implements WarmUpTask {
+
+  private final DataRepository dataRepository;
+
+  private final SynchronousTransactionManager<Connection> transactionManager;
+
+  /**
+   * Constructs a new <b>DataWarmUpTask</b>.
+   *
+   * @param dataRepository     the data repository
+   * @param transactionManager the transaction manager
+   */
+  public DataWarmUpTask(DataRepository dataRepository,
+      SynchronousTransactionManager<Connection> transactionManager) {
+    this.dataRepository = dataRepository;
+    this.transactionManager = transactionManager;
+  }
+
+  @Override
+  public String getName() {
+    return "data";
+  }
+
+  @Override
+  public void warmUp() {
+    transactionManager.executeWrite(status -> {
+      LocalDateTime now = LocalDateTime.now();
+
+      dataRepository.saveAndFlush(
+          new Data(0, "Warm-Up Data", now.toLocalDate(), now));
+
+      status.setRollbackOnly();
+
+      return null;
+    });
+
+    transactionManager.execute(TransactionDefinition.READ_ONLY,
+        status -> dataRepository.findAll());
+  }
+}
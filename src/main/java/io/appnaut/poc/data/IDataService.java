@@ -1,6 +1,7 @@
 package io.appnaut.poc.data;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface IDataService {
 
@@ -13,6 +14,25 @@ public interface IDataService {
    */
   Data createData(Data data);
 
+  /**
+   * Create the new data in a single transaction using JDBC batching.
+   *
+   * @param data the data
+   *
+   * @return the data that was created
+   */
+  List<Data> createData(List<Data> data);
+
+  /**
+   * Create the new data in a single transaction using JDBC batching, without holding all the
+   * data in memory.
+   *
+   * @param data the data, which will be closed once it has been read
+   *
+   * @return the number of data items that were created
+   */
+  long createData(Stream<Data> data);
+
   /**
    * Create a new data with a nested transaction and throw a checked Exception with no rollback.
    *
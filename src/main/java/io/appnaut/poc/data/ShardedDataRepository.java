@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.appnaut.poc.data;
+
+import io.appnaut.jta.sharding.ShardRouter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * The <b>ShardedDataRepository</b> class provides the repository for data that is partitioned by
+ * ID across the data sources in the <b>data</b> shard set.
+ * <p/>
+ * Writes are routed to the shard that owns the ID on the calling thread, so that they participate
+ * in the current JTA transaction, and queries across all the data are scatter-gathered across the
+ * shards.
+ *
+ * @author Marcus Portmann
+ */
+@Singleton
+@SuppressWarnings("unused")
+public class ShardedDataRepository {
+
+  private static final String DELETE_BY_ID_SQL = "DELETE FROM poc.data WHERE id = ?";
+
+  private static final String INSERT_SQL =
+      "INSERT INTO poc.data (id, integer_value, string_value, date_value, timestamp_value) "
+          + "VALUES (?, ?, ?, ?, ?)";
+
+  private static final String SELECT_ALL_SQL =
+      "SELECT id, integer_value, string_value, date_value, timestamp_value FROM poc.data";
+
+  private static final String SELECT_BY_ID_SQL = SELECT_ALL_SQL + " WHERE id = ?";
+
+  private final ShardRouter shardRouter;
+
+  /**
+   * Constructs a new <b>ShardedDataRepository</b>.
+   *
+   * @param shardRouter the shard router for the data shard set
+   */
+  public ShardedDataRepository(@Named("data") ShardRouter shardRouter) {
+    this.shardRouter = shardRouter;
+  }
+
+  /**
+   * Delete the data with the specified ID.
+   *
+   * @param id the ID for the data
+   *
+   * @return true if the data was deleted or false if it could not be found
+   */
+  public boolean deleteById(long id) throws SQLException {
+    return shardRouter.route(id, dataSource -> {
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement statement = connection.prepareStatement(DELETE_BY_ID_SQL)) {
+        statement.setLong(1, id);
+
+        return statement.executeUpdate() > 0;
+      }
+    });
+  }
+
+  /**
+   * Retrieve all the data across all the shards.
+   *
+   * @return all the data across all the shards
+   */
+  public List<Data> findAll() throws SQLException {
+    List<Data> allData = new ArrayList<>();
+
+    for (List<Data> shardData : shardRouter.scatterGather(dataSource -> {
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement statement = connection.prepareStatement(SELECT_ALL_SQL);
+          ResultSet rs = statement.executeQuery()) {
+        List<Data> data = new ArrayList<>();
+
+        while (rs.next()) {
+          data.add(buildDataFromResultSet(rs));
+        }
+
+        return data;
+      }
+    })) {
+      allData.addAll(shardData);
+    }
+
+    return allData;
+  }
+
+  /**
+   * Retrieve the data with the specified ID.
+   *
+   * @param id the ID for the data
+   *
+   * @return an Optional containing the data or an empty Optional if the data could not be found
+   */
+  public Optional<Data> findById(long id) throws SQLException {
+    return shardRouter.route(id, dataSource -> {
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement statement = connection.prepareStatement(SELECT_BY_ID_SQL)) {
+        statement.setLong(1, id);
+
+        try (ResultSet rs = statement.executeQuery()) {
+          return rs.next() ? Optional.of(buildDataFromResultSet(rs)) : Optional.empty();
+        }
+      }
+    });
+  }
+
+  /**
+   * Save the new data to the shard that owns its ID.
+   *
+   * @param data the data
+   */
+  public void save(Data data) throws SQLException {
+    shardRouter.route(data.getId(), dataSource -> {
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+        statement.setLong(1, data.getId());
+        statement.setObject(2, data.getIntegerValue());
+        statement.setString(3, data.getStringValue());
+        statement.setObject(4, data.getDateValue());
+        statement.setObject(5, data.getTimestampValue());
+
+        return statement.executeUpdate();
+      }
+    });
+  }
+
+  private Data buildDataFromResultSet(ResultSet rs) throws SQLException {
+    return new Data(rs.getLong(1), rs.getObject(2, Integer.class), rs.getString(3),
+        rs.getObject(4, LocalDate.class), rs.getObject(5, LocalDateTime.class));
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.appnaut.application.ApplicationWarmUp;
+import io.appnaut.application.ApplicationWarmUpHealthIndicator;
+import io.micronaut.health.HealthStatus;
+import io.micronaut.management.health.indicator.HealthResult;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import io.reactivex.Flowable;
+import java.util.Map;
+import javax.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest(transactional = false)
+public class ApplicationWarmUpHealthIndicatorTest {
+
+  @Inject
+  private ApplicationWarmUp applicationWarmUp;
+
+  @Inject
+  private ApplicationWarmUpHealthIndicator applicationWarmUpHealthIndicator;
+
+  @Test
+  void readyAfterWarmUpTest() {
+    assertTrue(applicationWarmUp.isComplete(), "The warm-up phase did not complete at startup");
+
+    HealthResult healthResult =
+        Flowable.fromPublisher(applicationWarmUpHealthIndicator.getResult()).blockingFirst();
+
+    assertEquals(HealthStatus.UP, healthResult.getStatus());
+    assertEquals(true, ((Map<?, ?>) healthResult.getDetails()).get("complete"));
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.agroal.CircuitBreaker;
+import io.appnaut.jta.agroal.CircuitBreaker.State;
+import io.appnaut.jta.agroal.CircuitBreakerDataSource;
+import io.micronaut.scheduling.ScheduledExecutorTaskScheduler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+  private static final int FAILURE_THRESHOLD = 3;
+
+  /**
+   * The probe interval for the tests that must not be affected by the background probe.
+   */
+  private static final Duration NO_PROBE_INTERVAL = Duration.ofHours(1);
+
+  private static final Duration PROBE_INTERVAL = Duration.ofMillis(20);
+
+  private final Connection connection = (Connection) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[]{Connection.class},
+      (proxy, method, args) -> method.getName().equals("isValid") ? Boolean.TRUE : null);
+
+  private final ScheduledExecutorService scheduledExecutorService =
+      Executors.newSingleThreadScheduledExecutor();
+
+  /**
+   * The result for the next connection request or probe for the stub data source, which is either
+   * the connection or the SQL exception to throw.
+   */
+  private volatile Object nextResult;
+
+  @AfterEach
+  void afterEach() {
+    scheduledExecutorService.shutdownNow();
+  }
+
+  @Test
+  void acquisitionTimeoutIgnoredTest() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", FAILURE_THRESHOLD);
+
+    CircuitBreakerDataSource dataSource = newCircuitBreakerDataSource(circuitBreaker,
+        NO_PROBE_INTERVAL);
+
+    nextResult = new SQLException("Sorry, acquisition timeout!");
+
+    for (int i = 0; i < (FAILURE_THRESHOLD * 2); i++) {
+      assertThrows(SQLException.class, dataSource::getConnection);
+    }
+
+    assertEquals(State.CLOSED, circuitBreaker.getState());
+    assertEquals(0, circuitBreaker.getConsecutiveFailures());
+  }
+
+  @Test
+  void closedToOpenTest() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", FAILURE_THRESHOLD);
+
+    CircuitBreakerDataSource dataSource = newCircuitBreakerDataSource(circuitBreaker,
+        NO_PROBE_INTERVAL);
+
+    nextResult = new SQLException("Connection refused", "08001");
+
+    for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+      assertEquals(State.CLOSED, circuitBreaker.getState());
+
+      SQLException e = assertThrows(SQLException.class, dataSource::getConnection);
+
+      assertEquals("08001", e.getSQLState());
+    }
+
+    assertEquals(State.OPEN, circuitBreaker.getState());
+
+    // Connection requests now fail without reaching the data source
+    nextResult = connection;
+
+    assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+  }
+
+  @Test
+  void connectionCreationFailureTest() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", FAILURE_THRESHOLD);
+
+    // Warnings that are not for a connection creation attempt are not failures
+    circuitBreaker.onWarning(new SQLException("Failed to close the connection"));
+
+    assertEquals(0, circuitBreaker.getConsecutiveFailures());
+
+    SQLException acquisitionTimeout = new SQLException("Sorry, acquisition timeout!");
+
+    assertFalse(circuitBreaker.isAcquisitionFailure(acquisitionTimeout));
+
+    for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+      circuitBreaker.beforeConnectionCreation();
+      circuitBreaker.onWarning(new SQLException("Failed to create the connection", "28000"));
+
+      // The failed creation is only recorded through the connection request waiting for it
+      assertEquals(i, circuitBreaker.getConsecutiveFailures());
+      assertTrue(circuitBreaker.isAcquisitionFailure(acquisitionTimeout));
+
+      circuitBreaker.recordFailure(acquisitionTimeout);
+    }
+
+    assertEquals(State.OPEN, circuitBreaker.getState());
+    assertEquals(FAILURE_THRESHOLD, circuitBreaker.getConsecutiveFailures());
+
+    circuitBreaker.recordProbeSuccess();
+
+    // A successful creation does not leave the creation in progress
+    circuitBreaker.beforeConnectionCreation();
+    circuitBreaker.onConnectionCreation(connection);
+    circuitBreaker.onWarning(new SQLException("Failed to close the connection"));
+
+    assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.isCreationFailing());
+  }
+
+  @Test
+  void connectionFailureTest() {
+    assertTrue(CircuitBreaker.isConnectionFailure(new SQLException("Broken", "08006")));
+    assertTrue(CircuitBreaker.isConnectionFailure(
+        new SQLException("Enlistment failed", new SQLException("Broken", "08003"))));
+
+    SQLException batchException = new SQLException("Batch failed");
+    batchException.setNextException(new SQLException("Broken", "08S01"));
+
+    assertTrue(CircuitBreaker.isConnectionFailure(batchException));
+
+    assertFalse(
+        CircuitBreaker.isConnectionFailure(new SQLException("Sorry, acquisition timeout!")));
+    assertFalse(CircuitBreaker.isConnectionFailure(new SQLException("Deadlock", "40P01")));
+  }
+
+  @Test
+  void halfOpenToClosedTest() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1);
+
+    CircuitBreakerDataSource dataSource = newCircuitBreakerDataSource(circuitBreaker,
+        PROBE_INTERVAL);
+
+    nextResult = new SQLException("Connection refused", "08001");
+
+    assertThrows(SQLException.class, dataSource::getConnection);
+
+    assertEquals(State.OPEN, circuitBreaker.getState());
+
+    // The background probe half-opens the circuit breaker once the database is available again
+    nextResult = connection;
+
+    awaitState(circuitBreaker, State.HALF_OPEN);
+
+    assertSame(connection, dataSource.getConnection());
+
+    assertEquals(State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  void halfOpenToOpenTest() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", FAILURE_THRESHOLD);
+
+    CircuitBreakerDataSource dataSource = newCircuitBreakerDataSource(circuitBreaker,
+        PROBE_INTERVAL);
+
+    nextResult = new SQLException("Connection refused", "08001");
+
+    for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+      assertThrows(SQLException.class, dataSource::getConnection);
+    }
+
+    nextResult = connection;
+
+    awaitState(circuitBreaker, State.HALF_OPEN);
+
+    // A single failure re-opens a half-open circuit breaker
+    nextResult = new SQLException("Connection refused", "08001");
+
+    circuitBreaker.onConnectionInvalid(connection);
+
+    assertEquals(State.OPEN, circuitBreaker.getState());
+
+    assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+  }
+
+  private void awaitState(CircuitBreaker circuitBreaker, State state) throws InterruptedException {
+    for (int i = 0; (i < 100) && (circuitBreaker.getState() != state); i++) {
+      Thread.sleep(20);
+    }
+
+    assertEquals(state, circuitBreaker.getState());
+  }
+
+  private CircuitBreakerDataSource newCircuitBreakerDataSource(CircuitBreaker circuitBreaker,
+      Duration probeInterval) {
+    AgroalDataSource delegate = (AgroalDataSource) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[]{AgroalDataSource.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getConnection":
+              if (nextResult instanceof SQLException) {
+                throw (SQLException) nextResult;
+              }
+
+              return nextResult;
+
+            default:
+              return null;
+          }
+        });
+
+    return new CircuitBreakerDataSource("test", delegate, circuitBreaker, probeInterval,
+        () -> new ScheduledExecutorTaskScheduler(scheduledExecutorService));
+  }
+}
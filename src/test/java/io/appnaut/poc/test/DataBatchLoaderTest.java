@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.appnaut.jta.batch.BatchJobException;
+import io.appnaut.jta.batch.BatchJobResult;
+import io.appnaut.poc.data.Data;
+import io.appnaut.poc.data.DataBatchLoader;
+import io.appnaut.poc.data.DataRepository;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest(transactional = false)
+@Property(name = "poc.data.batch.chunk-size", value = "10")
+@Property(name = "poc.data.batch.workers", value = "2")
+public class DataBatchLoaderTest {
+
+  private static final String DATA_STRING_VALUE = "Batch Data";
+
+  private static final String JOB_NAME = "data-batch-loader-test";
+
+  @Inject
+  private DataBatchLoader dataBatchLoader;
+
+  @Inject
+  private DataRepository dataRepository;
+
+  @Test
+  void resumeFailedLoadTest() {
+    // The chunks are committed on the worker threads, so the test does not run in a transaction
+    // and removes the data it loads when it completes
+    try {
+      // The last chunk contains data with a string value that is too long, so it fails
+      List<Data> failingData = getData(25);
+      failingData.get(24).setStringValue("X".repeat(4001));
+
+      assertThrows(BatchJobException.class,
+          () -> dataBatchLoader.load(JOB_NAME, failingData.stream()));
+
+      assertEquals(Set.of(getIntegerValues(20)), Set.of(getLoadedIntegerValues()),
+          "Failed to find the data committed before the load failed");
+
+      BatchJobResult result = dataBatchLoader.load(JOB_NAME, getData(25).stream());
+
+      assertEquals(2, result.getChunksSkipped(), "The committed chunks were not skipped");
+      assertEquals(1, result.getChunksProcessed(), "The failed chunk was not processed");
+      assertEquals(5, result.getItemsProcessed(), "Incorrect number of items processed");
+
+      assertEquals(Set.of(getIntegerValues(25)), Set.of(getLoadedIntegerValues()),
+          "Failed to find the data loaded after the load was resumed");
+    } finally {
+      dataRepository.deleteAll(getLoadedData());
+
+      dataBatchLoader.reset(JOB_NAME);
+    }
+  }
+
+  private List<Data> getData(int count) {
+    List<Data> data = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      data.add(new Data(i, DATA_STRING_VALUE, LocalDate.now(), LocalDateTime.now()));
+    }
+
+    return data;
+  }
+
+  private Integer[] getIntegerValues(int count) {
+    return IntStream.range(0, count).boxed().toArray(Integer[]::new);
+  }
+
+  private List<Data> getLoadedData() {
+    return dataRepository.findAll().stream()
+        .filter(data -> DATA_STRING_VALUE.equals(data.getStringValue()))
+        .collect(Collectors.toList());
+  }
+
+  private Integer[] getLoadedIntegerValues() {
+    List<Data> loadedData = getLoadedData();
+
+    assertEquals(loadedData.size(), loadedData.stream().map(Data::getId).distinct().count(),
+        "Found data loaded more than once");
+
+    return loadedData.stream().map(Data::getIntegerValue).toArray(Integer[]::new);
+  }
+}
@@ -18,10 +18,13 @@ package io.appnaut.poc.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.sharding.ShardRouter;
 import io.appnaut.poc.data.Data;
 import io.appnaut.poc.data.IDataService;
+import io.appnaut.poc.data.ShardedDataRepository;
 import io.micronaut.jdbc.metadata.DataSourcePoolMetadata;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import io.micronaut.transaction.exceptions.UnexpectedRollbackException;
@@ -64,6 +67,13 @@ public class JtaTest {
   @Named("db2")
   private DataSourcePoolMetadata<AgroalDataSource> db2DataSourcePoolMetadata;
 
+  @Inject
+  private ShardedDataRepository shardedDataRepository;
+
+  @Inject
+  @Named("data")
+  private ShardRouter shardRouter;
+
   @Inject
   private TransactionManager transactionManager;
 
@@ -82,6 +92,25 @@ public class JtaTest {
     assertEquals(5, afterData.size(), "Failed to retrieve the correct number of data objects");
   }
 
+  @Test
+  void createDataBatchTest() {
+    List<Data> newData = new ArrayList<>();
+
+    for (int i = 0; i < 120; i++) {
+      newData.add(getNewData());
+    }
+
+    List<Data> beforeData = dataService.getAllData();
+
+    assertEquals(4, beforeData.size(), "Failed to retrieve the correct number of data objects");
+
+    dataService.createData(newData);
+
+    List<Data> afterData = dataService.getAllData();
+
+    assertEquals(124, afterData.size(), "Failed to retrieve the correct number of data objects");
+  }
+
   @Test
   void createDataWithNewTransactionAndNoRollbackOnExceptionTest() {
     Data newData = getNewData();
@@ -347,12 +376,77 @@ public class JtaTest {
     }
   }
 
-  private Data getNewData() {
+  @Test
+  void shardAdditionTest() {
+    List<DataSource> dataSources = shardRouter.getDataSources();
+
+    List<DataSource> addedDataSources = new ArrayList<>(dataSources);
+    addedDataSources.add(dataSources.get(0));
+
+    ShardRouter addedShardRouter = new ShardRouter("added", addedDataSources, null);
+
+    int moved = 0;
+
+    for (long key = 0; key < 10000; key++) {
+      int shard = addedShardRouter.getShard(key);
+
+      if (shard != shardRouter.getShard(key)) {
+        assertEquals(dataSources.size(), shard,
+            "Failed to keep the key (" + key + ") on its existing shard");
+
+        moved++;
+      }
+    }
+
+    assertTrue((moved > 2000) && (moved < 4500),
+        "Failed to move the expected share of the keys to the added shard");
+  }
+
+  @Test
+  void shardingTest() throws Exception {
+    List<Data> beforeData = shardedDataRepository.findAll();
+
+    Transaction existingTransaction = transactionManager.suspend();
+
+    transactionManager.begin();
+
     long id = System.currentTimeMillis();
 
+    Data firstShardData = getNewData();
+    firstShardData.setId(id);
+
+    long secondShardId = id + 1;
+
+    while (shardRouter.getShard(secondShardId) == shardRouter.getShard(id)) {
+      secondShardId++;
+    }
+
+    Data secondShardData = getNewData();
+    secondShardData.setId(secondShardId);
+
+    shardedDataRepository.save(firstShardData);
+    shardedDataRepository.save(secondShardData);
+
+    assertTrue(shardedDataRepository.findById(firstShardData.getId()).isPresent(),
+        "Failed to retrieve the data from the shard that owns its ID");
+    assertTrue(shardedDataRepository.findById(secondShardData.getId()).isPresent(),
+        "Failed to retrieve the data from the shard that owns its ID");
+
+    assertEquals(beforeData.size() + 2, shardedDataRepository.findAll().size(),
+        "Failed to retrieve the correct number of data objects");
+
+    transactionManager.rollback();
+
+    transactionManager.resume(existingTransaction);
+
+    assertEquals(beforeData.size(), shardedDataRepository.findAll().size(),
+        "Failed to retrieve the correct number of data objects");
+  }
+
+  private Data getNewData() {
     LocalDateTime now = LocalDateTime.now();
 
-    return new Data(id, random.nextInt(), "Data " + id, now.toLocalDate(), now);
+    return new Data(random.nextInt(), "Data", now.toLocalDate(), now);
   }
 
   //@Test
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.appnaut.jta.local.LocalTransactionManager;
+import io.appnaut.poc.data.Data;
+import io.appnaut.poc.data.DataRepository;
+import io.appnaut.poc.data.IDataService;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import javax.inject.Inject;
+import javax.transaction.TransactionManager;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest(transactional = false)
+@Property(name = "appnaut.jta.engine", value = "local")
+public class LocalJtaTest {
+
+  private final SecureRandom random = new SecureRandom();
+
+  @Inject
+  private DataRepository dataRepository;
+
+  @Inject
+  private IDataService dataService;
+
+  @Inject
+  private TransactionManager transactionManager;
+
+  @Test
+  void createDataTest() {
+    assertTrue(transactionManager instanceof LocalTransactionManager,
+        "The local transaction manager is not being used");
+
+    Data data = dataService.createData(getNewData());
+
+    try {
+      assertTrue(dataService.getAllData().stream().anyMatch(
+          existingData -> existingData.getId() == data.getId()),
+          "Failed to retrieve the data committed in the local transaction");
+    } finally {
+      dataRepository.deleteById(data.getId());
+    }
+
+    assertFalse(dataRepository.existsById(data.getId()), "Failed to delete the data");
+  }
+
+  @Test
+  void createDataWithRollbackOnRuntimeExceptionTest() {
+    int beforeCount = dataService.getAllData().size();
+
+    assertThrows(RuntimeException.class,
+        () -> dataService.createDataWithRollbackOnRuntimeException(getNewData()));
+
+    assertEquals(beforeCount, dataService.getAllData().size(),
+        "The data was not rolled back with the local transaction");
+  }
+
+  private Data getNewData() {
+    LocalDateTime now = LocalDateTime.now();
+
+    return new Data(random.nextInt(), "Local Data", now.toLocalDate(), now);
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.appnaut.jta.local.LocalTransactionManager;
+import io.appnaut.jta.local.LocalTransactionSynchronizationRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class LocalTransactionManagerTest {
+
+  private final List<String> events = new ArrayList<>();
+
+  private final LocalTransactionManager transactionManager =
+      new LocalTransactionManager(Duration.ofSeconds(60));
+
+  private final LocalTransactionSynchronizationRegistry transactionSynchronizationRegistry =
+      new LocalTransactionSynchronizationRegistry(transactionManager);
+
+  @AfterEach
+  void cleanUp() throws Exception {
+    if (transactionManager.getTransaction() != null) {
+      transactionManager.rollback();
+    }
+
+    transactionManager.setTransactionTimeout(0);
+  }
+
+  @Test
+  void commitTest() throws Exception {
+    transactionManager.begin();
+
+    transactionManager.getTransaction().enlistResource(new RecordingXAResource("rm1", "xa1"));
+    transactionManager.getTransaction().registerSynchronization(new RecordingSynchronization("s"));
+    transactionSynchronizationRegistry.registerInterposedSynchronization(
+        new RecordingSynchronization("is"));
+
+    transactionManager.commit();
+
+    assertEquals(List.of("xa1:start:" + XAResource.TMNOFLAGS, "s:before", "is:before",
+        "xa1:end:" + XAResource.TMSUCCESS, "xa1:commit:onePhase",
+        "is:after:" + Status.STATUS_COMMITTED, "s:after:" + Status.STATUS_COMMITTED), events);
+    assertEquals(Status.STATUS_NO_TRANSACTION, transactionManager.getStatus());
+  }
+
+  @Test
+  void rollbackTest() throws Exception {
+    transactionManager.begin();
+
+    transactionManager.getTransaction().enlistResource(new RecordingXAResource("rm1", "xa1"));
+    transactionManager.getTransaction().registerSynchronization(new RecordingSynchronization("s"));
+
+    transactionManager.rollback();
+
+    assertEquals(List.of("xa1:start:" + XAResource.TMNOFLAGS, "xa1:end:" + XAResource.TMFAIL,
+        "xa1:rollback", "s:after:" + Status.STATUS_ROLLEDBACK), events);
+    assertEquals(Status.STATUS_NO_TRANSACTION, transactionManager.getStatus());
+  }
+
+  @Test
+  void rollbackOnlyTest() throws Exception {
+    transactionManager.begin();
+
+    transactionManager.getTransaction().enlistResource(new RecordingXAResource("rm1", "xa1"));
+
+    transactionManager.setRollbackOnly();
+
+    assertEquals(Status.STATUS_MARKED_ROLLBACK, transactionManager.getStatus());
+
+    assertThrows(RollbackException.class, transactionManager::commit);
+
+    assertEquals(List.of("xa1:start:" + XAResource.TMNOFLAGS, "xa1:end:" + XAResource.TMFAIL,
+        "xa1:rollback"), events);
+  }
+
+  @Test
+  void secondResourceManagerTest() throws Exception {
+    transactionManager.begin();
+
+    Transaction transaction = transactionManager.getTransaction();
+
+    transaction.enlistResource(new RecordingXAResource("rm1", "xa1"));
+    transaction.enlistResource(new RecordingXAResource("rm1", "xa2"));
+
+    assertThrows(SystemException.class,
+        () -> transaction.enlistResource(new RecordingXAResource("rm2", "xa3")));
+
+    transactionManager.commit();
+
+    // The associations are ended in no particular order
+    assertEquals(List.of("xa1:start:" + XAResource.TMNOFLAGS, "xa2:start:" + XAResource.TMJOIN),
+        events.subList(0, 2));
+    assertEquals(Set.of("xa1:end:" + XAResource.TMSUCCESS, "xa2:end:" + XAResource.TMSUCCESS),
+        Set.copyOf(events.subList(2, 4)));
+    assertEquals("xa1:commit:onePhase", events.get(4));
+  }
+
+  @Test
+  void suspendAndResumeTest() throws Exception {
+    transactionManager.begin();
+
+    Transaction outerTransaction = transactionManager.getTransaction();
+
+    outerTransaction.enlistResource(new RecordingXAResource("rm1", "outer"));
+
+    assertSame(outerTransaction, transactionManager.suspend());
+    assertNull(transactionManager.getTransaction());
+    assertEquals(Status.STATUS_NO_TRANSACTION, transactionManager.getStatus());
+
+    transactionManager.begin();
+    transactionManager.getTransaction().enlistResource(new RecordingXAResource("rm2", "inner"));
+    transactionManager.commit();
+
+    transactionManager.resume(outerTransaction);
+
+    assertSame(outerTransaction, transactionManager.getTransaction());
+    assertThrows(IllegalStateException.class, () -> transactionManager.resume(outerTransaction));
+
+    transactionManager.commit();
+
+    assertEquals(List.of("outer:start:" + XAResource.TMNOFLAGS,
+        "inner:start:" + XAResource.TMNOFLAGS, "inner:end:" + XAResource.TMSUCCESS,
+        "inner:commit:onePhase", "outer:end:" + XAResource.TMSUCCESS, "outer:commit:onePhase"),
+        events);
+  }
+
+  @Test
+  void timeoutTest() throws Exception {
+    transactionManager.setTransactionTimeout(1);
+
+    transactionManager.begin();
+
+    transactionManager.getTransaction().enlistResource(new RecordingXAResource("rm1", "xa1"));
+
+    Thread.sleep(1100);
+
+    assertEquals(Status.STATUS_MARKED_ROLLBACK, transactionManager.getStatus());
+
+    assertThrows(RollbackException.class, transactionManager::commit);
+
+    assertEquals(List.of("xa1:start:" + XAResource.TMNOFLAGS, "xa1:end:" + XAResource.TMFAIL,
+        "xa1:rollback"), events);
+    assertEquals(Status.STATUS_NO_TRANSACTION, transactionManager.getStatus());
+  }
+
+  @Test
+  void transactionResourcesTest() throws Exception {
+    transactionManager.begin();
+
+    transactionSynchronizationRegistry.putResource("key", "value");
+
+    assertEquals("value", transactionSynchronizationRegistry.getResource("key"));
+
+    Transaction transaction = transactionManager.suspend();
+
+    transactionManager.begin();
+
+    assertNull(transactionSynchronizationRegistry.getResource("key"));
+
+    transactionManager.commit();
+
+    transactionManager.resume(transaction);
+
+    assertEquals("value", transactionSynchronizationRegistry.getResource("key"));
+
+    transactionManager.commit();
+  }
+
+  /**
+   * The <b>RecordingSynchronization</b> class records the callbacks for a synchronization.
+   */
+  private class RecordingSynchronization implements Synchronization {
+
+    private final String name;
+
+    RecordingSynchronization(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      events.add(name + ":after:" + status);
+    }
+
+    @Override
+    public void beforeCompletion() {
+      events.add(name + ":before");
+    }
+  }
+
+  /**
+   * The <b>RecordingXAResource</b> class records the calls made to an XA resource.
+   */
+  private class RecordingXAResource implements XAResource {
+
+    private final String name;
+
+    private final String resourceManager;
+
+    RecordingXAResource(String resourceManager, String name) {
+      this.resourceManager = resourceManager;
+      this.name = name;
+    }
+
+    @Override
+    public void commit(Xid xid, boolean onePhase) {
+      events.add(name + ":commit" + (onePhase ? ":onePhase" : ""));
+    }
+
+    @Override
+    public void end(Xid xid, int flags) {
+      events.add(name + ":end:" + flags);
+    }
+
+    @Override
+    public void forget(Xid xid) {
+      events.add(name + ":forget");
+    }
+
+    @Override
+    public int getTransactionTimeout() {
+      return 0;
+    }
+
+    @Override
+    public boolean isSameRM(XAResource xaResource) {
+      return (xaResource instanceof RecordingXAResource)
+          && resourceManager.equals(((RecordingXAResource) xaResource).resourceManager);
+    }
+
+    @Override
+    public int prepare(Xid xid) throws XAException {
+      throw new XAException(XAException.XAER_PROTO);
+    }
+
+    @Override
+    public Xid[] recover(int flag) {
+      return new Xid[0];
+    }
+
+    @Override
+    public void rollback(Xid xid) {
+      events.add(name + ":rollback");
+    }
+
+    @Override
+    public boolean setTransactionTimeout(int seconds) {
+      return false;
+    }
+
+    @Override
+    public void start(Xid xid, int flags) {
+      events.add(name + ":start:" + flags);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.agroal.api.security.NamePrincipal;
+import io.agroal.api.security.SimplePassword;
+import io.appnaut.jta.agroal.LazyAgroalDataSource;
+import io.appnaut.jta.liquibase.MigrationAwareDataSource;
+import io.appnaut.jta.pool.PooledDataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MigrationAwareDataSourceTest {
+
+  private PooledDataSource pooledDataSource;
+
+  @AfterEach
+  void afterEach() {
+    pooledDataSource.close();
+  }
+
+  @BeforeEach
+  void beforeEach() throws SQLException {
+    pooledDataSource = new PooledDataSource("test", new AgroalDataSourceConfigurationSupplier()
+        .connectionPoolConfiguration(pool -> pool
+            .minSize(0)
+            .maxSize(1)
+            .acquisitionTimeout(Duration.ofSeconds(5))
+            .connectionFactoryConfiguration(factory -> factory
+                .jdbcUrl("jdbc:h2:mem:migration;DB_CLOSE_DELAY=-1")
+                .principal(new NamePrincipal("sa"))
+                .credential(new SimplePassword(""))))
+        .get());
+  }
+
+  @Test
+  void connectionsBlockedUntilMigratedTest() throws Exception {
+    CompletableFuture<Void> migration = new CompletableFuture<>();
+
+    MigrationAwareDataSource dataSource = new MigrationAwareDataSource("test", pooledDataSource,
+        migration);
+
+    CompletableFuture<Boolean> connectionValid = CompletableFuture.supplyAsync(() -> {
+      try (Connection connection = dataSource.getConnection()) {
+        return connection.isValid(1);
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    assertThrows(TimeoutException.class, () -> connectionValid.get(200, TimeUnit.MILLISECONDS),
+        "A connection was returned before the migration completed");
+    assertFalse(dataSource.isMigrated());
+
+    migration.complete(null);
+
+    assertTrue(connectionValid.get(5, TimeUnit.SECONDS));
+    assertTrue(dataSource.isMigrated());
+  }
+
+  @Test
+  void failedMigrationTest() {
+    IllegalStateException cause = new IllegalStateException("Failed to apply the migration");
+
+    MigrationAwareDataSource dataSource = new MigrationAwareDataSource("test", pooledDataSource,
+        CompletableFuture.failedFuture(cause));
+
+    SQLException exception = assertThrows(SQLException.class, dataSource::getConnection);
+
+    assertSame(cause, exception.getCause());
+    assertFalse(dataSource.isMigrated());
+  }
+
+  @Test
+  void lazyDataSourceNotStartedTest() throws Exception {
+    AtomicInteger initializations = new AtomicInteger();
+
+    LazyAgroalDataSource lazyDataSource = new LazyAgroalDataSource("test",
+        pooledDataSource.getConfiguration(), () -> {
+      initializations.incrementAndGet();
+
+      return pooledDataSource;
+    });
+
+    MigrationAwareDataSource dataSource = new MigrationAwareDataSource("test", lazyDataSource,
+        CompletableFuture.completedFuture(null));
+
+    // Checking whether the wrapped lazy data source has started does not start it
+    assertTrue(LazyAgroalDataSource.isNotStarted(dataSource));
+    assertEquals(0, initializations.get());
+
+    try (Connection connection = dataSource.getConnection()) {
+      assertTrue(connection.isValid(1));
+    }
+
+    assertFalse(LazyAgroalDataSource.isNotStarted(dataSource));
+    assertEquals(1, initializations.get());
+  }
+
+  @Test
+  void migrationStartedOnFirstConnectionTest() throws Exception {
+    AtomicInteger migrationsStarted = new AtomicInteger();
+
+    MigrationAwareDataSource dataSource = new MigrationAwareDataSource("test", pooledDataSource,
+        () -> {
+          migrationsStarted.incrementAndGet();
+
+          return CompletableFuture.completedFuture(null);
+        });
+
+    assertEquals(0, migrationsStarted.get(),
+        "The migration was started before a connection was requested");
+
+    for (int i = 0; i < 2; i++) {
+      try (Connection connection = dataSource.getConnection()) {
+        assertTrue(connection.isValid(1));
+      }
+    }
+
+    assertEquals(1, migrationsStarted.get());
+    assertTrue(dataSource.isMigrated());
+  }
+}
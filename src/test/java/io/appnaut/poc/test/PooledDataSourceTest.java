@@ -0,0 +1,244 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.agroal.api.AgroalDataSource.FlushMode;
+import io.agroal.api.AgroalDataSourceListener;
+import io.agroal.api.configuration.supplier.AgroalConnectionPoolConfigurationSupplier;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.agroal.api.security.NamePrincipal;
+import io.agroal.api.security.SimplePassword;
+import io.appnaut.jta.agroal.AcquisitionTrackingDataSource;
+import io.appnaut.jta.jfr.ConnectionPoolEvent;
+import io.appnaut.jta.jfr.ConnectionPoolEventListener;
+import io.appnaut.jta.pool.PooledDataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PooledDataSourceTest {
+
+  private PooledDataSource dataSource;
+
+  @AfterEach
+  void afterEach() {
+    if (dataSource != null) {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  void acquisitionFailureEventTest() throws Exception {
+    FlightRecorder.register(ConnectionPoolEvent.class);
+
+    ConnectionPoolEventListener connectionPoolEventListener =
+        new ConnectionPoolEventListener("test");
+
+    dataSource = newPooledDataSource(pool -> pool.acquisitionTimeout(Duration.ofMillis(100)),
+        connectionPoolEventListener);
+
+    AcquisitionTrackingDataSource acquisitionTrackingDataSource =
+        new AcquisitionTrackingDataSource("test", dataSource, connectionPoolEventListener);
+
+    try (Recording recording = new Recording()) {
+      recording.enable("io.appnaut.jta.ConnectionPool");
+      recording.start();
+
+      // The pool only holds one connection so the second acquisition times out
+      try (Connection connection = acquisitionTrackingDataSource.getConnection()) {
+        assertTrue(connection.isValid(1));
+        assertThrows(SQLException.class, acquisitionTrackingDataSource::getConnection);
+      }
+
+      recording.stop();
+
+      Path recordingFile = Files.createTempFile("pooled-data-source-test", ".jfr");
+
+      try {
+        recording.dump(recordingFile);
+
+        List<String> events = new ArrayList<>();
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+          events.add(event.getString("operation") + ":" + event.getString("outcome"));
+        }
+
+        // The failed acquisition is recorded when it fails, not when the next one starts
+        assertEquals(List.of("acquire:success", "acquire:failure", "return:success"), events);
+      } finally {
+        Files.deleteIfExists(recordingFile);
+      }
+    }
+
+    assertEquals(1, acquisitionTrackingDataSource.getAcquisitionFailureCount());
+  }
+
+  @Test
+  void closeStatementsTest() throws Exception {
+    dataSource = newPooledDataSource(pool -> pool);
+
+    Statement statement;
+
+    try (Connection connection = dataSource.getConnection()) {
+      statement = connection.createStatement();
+
+      statement.execute("SELECT 1");
+    }
+
+    assertTrue(statement.isClosed(), "The statement was not closed with the connection");
+  }
+
+  @Test
+  void leakDetectionTest() throws Exception {
+    AtomicReference<Thread> leakingThread = new AtomicReference<>();
+
+    dataSource = newPooledDataSource(pool -> pool.leakTimeout(Duration.ofMillis(100)),
+        new AgroalDataSourceListener() {
+          @Override
+          public void onConnectionLeak(Connection connection, Thread thread) {
+            leakingThread.set(thread);
+          }
+        });
+
+    Connection connection = dataSource.getConnection();
+
+    try {
+      await(() -> leakingThread.get() != null);
+
+      assertSame(Thread.currentThread(), leakingThread.get());
+      assertEquals(1, dataSource.getMetrics().leakDetectionCount());
+
+      dataSource.flush(FlushMode.LEAK);
+
+      assertFalse(connection.isValid(1), "The leaked connection was not flushed");
+      assertEquals(1, dataSource.getMetrics().destroyCount());
+    } finally {
+      connection.close();
+    }
+
+    // The pool is refilled and the leaked connection is not returned to it
+    try (Connection newConnection = dataSource.getConnection()) {
+      assertTrue(newConnection.isValid(1));
+    }
+
+    assertEquals(1, dataSource.getMetrics().destroyCount());
+  }
+
+  @Test
+  void maxLifetimeTest() throws Exception {
+    dataSource = newPooledDataSource(pool -> pool.maxLifetime(Duration.ofMillis(200)));
+
+    await(() -> dataSource.getMetrics().destroyCount() > 0);
+
+    await(() -> dataSource.getMetrics().creationCount() > 1);
+
+    try (Connection connection = dataSource.getConnection()) {
+      assertTrue(connection.isValid(1));
+    }
+  }
+
+  @Test
+  void reapTest() throws Exception {
+    dataSource = newPooledDataSource(pool -> pool.minSize(0).maxSize(2)
+        .reapTimeout(Duration.ofMillis(200)));
+
+    try (Connection firstConnection = dataSource.getConnection();
+        Connection secondConnection = dataSource.getConnection()) {
+      assertTrue(firstConnection.isValid(1));
+      assertTrue(secondConnection.isValid(1));
+    }
+
+    await(() -> dataSource.getMetrics().reapCount() == 2);
+
+    assertEquals(0, dataSource.getMetrics().availableCount());
+  }
+
+  @Test
+  void resetConnectionStateTest() throws Exception {
+    dataSource = newPooledDataSource(pool -> pool);
+
+    int originalTransactionIsolation;
+    String originalSchema;
+
+    try (Connection connection = dataSource.getConnection()) {
+      originalTransactionIsolation = connection.getTransactionIsolation();
+      originalSchema = connection.getSchema();
+
+      connection.setReadOnly(true);
+      connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+      connection.setSchema("INFORMATION_SCHEMA");
+    }
+
+    assertNotEquals(Connection.TRANSACTION_SERIALIZABLE, originalTransactionIsolation);
+
+    // The pool only holds one connection so the same physical connection is reused
+    try (Connection connection = dataSource.getConnection()) {
+      assertFalse(connection.isReadOnly());
+      assertEquals(originalTransactionIsolation, connection.getTransactionIsolation());
+      assertEquals(originalSchema, connection.getSchema());
+    }
+
+    assertEquals(1, dataSource.getMetrics().creationCount());
+  }
+
+  private void await(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; (i < 100) && (!condition.getAsBoolean()); i++) {
+      Thread.sleep(50);
+    }
+
+    assertTrue(condition.getAsBoolean(), "The pool did not reach the expected state");
+  }
+
+  private PooledDataSource newPooledDataSource(
+      Function<AgroalConnectionPoolConfigurationSupplier,
+          AgroalConnectionPoolConfigurationSupplier> poolConfiguration,
+      AgroalDataSourceListener... listeners) throws SQLException {
+    AgroalDataSourceConfigurationSupplier configuration =
+        new AgroalDataSourceConfigurationSupplier()
+            .connectionPoolConfiguration(pool -> poolConfiguration.apply(pool
+                .minSize(1)
+                .maxSize(1)
+                .acquisitionTimeout(Duration.ofSeconds(5))
+                .connectionFactoryConfiguration(factory -> factory
+                    .jdbcUrl("jdbc:h2:mem:pooled;DB_CLOSE_DELAY=-1")
+                    .principal(new NamePrincipal("sa"))
+                    .credential(new SimplePassword("")))));
+
+    return new PooledDataSource("test", configuration.get(), listeners);
+  }
+}
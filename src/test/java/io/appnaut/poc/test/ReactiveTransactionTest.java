@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.appnaut.jta.reactive.ReactiveJtaTransactionManager;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import io.reactivex.Flowable;
+import io.reactivex.plugins.RxJavaPlugins;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.sql.DataSource;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest(transactional = false)
+public class ReactiveTransactionTest {
+
+  @Inject
+  private DataSource dataSource;
+
+  @Inject
+  private ReactiveDataService reactiveDataService;
+
+  @Inject
+  private TransactionManager transactionManager;
+
+  @Test
+  void commitTest() throws Exception {
+    long id = ThreadLocalRandom.current().nextLong(1000000, Long.MAX_VALUE);
+
+    Transaction transaction = reactiveDataService.createData(id, false).blockingSingle();
+
+    assertNotNull(transaction, "The work was not performed in a JTA transaction");
+    assertNull(transactionManager.getTransaction(),
+        "The JTA transaction is associated with the subscribing thread");
+    assertTrue(exists(id), "The data was not committed");
+  }
+
+  @Test
+  void noGlobalScheduleHandlerTest() {
+    assertNull(RxJavaPlugins.getScheduleHandler(),
+        "The JTA transaction propagation is installed for all RxJava schedulers");
+  }
+
+  @Test
+  void rollbackTest() throws Exception {
+    long id = ThreadLocalRandom.current().nextLong(1000000, Long.MAX_VALUE);
+
+    IllegalStateException exception = assertThrows(IllegalStateException.class,
+        () -> reactiveDataService.createData(id, true).blockingSingle());
+
+    assertEquals(ReactiveDataService.FAILURE_MESSAGE, exception.getMessage());
+    assertFalse(exists(id), "The data was not rolled back");
+  }
+
+  private boolean exists(long id) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection
+            .prepareStatement("SELECT id FROM poc.data WHERE id = ?")) {
+      statement.setLong(1, id);
+
+      try (ResultSet rs = statement.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  @Singleton
+  static class ReactiveDataService {
+
+    static final String FAILURE_MESSAGE = "Failed to create the data";
+
+    private final DataSource dataSource;
+
+    private final ReactiveJtaTransactionManager reactiveJtaTransactionManager;
+
+    private final TransactionManager transactionManager;
+
+    ReactiveDataService(DataSource dataSource,
+        @Named("default") ReactiveJtaTransactionManager reactiveJtaTransactionManager,
+        TransactionManager transactionManager) {
+      this.dataSource = dataSource;
+      this.reactiveJtaTransactionManager = reactiveJtaTransactionManager;
+      this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Insert the data on the scheduler for the reactive JTA transaction manager, which propagates
+     * the transaction, and fail afterwards if required.
+     */
+    @Transactional
+    public Flowable<Transaction> createData(long id, boolean fail) {
+      return Flowable.fromCallable(() -> {
+        try (Connection connection = dataSource.getConnection();
+            PreparedStatement statement = connection
+                .prepareStatement("INSERT INTO poc.data (id, string_value) VALUES (?, ?)")) {
+          statement.setLong(1, id);
+          statement.setString(2, "Reactive Data");
+
+          statement.executeUpdate();
+        }
+
+        return transactionManager.getTransaction();
+      })
+          .subscribeOn(reactiveJtaTransactionManager.getScheduler())
+          .map(transaction -> {
+            if (fail) {
+              throw new IllegalStateException(FAILURE_MESSAGE);
+            }
+
+            return transaction;
+          });
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.jta.agroal.AgroalDataSourceConfiguration.LoadBalancing;
+import io.appnaut.jta.agroal.ReadWriteRoutingDataSource;
+import io.appnaut.jta.agroal.ReadYourWritesToken;
+import io.appnaut.jta.local.LocalTransactionManager;
+import io.appnaut.jta.local.LocalTransactionSynchronizationRegistry;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpRequest;
+import io.micronaut.http.context.ServerRequestContext;
+import io.micronaut.transaction.support.TransactionSynchronizationManager;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ReadWriteRoutingDataSourceTest {
+
+  private static final Duration READ_YOUR_WRITES_WINDOW = Duration.ofMillis(500);
+
+  private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+  private final StubDataSource primary = new StubDataSource("primary");
+
+  private final StubDataSource replica1 = new StubDataSource("replica1");
+
+  private final StubDataSource replica2 = new StubDataSource("replica2");
+
+  private final LocalTransactionManager transactionManager =
+      new LocalTransactionManager(Duration.ofSeconds(60));
+
+  private final LocalTransactionSynchronizationRegistry transactionSynchronizationRegistry =
+      new LocalTransactionSynchronizationRegistry(transactionManager);
+
+  private final ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource("test",
+      primary.dataSource, List.of(replica1.dataSource, replica2.dataSource),
+      LoadBalancing.ROUND_ROBIN, READ_YOUR_WRITES_WINDOW, transactionSynchronizationRegistry);
+
+  @AfterEach
+  void afterEach() throws Exception {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+    if (transactionManager.getTransaction() != null) {
+      transactionManager.rollback();
+    }
+
+    executorService.shutdownNow();
+  }
+
+  @Test
+  void readOnlyTransactionRoutedToReplicasTest() throws Exception {
+    assertEquals("replica1", runInTransaction(true));
+    assertEquals("replica2", runInTransaction(true));
+    assertEquals("replica1", runInTransaction(true));
+  }
+
+  @Test
+  void readWriteTransactionRoutedToPrimaryTest() throws Exception {
+    assertEquals("primary", runInTransaction(false));
+  }
+
+  @Test
+  void readYourWritesOnSameThreadTest() throws Exception {
+    assertEquals("primary", runInTransaction(false));
+
+    // The write committed on this thread, so reads on this thread go to the primary
+    assertEquals("primary", runInTransaction(true));
+
+    Thread.sleep(READ_YOUR_WRITES_WINDOW.toMillis() + 100);
+
+    assertEquals("replica1", runInTransaction(true));
+  }
+
+  @Test
+  void readYourWritesFollowsRequestTest() throws Exception {
+    MutableHttpRequest<Object> writeRequest = HttpRequest.GET("/data");
+    ReadYourWritesToken writeToken = new ReadYourWritesToken(0);
+    writeRequest.setAttribute(ReadYourWritesToken.ATTRIBUTE, writeToken);
+
+    assertEquals("primary",
+        ServerRequestContext.with(writeRequest, (Callable<String>) () -> runInTransaction(false)));
+
+    assertTrue(writeToken.isUpdated(), "The write was not recorded for the request");
+    assertNotEquals(0, writeToken.getLastWriteCommitMillis());
+
+    // A later request from the same client, processed on another thread, reads from the primary
+    MutableHttpRequest<Object> readRequest = HttpRequest.GET("/data");
+    readRequest.setAttribute(ReadYourWritesToken.ATTRIBUTE,
+        new ReadYourWritesToken(writeToken.getLastWriteCommitMillis()));
+
+    assertEquals("primary", executorService.submit(() -> ServerRequestContext.with(readRequest,
+        (Callable<String>) () -> runInTransaction(true))).get());
+
+    // A request from another client is not affected by the write
+    MutableHttpRequest<Object> otherRequest = HttpRequest.GET("/data");
+    otherRequest.setAttribute(ReadYourWritesToken.ATTRIBUTE, new ReadYourWritesToken(0));
+
+    assertEquals("replica1", ServerRequestContext.with(otherRequest,
+        (Callable<String>) () -> runInTransaction(true)));
+  }
+
+  @Test
+  void replicaFailureFallsBackToPrimaryTest() throws Exception {
+    replica1.failure = new SQLException("Connection refused", "08001");
+
+    transactionManager.begin();
+
+    try {
+      TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+      assertEquals("primary", getDataSourceName(dataSource.getConnection()));
+
+      // The fallback is pinned for the rest of the transaction
+      assertEquals("primary", getDataSourceName(dataSource.getConnection()));
+    } finally {
+      transactionManager.commit();
+    }
+  }
+
+  @Test
+  void transactionPinnedToDataSourceTest() throws Exception {
+    transactionManager.begin();
+
+    try {
+      TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+      assertEquals("replica1", getDataSourceName(dataSource.getConnection()));
+      assertEquals("replica1", getDataSourceName(dataSource.getConnection()));
+
+      TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+      assertEquals("replica1", getDataSourceName(dataSource.getConnection()));
+    } finally {
+      transactionManager.commit();
+    }
+  }
+
+  private String getDataSourceName(Connection connection) {
+    assertNotNull(connection);
+
+    return connection.toString();
+  }
+
+  private String runInTransaction(boolean readOnly) throws Exception {
+    transactionManager.begin();
+
+    try {
+      TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+
+      return getDataSourceName(dataSource.getConnection());
+    } finally {
+      TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+      transactionManager.commit();
+    }
+  }
+
+  /**
+   * The <b>StubDataSource</b> class provides an Agroal data source whose connections identify the
+   * data source they were retrieved from.
+   */
+  private static class StubDataSource {
+
+    private final AgroalDataSource dataSource;
+
+    private volatile SQLException failure;
+
+    StubDataSource(String name) {
+      Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[]{Connection.class},
+          (proxy, method, args) -> method.getName().equals("toString") ? name : null);
+
+      this.dataSource = (AgroalDataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[]{AgroalDataSource.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection")) {
+              if (failure != null) {
+                throw failure;
+              }
+
+              return connection;
+            }
+
+            return method.getName().equals("toString") ? name : null;
+          });
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.appnaut.jta.jfr.XAResourceEvent;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.sql.DataSource;
+import javax.transaction.TransactionManager;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest(transactional = false)
+@Property(name = "datasources.joined1.url", value = ResourceManagerJoiningTest.URL)
+@Property(name = "datasources.joined1.username", value = "sa")
+@Property(name = "datasources.joined1.password", value = "")
+@Property(name = "datasources.joined1.driver-class-name", value = "org.h2.jdbcx.JdbcDataSource")
+@Property(name = "datasources.joined1.resource-manager-joining-enabled", value = "true")
+@Property(name = "datasources.joined2.url", value = ResourceManagerJoiningTest.URL)
+@Property(name = "datasources.joined2.username", value = "sa")
+@Property(name = "datasources.joined2.password", value = "")
+@Property(name = "datasources.joined2.driver-class-name", value = "org.h2.jdbcx.JdbcDataSource")
+@Property(name = "datasources.joined2.resource-manager-joining-enabled", value = "true")
+@Property(name = "datasources.separate.url", value = ResourceManagerJoiningTest.URL)
+@Property(name = "datasources.separate.username", value = "sa")
+@Property(name = "datasources.separate.password", value = "")
+@Property(name = "datasources.separate.driver-class-name", value = "org.h2.jdbcx.JdbcDataSource")
+@Property(name = "datasources.separate.resource-manager-joining-enabled", value = "true")
+@Property(name = "datasources.separate.jdbc-properties.description", value = "separate")
+public class ResourceManagerJoiningTest {
+
+  static final String URL = "jdbc:h2:mem:joined;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+  private static final String XA_RESOURCE_EVENT = EventType.getEventType(XAResourceEvent.class)
+      .getName();
+
+  @Inject
+  @Named("joined1")
+  private DataSource joined1DataSource;
+
+  @Inject
+  @Named("joined2")
+  private DataSource joined2DataSource;
+
+  @Inject
+  @Named("separate")
+  private DataSource separateDataSource;
+
+  @Inject
+  private TransactionManager transactionManager;
+
+  @BeforeEach
+  void beforeEach() throws SQLException {
+    try (Connection connection = joined1DataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS joined_data (id BIGINT PRIMARY KEY)");
+    }
+  }
+
+  @Test
+  void differentJdbcPropertiesUseTwoPhaseCommitTest() throws Exception {
+    long firstId = newId();
+    long secondId = newId();
+
+    List<String> operations = commitInTransaction(joined1DataSource, firstId,
+        separateDataSource, secondId);
+
+    assertTrue(operations.contains("prepare"),
+        "The data sources with different JDBC properties were joined: " + operations);
+    assertTrue(exists(firstId) && exists(secondId), "The data was not committed");
+  }
+
+  @Test
+  void joinedDataSourcesUseOnePhaseCommitTest() throws Exception {
+    long firstId = newId();
+    long secondId = newId();
+
+    List<String> operations = commitInTransaction(joined1DataSource, firstId,
+        joined2DataSource, secondId);
+
+    assertEquals(List.of("commit-one-phase"), operations.stream()
+            .filter(operation -> operation.startsWith("commit") || operation.equals("prepare"))
+            .collect(Collectors.toList()),
+        "The transaction across the joined data sources was not completed using a one-phase "
+            + "commit: " + operations);
+    assertTrue(exists(firstId) && exists(secondId), "The data was not committed");
+  }
+
+  /**
+   * Insert the data using the two data sources in a single JTA transaction and return the XA
+   * operations performed for the transaction.
+   */
+  private List<String> commitInTransaction(DataSource firstDataSource, long firstId,
+      DataSource secondDataSource, long secondId) throws Exception {
+    FlightRecorder.register(XAResourceEvent.class);
+
+    try (Recording recording = new Recording()) {
+      recording.enable(XA_RESOURCE_EVENT);
+      recording.start();
+
+      transactionManager.begin();
+
+      try {
+        insert(firstDataSource, firstId);
+        insert(secondDataSource, secondId);
+      } catch (Throwable e) {
+        transactionManager.rollback();
+
+        throw e;
+      }
+
+      transactionManager.commit();
+
+      recording.stop();
+
+      Path recordingFile = Files.createTempFile("resource-manager-joining-test", ".jfr");
+
+      try {
+        recording.dump(recordingFile);
+
+        List<String> operations = new ArrayList<>();
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+          if (event.getEventType().getName().equals(XA_RESOURCE_EVENT)) {
+            operations.add(event.getString("operation"));
+          }
+        }
+
+        return operations;
+      } finally {
+        Files.deleteIfExists(recordingFile);
+      }
+    }
+  }
+
+  private boolean exists(long id) throws SQLException {
+    try (Connection connection = joined1DataSource.getConnection();
+        PreparedStatement statement = connection
+            .prepareStatement("SELECT id FROM joined_data WHERE id = ?")) {
+      statement.setLong(1, id);
+
+      try (ResultSet rs = statement.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  private void insert(DataSource dataSource, long id) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection
+            .prepareStatement("INSERT INTO joined_data (id) VALUES (?)")) {
+      statement.setLong(1, id);
+
+      statement.executeUpdate();
+    }
+  }
+
+  private long newId() {
+    return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+  }
+}
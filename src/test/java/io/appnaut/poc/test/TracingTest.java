@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import io.appnaut.jta.tracing.TransactionTracer;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest
+@Property(name = "appnaut.tracing.enabled", value = "true")
+public class TracingTest {
+
+  private static final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+
+  @Inject
+  @Client("/")
+  private HttpClient httpClient;
+
+  @Test
+  void transactionSpanParentedToServerSpanTest() throws Exception {
+    spanExporter.reset();
+
+    httpClient.toBlocking().exchange(HttpRequest.GET("/data/"), String.class);
+
+    SpanData serverSpan = null;
+    SpanData transactionSpan = null;
+
+    // The server span is ended after the response has been written so wait for it to be exported
+    for (int i = 0; (i < 50) && ((serverSpan == null) || (transactionSpan == null)); i++) {
+      List<SpanData> spans = spanExporter.getFinishedSpanItems();
+
+      for (SpanData span : spans) {
+        if (span.getKind() == SpanKind.SERVER) {
+          serverSpan = span;
+        } else if (span.getName().equals(TransactionTracer.TRANSACTION_SPAN_NAME)) {
+          transactionSpan = span;
+        }
+      }
+
+      if ((serverSpan == null) || (transactionSpan == null)) {
+        Thread.sleep(100);
+      }
+    }
+
+    assertNotNull(serverSpan, "Failed to find the server span");
+    assertNotNull(transactionSpan, "Failed to find the JTA transaction span");
+    assertEquals(serverSpan.getTraceId(), transactionSpan.getTraceId(),
+        "The JTA transaction span is not part of the server trace");
+    assertEquals(serverSpan.getSpanId(), transactionSpan.getParentSpanId(),
+        "The JTA transaction span is not a child of the server span");
+  }
+
+  @Factory
+  static class TracingTestFactory {
+
+    @Singleton
+    @Replaces(OpenTelemetry.class)
+    OpenTelemetry openTelemetry() {
+      return OpenTelemetrySdk.builder()
+          .setTracerProvider(SdkTracerProvider.builder()
+              .addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build())
+          .build();
+    }
+  }
+}
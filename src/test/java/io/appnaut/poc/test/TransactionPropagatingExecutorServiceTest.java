@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.appnaut.jta.concurrent.TransactionPropagatingExecutorService;
+import io.appnaut.jta.local.LocalTransactionManager;
+import io.appnaut.jta.local.LocalTransactionSynchronizationRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TransactionPropagatingExecutorServiceTest {
+
+  private final ExecutorService delegate = Executors.newCachedThreadPool();
+
+  private final LocalTransactionManager transactionManager =
+      new LocalTransactionManager(Duration.ofSeconds(60));
+
+  private final LocalTransactionSynchronizationRegistry transactionSynchronizationRegistry =
+      new LocalTransactionSynchronizationRegistry(transactionManager);
+
+  private final ExecutorService executorService = new TransactionPropagatingExecutorService(
+      delegate, transactionManager, transactionSynchronizationRegistry, Duration.ofSeconds(1));
+
+  @AfterEach
+  void cleanUp() throws Exception {
+    if (transactionManager.getTransaction() != null) {
+      transactionManager.rollback();
+    }
+
+    delegate.shutdownNow();
+  }
+
+  @Test
+  void commitWaitsForOutstandingTasksTest() throws Exception {
+    transactionManager.begin();
+
+    AtomicBoolean finished = new AtomicBoolean();
+
+    executorService.execute(() -> {
+      try {
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      finished.set(true);
+    });
+
+    transactionManager.commit();
+
+    assertTrue(finished.get());
+  }
+
+  @Test
+  void commitRollsBackWhenTasksDoNotFinishTest() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+
+    try {
+      transactionManager.begin();
+
+      executorService.submit(() -> {
+        release.await();
+        return null;
+      });
+
+      assertThrows(RollbackException.class, transactionManager::commit);
+      assertEquals(Status.STATUS_NO_TRANSACTION, transactionManager.getStatus());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  void rejectTasksSubmittedDuringCompletionTest() throws Exception {
+    transactionManager.begin();
+
+    AtomicBoolean rejected = new AtomicBoolean();
+
+    executorService.submit(() -> null).get();
+
+    // Register after the outstanding tasks so this synchronization runs once they are completing
+    transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+      @Override
+      public void afterCompletion(int status) {
+      }
+
+      @Override
+      public void beforeCompletion() {
+        try {
+          executorService.submit(() -> null);
+        } catch (RejectedExecutionException e) {
+          rejected.set(true);
+        }
+      }
+    });
+
+    transactionManager.commit();
+
+    assertTrue(rejected.get());
+  }
+
+  @Test
+  void taskRunsInSubmittingTransactionTest() throws Exception {
+    transactionManager.begin();
+
+    Transaction transaction = transactionManager.getTransaction();
+
+    Future<Transaction> future = executorService.submit(transactionManager::getTransaction);
+
+    assertSame(transaction, future.get(10, TimeUnit.SECONDS));
+
+    transactionManager.commit();
+
+    assertNull(executorService.submit(transactionManager::getTransaction).get());
+  }
+}
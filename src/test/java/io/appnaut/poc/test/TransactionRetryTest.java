@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.appnaut.poc.data.Data;
+import io.appnaut.poc.data.DataRepository;
+import io.appnaut.poc.data.IDataService;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest(transactional = false)
+public class TransactionRetryTest {
+
+  /**
+   * The string value for the data whose first insert fails with a serialization failure.
+   */
+  private static final String RETRY_STRING_VALUE = "Retry Data";
+
+  /**
+   * The number of inserts of the retry data that still have to fail.
+   */
+  private static final AtomicInteger remainingFailures = new AtomicInteger();
+
+  @Inject
+  private DataRepository dataRepository;
+
+  @Inject
+  private DataSource dataSource;
+
+  @Inject
+  private IDataService dataService;
+
+  @AfterEach
+  void afterEach() throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute("DROP TRIGGER IF EXISTS poc.data_retry_trigger");
+    }
+
+    dataRepository.findAll().stream()
+        .filter(data -> RETRY_STRING_VALUE.equals(data.getStringValue()))
+        .forEach(dataRepository::delete);
+  }
+
+  @BeforeEach
+  void beforeEach() throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TRIGGER poc.data_retry_trigger BEFORE INSERT ON poc.data "
+          + "FOR EACH ROW CALL \"" + FailingInsertTrigger.class.getName() + "\"");
+    }
+  }
+
+  @Test
+  void retryCreateDataListTest() {
+    remainingFailures.set(1);
+
+    List<Data> newData = List.of(getNewData("Data"), getNewData(RETRY_STRING_VALUE));
+
+    dataService.createData(newData);
+
+    assertEquals(0, remainingFailures.get(), "The insert did not fail");
+
+    for (Data data : newData) {
+      assertNotEquals(0, data.getId(), "No ID was allocated for the data");
+      assertTrue(dataRepository.existsById(data.getId()), "Failed to find the data");
+    }
+
+    dataRepository.delete(newData.get(0));
+  }
+
+  @Test
+  void retryCreateDataTest() {
+    remainingFailures.set(1);
+
+    Data data = dataService.createData(getNewData(RETRY_STRING_VALUE));
+
+    assertEquals(0, remainingFailures.get(), "The insert did not fail");
+    assertNotEquals(0, data.getId(), "No ID was allocated for the data");
+    assertTrue(dataRepository.existsById(data.getId()), "Failed to find the data");
+  }
+
+  private Data getNewData(String stringValue) {
+    LocalDateTime now = LocalDateTime.now();
+
+    return new Data(0, stringValue, now.toLocalDate(), now);
+  }
+
+  /**
+   * The <b>FailingInsertTrigger</b> class implements an H2 trigger that fails the insert of the
+   * retry data with a serialization failure until there are no remaining failures.
+   */
+  public static class FailingInsertTrigger implements Trigger {
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow)
+        throws SQLException {
+      if (RETRY_STRING_VALUE.equals(newRow[2]) && (remainingFailures.getAndDecrement() > 0)) {
+        throw new SQLException("Simulated serialization failure", "40001");
+      }
+    }
+
+    @Override
+    public void init(Connection connection, String schemaName, String triggerName,
+        String tableName, boolean before, int type) {
+    }
+
+    @Override
+    public void remove() {
+    }
+  }
+}
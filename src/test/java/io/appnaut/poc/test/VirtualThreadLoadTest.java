@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Marcus Portmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appnaut.poc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.agroal.api.AgroalDataSource;
+import io.appnaut.core.concurrent.VirtualThreads;
+import io.appnaut.poc.data.DataController;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.client.RxHttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import io.reactivex.Flowable;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Named;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest
+@Property(name = "appnaut.virtual-threads.enabled", value = "true")
+@Property(name = "datasources.default.metrics-enabled", value = "true")
+@Property(name = "micronaut.http.client.read-timeout", value = "120s")
+public class VirtualThreadLoadTest {
+
+  /**
+   * The number of concurrent requests. Each request uses its own HTTP connection, so the number of
+   * requests is kept within the default limit on open files.
+   */
+  private static final int CONCURRENT_REQUESTS = 400;
+
+  private static final String VIRTUAL_THREAD_PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+  @Inject
+  @Named("default")
+  private AgroalDataSource dataSource;
+
+  @Inject
+  @Client("/")
+  private RxHttpClient httpClient;
+
+  @Test
+  void concurrentTransactionalRequestsTest() throws Exception {
+    assertTrue(VirtualThreads.isSupported(),
+        "Virtual threads are not supported by the runtime, use the virtualThreadTest task");
+
+    int maxPoolSize = dataSource.getConfiguration().connectionPoolConfiguration().maxSize();
+
+    List<String> pinnedEvents;
+
+    try (Recording recording = new Recording()) {
+      recording.enable(VIRTUAL_THREAD_PINNED_EVENT).withStackTrace()
+          .withThreshold(Duration.ZERO);
+      recording.start();
+
+      Future<List<String>> responses;
+
+      // Hold every pooled connection so that each request blocks in the transactional data
+      // service, waiting for a connection, until all the requests are in flight
+      List<Connection> heldConnections = new ArrayList<>();
+
+      try {
+        for (int i = 0; i < maxPoolSize; i++) {
+          heldConnections.add(dataSource.getConnection());
+        }
+
+        responses = Flowable.range(0, CONCURRENT_REQUESTS)
+            .flatMap(i -> httpClient.retrieve(HttpRequest.GET("/data/")), CONCURRENT_REQUESTS)
+            .toList()
+            .toFuture();
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+
+        while ((dataSource.getMetrics().awaitingCount() < CONCURRENT_REQUESTS)
+            && (System.currentTimeMillis() < deadline)) {
+          Thread.sleep(100);
+        }
+
+        assertEquals(CONCURRENT_REQUESTS, dataSource.getMetrics().awaitingCount(),
+            "Not all the requests were waiting for a connection concurrently");
+
+        // The blocked requests must not occupy platform threads, which are the only threads
+        // returned by Thread.getAllStackTraces()
+        List<String> platformThreadsInController = getPlatformThreadsInController();
+
+        assertTrue(platformThreadsInController.isEmpty(),
+            "Requests are blocked on the platform threads " + platformThreadsInController);
+      } finally {
+        for (Connection heldConnection : heldConnections) {
+          heldConnection.close();
+        }
+      }
+
+      List<String> responseBodies = responses.get(120, TimeUnit.SECONDS);
+
+      assertEquals(CONCURRENT_REQUESTS, responseBodies.size(),
+          "Failed to retrieve the data for all the concurrent requests");
+
+      recording.stop();
+
+      pinnedEvents = getPinnedEventsInSynchronizedAppnautMethods(recording);
+    }
+
+    assertTrue(pinnedEvents.isEmpty(),
+        "Virtual threads were pinned by synchronized methods in the JTA path: " + pinnedEvents);
+  }
+
+  private List<String> getPinnedEventsInSynchronizedAppnautMethods(Recording recording)
+      throws Exception {
+    Path recordingFile = Files.createTempFile("virtual-thread-load-test", ".jfr");
+
+    try {
+      recording.dump(recordingFile);
+
+      List<String> pinnedEvents = new ArrayList<>();
+
+      for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+        if ((!event.getEventType().getName().equals(VIRTUAL_THREAD_PINNED_EVENT))
+            || (event.getStackTrace() == null)) {
+          continue;
+        }
+
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+          if (frame.isJavaFrame()
+              && frame.getMethod().getType().getName().startsWith("io.appnaut.")
+              && Modifier.isSynchronized(frame.getMethod().getModifiers())) {
+            pinnedEvents.add(frame.getMethod().getType().getName() + "."
+                + frame.getMethod().getName());
+          }
+        }
+      }
+
+      return pinnedEvents;
+    } finally {
+      Files.deleteIfExists(recordingFile);
+    }
+  }
+
+  private List<String> getPlatformThreadsInController() {
+    return Thread.getAllStackTraces().entrySet().stream()
+        .filter(entry -> Arrays.stream(entry.getValue()).anyMatch(
+            stackTraceElement -> stackTraceElement.getClassName()
+                .startsWith(DataController.class.getName())))
+        .map(Map.Entry::getKey)
+        .map(Thread::getName)
+        .collect(Collectors.toList());
+  }
+}